@@ -0,0 +1,12 @@
+-- V1__add_transaction_indexes.sql
+-- Copyright 2024 maximusf
+-- Indexes for the per-user queries made by the DAOs and db/queries/sample_queries.sql
+-- Applied automatically at startup by dao.MigrationRunner
+
+-- Per-user listings and date range queries
+CREATE INDEX idx_income_user_date ON income (user_id, date);
+CREATE INDEX idx_expenses_user_date ON expenses (user_id, date);
+
+-- Per-user breakdowns by source/category
+CREATE INDEX idx_income_user_source ON income (user_id, source);
+CREATE INDEX idx_expenses_user_category ON expenses (user_id, category);
@@ -0,0 +1,29 @@
+-- V2__savings_goal_progress.sql
+-- Copyright 2024 maximusf
+-- Savings goal progress kept up to date by dao.SavingsGoalDAO as income and expenses are recorded
+-- Applied automatically at startup by dao.MigrationRunner
+
+-- current_amount is adjusted in place by every income and expense write, so it can't be NULL
+UPDATE savings_goals SET current_amount = 0 WHERE current_amount IS NULL;
+ALTER TABLE savings_goals MODIFY current_amount DECIMAL(10, 2) NOT NULL DEFAULT 0;
+
+-- Amount already saved when the goal was set; progress beyond it gives the saving rate for projections.
+-- Added as NULL so goals that have not been backfilled yet can be told apart if this file is re-run.
+ALTER TABLE savings_goals ADD COLUMN initial_amount DECIMAL(10, 2) NULL;
+
+-- Existing goals keep their amount as the initial one and gain the income less expenses already
+-- recorded in their dates, the same sums SavingsGoalDAO adjusts by. Assignments run left to right,
+-- so initial_amount takes current_amount before it changes. Only NULL rows are touched, so a second
+-- run changes nothing.
+UPDATE savings_goals g
+SET g.initial_amount = g.current_amount,
+    g.current_amount = g.current_amount
+        + (SELECT COALESCE(SUM(t.amount), 0) FROM income t
+           WHERE t.user_id = g.user_id AND t.date BETWEEN g.start_date AND g.end_date)
+        - (SELECT COALESCE(SUM(t.amount), 0) FROM expenses t
+           WHERE t.user_id = g.user_id AND t.date BETWEEN g.start_date AND g.end_date)
+WHERE g.initial_amount IS NULL;
+ALTER TABLE savings_goals MODIFY initial_amount DECIMAL(10, 2) NOT NULL DEFAULT 0;
+
+-- Goals covering a user and date, looked up on every income and expense write
+CREATE INDEX idx_savings_goals_user_dates ON savings_goals (user_id, start_date, end_date);
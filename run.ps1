@@ -15,7 +15,9 @@ Usage: .\run.ps1 <command>
 Commands:
     compile     - Compile all Java files
     run         - Run the main application
+    serve       - Run the HTTP/JSON API (API_PORT in .env, default 8080)
     test        - Run the test suite
+    bench       - Run the benchmarks (writes bench_results.json)
     reset       - Reset the database
     clean       - Remove compiled files
     all         - Compile, reset DB, and run tests
@@ -23,13 +25,25 @@ Commands:
 "@ -ForegroundColor Cyan
 }
 
+# Virtual threads (dao.AsyncQueries, api.ApiServer) need JDK 21 or newer
+function Test-JavaVersion {
+    $version = (& javac -version 2>&1 | Out-String).Trim()
+    if ($version -match 'javac (\d+)' -and [int]$Matches[1] -ge 21) {
+        return $true
+    }
+    Write-Host "JDK 21 or newer is required to compile (found: $version)" -ForegroundColor Red
+    return $false
+}
+
 function Compile {
+    if (-not (Test-JavaVersion)) { return $false }
     Write-Host "Compiling source files..."
     $sourceFiles = Get-ChildItem -Path "src" -Recurse -Include "*.java" | 
         Where-Object { $_.Name -ne "IncomeTest.java" -and $_.Name -ne "ExpenseTest.java" } |
         Select-Object -ExpandProperty FullName
     
-    javac -d bin -cp "lib/*" $sourceFiles
+    # Sources contain non-ASCII literals, so they must not be read in the platform encoding
+    javac -encoding UTF-8 -d bin -cp "lib/*" $sourceFiles
     
     if ($LASTEXITCODE -eq 0) {
         Write-Host "Compilation successful!" -ForegroundColor Green
@@ -49,6 +63,15 @@ function Start-MainProgram {
     & java -cp "bin;lib\mysql-connector-j-9.1.0.jar" Main
 }
 
+function Start-ApiServer {
+    if (-not (Test-Path "bin/Main.class")) {
+        Write-Host "Program not compiled. Running compilation first..." -ForegroundColor Yellow
+        if (-not (Compile)) { return }
+    }
+    Write-Host "Starting API server..." -ForegroundColor Yellow
+    & java -cp "bin;lib\mysql-connector-j-9.1.0.jar" Main --serve
+}
+
 function Start-Tests {
     if (-not (Test-Path "bin/test/WalletWatchTest.class")) {
         Write-Host "Tests not compiled. Running compilation first..." -ForegroundColor Yellow
@@ -58,6 +81,28 @@ function Start-Tests {
     
     Write-Host "`nRunning Wallet-Watch Tests:" -ForegroundColor Cyan
     & java -cp "bin;lib\mysql-connector-j-9.1.0.jar" test.WalletWatchTest
+
+    Write-Host "`nMeasuring Heap Footprint:" -ForegroundColor Cyan
+    & java -cp "bin;lib\mysql-connector-j-9.1.0.jar" test.HeapFootprintTest
+
+    Write-Host "`nChecking Query Plans:" -ForegroundColor Cyan
+    & java -cp "bin;lib\mysql-connector-j-9.1.0.jar" test.QueryPlanCheck
+}
+
+function Start-Benchmarks {
+    if (-not (Test-Path "bin/bench/WalletWatchBenchmarks.class")) {
+        Write-Host "Benchmarks not compiled. Running compilation first..." -ForegroundColor Yellow
+        if (-not (Compile)) { return }
+    }
+    Write-Host "Running benchmarks..." -ForegroundColor Yellow
+
+    # Compare against the previous run when there is one
+    $benchArgs = @()
+    if (Test-Path "bench_results.json") {
+        Copy-Item "bench_results.json" "bench_baseline.json" -Force
+        $benchArgs = @("--baseline", "bench_baseline.json")
+    }
+    & java -cp "bin;lib\mysql-connector-j-9.1.0.jar" bench.WalletWatchBenchmarks @benchArgs
 }
 
 function Reset-Database {
@@ -93,7 +138,9 @@ function Start-All {
 switch ($command.ToLower()) {
     "compile" { Compile }
     "run" { Start-MainProgram }
+    "serve" { Start-ApiServer }
     "test" { Start-Tests }
+    "bench" { Start-Benchmarks }
     "reset" { Reset-Database }
     "clean" { Remove-CompiledFiles }
     "all" { Start-All }
@@ -2,49 +2,313 @@
 // Copyright 2024 maximusf
 
 // Project-specific imports
-import dao.*;          // Database Access Objects (IncomeDAO, ExpenseDAO)
+import api.ApiServer;   // HTTP/JSON API for --serve
+import dao.*;          // Storage engines and Database Access Objects (IncomeDAO, ExpenseDAO, ConnectionPool)
 import services.*;     // Service layer (IncomeService, ExpenseService)
 import util.*;         // Utility classes (PrintBuilder, Environment)
+import models.*;       // Data models (Income, Expense)
 
 // Java standard imports
-import java.sql.Connection;        // for database connection
-import java.sql.DriverManager;     // for database connection
+import java.io.BufferedReader;     // for batch scripts
+import java.io.IOException;        // for reading migration files and batch scripts
+import java.io.InputStreamReader;  // for batch scripts on stdin
+import java.nio.charset.StandardCharsets; // for batch scripts
+import java.nio.file.Files;        // for batch scripts
+import java.nio.file.Paths;        // for batch scripts
 import java.sql.SQLException;      // for database errors
+import java.util.ArrayList;        // for the write-behind buffers
+import java.util.Arrays;           // for a single batch command from the arguments
+import java.util.LinkedHashMap;    // for menu options in display order
+import java.util.List;             // for the measured repositories
+import java.util.Map;              // for menu options
 import java.util.Scanner;          // for user input
+import java.util.concurrent.CountDownLatch; // for waiting until the API server is stopped
 
 /**
  * Main application class for Wallet-Watch
  * Handles user authentication, menu display, and command routing
+ *
+ * Usage: java Main                                   Interactive menu
+ *        java Main --serve [port]                    HTTP/JSON API instead of the menu (see api.ApiServer)
+ *        java Main --as <userId> --batch <file|->    Commands from a script or stdin (see services.BatchRunner)
+ *        java Main --as <userId> <command> [--option value ...]   One command, e.g.
+ *            java Main --as 5 add-expense --amount 12.50 --category Food --date 20241102
  */
 public class Main {
-    private static final int ADMIN_ID = 777;
+    private static final int ADMIN_ID = Caller.ADMIN_ID;
     private static boolean isAdmin = false;
     private static int currentUserId = -1;
     private static Scanner scanner;
     private static IncomeService incomeService;
     private static ExpenseService expenseService;
+    private static BalanceService balanceService;
+    private static ImportService importService;
+    private static ExportService exportService;
+    private static ReportService reportService;
+    private static MetricsService metricsService;
+    private static SnapshotService snapshotService;
+    private static SavingsGoalService savingsGoalService;
+    private static UserService userService;
+    // Users table behind login checks and the user directory, cached; null for the journal engine
+    private static CachingUserRepository users;
+    // Buffers queuing menu adds when WRITE_BEHIND=true, flushed before the storage is closed
+    private static final List<WriteBehindTransactionRepository<?>> writeBehind = new ArrayList<>();
 
     public static void main(String[] args) {
-        try (Connection connection = DriverManager.getConnection(
-                Environment.get("DB_URL"),
-                Environment.get("DB_USER"),
-                Environment.get("DB_PASS"));
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? parsePort(args[1]) : ApiServer.DEFAULT_PORT;
+            if (port < 0) {
+                System.exit(2);
+            }
+            serve(port);
+            return;
+        }
+        if (args.length > 0) {
+            System.exit(runBatch(args));
+        }
+
+        try (StorageEngine storage = StorageEngine.fromEnvironment();
+             AsyncQueries async = new AsyncQueries();
              Scanner scannerInput = new Scanner(System.in)) {
             
             scanner = scannerInput;
+            migrateSchema(storage);
+            users = userRepository(storage);
             authenticateUser();
-            setupServices(connection);
-            runMainLoop();
-            
-        } catch (SQLException e) {
-            PrintBuilder.message("Database error: " + e.getMessage()).asError().print();
+            setupServices(storage, async);
+            // Ctrl+C skips the finally block below, so queued adds and slow queries are also written on shutdown
+            Runtime.getRuntime().addShutdownHook(new Thread(Main::closeBackgroundWriters));
+            try {
+                runMainLoop();
+            } finally {
+                closeBackgroundWriters();
+            }
+        }
+    }
+
+    // Port given after --serve, or -1 after printing usage when it is not a number from 1 to 65535
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            if (port >= 1 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below with the out-of-range ports
+        }
+        System.err.println("Port must be a number from 1 to 65535: " + text);
+        System.err.println("Usage: java Main --serve [port]");
+        return -1;
+    }
+
+    // Runs the HTTP API until the process is interrupted (Ctrl+C), then closes the server and storage in order
+    private static void serve(int port) {
+        CountDownLatch stopRequested = new CountDownLatch(1);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopRequested.countDown();
+            try {
+                mainThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try (StorageEngine storage = StorageEngine.fromEnvironment()) {
+            MetricsTransactionRepository<Income> measuredIncome =
+                new MetricsTransactionRepository<>(storage.getIncomeRepository(), "income");
+            MetricsTransactionRepository<Expense> measuredExpenses =
+                new MetricsTransactionRepository<>(storage.getExpenseRepository(), "expenses");
+            CachingTransactionRepository<Income> incomeDao = new CachingTransactionRepository<>(measuredIncome, Income::new);
+            CachingTransactionRepository<Expense> expenseDao = new CachingTransactionRepository<>(measuredExpenses, Expense::new);
+            registerMetrics(storage, measuredIncome, measuredExpenses, incomeDao, expenseDao);
+            // Callers are checked against the users table once per cache lifetime, not once per request
+            CachingUserRepository callers = userRepository(storage);
+            serve(storage, ApiServer.over(incomeDao, expenseDao).withUsers(callers), port, stopRequested);
+        } finally {
+            SlowQueryLog.closeShared();
+        }
+    }
+
+    private static void serve(StorageEngine storage, ApiServer api, int port, CountDownLatch stopRequested) {
+        try (ApiServer server = api) {
+            migrateSchema(storage);
+            server.start(ApiServer.DEFAULT_HOST, port);
+            PrintBuilder.message("API listening on http://" + ApiServer.DEFAULT_HOST + ":" + server.getPort()
+                + "/api (Ctrl+C to stop)").asSuccess().print();
+            stopRequested.await();
+            PrintBuilder.message("Stopping API server...").print();
+        } catch (IOException e) {
+            PrintBuilder.message("Could not start API server: " + e.getMessage()).asError().print();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs commands from the arguments or a script without prompting, printing one JSON line per command
+    // Exit status: 0 when every command succeeded, 1 when any failed, 2 for bad arguments
+    private static int runBatch(String[] args) {
+        int userId = -1;
+        String script = null;
+        int next = 0;
+        while (next < args.length && (args[next].equals("--as") || args[next].equals("--batch"))) {
+            if (next + 1 >= args.length) {
+                System.err.println("Missing value for " + args[next]);
+                return 2;
+            }
+            if (args[next].equals("--as")) {
+                try {
+                    userId = Integer.parseInt(args[next + 1]);
+                } catch (NumberFormatException e) {
+                    userId = 0;
+                }
+            } else {
+                script = args[next + 1];
+            }
+            next += 2;
+        }
+        if (userId <= 0) {
+            System.err.println("Batch mode needs --as <userId> with a positive User ID");
+            return 2;
+        }
+        if ((script == null) == (next == args.length)) {
+            System.err.println("Give either --batch <file|-> or one command, not both");
+            return 2;
+        }
+
+        // No cache: each record is written or read once, and writes share the storage's transaction
+        try (StorageEngine storage = StorageEngine.fromEnvironment()) {
+            storage.migrate();
+            BatchRunner batch = new BatchRunner(storage,
+                new TransactionOperations<>(storage.getIncomeRepository(), "Income", Income::new),
+                new TransactionOperations<>(storage.getExpenseRepository(), "Expense", Expense::new),
+                Caller.of(userId), System.out);
+
+            int failed;
+            if (script == null) {
+                failed = batch.run(Arrays.asList(args).subList(next, args.length));
+            } else if (script.equals("-")) {
+                failed = batch.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+            } else {
+                try (BufferedReader reader = Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+                    failed = batch.run(reader);
+                }
+            }
+            System.out.flush();
+            return failed == 0 ? 0 : 1;
+        } catch (IOException | SQLException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            return 1;
+        } finally {
+            SlowQueryLog.closeShared();
+        }
+    }
+
+    // Applies pending schema migrations from db/migrations before anything queries the database
+    private static void migrateSchema(StorageEngine storage) {
+        try {
+            int applied = storage.migrate();
+            if (applied > 0) {
+                PrintBuilder.message("Applied " + applied + " schema migration(s)").asSuccess().print();
+            }
+        } catch (SQLException | IOException e) {
+            PrintBuilder.message("Schema migration failed: " + e.getMessage()).asError().print();
+        }
+    }
+
+    // Setup services - creates the services and passes the storage repositories, scanner, currentUserId, and isAdmin
+    // Screens that need several independent queries run them concurrently through async
+    private static void setupServices(StorageEngine storage, AsyncQueries async) {
+        // Repository calls are measured below the cache, so the metrics count real storage round trips
+        MetricsTransactionRepository<Income> measuredIncome =
+            new MetricsTransactionRepository<>(storage.getIncomeRepository(), "income");
+        MetricsTransactionRepository<Expense> measuredExpenses =
+            new MetricsTransactionRepository<>(storage.getExpenseRepository(), "expenses");
+        // Repeated reads of the same user within a session are served from memory
+        // With WRITE_BEHIND=true, adds return once spooled locally and are inserted in batches
+        CachingTransactionRepository<Income> incomeDao =
+            new CachingTransactionRepository<>(writeBehind(measuredIncome, "income", Income::new), Income::new);
+        CachingTransactionRepository<Expense> expenseDao =
+            new CachingTransactionRepository<>(writeBehind(measuredExpenses, "expenses", Expense::new), Expense::new);
+        metricsService = registerMetrics(storage, measuredIncome, measuredExpenses, incomeDao, expenseDao);
+
+        // The balance query reads both tables directly, so queued adds are inserted first
+        BalanceRepository balances = storage.getBalanceRepository();
+        BalanceRepository flushedBalances = userId -> {
+            for (WriteBehindTransactionRepository<?> buffer : writeBehind) {
+                buffer.flush();
+            }
+            return balances.getBalance(userId);
+        };
+
+        incomeService = new IncomeService(incomeDao, scanner, currentUserId, isAdmin);
+        expenseService = new ExpenseService(expenseDao, scanner, currentUserId, isAdmin);
+        balanceService = new BalanceService(flushedBalances, scanner, currentUserId, isAdmin);
+        importService = new ImportService(incomeDao, expenseDao, scanner, currentUserId, isAdmin);
+        exportService = new ExportService(incomeDao, expenseDao, scanner, currentUserId, isAdmin);
+        reportService = new ReportService(new AsyncTransactionRepository<>(incomeDao, async),
+            new AsyncTransactionRepository<>(expenseDao, async), new ReportEngine(), scanner, currentUserId, isAdmin);
+        // Snapshots cover every table, so only the MySQL engine has them
+        SnapshotDAO snapshots = storage instanceof MySqlStorageEngine mysql ? new SnapshotDAO(mysql.getPool()) : null;
+        snapshotService = new SnapshotService(snapshots, writeBehind, List.of(incomeDao, expenseDao), users, scanner, isAdmin);
+        // Goal progress moves with every income and expense write inside the MySQL engine
+        SavingsGoalDAO goals = storage instanceof MySqlStorageEngine mysql ? mysql.getSavingsGoalDAO() : null;
+        savingsGoalService = new SavingsGoalService(goals, writeBehind, scanner, currentUserId, isAdmin);
+        userService = new UserService(users, writeBehind, scanner, isAdmin);
+    }
+
+    // Only the MySQL engine has a users table; the journal engine accepts any positive user ID
+    private static CachingUserRepository userRepository(StorageEngine storage) {
+        return storage instanceof MySqlStorageEngine mysql ? new CachingUserRepository(new UserDAO(mysql.getPool())) : null;
+    }
+
+    // Puts a write-behind buffer in front of the repository when WRITE_BEHIND=true
+    // Falls back to synchronous inserts if the spool can't be opened
+    private static <T extends Transaction> TransactionRepository<T> writeBehind(
+            TransactionRepository<T> repository, String name, TransactionFactory<T> factory) {
+        if (!Boolean.parseBoolean(Environment.get("WRITE_BEHIND", "false"))) {
+            return repository;
+        }
+        try {
+            WriteBehindTransactionRepository<T> buffer = new WriteBehindTransactionRepository<>(repository, name, factory);
+            writeBehind.add(buffer);
+            return buffer;
+        } catch (IOException e) {
+            PrintBuilder.message("Could not open write-behind spool for " + name + ", adding synchronously: "
+                + e.getMessage()).asError().print();
+            return repository;
+        }
+    }
+
+    // Inserts whatever the write-behind buffers still hold; records that can't be inserted stay spooled
+    // Inserts queued adds, then writes out the slow-query log, which those inserts may still add to
+    private static void closeBackgroundWriters() {
+        for (WriteBehindTransactionRepository<?> buffer : writeBehind) {
+            buffer.close();
         }
+        SlowQueryLog.closeShared();
     }
 
-    // Setup services - creates the services and passes the connection, scanner, currentUserId, and isAdmin
-    private static void setupServices(Connection connection) {
-        incomeService = new IncomeService(new IncomeDAO(connection), scanner, currentUserId, isAdmin);
-        expenseService = new ExpenseService(new ExpenseDAO(connection), scanner, currentUserId, isAdmin);
+    // Publishes repository, pool and cache metrics over JMX and returns the service that prints them
+    private static MetricsService registerMetrics(StorageEngine storage,
+                                                  MetricsTransactionRepository<Income> measuredIncome,
+                                                  MetricsTransactionRepository<Expense> measuredExpenses,
+                                                  CachingTransactionRepository<Income> incomeCache,
+                                                  CachingTransactionRepository<Expense> expenseCache) {
+        measuredIncome.registerMBeans();
+        measuredExpenses.registerMBeans();
+        // Only the MySQL engine has a connection pool
+        ConnectionPool pool = storage instanceof MySqlStorageEngine mysql ? mysql.getPool() : null;
+        if (pool != null) {
+            Jmx.register("type=ConnectionPool", pool);
+        }
+        Jmx.register("type=Cache,table=income", incomeCache);
+        Jmx.register("type=Cache,table=expenses", expenseCache);
+
+        Map<String, CachingTransactionRepository<?>> caches = new LinkedHashMap<>();
+        caches.put("income", incomeCache);
+        caches.put("expenses", expenseCache);
+        return new MetricsService(List.of(measuredIncome, measuredExpenses), caches, pool, isAdmin);
     }
 
     // Main program loop - displays the menu and handles user input
@@ -74,7 +338,7 @@ public class Main {
         }
     }
 
-    // Authenticates the user - gets the user id and checks if the user is an admin
+    // Authenticates the user - gets the user id, checks it is a registered user and if the user is an admin
     private static void authenticateUser() {
         // TODO: Add a login system
         // currentUserId is the user id of the current user
@@ -90,11 +354,20 @@ public class Main {
                     currentUserId = ADMIN_ID;
                     PrintBuilder.message("Administrator access granted.").asSuccess().print();
                 } else if (inputUserId > 0) {
+                    User user = users == null ? null : users.getById(inputUserId);
+                    if (users != null && user == null) {
+                        PrintBuilder.message("User ID " + inputUserId + " not found. Please enter a registered User ID.")
+                            .asError().print();
+                        continue;
+                    }
                     currentUserId = inputUserId;
-                    PrintBuilder.message("User access granted.").asSuccess().print();
+                    PrintBuilder.message("User access granted." + (user == null ? "" : " Welcome, " + user.getName() + "."))
+                        .asSuccess().print();
                 } else {
                     PrintBuilder.message("Invalid User ID. Please enter a positive number.").asError().print();
                 }
+            } catch (SQLException e) {
+                PrintBuilder.message("Could not check User ID: " + e.getMessage()).asError().print();
             } catch (Exception e) {
                 PrintBuilder.message("Invalid input. Please enter a valid User ID.").asError().print();
                 scanner.nextLine(); // Clear invalid input
@@ -114,13 +387,7 @@ public class Main {
             case 8: expenseService.updateExpense(); break;
             case 9: expenseService.deleteExpense(); break;
             case 10: showBalance(); break;
-            case 11: // View All Users
-                if (!isAdmin) {
-                    PrintBuilder.message("Admin access required").asError().print();
-                    break;
-                }
-                PrintBuilder.message("View all users functionality coming soon!").print();
-                break;
+            case 11: userService.viewAllUsers(); break;
             case 12: // Reset All Tables
                 if (!isAdmin) {
                     PrintBuilder.message("Admin access required").asError().print();
@@ -128,6 +395,17 @@ public class Main {
                 }
                 resetAllTables();
                 break;
+            case 13: importService.importCsv(); break;
+            case 14: reportService.showBreakdown(); break;
+            case 15: reportService.showMonthlyTrend(); break;
+            case 16: reportService.showCashFlow(); break;
+            case 17: metricsService.showMetrics(); break;
+            case 18: exportService.exportTransactions(); break;
+            case 19: snapshotService.backupDatabase(); break;
+            case 20: snapshotService.restoreDatabase(); break;
+            case 21: savingsGoalService.viewGoals(); break;
+            case 22: savingsGoalService.addGoal(); break;
+            case 23: savingsGoalService.deleteGoal(); break;
             default:
                 PrintBuilder.message("Invalid option. Please try again.").asError().print();
                 break;
@@ -135,41 +413,47 @@ public class Main {
     }
 
     // Displays the menu - displays the menu based on if the user is an admin or not
+    // Options keep the same number for every user so the choice matches handleMenuChoice
     private static void displayMenu(boolean isAdmin) {
-        String[] baseOptions = {
-            "Add Income",
-            "View Income",
-            "Add Expense",
-            "View Expenses",
-            "Exit",
-            "Show Balance"
-        };
+        Map<Integer, String> options = new LinkedHashMap<>();
+        options.put(1, "Add Income");
+        options.put(2, "View Income");
+        options.put(3, "Add Expense");
+        options.put(4, "View Expenses");
+        options.put(5, "Exit");
         
         if (isAdmin) {
-            String[] adminOptions = {
-                "Add Income",
-                "View Income",
-                "Add Expense",
-                "View Expenses",
-                "Exit",
-                "Update Income",
-                "Delete Income",
-                "Update Expense",
-                "Delete Expense",
-                "Show Balance",
-                "View All Users",
-                "Reset All Tables"
-            };
-            PrintBuilder.menu(adminOptions);
-        } else {
-            PrintBuilder.menu(baseOptions);
-        }
-    }
-
-    // Shows the balance - shows the balance of the user
+            options.put(6, "Update Income");
+            options.put(7, "Delete Income");
+            options.put(8, "Update Expense");
+            options.put(9, "Delete Expense");
+        }
+        options.put(10, "Show Balance");
+        if (isAdmin) {
+            options.put(11, "View All Users");
+            options.put(12, "Reset All Tables");
+        }
+        options.put(13, "Import Transactions (CSV)");
+        options.put(14, "Category & Source Breakdown");
+        options.put(15, "Monthly Trend");
+        options.put(16, "Net Cash Flow");
+        if (isAdmin) {
+            options.put(17, "Show Metrics");
+        }
+        options.put(18, "Export Transactions (CSV/NDJSON)");
+        if (isAdmin) {
+            options.put(19, "Backup Database (Snapshot)");
+            options.put(20, "Restore Database (Snapshot)");
+        }
+        options.put(21, "View Savings Goals");
+        options.put(22, "Add Savings Goal");
+        options.put(23, "Delete Savings Goal");
+        PrintBuilder.menu(options);
+    }
+
+    // Shows the balance - income, expenses and net for the user in one database round trip
     private static void showBalance() throws SQLException {
-        incomeService.getTotalIncome();
-        expenseService.getTotalExpenses();
+        balanceService.showBalance();
     }
 
     // Resets all tables - resets all income/expense tables
@@ -180,10 +464,11 @@ public class Main {
             
             if (confirm.equals("y")) {
                 // Delete all expenses first (due to foreign key constraints)
-                expenseService.deleteAllExpenses();
+                int expensesDeleted = expenseService.deleteAllExpenses();
                 // Then delete all incomes
-                incomeService.deleteAllIncomes();
-                PrintBuilder.message("All records deleted successfully!").asSuccess().print();
+                int incomesDeleted = incomeService.deleteAllIncomes();
+                PrintBuilder.message(String.format("All records deleted successfully! (%d expenses, %d incomes)",
+                    expensesDeleted, incomesDeleted)).asSuccess().print();
             } else {
                 PrintBuilder.message("Operation cancelled.").print();
             }
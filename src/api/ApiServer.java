@@ -0,0 +1,367 @@
+// ApiServer.java
+// Copyright 2024 maximusf
+
+// HTTP/JSON API over the income and expense operations, for clients other than the console menu
+
+package api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import dao.TransactionRepository;
+import dao.UserRepository;
+import models.Expense;
+import models.Income;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
+import services.Caller;
+import services.TransactionOperations;
+import util.Environment;
+import util.JsonReader;
+import util.JsonWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves income and expense records as JSON on the JDK's built-in HTTP server
+ *
+ * Every request runs on its own virtual thread, so a request waiting on the database
+ * holds no platform thread and many clients can be served with a small connection pool.
+ * Responses always carry a Content-Length, which lets clients keep connections open.
+ *
+ * Endpoints, where {type} is income or expenses:
+ *   GET    /api/{type}?userId=&after=&before=&limit=   Page of records, oldest first
+ *   POST   /api/{type}                                 Add {"amount", "source"|"category", "date"[, "userId"]}
+ *   PUT    /api/{type}/{id}                            Replace {"userId", "amount", "source"|"category", "date"} (admin)
+ *   DELETE /api/{type}/{id}                            Delete a record (admin)
+ *   GET    /api/{type}/totals?userId=                  Count, total, min and max
+ *
+ * The caller is named by the X-User-Id header and gets the same access as at the console:
+ * user 777 is the admin, and userId=0 means all users (admin only). When the server is given the
+ * users table (see withUsers), other IDs must belong to a user; lookups go through its cache.
+ * Dates are YYYYMMDD or YYYY-MM-DD; amounts are JSON numbers or strings such as 12.50.
+ * Errors are returned as {"error": "message"} with a 4xx or 5xx status.
+ *
+ * Example usage:
+ * try (ApiServer server = new ApiServer(incomeOperations, expenseOperations)) {
+ *     server.start(ApiServer.DEFAULT_HOST, ApiServer.DEFAULT_PORT);
+ *     ...
+ * }
+ */
+public class ApiServer implements AutoCloseable {
+    // Address to listen on, configurable with API_HOST and API_PORT in .env
+    public static final String DEFAULT_HOST = Environment.get("API_HOST", "127.0.0.1");
+    public static final int DEFAULT_PORT = Environment.getInt("API_PORT", 8080);
+
+    private static final int PAGE_SIZE = Environment.getInt("PAGE_SIZE", 20);
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // Seconds in-flight requests get to finish when the server stops
+    private static final int STOP_DELAY_SECONDS = 2;
+
+    static {
+        // The server writes headers and body separately; without TCP_NODELAY each small response
+        // waits on the client's delayed ACK (about 40ms). Read once, when the server classes load.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final TransactionOperations<Income> incomes;
+    private final TransactionOperations<Expense> expenses;
+    private UserRepository users;
+    private ExecutorService executor;
+    private HttpServer server;
+
+    /**
+     * @param incomes Operations behind /api/income
+     * @param expenses Operations behind /api/expenses
+     */
+    public ApiServer(TransactionOperations<Income> incomes, TransactionOperations<Expense> expenses) {
+        this.incomes = incomes;
+        this.expenses = expenses;
+    }
+
+    /**
+     * Server over repositories, with the same access rules as the console services
+     */
+    public static ApiServer over(TransactionRepository<Income> incomeDao, TransactionRepository<Expense> expenseDao) {
+        return new ApiServer(new TransactionOperations<>(incomeDao, "Income", Income::new),
+                             new TransactionOperations<>(expenseDao, "Expense", Expense::new));
+    }
+
+    /**
+     * Rejects callers whose X-User-Id is not in the users table (the admin ID is always accepted)
+     * Call before start(); pass a CachingUserRepository so requests don't each query the table
+     * @return This server
+     */
+    public ApiServer withUsers(UserRepository users) {
+        this.users = users;
+        return this;
+    }
+
+    /**
+     * Starts listening; requests are handled until close()
+     * @param port Port to listen on, or 0 for any free port (see getPort)
+     */
+    public void start(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/api/income", new TransactionHandler<>(incomes, "source", users));
+        server.createContext("/api/expenses", new TransactionHandler<>(expenses, "category", users));
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    // Port actually bound, useful after start(host, 0)
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections and waits briefly for requests in progress
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(STOP_DELAY_SECONDS);
+            executor.close();
+            server = null;
+        }
+    }
+
+    // Routes one resource's requests to its operations
+    private static class TransactionHandler<T extends Transaction> implements HttpHandler {
+        private final TransactionOperations<T> operations;
+        private final String labelName;
+        private final UserRepository users;  // null when caller IDs are not checked
+
+        TransactionHandler(TransactionOperations<T> operations, String labelName, UserRepository users) {
+            this.operations = operations;
+            this.labelName = labelName;
+            this.users = users;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                try {
+                    route(exchange, readBody(exchange));
+                } catch (ApiException e) {
+                    sendError(exchange, e.status, e.getMessage());
+                } catch (SecurityException e) {
+                    sendError(exchange, 403, e.getMessage());
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    sendError(exchange, 400, e.getMessage());
+                } catch (SQLException e) {
+                    sendError(exchange, 500, "Database error: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // Anything else is a bug; the client still gets an answer and the exchange is closed
+                    sendError(exchange, 500, "Internal error: " + e.getClass().getSimpleName());
+                }
+            }
+        }
+
+        private void route(HttpExchange exchange, byte[] body) throws IOException, SQLException {
+            Caller caller = callerOf(exchange);
+            if (users != null && !caller.isAdmin() && users.getById(caller.getUserId()) == null) {
+                throw new ApiException(401, "Unknown user: " + caller.getUserId());
+            }
+            String method = exchange.getRequestMethod();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            // Path after the context, e.g. "" or "/12" or "/totals"
+            String path = exchange.getRequestURI().getPath().substring(exchange.getHttpContext().getPath().length());
+            if (!path.isEmpty() && !path.startsWith("/")) {
+                throw new ApiException(404, "Not found: " + exchange.getRequestURI().getPath());
+            }
+            if (path.isEmpty() || path.equals("/")) {
+                switch (method) {
+                    case "GET" -> list(exchange, caller, query);
+                    case "POST" -> add(exchange, caller, JsonReader.parseObject(text(body)));
+                    default -> throw new ApiException(405, "Method not allowed: " + method);
+                }
+            } else if (path.equals("/totals")) {
+                if (!method.equals("GET")) {
+                    throw new ApiException(405, "Method not allowed: " + method);
+                }
+                totals(exchange, caller, query);
+            } else {
+                int id = parseInt(path.substring(1), "ID");
+                switch (method) {
+                    case "PUT" -> update(exchange, caller, id, JsonReader.parseObject(text(body)));
+                    case "DELETE" -> delete(exchange, caller, id);
+                    default -> throw new ApiException(405, "Method not allowed: " + method);
+                }
+            }
+        }
+
+        private void list(HttpExchange exchange, Caller caller, Map<String, String> query) throws IOException, SQLException {
+            int userId = userIdOf(caller, query.get("userId"));
+            int limit = Math.min(MAX_PAGE_SIZE, query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : PAGE_SIZE);
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            Page<T> page = query.containsKey("before")
+                ? operations.listBefore(caller, userId, parseInt(query.get("before"), "before"), limit)
+                : operations.list(caller, userId, query.containsKey("after") ? parseInt(query.get("after"), "after") : 0, limit);
+
+            JsonWriter json = new JsonWriter(64 + page.getItems().size() * 96);
+            json.beginObject().name("items").beginArray();
+            for (T transaction : page.getItems()) {
+                write(json, transaction);
+            }
+            json.endArray()
+                .name("hasPrevious").value(page.hasPrevious())
+                .name("hasNext").value(page.hasNext())
+                .endObject();
+            send(exchange, 200, json);
+        }
+
+        private void add(HttpExchange exchange, Caller caller, Map<String, String> fields) throws IOException, SQLException {
+            int userId = fields.containsKey("userId") ? parseInt(fields.get("userId"), "userId") : caller.getUserId();
+            T transaction = operations.add(caller, fromFields(0, userId, fields));
+            send(exchange, 201, write(new JsonWriter(), transaction));
+        }
+
+        private void update(HttpExchange exchange, Caller caller, int id, Map<String, String> fields) throws IOException, SQLException {
+            T transaction = fromFields(id, parseInt(required(fields, "userId"), "userId"), fields);
+            if (!operations.update(caller, transaction)) {
+                throw new ApiException(404, operations.getNoun() + " not found.");
+            }
+            send(exchange, 200, write(new JsonWriter(), transaction));
+        }
+
+        private void delete(HttpExchange exchange, Caller caller, int id) throws IOException, SQLException {
+            if (!operations.delete(caller, id)) {
+                throw new ApiException(404, operations.getNoun() + " not found.");
+            }
+            exchange.sendResponseHeaders(204, -1);
+        }
+
+        private void totals(HttpExchange exchange, Caller caller, Map<String, String> query) throws IOException, SQLException {
+            int userId = userIdOf(caller, query.get("userId"));
+            TransactionSummary summary = operations.summary(caller, userId);
+            JsonWriter json = new JsonWriter();
+            json.beginObject()
+                .name("userId").value(userId)
+                .name("count").value(summary.getCount())
+                .name("total").value(summary.getTotal())
+                .name("min").value(summary.getMin())
+                .name("max").value(summary.getMax())
+                .endObject();
+            send(exchange, 200, json);
+        }
+
+        private T fromFields(int id, int userId, Map<String, String> fields) {
+            Money amount = Money.parse(required(fields, "amount"));
+            return operations.create(id, userId, amount, required(fields, labelName), required(fields, "date"));
+        }
+
+        private JsonWriter write(JsonWriter json, T transaction) {
+            return json.transaction(transaction, labelName);
+        }
+    }
+
+    // The X-User-Id header as a caller
+    private static Caller callerOf(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("X-User-Id");
+        if (header == null) {
+            throw new ApiException(401, "Missing X-User-Id header");
+        }
+        try {
+            return Caller.of(Integer.parseInt(header.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(401, "Invalid X-User-Id header: " + header);
+        }
+    }
+
+    // The requested user, defaulting to the caller; 0 asks for all users
+    private static int userIdOf(Caller caller, String value) {
+        return value == null ? caller.getUserId() : parseInt(value, "userId");
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    // Reads the whole body up front so the connection can be reused for the next request.
+    // Reading stops at the limit: an oversized body is answered with 413 and the connection is
+    // closed rather than reading the rest of it.
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                exchange.getResponseHeaders().set("Connection", "close");
+                throw new ApiException(413, "Request body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            return body;
+        }
+    }
+
+    private static String text(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, new JsonWriter().beginObject().name("error").value(message).endObject());
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonWriter json) throws IOException {
+        byte[] bytes = json.toBytes();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // A failure with its own HTTP status
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
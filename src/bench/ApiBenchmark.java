@@ -0,0 +1,270 @@
+// ApiBenchmark.java
+// Copyright 2024 maximusf
+
+// Latency and throughput of the HTTP API under concurrent clients
+
+package bench;
+
+import api.ApiServer;
+import dao.CachingTransactionRepository;
+import dao.ConnectionPool;
+import dao.ExpenseDAO;
+import dao.IncomeDAO;
+import models.Expense;
+import models.Income;
+import util.JsonReader;
+import util.PrintBuilder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Drives the HTTP API with concurrent keep-alive clients and reports throughput and latency percentiles
+ *
+ * Usage: java -cp bin;lib/* bench.ApiBenchmark [options]
+ *   --url <base>        Benchmark a running server, e.g. http://127.0.0.1:8080
+ *                       (default: start a local instance on a free port over the .env database)
+ *   --clients <n>       Concurrent clients, each with one request in flight (default 16)
+ *   --seconds <n>       Measured seconds per scenario, after a warmup of a fifth as long (default 10)
+ *   --quick             4 clients for 2 seconds, for a smoke run
+ *
+ * Scenarios run one after another: api.list (a page of 20 expenses), api.totals and api.add.
+ * Rows are written for BENCH_USER_ID and deleted through the API afterwards as the admin.
+ */
+public class ApiBenchmark {
+    private static final int BENCH_USER_ID = 1;
+    private static final int ADMIN_ID = 777;
+    private static final int SEED_ROWS = 20;
+
+    private static HttpClient client;
+    private static String baseUrl;
+    // IDs of every expense the benchmark added, deleted at the end
+    private static final Queue<Integer> createdIds = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws Exception {
+        int clients = 16;
+        int seconds = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url" -> baseUrl = args[++i];
+                case "--clients" -> clients = Integer.parseInt(args[++i]);
+                case "--seconds" -> seconds = Integer.parseInt(args[++i]);
+                case "--quick" -> {
+                    clients = 4;
+                    seconds = 2;
+                }
+                default -> {
+                    PrintBuilder.message("Unknown option: " + args[i]).asError().print();
+                    System.exit(2);
+                }
+            }
+        }
+
+        ConnectionPool pool = null;
+        ApiServer server = null;
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            if (baseUrl == null) {
+                try {
+                    pool = ConnectionPool.fromEnvironment();
+                    try (Connection conn = pool.borrow()) {
+                        conn.isValid(2);
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    PrintBuilder.message("Skipping API benchmark, database unavailable: " + e.getMessage()).asError().print();
+                    return;
+                }
+                server = ApiServer.over(new CachingTransactionRepository<>(new IncomeDAO(pool), Income::new),
+                                        new CachingTransactionRepository<>(new ExpenseDAO(pool), Expense::new));
+                server.start("127.0.0.1", 0);
+                baseUrl = "http://127.0.0.1:" + server.getPort();
+            }
+
+            // HTTP/1.1 so every client keeps reusing its own connection
+            client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(threads)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+            PrintBuilder.message(String.format("Benchmarking %s with %d clients, %ds per scenario",
+                baseUrl, clients, seconds)).print();
+            for (int i = 0; i < SEED_ROWS; i++) {
+                addExpense(i);
+            }
+
+            List<Result> results = new ArrayList<>();
+            results.add(run("api.list", clients, seconds,
+                i -> get("/api/expenses?limit=" + SEED_ROWS)));
+            results.add(run("api.totals", clients, seconds,
+                i -> get("/api/expenses/totals")));
+            results.add(run("api.add", clients, seconds,
+                i -> post("/api/expenses", String.format(
+                    "{\"amount\": %d.%02d, \"category\": \"Benchmark\", \"date\": \"2024-11-02\"}", i % 100, i % 100))));
+
+            PrintBuilder.message(String.format("%n%-12s %10s %10s %9s %9s %9s %9s",
+                "Scenario", "Requests", "Req/s", "p50 ms", "p95 ms", "p99 ms", "max ms")).print();
+            for (Result result : results) {
+                PrintBuilder.message(result.toString()).print();
+            }
+        } finally {
+            if (client != null) {
+                deleteCreated();
+            }
+            if (server != null) {
+                server.close();
+            }
+            if (pool != null) {
+                pool.close();
+            }
+            threads.close();
+        }
+    }
+
+    /**
+     * Runs a scenario with every client looping until the time is up, after an unmeasured warmup
+     * @param request Builds the i-th request of a client
+     */
+    private static Result run(String name, int clients, int seconds, LongFunction<HttpRequest> request) throws Exception {
+        drive(clients, Math.max(1, seconds * 1000L / 5), request);
+        long start = System.nanoTime();
+        List<long[]> latencies = drive(clients, seconds * 1000L, request);
+        long elapsed = System.nanoTime() - start;
+        return new Result(name, latencies, elapsed);
+    }
+
+    // Each client records its own latencies so the measured loop shares nothing
+    private static List<long[]> drive(int clients, long millis, LongFunction<HttpRequest> request) throws Exception {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        AtomicLong failures = new AtomicLong();
+        List<Future<long[]>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                futures.add(executor.submit(() -> {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    for (long i = 0; System.nanoTime() < deadline; i++) {
+                        HttpRequest next = request.apply(i);
+                        long sent = System.nanoTime();
+                        HttpResponse<String> response = client.send(next, HttpResponse.BodyHandlers.ofString());
+                        long took = System.nanoTime() - sent;
+                        if (response.statusCode() >= 400) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        recordCreated(response);
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = took;
+                    }
+                    return Arrays.copyOf(samples, count);
+                }));
+            }
+        }
+        List<long[]> latencies = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            latencies.add(future.get());
+        }
+        if (failures.get() > 0) {
+            PrintBuilder.message(failures.get() + " request(s) failed").asError().print();
+        }
+        return latencies;
+    }
+
+    private static HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .header("X-User-Id", String.valueOf(BENCH_USER_ID))
+            .GET()
+            .build();
+    }
+
+    private static HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .header("X-User-Id", String.valueOf(BENCH_USER_ID))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+
+    private static void addExpense(int i) throws Exception {
+        HttpResponse<String> response = client.send(post("/api/expenses",
+            "{\"amount\": \"" + (10 + i) + ".00\", \"category\": \"Benchmark\", \"date\": \"20241102\"}"),
+            HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Could not add expense: " + response.body());
+        }
+        recordCreated(response);
+    }
+
+    // Remembers the ID of a record a POST created
+    private static void recordCreated(HttpResponse<String> response) {
+        if (response.statusCode() == 201) {
+            createdIds.add(Integer.parseInt(JsonReader.parseObject(response.body()).get("id")));
+        }
+    }
+
+    private static void deleteCreated() {
+        int failed = 0;
+        for (Integer id : createdIds) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/expenses/" + id))
+                .header("X-User-Id", String.valueOf(ADMIN_ID))
+                .DELETE()
+                .build();
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 204) {
+                    failed++;
+                }
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            PrintBuilder.message("Could not delete " + failed + " benchmark expense(s)").asError().print();
+        }
+    }
+
+    // Throughput and latency percentiles of one scenario
+    private static class Result {
+        private final String name;
+        private final long[] sorted;
+        private final double requestsPerSecond;
+
+        Result(String name, List<long[]> latencies, long elapsedNanos) {
+            this.name = name;
+            this.sorted = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            this.requestsPerSecond = sorted.length / (elapsedNanos / 1e9);
+        }
+
+        // Nearest-rank percentile in milliseconds
+        double percentile(double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p / 100 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %10d %10.0f %9.2f %9.2f %9.2f %9.2f",
+                name, sorted.length, requestsPerSecond,
+                percentile(50), percentile(95), percentile(99), percentile(100));
+        }
+    }
+}
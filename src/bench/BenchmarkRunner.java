@@ -0,0 +1,237 @@
+// BenchmarkRunner.java
+// Copyright 2024 maximusf
+
+// Small JMH-style harness: warmup, timed iterations, allocation per operation, JSON results
+
+package bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs micro-benchmarks the way JMH does, without needing the JMH jars
+ *
+ * - Each benchmark runs a number of warmup iterations (discarded) then measured ones
+ * - An iteration calls the body with a growing operation count until it runs for iterationMillis
+ * - Results are average time per operation (ns/op) with a 99.9% error margin,
+ *   plus bytes allocated per operation from the thread allocation counter
+ * - Results are written as JSON in the layout JMH uses (-rf json), so existing
+ *   JMH result viewers and diff scripts can read them
+ *
+ * Example usage:
+ * BenchmarkRunner runner = new BenchmarkRunner(3, 5, 500);
+ * runner.measure("model.toString", ops -> { ... return checksum; });
+ * runner.writeJson(Paths.get("bench_results.json"));
+ */
+public class BenchmarkRunner {
+    /**
+     * Code under test; must run the operation `operations` times and return a value
+     * that depends on the work (e.g. a sum of lengths) so the JIT cannot remove it
+     */
+    @FunctionalInterface
+    public interface Body {
+        long run(int operations) throws Exception;
+    }
+
+    // t-distribution quantile for 99.9% confidence, indexed by degrees of freedom (1..10)
+    private static final double[] T_999 = { 0, 636.6, 31.6, 12.9, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59 };
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final List<Result> results = new ArrayList<>();
+    private long sink; // Keeps benchmark return values alive
+
+    /**
+     * @param warmupIterations Iterations run before measuring
+     * @param measurementIterations Iterations that are measured
+     * @param iterationMillis Minimum duration of one iteration
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+
+    /**
+     * Warms up and measures one benchmark, printing its score
+     * @param name Benchmark name, e.g. "model.construct"
+     * @param body Code under test
+     * @return The measured result
+     */
+    public Result measure(String name, Body body) throws Exception {
+        int operations = 1;
+        for (int i = 0; i < warmupIterations; i++) {
+            operations = (int) runIteration(body, operations)[2];
+        }
+
+        double[] nanosPerOp = new double[measurementIterations];
+        double bytesPerOp = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] iteration = runIteration(body, operations);
+            nanosPerOp[i] = (double) iteration[0] / iteration[2];
+            bytesPerOp += (double) iteration[1] / iteration[2] / measurementIterations;
+            operations = (int) iteration[2];
+        }
+
+        Result result = new Result(name, nanosPerOp, bytesPerOp);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    // Runs the body with a doubling operation count until the iteration lasts long enough
+    // Returns { elapsed nanos, allocated bytes, operations }
+    private long[] runIteration(Body body, int startOperations) throws Exception {
+        long threadId = Thread.currentThread().threadId();
+        int operations = Math.max(1, startOperations);
+        while (true) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            sink += body.run(operations);
+            long elapsed = System.nanoTime() - start;
+            long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            if (elapsed >= iterationNanos || operations >= Integer.MAX_VALUE / 2) {
+                return new long[] { elapsed, allocated, operations };
+            }
+            operations *= 2;
+        }
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Writes all results as a JMH-compatible JSON array
+     * @param path Output file
+     */
+    public void writeJson(Path path) throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(String.format(Locale.ROOT,
+                "    {\n" +
+                "        \"benchmark\" : \"%s\",\n" +
+                "        \"mode\" : \"avgt\",\n" +
+                "        \"warmupIterations\" : %d,\n" +
+                "        \"measurementIterations\" : %d,\n" +
+                "        \"primaryMetric\" : {\n" +
+                "            \"score\" : %.3f,\n" +
+                "            \"scoreError\" : %.3f,\n" +
+                "            \"scoreUnit\" : \"ns/op\"\n" +
+                "        },\n" +
+                "        \"secondaryMetrics\" : {\n" +
+                "            \"gc.alloc.rate.norm\" : {\n" +
+                "                \"score\" : %.1f,\n" +
+                "                \"scoreUnit\" : \"B/op\"\n" +
+                "            }\n" +
+                "        }\n" +
+                "    }%s\n",
+                result.name, warmupIterations, measurementIterations, result.score, result.error,
+                result.bytesPerOp, i < results.size() - 1 ? "," : ""));
+        }
+        json.append("]\n");
+        Files.writeString(path, json.toString(), StandardCharsets.UTF_8);
+        System.out.println("Results written to " + path);
+    }
+
+    /**
+     * Reads the scores (ns/op) from a JSON file written by writeJson or by JMH
+     * @param path Earlier results file
+     * @return Score by benchmark name
+     */
+    public static Map<String, Double> readScores(Path path) throws IOException {
+        Pattern entry = Pattern.compile(
+            "\"benchmark\"\\s*:\\s*\"([^\"]+)\".*?\"primaryMetric\"\\s*:\\s*\\{\\s*\"score\"\\s*:\\s*([0-9.eE+-]+)",
+            Pattern.DOTALL);
+        Map<String, Double> scores = new HashMap<>();
+        Matcher matcher = entry.matcher(Files.readString(path, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            scores.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        }
+        return scores;
+    }
+
+    /**
+     * Prints how each result changed against a baseline and counts regressions
+     * @param baseline Scores from an earlier run
+     * @param tolerance Allowed slowdown, e.g. 0.10 for 10%
+     * @return Number of benchmarks slower than the baseline by more than the tolerance
+     */
+    public int compareTo(Map<String, Double> baseline, double tolerance) {
+        int regressions = 0;
+        for (Result result : results) {
+            Double before = baseline.get(result.name);
+            if (before == null || before == 0) {
+                continue;
+            }
+            double change = (result.score - before) / before;
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-32s %10.1f -> %10.1f ns/op  %+6.1f%%%s",
+                result.name, before, result.score, change * 100, regressed ? "  REGRESSION" : ""));
+        }
+        return regressions;
+    }
+
+    /**
+     * Score of one benchmark
+     */
+    public static class Result {
+        private final String name;
+        private final double score;       // Mean ns/op
+        private final double error;       // Half-width of the 99.9% confidence interval
+        private final double bytesPerOp;  // Mean bytes allocated per op
+
+        Result(String name, double[] nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.bytesPerOp = bytesPerOp;
+
+            double mean = 0;
+            for (double value : nanosPerOp) {
+                mean += value / nanosPerOp.length;
+            }
+            double variance = 0;
+            for (double value : nanosPerOp) {
+                variance += (value - mean) * (value - mean);
+            }
+            int n = nanosPerOp.length;
+            double stdDev = n > 1 ? Math.sqrt(variance / (n - 1)) : 0;
+            double t = n > 1 ? T_999[Math.min(n - 1, T_999.length - 1)] : 0;
+
+            this.score = mean;
+            this.error = t * stdDev / Math.sqrt(n);
+        }
+
+        public String getName() { return name; }
+
+        public double getScore() { return score; }
+
+        public double getError() { return error; }
+
+        public double getBytesPerOp() { return bytesPerOp; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-32s %12.1f +- %8.1f ns/op %10.1f B/op",
+                name, score, error, bytesPerOp);
+        }
+    }
+}
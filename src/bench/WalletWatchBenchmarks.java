@@ -0,0 +1,566 @@
+// WalletWatchBenchmarks.java
+// Copyright 2024 maximusf
+
+// Benchmarks for the model, service and DAO hot paths
+
+package bench;
+
+import dao.ConnectionPool;
+import dao.IncomeDAO;
+import dao.JournalStorageEngine;
+import dao.Snapshot;
+import dao.SnapshotReader;
+import dao.SnapshotWriter;
+import dao.TransactionRepository;
+import models.ColumnarTransactions;
+import models.ColumnarTransactions.Filter;
+import models.Expense;
+import models.Income;
+import models.Money;
+import services.ReportEngine;
+import services.TransactionOperations;
+import util.DateCodec;
+import util.PrintBuilder;
+import util.TransactionEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs every benchmark and writes the results as JSON
+ *
+ * Usage: java -cp bin;lib/* bench.WalletWatchBenchmarks [options]
+ *   --out <file>          Where to write results (default bench_results.json)
+ *   --baseline <file>     Compare against an earlier results file; exits with 1 on a regression
+ *   --tolerance <percent> Allowed slowdown before a result counts as a regression (default 10)
+ *   --filter <prefix>     Only run benchmarks whose name starts with the prefix
+ *   --quick               Fewer and shorter iterations, for a smoke run
+ *
+ * The dao.* benchmarks need the MySQL database from .env and are skipped when it
+ * is unreachable. They write rows for BENCH_USER_ID and delete exactly those rows afterwards.
+ * The journal.* benchmarks run the same workload on a journal in a temp directory.
+ */
+public class WalletWatchBenchmarks {
+    private static final int BENCH_USER_ID = 1;
+    private static final int LIST_SIZE = 1_000;
+    private static final int COLUMNAR_ROWS = 1_000_000;
+
+    private static String filter = "";
+
+    public static void main(String[] args) throws Throwable {
+        Path out = Paths.get("bench_results.json");
+        Path baseline = null;
+        double tolerance = 0.10;
+        boolean quick = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out" -> out = Paths.get(args[++i]);
+                case "--baseline" -> baseline = Paths.get(args[++i]);
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]) / 100;
+                case "--filter" -> filter = args[++i];
+                case "--quick" -> quick = true;
+                default -> {
+                    PrintBuilder.message("Unknown option: " + args[i]).asError().print();
+                    System.exit(2);
+                }
+            }
+        }
+
+        BenchmarkRunner runner = quick ? new BenchmarkRunner(1, 3, 100) : new BenchmarkRunner(5, 5, 1000);
+        runModelBenchmarks(runner);
+        runDateBenchmarks(runner);
+        runServiceBenchmarks(runner);
+        runColumnarBenchmarks(runner);
+        runExportBenchmarks(runner);
+        runSnapshotBenchmarks(runner);
+        runDaoBenchmarks(runner);
+        runJournalBenchmarks(runner);
+        runner.writeJson(out);
+
+        if (baseline != null && Files.exists(baseline)) {
+            int regressions = runner.compareTo(BenchmarkRunner.readScores(baseline), tolerance);
+            if (regressions > 0) {
+                PrintBuilder.message(regressions + " benchmark(s) regressed").asError().print();
+                System.exit(1);
+            }
+        }
+    }
+
+    private static boolean selected(String name) {
+        return name.startsWith(filter);
+    }
+
+    // A group runs when the filter names the group or one of its benchmarks
+    private static boolean groupSelected(String group) {
+        return group.startsWith(filter) || filter.startsWith(group + ".");
+    }
+
+    private static void runModelBenchmarks(BenchmarkRunner runner) throws Exception {
+        // Construction runs the amount, date and label validation
+        if (selected("model.construct")) {
+            runner.measure("model.construct", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    Expense expense = new Expense(i, BENCH_USER_ID, 12.50, "Groceries", "2024-11-02");
+                    checksum += expense.getId();
+                }
+                return checksum;
+            });
+        }
+
+        if (selected("model.setDate")) {
+            Income income = new Income(1, BENCH_USER_ID, 100.0, "Salary", "2024-01-01");
+            String[] dates = { "2024-01-15", "2023-12-31", "2024-02-29", "1999-07-04" };
+            runner.measure("model.setDate", ops -> {
+                for (int i = 0; i < ops; i++) {
+                    income.setDate(dates[i & 3]);
+                }
+                return income.getDate().length();
+            });
+        }
+
+        if (selected("model.toString")) {
+            Income income = new Income(42, BENCH_USER_ID, 1234.56, "Salary", "2024-01-01");
+            runner.measure("model.toString", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += income.toString().length();
+                }
+                return checksum;
+            });
+        }
+    }
+
+    // The regex check the models used before DateCodec, kept as a reference point
+    private static void runDateBenchmarks(BenchmarkRunner runner) throws Exception {
+        String[] dates = { "2024-01-15", "2023-12-31", "2024-02-29", "1999-07-04" };
+        if (selected("date.regexValidate")) {
+            runner.measure("date.regexValidate", ops -> {
+                long valid = 0;
+                for (int i = 0; i < ops; i++) {
+                    valid += dates[i & 3].matches("\\d{4}-\\d{2}-\\d{2}") ? 1 : 0;
+                }
+                return valid;
+            });
+        }
+
+        if (selected("date.codecValidate")) {
+            runner.measure("date.codecValidate", ops -> {
+                long valid = 0;
+                for (int i = 0; i < ops; i++) {
+                    valid += DateCodec.isIsoDate(dates[i & 3]) ? 1 : 0;
+                }
+                return valid;
+            });
+        }
+
+        if (selected("date.codecParse")) {
+            String[] inputs = { "20241102", "2024-11-02", "19991231", "20000229" };
+            runner.measure("date.codecParse", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += DateCodec.parse(inputs[i & 3]);
+                }
+                return checksum;
+            });
+        }
+    }
+
+    // Report-style aggregation over many rows: objects and streams vs primitive columns
+    private static void runColumnarBenchmarks(BenchmarkRunner runner) throws Exception {
+        if (!groupSelected("columnar")) {
+            return;
+        }
+        String[] categories = { "Rent", "Groceries", "Utilities", "Transport", "Dining", "Health", "Travel", "Gifts" };
+        List<Expense> expenses = new ArrayList<>(COLUMNAR_ROWS);
+        for (int i = 0; i < COLUMNAR_ROWS; i++) {
+            expenses.add(new Expense(i, 1 + i % 1000, Money.ofCents(100 + i % 50_000),
+                categories[i % categories.length], DateCodec.format(DateCodec.fromEpochDay(19_000 + i % 730))));
+        }
+        ColumnarTransactions columns = ColumnarTransactions.of(expenses);
+        Filter lastYear = Filter.all().between(19_365, 19_729);
+
+        if (selected("columnar.listGroupBy")) {
+            runner.measure("columnar.listGroupBy", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    Map<String, Long> sums = expenses.stream()
+                        .filter(expense -> expense.getEpochDay() >= 19_365 && expense.getEpochDay() <= 19_729)
+                        .collect(Collectors.groupingBy(Expense::getCategory, Collectors.summingLong(Expense::getAmountCents)));
+                    checksum += sums.size();
+                }
+                return checksum;
+            });
+        }
+
+        if (selected("columnar.sumByLabel")) {
+            runner.measure("columnar.sumByLabel", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += columns.sumByLabel(lastYear).length;
+                }
+                return checksum;
+            });
+        }
+
+        // The same report summed on one thread and split across the fork-join pool
+        ColumnarTransactions noIncome = new ColumnarTransactions();
+        if (selected("columnar.reportSequential")) {
+            ReportEngine sequential = new ReportEngine(ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+            runner.measure("columnar.reportSequential", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += sequential.build(noIncome, columns, Filter.all()).getTotalExpenses().getCents();
+                }
+                return checksum;
+            });
+        }
+
+        if (selected("columnar.reportParallel")) {
+            ReportEngine parallel = new ReportEngine(ForkJoinPool.commonPool(), 0);
+            runner.measure("columnar.reportParallel", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += parallel.build(noIncome, columns, Filter.all()).getTotalExpenses().getCents();
+                }
+                return checksum;
+            });
+        }
+
+        if (selected("columnar.listTop10")) {
+            runner.measure("columnar.listTop10", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += expenses.stream()
+                        .sorted(Comparator.comparingLong(Expense::getAmountCents).reversed())
+                        .limit(10).mapToLong(Expense::getAmountCents).sum();
+                }
+                return checksum;
+            });
+        }
+
+        if (selected("columnar.topRows")) {
+            runner.measure("columnar.topRows", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    for (int row : columns.topRows(Filter.all(), 10)) {
+                        checksum += columns.getAmountCents(row);
+                    }
+                }
+                return checksum;
+            });
+        }
+    }
+
+    private static void runServiceBenchmarks(BenchmarkRunner runner) throws Throwable {
+        // The in-memory total that getTotalIncome computed before it moved into SQL,
+        // and that the transaction cache still computes from a cached list
+        if (selected("service.sumAmounts")) {
+            List<Income> incomes = sampleIncomes(LIST_SIZE);
+            runner.measure("service.sumAmounts", ops -> {
+                double total = 0;
+                for (int i = 0; i < ops; i++) {
+                    total += incomes.stream().mapToDouble(Income::getAmount).sum();
+                }
+                return (long) total;
+            });
+        }
+
+        // The same total in exact cents, as the cache computes it now
+        if (selected("service.sumCents")) {
+            List<Income> incomes = sampleIncomes(LIST_SIZE);
+            runner.measure("service.sumCents", ops -> {
+                long total = 0;
+                for (int i = 0; i < ops; i++) {
+                    long sum = 0;
+                    for (Income income : incomes) {
+                        sum = Math.addExact(sum, income.getAmountCents());
+                    }
+                    total += sum;
+                }
+                return total;
+            });
+        }
+
+        // Reading an amount typed by the user or found in a CSV file
+        if (selected("service.parseDouble")) {
+            String[] amounts = { "12.50", "999.99", "0.10", "1234567.89" };
+            runner.measure("service.parseDouble", ops -> {
+                double total = 0;
+                for (int i = 0; i < ops; i++) {
+                    total += Double.parseDouble(amounts[i & 3]);
+                }
+                return (long) total;
+            });
+        }
+
+        if (selected("service.parseMoney")) {
+            String[] amounts = { "12.50", "999.99", "0.10", "1234567.89" };
+            runner.measure("service.parseMoney", ops -> {
+                long total = 0;
+                for (int i = 0; i < ops; i++) {
+                    total += Money.parse(amounts[i & 3]).getCents();
+                }
+                return total;
+            });
+        }
+
+        if (selected("service.formatDate")) {
+            String[] inputs = { "20241102", "2024-11-02", "19991231", "20000229" };
+            runner.measure("service.formatDate", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += TransactionOperations.formatDate(inputs[i & 3]).length();
+                }
+                return checksum;
+            });
+        }
+    }
+
+    private static void runDaoBenchmarks(BenchmarkRunner runner) throws Exception {
+        if (!groupSelected("dao")) {
+            return;
+        }
+
+        ConnectionPool pool;
+        try {
+            pool = ConnectionPool.fromEnvironment();
+        } catch (RuntimeException e) {
+            skipDaoBenchmarks(e.getMessage() != null ? e.getMessage() : e.toString());
+            return;
+        }
+
+        // Closed on every path, so its evictor thread doesn't outlive a skipped run
+        try (pool) {
+            try (Connection conn = pool.borrow()) {
+                if (!conn.isValid(2)) {
+                    skipDaoBenchmarks("connection is not valid");
+                    return;
+                }
+            } catch (SQLException | RuntimeException e) {
+                skipDaoBenchmarks(e.getMessage() != null ? e.getMessage() : e.toString());
+                return;
+            }
+
+            IncomeDAO dao = new IncomeDAO(pool);
+            List<Integer> insertedIds = new ArrayList<>();
+            try {
+                runRepositoryBenchmarks(runner, "dao", dao, insertedIds);
+            } finally {
+                dao.deleteByIds(insertedIds);
+            }
+        }
+    }
+
+    private static void skipDaoBenchmarks(String reason) {
+        PrintBuilder.message("Skipping dao.* benchmarks, database unavailable: " + reason).asError().print();
+    }
+
+    // The same workload on a fresh journal in a temp directory, deleted afterwards
+    private static void runJournalBenchmarks(BenchmarkRunner runner) throws Exception {
+        if (!groupSelected("journal")) {
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("walletwatch-bench");
+        try (JournalStorageEngine storage = new JournalStorageEngine(directory, false, 0)) {
+            runRepositoryBenchmarks(runner, "journal", storage.getIncomeRepository(), new ArrayList<>());
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // One op encodes one row into a channel that discards the bytes; export.formatRow is the
+    // String.format-per-row approach the encoder replaces, kept as a reference point
+    private static void runExportBenchmarks(BenchmarkRunner runner) throws Exception {
+        String[] labels = { "Groceries", "Rent", "Eating Out, Lunch", "Café" };
+        for (TransactionEncoder.Format format : TransactionEncoder.Format.values()) {
+            String name = "export." + format.name().toLowerCase() + "Row";
+            if (selected(name)) {
+                DiscardingChannel channel = new DiscardingChannel();
+                TransactionEncoder encoder = new TransactionEncoder(channel, format, "category");
+                runner.measure(name, ops -> {
+                    for (int i = 0; i < ops; i++) {
+                        encoder.row(i, BENCH_USER_ID, 1250 + i % 1000, 19_700 + (i >> 6), labels[i & 3]);
+                    }
+                    encoder.finish();
+                    return channel.written;
+                });
+            }
+        }
+
+        if (selected("export.formatRow")) {
+            DiscardingChannel channel = new DiscardingChannel();
+            runner.measure("export.formatRow", ops -> {
+                for (int i = 0; i < ops; i++) {
+                    String line = String.format("%d,%d,%s,%s,%s%n", i, BENCH_USER_ID, Money.format(1250 + i % 1000),
+                        labels[i & 3], DateCodec.format(DateCodec.fromEpochDay(19_700 + (i >> 6))));
+                    channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+                }
+                return channel.written;
+            });
+        }
+    }
+
+    // Snapshot rows from the same generator as the export benchmarks; snapshot.sqlRow formats the
+    // INSERT text a SQL dump would hold for the row, as a reference point
+    private static void runSnapshotBenchmarks(BenchmarkRunner runner) throws Exception {
+        String[] labels = { "Groceries", "Rent", "Eating Out, Lunch", "Café" };
+        if (selected("snapshot.writeRow")) {
+            DiscardingChannel channel = new DiscardingChannel();
+            runner.measure("snapshot.writeRow", ops -> {
+                SnapshotWriter writer = new SnapshotWriter(channel);
+                writer.beginTable(Snapshot.Table.EXPENSES);
+                for (int i = 0; i < ops; i++) {
+                    writer.transaction(i, BENCH_USER_ID, 1250 + i % 1000, 19_700 + (i >> 6), labels[i & 3]);
+                }
+                writer.endTable();
+                writer.finish();
+                return channel.written;
+            });
+        }
+
+        if (selected("snapshot.readRow")) {
+            // One full block; ops rows are read as whole passes over it, which adds at most one pass
+            int rows = 8192;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SnapshotWriter writer = new SnapshotWriter(Channels.newChannel(bytes));
+            writer.beginTable(Snapshot.Table.EXPENSES);
+            for (int i = 0; i < rows; i++) {
+                writer.transaction(i, BENCH_USER_ID, 1250 + i % 1000, 19_700 + (i >> 6), labels[i & 3]);
+            }
+            writer.endTable();
+            writer.finish();
+            byte[] snapshot = bytes.toByteArray();
+            long[] checksum = new long[1];
+            Snapshot.Handler handler = new Snapshot.Handler() {
+                @Override
+                public void user(int id, String name, String email, String password) { }
+
+                @Override
+                public void transaction(Snapshot.Table table, int id, int userId, long amountCents, int epochDay, String label) {
+                    checksum[0] += amountCents + epochDay + label.length();
+                }
+
+                @Override
+                public void savingsGoal(int id, int userId, long goalCents, Long currentCents, Long initialCents,
+                                        int startEpochDay, int endEpochDay) { }
+
+                @Override
+                public void endTable(Snapshot.Table table, long count) { }
+            };
+            runner.measure("snapshot.readRow", ops -> {
+                for (int read = 0; read < ops; read += rows) {
+                    new SnapshotReader(Channels.newChannel(new ByteArrayInputStream(snapshot))).read(handler);
+                }
+                return checksum[0];
+            });
+        }
+
+        if (selected("snapshot.sqlRow")) {
+            DiscardingChannel channel = new DiscardingChannel();
+            runner.measure("snapshot.sqlRow", ops -> {
+                for (int i = 0; i < ops; i++) {
+                    String line = String.format("INSERT INTO expenses (id, user_id, amount, category, date) VALUES (%d, %d, %s, '%s', '%s');%n",
+                        i, BENCH_USER_ID, Money.format(1250 + i % 1000), labels[i & 3].replace("'", "''"),
+                        DateCodec.format(DateCodec.fromEpochDay(19_700 + (i >> 6))));
+                    channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+                }
+                return channel.written;
+            });
+        }
+    }
+
+    // Counts and drops whatever is written, so only the encoding is measured
+    private static final class DiscardingChannel implements WritableByteChannel {
+        private long written;
+
+        @Override
+        public int write(ByteBuffer source) {
+            int bytes = source.remaining();
+            source.position(source.limit());
+            written += bytes;
+            return bytes;
+        }
+
+        @Override
+        public boolean isOpen() { return true; }
+
+        @Override
+        public void close() { }
+    }
+
+    // Insert, batch insert, list and total benchmarks named prefix.*; inserted IDs are collected for cleanup
+    private static void runRepositoryBenchmarks(BenchmarkRunner runner, String prefix, TransactionRepository<Income> dao,
+                                                List<Integer> insertedIds) throws Exception {
+        if (selected(prefix + ".insert")) {
+            runner.measure(prefix + ".insert", ops -> {
+                for (int i = 0; i < ops; i++) {
+                    insertedIds.add(dao.add(new Income(0, BENCH_USER_ID, 10.0, "Benchmark", "2024-01-01")).getId());
+                }
+                return ops;
+            });
+        }
+
+        // One op is a batch of 100 rows
+        if (selected(prefix + ".insertBatch")) {
+            runner.measure(prefix + ".insertBatch", ops -> {
+                for (int i = 0; i < ops; i++) {
+                    insertedIds.addAll(dao.addAll(sampleIncomes(100)));
+                }
+                return ops;
+            });
+        }
+
+        if (selected(prefix + ".selectByUser")) {
+            // Seed enough rows that mapping dominates the round trip
+            insertedIds.addAll(dao.addAll(sampleIncomes(LIST_SIZE)));
+            runner.measure(prefix + ".selectByUser", ops -> {
+                long checksum = 0;
+                for (int i = 0; i < ops; i++) {
+                    checksum += dao.getByUserId(BENCH_USER_ID).size();
+                }
+                return checksum;
+            });
+        }
+
+        if (selected(prefix + ".total")) {
+            runner.measure(prefix + ".total", ops -> {
+                long total = 0;
+                for (int i = 0; i < ops; i++) {
+                    total += dao.getTotal(BENCH_USER_ID).getCents();
+                }
+                return total;
+            });
+        }
+    }
+
+    private static List<Income> sampleIncomes(int count) {
+        List<Income> incomes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            incomes.add(new Income(0, BENCH_USER_ID, 10.0 + (i % 100), "Benchmark", "2024-01-" + String.format("%02d", 1 + i % 28)));
+        }
+        return incomes;
+    }
+}
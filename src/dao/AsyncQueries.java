@@ -0,0 +1,90 @@
+// AsyncQueries.java
+// Copyright 2024 maximusf
+
+// Runs independent database calls concurrently on virtual threads
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts database calls on their own virtual threads and joins their results
+ *
+ * Each call borrows its own pooled connection, so a screen that needs several
+ * independent queries waits for the slowest one instead of the sum of all.
+ * Virtual threads are cheap to block, so a call waiting for a free connection or for
+ * MySQL doesn't hold up a platform thread; the pool size still caps how many
+ * queries actually run at once.
+ *
+ * Example usage:
+ * CompletableFuture<Money> income = async.supply(() -> incomeDao.getTotal(userId));
+ * CompletableFuture<Money> spent = async.supply(() -> expenseDao.getTotal(userId));
+ * Money net = AsyncQueries.join(income).minus(AsyncQueries.join(spent));
+ */
+public class AsyncQueries implements AutoCloseable {
+    private final ExecutorService executor;
+
+    public AsyncQueries() {
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("wallet-watch-query-", 0).factory()));
+    }
+
+    /**
+     * @param executor Executor that runs each call, owned and shut down by this object
+     */
+    public AsyncQueries(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a call in the background
+     * @param call Database call; a SQLException completes the future exceptionally
+     * @return Future holding the call's result
+     */
+    public <R> CompletableFuture<R> supply(SqlCall<R> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for a future started by supply and returns its result
+     * @throws SQLException The database error the call failed with
+     */
+    public static <R> R join(CompletableFuture<R> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Stops accepting calls and waits for running ones to finish
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
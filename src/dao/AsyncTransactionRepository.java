@@ -0,0 +1,69 @@
+// AsyncTransactionRepository.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
+
+/**
+ * CompletableFuture versions of the read methods of a TransactionRepository
+ * Every call runs on its own virtual thread and pooled connection (see AsyncQueries);
+ * join the futures with AsyncQueries.join to get SQLExceptions back unchanged
+ *
+ * Example usage:
+ * CompletableFuture<TransactionSummary> income = asyncIncome.getSummary(userId);
+ * CompletableFuture<TransactionSummary> expenses = asyncExpenses.getSummary(userId);
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public class AsyncTransactionRepository<T extends Transaction> {
+    private final TransactionRepository<T> repository;
+    private final AsyncQueries async;
+
+    /**
+     * @param repository Repository that runs the queries
+     * @param async Executor the queries run on
+     */
+    public AsyncTransactionRepository(TransactionRepository<T> repository, AsyncQueries async) {
+        this.repository = repository;
+        this.async = async;
+    }
+
+    // The wrapped repository, for writes and other blocking calls
+    public TransactionRepository<T> getRepository() {
+        return repository;
+    }
+
+    public CompletableFuture<List<T>> getByUserId(int userId) {
+        return async.supply(() -> repository.getByUserId(userId));
+    }
+
+    public CompletableFuture<TransactionSummary> getSummary(int userId) {
+        return async.supply(() -> repository.getSummary(userId));
+    }
+
+    public CompletableFuture<Money> getTotal(int userId) {
+        return async.supply(() -> repository.getTotal(userId));
+    }
+
+    public CompletableFuture<Integer> getCount(int userId) {
+        return async.supply(() -> repository.getCount(userId));
+    }
+
+    public CompletableFuture<Page<T>> getPageAfter(int userId, int afterId, int pageSize) {
+        return async.supply(() -> repository.getPageAfter(userId, afterId, pageSize));
+    }
+
+    public CompletableFuture<Page<T>> getPageBefore(int userId, int beforeId, int pageSize) {
+        return async.supply(() -> repository.getPageBefore(userId, beforeId, pageSize));
+    }
+
+    public CompletableFuture<ColumnarTransactions> loadColumnar(int userId) {
+        return async.supply(() -> repository.loadColumnar(userId));
+    }
+}
@@ -0,0 +1,70 @@
+// BalanceDAO.java
+// Copyright 2024 maximusf
+
+// Reads income, expense and net totals across both transaction tables
+
+package dao;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import models.Balance;
+import models.Money;
+
+/**
+ * Handles balance queries that span the income and expenses tables
+ * Both totals are summed by MySQL and returned in a single round trip
+ */
+public class BalanceDAO implements BalanceRepository {
+    private static final String USER_BALANCE_SQL =
+        "SELECT (SELECT COALESCE(SUM(amount), 0) FROM income WHERE user_id = ?), " +
+        "(SELECT COALESCE(SUM(amount), 0) FROM expenses WHERE user_id = ?)";
+    private static final String ALL_USERS_BALANCE_SQL =
+        "SELECT (SELECT COALESCE(SUM(amount), 0) FROM income), " +
+        "(SELECT COALESCE(SUM(amount), 0) FROM expenses)";
+
+    private final ConnectionPool pool;
+
+    public BalanceDAO(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the balance for a user, or for all users when userId is TransactionDAO.ALL_USERS
+     * @param userId ID of the user
+     * @return Income, expense and net totals
+     */
+    @Override
+    public Balance getBalance(int userId) throws SQLException {
+        boolean allUsers = userId == TransactionDAO.ALL_USERS;
+
+        String sql = allUsers ? ALL_USERS_BALANCE_SQL : USER_BALANCE_SQL;
+
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (!allUsers) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, userId);
+            }
+            Object[] parameters = allUsers ? new Object[0] : new Object[] { userId, userId };
+            try (QueryTrace trace = QueryTrace.start("balance.getBalance", sql, parameters);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                rs.next();
+                Balance balance = new Balance(Money.ofCents(TransactionDAO.centsOf(rs, 1)), Money.ofCents(TransactionDAO.centsOf(rs, 2)));
+                trace.completed(1);
+                return balance;
+            }
+        }
+    }
+
+    /**
+     * The per-user balance query with sample parameters, for test.QueryPlanCheck
+     * @return SQL text mapped to the parameters to bind
+     */
+    public Map<String, Object[]> getQueryPlanSamples() {
+        Map<String, Object[]> samples = new LinkedHashMap<>();
+        samples.put(USER_BALANCE_SQL, new Object[] { 1, 1 });
+        return samples;
+    }
+}
@@ -0,0 +1,17 @@
+// BalanceRepository.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.sql.SQLException;
+import models.Balance;
+
+/**
+ * Income, expense and net totals across both transaction tables
+ * Implemented by BalanceDAO (one MySQL query) and by JournalStorageEngine (running totals)
+ */
+@FunctionalInterface
+public interface BalanceRepository {
+    // Totals for a user, or for every user when userId is TransactionDAO.ALL_USERS
+    Balance getBalance(int userId) throws SQLException;
+}
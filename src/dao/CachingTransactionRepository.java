@@ -0,0 +1,438 @@
+// CachingTransactionRepository.java
+// Copyright 2024 maximusf
+
+// Read-through cache of per-user transaction lists and totals
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import models.Money;
+import models.Transaction;
+import models.TransactionFactory;
+import models.TransactionSummary;
+import util.Environment;
+
+/**
+ * Caches each user's records and summary in memory so repeated screens in a session
+ * (View, Show Balance, the pre-check before a delete) don't query the database again
+ *
+ * - At most maxUsers users are cached; the least recently used one is dropped first
+ * - Entries older than the time-to-live are reloaded
+ * - Writes invalidate exactly the users they touch (plus the all-users summary);
+ *   deletes by ID find the owner through the IDs of cached lists
+ * - Paging and streaming calls always go to the database
+ * - Records are mutable, so the cache keeps its own copies and hands out fresh ones on every hit;
+ *   a caller changing a returned record can't change what the next caller sees
+ *
+ * Example usage:
+ * CachingTransactionRepository<Expense> expenses = new CachingTransactionRepository<>(new ExpenseDAO(pool), Expense::new);
+ *
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public class CachingTransactionRepository<T extends Transaction> extends ForwardingTransactionRepository<T>
+        implements CachingTransactionRepositoryMBean {
+    // Lists longer than this are not cached so one large user can't fill the heap
+    private static final int MAX_CACHED_ROWS = 10_000;
+
+    private final TransactionFactory<T> factory;
+    private final int maxUsers;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered so iteration starts at the least recently used user
+    private final LinkedHashMap<Integer, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Record ID -> owner for every cached list, so deleteById knows whose entry to drop
+    private final Map<Integer, Integer> ownerById = new HashMap<>();
+    // Bumped by every write; a load that raced with a write is not stored
+    private long writeVersion = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Wraps a repository with a cache sized from .env: CACHE_MAX_USERS (default 256)
+     * and CACHE_TTL_SECONDS (default 300)
+     * @param delegate Repository that is read on a miss and receives every write
+     * @param factory Builds the copies of cached records, e.g. Expense::new
+     */
+    public CachingTransactionRepository(TransactionRepository<T> delegate, TransactionFactory<T> factory) {
+        this(delegate, factory, Environment.getInt("CACHE_MAX_USERS", 256), Environment.getInt("CACHE_TTL_SECONDS", 300));
+    }
+
+    /**
+     * @param delegate Repository that is read on a miss and receives every write
+     * @param factory Builds the copies of cached records, e.g. Expense::new
+     * @param maxUsers Maximum number of users kept in the cache
+     * @param ttlSeconds How long a cached entry stays valid
+     */
+    public CachingTransactionRepository(TransactionRepository<T> delegate, TransactionFactory<T> factory,
+                                        int maxUsers, int ttlSeconds) {
+        super(delegate);
+        this.factory = factory;
+        this.maxUsers = maxUsers;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    @Override
+    public List<T> getByUserId(int userId) throws SQLException {
+        Entry<T> cached = lookup(userId);
+        if (cached != null && cached.rows != null) {
+            hits.increment();
+            return copyOf(cached.rows);
+        }
+        misses.increment();
+
+        long version = currentVersion();
+        List<T> rows = delegate.getByUserId(userId);
+        if (rows.size() <= MAX_CACHED_ROWS) {
+            // The caller keeps the loaded records; the cache holds copies
+            List<T> snapshot = Collections.unmodifiableList(copyOf(rows));
+            store(userId, version, entry -> {
+                entry.rows = snapshot;
+                for (T row : snapshot) {
+                    ownerById.put(row.getId(), userId);
+                }
+            });
+        }
+        return rows;
+    }
+
+    @Override
+    public TransactionSummary getSummary(int userId) throws SQLException {
+        long version = currentVersion();
+        Entry<T> cached = lookup(userId);
+        if (cached != null && cached.summary != null) {
+            hits.increment();
+            return cached.summary;
+        }
+        if (cached != null && cached.rows != null) {
+            // The list is already here, summing it is cheaper than a round trip
+            hits.increment();
+            List<T> rows = cached.rows;
+            TransactionSummary summary = summarize(rows);
+            storeSummary(userId, version, rows, summary);
+            return summary;
+        }
+        misses.increment();
+
+        TransactionSummary summary = delegate.getSummary(userId);
+        store(userId, version, entry -> entry.summary = summary);
+        return summary;
+    }
+
+    @Override
+    public Money getTotal(int userId) throws SQLException {
+        return getSummary(userId).getTotal();
+    }
+
+    @Override
+    public int getCount(int userId) throws SQLException {
+        return getSummary(userId).getCount();
+    }
+
+    @Override
+    public T add(T transaction) throws SQLException {
+        try {
+            return delegate.add(transaction);
+        } finally {
+            invalidate(transaction.getUserId());
+        }
+    }
+
+    @Override
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        try {
+            return delegate.addAll(transactions);
+        } finally {
+            List<Integer> userIds = new ArrayList<>();
+            for (T transaction : transactions) {
+                if (!userIds.contains(transaction.getUserId())) {
+                    userIds.add(transaction.getUserId());
+                }
+            }
+            invalidate(userIds);
+        }
+    }
+
+    @Override
+    public boolean update(T transaction) throws SQLException {
+        try {
+            return delegate.update(transaction);
+        } finally {
+            // The record may have been cached under a different owner than the one given
+            invalidateOwnersOf(List.of(transaction.getId()), transaction.getUserId());
+        }
+    }
+
+    @Override
+    public boolean deleteById(int id) throws SQLException {
+        try {
+            return delegate.deleteById(id);
+        } finally {
+            invalidateOwnersOf(List.of(id), TransactionDAO.ALL_USERS);
+        }
+    }
+
+    @Override
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        try {
+            return delegate.deleteByIds(ids);
+        } finally {
+            invalidateOwnersOf(ids, TransactionDAO.ALL_USERS);
+        }
+    }
+
+    @Override
+    public int deleteByUserId(int userId) throws SQLException {
+        try {
+            return delegate.deleteByUserId(userId);
+        } finally {
+            invalidate(userId);
+        }
+    }
+
+    @Override
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        try {
+            return delegate.deleteByDateRange(userId, fromDate, toDate);
+        } finally {
+            if (userId == TransactionDAO.ALL_USERS) {
+                invalidateAll();
+            } else {
+                invalidate(userId);
+            }
+        }
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        try {
+            return delegate.deleteAll();
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    // Returns a fresh entry, dropping it if it outlived the time-to-live
+    private Entry<T> lookup(int userId) {
+        lock.lock();
+        try {
+            Entry<T> entry = entries.get(userId);
+            if (entry != null && System.nanoTime() - entry.loadedAtNanos > ttlNanos) {
+                remove(userId);
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long currentVersion() {
+        lock.lock();
+        try {
+            return writeVersion;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stores loaded data unless a write happened since the load started
+    private void store(int userId, long loadVersion, Consumer<Entry<T>> update) {
+        lock.lock();
+        try {
+            if (loadVersion != writeVersion) {
+                return;
+            }
+            Entry<T> entry = entries.get(userId);
+            if (entry == null) {
+                entry = new Entry<>();
+                entries.put(userId, entry);
+                evictLeastRecentlyUsed();
+            }
+            update.accept(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adds a summary summed from a cached list, unless a write or eviction replaced the list meanwhile
+    private void storeSummary(int userId, long loadVersion, List<T> rows, TransactionSummary summary) {
+        lock.lock();
+        try {
+            Entry<T> entry = entries.get(userId);
+            if (loadVersion == writeVersion && entry != null && entry.rows == rows) {
+                entry.summary = summary;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<Integer, Entry<T>>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxUsers && eldest.hasNext()) {
+            Map.Entry<Integer, Entry<T>> evicted = eldest.next();
+            eldest.remove();
+            forgetOwners(evicted.getKey(), evicted.getValue());
+            evictions.increment();
+        }
+    }
+
+    private void invalidate(int userId) {
+        invalidate(List.of(userId));
+    }
+
+    // Drops the given users and the all-users summary
+    private void invalidate(List<Integer> userIds) {
+        lock.lock();
+        try {
+            writeVersion++;
+            for (Integer userId : userIds) {
+                remove(userId);
+            }
+            remove(TransactionDAO.ALL_USERS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops the cached owners of the given records, plus knownUserId if it is a real user
+    // An ID that is in no cached list can only affect users whose summary is cached without a list
+    private void invalidateOwnersOf(List<Integer> ids, int knownUserId) {
+        lock.lock();
+        try {
+            writeVersion++;
+            boolean ownerUnknown = false;
+            for (Integer id : ids) {
+                Integer owner = ownerById.get(id);
+                if (owner != null) {
+                    remove(owner);
+                } else {
+                    ownerUnknown = true;
+                }
+            }
+            if (knownUserId != TransactionDAO.ALL_USERS) {
+                remove(knownUserId);
+            }
+            if (ownerUnknown) {
+                entries.entrySet().removeIf(entry -> {
+                    boolean summaryOnly = entry.getValue().rows == null;
+                    if (summaryOnly) {
+                        invalidations.increment();
+                    }
+                    return summaryOnly;
+                });
+            }
+            remove(TransactionDAO.ALL_USERS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every cached entry, for when the tables changed without going through this repository
+     * (e.g. a snapshot restore)
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            writeVersion++;
+            invalidations.add(entries.size());
+            entries.clear();
+            ownerById.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void remove(int userId) {
+        Entry<T> entry = entries.remove(userId);
+        if (entry != null) {
+            forgetOwners(userId, entry);
+            invalidations.increment();
+        }
+    }
+
+    // Caller holds the lock
+    private void forgetOwners(int userId, Entry<T> entry) {
+        if (entry.rows != null) {
+            for (T row : entry.rows) {
+                ownerById.remove(row.getId(), userId);
+            }
+        }
+    }
+
+    // New records with the same fields, in a list the caller may change
+    private List<T> copyOf(List<T> rows) {
+        List<T> copies = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            copies.add(factory.create(row.getId(), row.getUserId(), row.getMoney(), row.getLabel(), row.getDate()));
+        }
+        return copies;
+    }
+
+    // Exact cent arithmetic, so the result matches SUM/MIN/MAX from the database
+    private static <T extends Transaction> TransactionSummary summarize(List<T> rows) {
+        long total = 0;
+        long min = rows.isEmpty() ? 0 : Long.MAX_VALUE;
+        long max = 0;
+        for (T row : rows) {
+            long cents = row.getAmountCents();
+            total = Math.addExact(total, cents);
+            min = Math.min(min, cents);
+            max = Math.max(max, cents);
+        }
+        return new TransactionSummary(rows.size(), total, min, max);
+    }
+
+    // Cache statistics
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public long getEvictions() { return evictions.sum(); }
+
+    public long getInvalidations() { return invalidations.sum(); }
+
+    public double getHitRate() {
+        long total = getHits() + getMisses();
+        return total == 0 ? 0 : (double) getHits() / total;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TransactionCache{users=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, invalidations=%d}",
+            size(), maxUsers, getHits(), getMisses(), getHitRate() * 100, getEvictions(), getInvalidations());
+    }
+
+    // Cached data for one user; either part may be missing
+    private static class Entry<T> {
+        private final long loadedAtNanos = System.nanoTime();
+        private volatile List<T> rows;
+        private volatile TransactionSummary summary;
+    }
+}
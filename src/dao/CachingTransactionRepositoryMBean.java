@@ -0,0 +1,19 @@
+// CachingTransactionRepositoryMBean.java
+// Copyright 2024 maximusf
+
+package dao;
+
+/**
+ * JMX view of a transaction cache, registered as walletwatch:type=Cache,table=...
+ */
+public interface CachingTransactionRepositoryMBean {
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    long getInvalidations();
+
+    double getHitRate();
+}
@@ -0,0 +1,134 @@
+// CachingUserRepository.java
+// Copyright 2024 maximusf
+
+// Read-through cache of user records
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import models.Page;
+import models.User;
+import models.UserSummary;
+import util.Environment;
+
+/**
+ * Keeps user records in memory so checking a user ID at login doesn't query the database each time
+ *
+ * - At most maxUsers users are cached; the least recently used one is dropped first
+ * - Entries older than the time-to-live are reloaded, so renamed users show up again
+ * - IDs that are not found are not cached, so a user created after a failed login can log in
+ * - Directory pages always go to the database; the users on them are cached on the way through
+ *
+ * Example usage:
+ * UserRepository users = new CachingUserRepository(new UserDAO(pool));
+ * boolean known = users.getById(userId) != null;
+ */
+public class CachingUserRepository implements UserRepository {
+    private final UserRepository delegate;
+    private final int maxUsers;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered so iteration starts at the least recently used user
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Wraps a repository with a cache sized from .env: CACHE_MAX_USERS (default 256)
+     * and CACHE_TTL_SECONDS (default 300), the same settings as CachingTransactionRepository
+     * @param delegate Repository that is read on a miss
+     */
+    public CachingUserRepository(UserRepository delegate) {
+        this(delegate, Environment.getInt("CACHE_MAX_USERS", 256), Environment.getInt("CACHE_TTL_SECONDS", 300));
+    }
+
+    /**
+     * @param delegate Repository that is read on a miss
+     * @param maxUsers Maximum number of users kept in the cache
+     * @param ttlSeconds How long a cached user stays valid
+     */
+    public CachingUserRepository(UserRepository delegate, int maxUsers, int ttlSeconds) {
+        this.delegate = delegate;
+        this.maxUsers = maxUsers;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    @Override
+    public User getById(int id) throws SQLException {
+        lock.lock();
+        try {
+            Entry cached = entries.get(id);
+            if (cached != null && System.nanoTime() - cached.loadedNanos < ttlNanos) {
+                hits.increment();
+                return cached.user;
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+
+        User user = delegate.getById(id);
+        if (user != null) {
+            store(user);
+        }
+        return user;
+    }
+
+    @Override
+    public Page<UserSummary> getSummaryPageAfter(int afterId, int pageSize) throws SQLException {
+        return storeAll(delegate.getSummaryPageAfter(afterId, pageSize));
+    }
+
+    @Override
+    public Page<UserSummary> getSummaryPageBefore(int beforeId, int pageSize) throws SQLException {
+        return storeAll(delegate.getSummaryPageBefore(beforeId, pageSize));
+    }
+
+    // Drops every cached user, e.g. after the users table is restored from a snapshot
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    private Page<UserSummary> storeAll(Page<UserSummary> page) {
+        for (UserSummary summary : page.getItems()) {
+            store(summary.getUser());
+        }
+        return page;
+    }
+
+    private void store(User user) {
+        lock.lock();
+        try {
+            entries.put(user.getId(), new Entry(user, System.nanoTime()));
+            if (entries.size() > maxUsers) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        final User user;
+        final long loadedNanos;
+
+        Entry(User user, long loadedNanos) {
+            this.user = user;
+            this.loadedNanos = loadedNanos;
+        }
+    }
+}
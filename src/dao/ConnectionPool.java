@@ -0,0 +1,380 @@
+// ConnectionPool.java
+// Copyright 2024 maximusf
+
+// ConnectionPool hands out pooled MySQL connections to the DAOs
+
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import util.Environment;
+
+/**
+ * Lightweight bounded pool of JDBC connections
+ *
+ * - At most maxSize connections are open at once, borrowers wait up to borrowTimeoutMillis
+ * - Connections idle longer than idleTimeoutMillis are closed by a background evictor
+ * - Connections idle for more than a second are validated before being handed out
+ * - Closing a borrowed connection returns it to the pool instead of closing the socket
+ *
+ * Example usage:
+ * try (Connection conn = pool.borrow();
+ *      PreparedStatement stmt = conn.prepareStatement(sql)) { ... }
+ */
+public class ConnectionPool implements AutoCloseable, ConnectionPoolMBean {
+    // Connections idle for less than this are trusted without a validation round trip
+    private static final long VALIDATE_AFTER_MILLIS = 1000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // .env keys passed to MySQL Connector/J as driver properties: { .env key, driver property, default }
+    // Server-side prepared statements let the DAO statement caches skip re-parsing SQL on the server
+    private static final String[][] DRIVER_OPTIONS = {
+        { "DB_USE_SERVER_PREP_STMTS", "useServerPrepStmts", "true" },
+        { "DB_CACHE_PREP_STMTS", "cachePrepStmts", "true" },
+        { "DB_PREP_STMT_CACHE_SIZE", "prepStmtCacheSize", "250" },
+        { "DB_PREP_STMT_CACHE_SQL_LIMIT", "prepStmtCacheSqlLimit", "2048" },
+        { "DB_USE_CURSOR_FETCH", "useCursorFetch", "false" }
+    };
+
+    private final String url;
+    private final Properties properties;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    // Permits bound the number of open connections, idle ones are reused most-recent first
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    // Connection bound to the current thread by inTransaction, shared by every DAO call inside it
+    private final ThreadLocal<PooledConnection> transactionConnection = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a pool; connections are opened lazily on first borrow
+     * @param url JDBC URL of the database
+     * @param properties Driver properties (user, password and connector options)
+     * @param maxSize Maximum number of open connections
+     * @param borrowTimeoutMillis How long borrow() waits for a free connection
+     * @param idleTimeoutMillis How long a connection may sit unused before it is closed
+     */
+    public ConnectionPool(String url, Properties properties, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.properties = properties;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-watch-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutMillis / 2, 1000);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a pool configured from the .env file
+     * DB_URL, DB_USER, DB_PASS, DB_POOL_SIZE (default 4),
+     * DB_POOL_TIMEOUT_MS (default 5000), DB_POOL_IDLE_MS (default 300000)
+     * plus the prepared statement options in DRIVER_OPTIONS
+     * @return A new connection pool
+     */
+    public static ConnectionPool fromEnvironment() {
+        Properties properties = new Properties();
+        properties.setProperty("user", Environment.get("DB_USER"));
+        properties.setProperty("password", Environment.get("DB_PASS"));
+        for (String[] option : DRIVER_OPTIONS) {
+            properties.setProperty(option[1], Environment.get(option[0], option[2]));
+        }
+
+        return new ConnectionPool(
+            Environment.get("DB_URL"),
+            properties,
+            Environment.getInt("DB_POOL_SIZE", 4),
+            Environment.getInt("DB_POOL_TIMEOUT_MS", 5000),
+            Environment.getInt("DB_POOL_IDLE_MS", 300000));
+    }
+
+    /**
+     * Borrows a connection; close it to give it back to the pool
+     * Inside inTransaction the thread's transaction connection is returned instead
+     * @return A validated connection
+     * @throws SQLException If no connection frees up within the borrow timeout
+     */
+    public Connection borrow() throws SQLException {
+        PooledConnection bound = transactionConnection.get();
+        if (bound != null) {
+            return bound.proxy;
+        }
+        return acquire().proxy;
+    }
+
+    /**
+     * Runs the work in one database transaction on a single connection
+     * DAO calls made by the work on this thread join the transaction,
+     * and nested calls to inTransaction join the outer one
+     * @param work The statements to run
+     * @return The result of the work
+     */
+    public <R> R inTransaction(SqlWork<R> work) throws SQLException {
+        PooledConnection bound = transactionConnection.get();
+        if (bound != null) {
+            return work.execute(bound.proxy);
+        }
+
+        PooledConnection pooled = acquire();
+        transactionConnection.set(pooled);
+        try {
+            Connection conn = pooled.physical;
+            conn.setAutoCommit(false);
+            R result;
+            try {
+                result = work.execute(pooled.proxy);
+                conn.commit();
+            } catch (Throwable e) {
+                // Errors too: turning auto-commit back on without a rollback would commit the partial work
+                rollback(conn, e);
+                throw e;
+            }
+            conn.setAutoCommit(true);
+            return result;
+        } finally {
+            transactionConnection.remove();
+            release(pooled);
+        }
+    }
+
+    // Undoes a failed transaction; a failing rollback or reset is added to the original failure,
+    // and a connection left without auto-commit is closed rather than reused (see release)
+    private static void rollback(Connection conn, Throwable failure) {
+        try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    // Takes an idle connection or opens a new one, waiting for a free slot if the pool is full
+    private PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + "ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        recordWait(System.nanoTime() - waitStart);
+        borrowCount.increment();
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    pooled.leased = true;
+                    return pooled;
+                }
+                validationFailures.increment();
+                closeQuietly(pooled);
+            }
+
+            pooled = new PooledConnection(DriverManager.getConnection(url, properties));
+            createdCount.increment();
+            pooled.leased = true;
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Returns a connection to the idle list, or closes it if it broke or the pool is shut down
+    private void release(PooledConnection pooled) {
+        if (!pooled.leased) {
+            return; // Already released
+        }
+        pooled.leased = false;
+        pooled.lastUsedMillis = System.currentTimeMillis();
+
+        boolean reusable;
+        try {
+            reusable = !closed && !pooled.physical.isClosed() && pooled.physical.getAutoCommit();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable) {
+            idle.offerFirst(pooled);
+        } else {
+            closeQuietly(pooled);
+        }
+        permits.release();
+    }
+
+    // Validation-on-borrow, skipped for connections used within the last second
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            long idleMillis = System.currentTimeMillis() - pooled.lastUsedMillis;
+            return idleMillis < VALIDATE_AFTER_MILLIS || pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Closes connections that have been idle longer than the idle timeout
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<PooledConnection> iterator = idle.descendingIterator(); // Oldest first
+        while (iterator.hasNext()) {
+            PooledConnection pooled = iterator.next();
+            if (pooled.lastUsedMillis < cutoff && idle.removeFirstOccurrence(pooled)) {
+                evictedCount.increment();
+                closeQuietly(pooled);
+            }
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // Connection is being discarded anyway
+        }
+    }
+
+    // Metrics getters
+    public int getMaxSize() { return maxSize; }
+
+    public int getActiveCount() { return maxSize - permits.availablePermits(); }
+
+    public int getIdleCount() { return idle.size(); }
+
+    public long getBorrowCount() { return borrowCount.sum(); }
+
+    public long getTimeoutCount() { return timeoutCount.sum(); }
+
+    public long getCreatedCount() { return createdCount.sum(); }
+
+    public long getEvictedCount() { return evictedCount.sum(); }
+
+    public long getValidationFailures() { return validationFailures.sum(); }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.sum();
+        return borrows == 0 ? 0 : totalWaitNanos.sum() / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() { return maxWaitNanos.get() / 1_000_000.0; }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool{active=%d, idle=%d, max=%d, borrows=%d, timeouts=%d, " +
+                "created=%d, evicted=%d, validationFailures=%d, avgWaitMs=%.3f, maxWaitMs=%.3f}",
+            getActiveCount(), getIdleCount(), maxSize, getBorrowCount(), getTimeoutCount(),
+            getCreatedCount(), getEvictedCount(), getValidationFailures(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    /**
+     * Closes every idle connection and stops handing out new ones
+     * Borrowed connections are closed when they are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled);
+        }
+    }
+
+    /**
+     * A physical connection plus the proxy handed to callers
+     * The proxy is created once so callers always see the same Connection object for a socket
+     */
+    private class PooledConnection implements InvocationHandler {
+        private final Connection physical;
+        private final Connection proxy;
+        private volatile boolean leased = false;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    // Inside a transaction the connection stays bound until inTransaction finishes
+                    if (transactionConnection.get() != this) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return !leased || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical;
+                default:
+                    if (!leased) {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
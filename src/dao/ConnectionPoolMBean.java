@@ -0,0 +1,29 @@
+// ConnectionPoolMBean.java
+// Copyright 2024 maximusf
+
+package dao;
+
+/**
+ * JMX view of the connection pool, registered as walletwatch:type=ConnectionPool
+ */
+public interface ConnectionPoolMBean {
+    int getMaxSize();
+
+    int getActiveCount();
+
+    int getIdleCount();
+
+    long getBorrowCount();
+
+    long getTimeoutCount();
+
+    long getCreatedCount();
+
+    long getEvictedCount();
+
+    long getValidationFailures();
+
+    double getAverageWaitMillis();
+
+    double getMaxWaitMillis();
+}
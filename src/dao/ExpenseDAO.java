@@ -4,35 +4,72 @@
 package dao;
 
 import models.Expense;
+import models.Money;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class ExpenseDAO extends TransactionDAO<Expense> {
+    private static final String INSERT_SQL =
+        "INSERT INTO expenses (user_id, amount, category, date) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_SQL =
+        "UPDATE expenses SET amount = ?, category = ?, date = ? WHERE id = ?";
+    private static final String SELECT_BY_USER_SQL = "SELECT * FROM expenses WHERE user_id = ?";
+    private static final String SELECT_ALL_SQL = "SELECT * FROM expenses";
     
-    public ExpenseDAO(Connection conn) {
-        super(conn, "expenses");
+    public ExpenseDAO(ConnectionPool pool) {
+        super(pool, "expenses", "category");
+    }
+
+    @Override
+    protected String getInsertSql() {
+        return INSERT_SQL;
+    }
+
+    @Override
+    public Map<String, Object[]> getQueryPlanSamples() {
+        Map<String, Object[]> samples = super.getQueryPlanSamples();
+        samples.put(SELECT_BY_USER_SQL, new Object[] { 1 });
+        samples.put(UPDATE_SQL, new Object[] { new BigDecimal("1.00"), "Sample", "2024-01-01", 1 });
+        return samples;
+    }
+
+    @Override
+    protected Expense mapRow(ResultSet rs) throws SQLException {
+        return new Expense(
+            rs.getInt("id"),
+            rs.getInt("user_id"),
+            Money.ofCents(centsOf(rs, "amount")),
+            rs.getString("category"),
+            rs.getString("date")
+        );
+    }
+
+    @Override
+    protected void bindInsert(PreparedStatement stmt, int offset, Expense expense) throws SQLException {
+        stmt.setInt(offset + 1, expense.getUserId());
+        setCents(stmt, offset + 2, expense.getAmountCents());
+        stmt.setString(offset + 3, expense.getCategory());
+        stmt.setString(offset + 4, expense.getDate());
     }
 
     @Override
     public List<Expense> getByUserId(int userId) throws SQLException {
         List<Expense> expenses = new ArrayList<>();
-        String sql = "SELECT * FROM expenses WHERE user_id = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, SELECT_BY_USER_SQL);
             stmt.setInt(1, userId);
             
-            try (ResultSet rs = stmt.executeQuery()) {
+            try (QueryTrace trace = trace("getByUserId", SELECT_BY_USER_SQL, userId);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
                 while (rs.next()) {
-                    Expense expense = new Expense(
-                        rs.getInt("id"),
-                        rs.getInt("user_id"),
-                        rs.getDouble("amount"),
-                        rs.getString("category"),
-                        rs.getString("date")
-                    );
-                    expenses.add(expense);
+                    expenses.add(mapRow(rs));
                 }
+                trace.completed(expenses.size());
             }
         }
         return expenses;
@@ -40,25 +77,25 @@ public class ExpenseDAO extends TransactionDAO<Expense> {
 
     @Override
     public Expense add(Expense expense) throws SQLException {
-        String sql = "INSERT INTO expenses (user_id, amount, category, date) VALUES (?, ?, ?, ?)";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, expense.getUserId());
-            stmt.setDouble(2, expense.getAmount());
-            stmt.setString(3, expense.getCategory());
-            stmt.setString(4, expense.getDate());
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, INSERT_SQL, true);
+            bindInsert(stmt, 0, expense);
             
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Creating expense failed, no rows affected.");
-            }
+            try (QueryTrace trace = trace("add", INSERT_SQL, expense.getUserId(), expense.getAmount(), expense.getCategory(), expense.getDate())) {
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows == 0) {
+                    throw new SQLException("Creating expense failed, no rows affected.");
+                }
+                trace.executed();
 
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    expense.setId(generatedKeys.getInt(1));
-                } else {
-                    throw new SQLException("Creating expense failed, no ID obtained.");
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        expense.setId(generatedKeys.getInt(1));
+                    } else {
+                        throw new SQLException("Creating expense failed, no ID obtained.");
+                    }
                 }
+                trace.completed(affectedRows);
             }
         }
         return expense;
@@ -66,32 +103,33 @@ public class ExpenseDAO extends TransactionDAO<Expense> {
 
     @Override
     public boolean update(Expense expense) throws SQLException {
-        String sql = "UPDATE expenses SET amount = ?, category = ?, date = ? WHERE id = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setDouble(1, expense.getAmount());
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, UPDATE_SQL);
+            setCents(stmt, 1, expense.getAmountCents());
             stmt.setString(2, expense.getCategory());
             stmt.setString(3, expense.getDate());
             stmt.setInt(4, expense.getId());
             
-            return stmt.executeUpdate() > 0;
+            try (QueryTrace trace = trace("update", UPDATE_SQL, expense.getAmount(), expense.getCategory(), expense.getDate(), expense.getId())) {
+                int updated = stmt.executeUpdate();
+                trace.completed(updated);
+                return updated > 0;
+            }
         }
     }
 
     public List<Expense> getAllExpenses() throws SQLException {
-        String sql = "SELECT * FROM expenses";
         List<Expense> expenses = new ArrayList<>();
         
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                expenses.add(new Expense(
-                    rs.getInt("id"),
-                    rs.getInt("user_id"),
-                    rs.getDouble("amount"),
-                    rs.getString("category"),
-                    rs.getString("date")
-                ));
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, SELECT_ALL_SQL);
+            try (QueryTrace trace = trace("getAllExpenses", SELECT_ALL_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    expenses.add(mapRow(rs));
+                }
+                trace.completed(expenses.size());
             }
         }
         return expenses;
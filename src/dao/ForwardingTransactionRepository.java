@@ -0,0 +1,111 @@
+// ForwardingTransactionRepository.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
+
+/**
+ * Base class for decorators: passes every call through to another repository
+ * Subclasses override only the operations they add behaviour to
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public abstract class ForwardingTransactionRepository<T extends Transaction> implements TransactionRepository<T> {
+    protected final TransactionRepository<T> delegate;
+
+    protected ForwardingTransactionRepository(TransactionRepository<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<T> getByUserId(int userId) throws SQLException {
+        return delegate.getByUserId(userId);
+    }
+
+    @Override
+    public T add(T transaction) throws SQLException {
+        return delegate.add(transaction);
+    }
+
+    @Override
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        return delegate.addAll(transactions);
+    }
+
+    @Override
+    public boolean update(T transaction) throws SQLException {
+        return delegate.update(transaction);
+    }
+
+    @Override
+    public boolean deleteById(int id) throws SQLException {
+        return delegate.deleteById(id);
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        return delegate.deleteAll();
+    }
+
+    @Override
+    public int deleteByUserId(int userId) throws SQLException {
+        return delegate.deleteByUserId(userId);
+    }
+
+    @Override
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        return delegate.deleteByDateRange(userId, fromDate, toDate);
+    }
+
+    @Override
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        return delegate.deleteByIds(ids);
+    }
+
+    @Override
+    public TransactionSummary getSummary(int userId) throws SQLException {
+        return delegate.getSummary(userId);
+    }
+
+    @Override
+    public Money getTotal(int userId) throws SQLException {
+        return delegate.getTotal(userId);
+    }
+
+    @Override
+    public int getCount(int userId) throws SQLException {
+        return delegate.getCount(userId);
+    }
+
+    @Override
+    public Page<T> getPageAfter(int userId, int afterId, int pageSize) throws SQLException {
+        return delegate.getPageAfter(userId, afterId, pageSize);
+    }
+
+    @Override
+    public Page<T> getPageBefore(int userId, int beforeId, int pageSize) throws SQLException {
+        return delegate.getPageBefore(userId, beforeId, pageSize);
+    }
+
+    @Override
+    public int forEachRow(int userId, Consumer<T> handler) throws SQLException {
+        return delegate.forEachRow(userId, handler);
+    }
+
+    @Override
+    public int forEachRawRow(int userId, RowHandler handler) throws SQLException {
+        return delegate.forEachRawRow(userId, handler);
+    }
+
+    @Override
+    public ColumnarTransactions loadColumnar(int userId) throws SQLException {
+        return delegate.loadColumnar(userId);
+    }
+}
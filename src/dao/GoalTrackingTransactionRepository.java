@@ -0,0 +1,115 @@
+// GoalTrackingTransactionRepository.java
+// Copyright 2024 maximusf
+
+// Keeps savings goal progress in step with every income or expense write
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import models.Transaction;
+
+/**
+ * Moves the current amount of the owner's savings goals whenever a record is added, changed or deleted
+ *
+ * Each write and its goal update run in one transaction, so a goal never counts a record that was
+ * rolled back. Adds cost one indexed UPDATE (or one batch for addAll); updates and deletes take back
+ * what the old rows contributed with a single UPDATE ... SELECT SUM before the rows change. Reads pass
+ * straight through.
+ *
+ * Wrap the DAO directly, below any cache or write-behind buffer, so every write that reaches the
+ * database is counted exactly once.
+ *
+ * Example usage:
+ * SavingsGoalDAO goals = new SavingsGoalDAO(pool);
+ * TransactionRepository<Expense> expenses = new GoalTrackingTransactionRepository<>(
+ *     new ExpenseDAO(pool), goals, SavingsGoalDAO.Contribution.EXPENSES);
+ *
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public class GoalTrackingTransactionRepository<T extends Transaction> extends ForwardingTransactionRepository<T> {
+    private final SavingsGoalDAO goals;
+    private final SavingsGoalDAO.Contribution source;
+
+    /**
+     * @param delegate Repository whose writes are tracked
+     * @param goals Savings goal access object
+     * @param source Which table the delegate stores, and so which way its amounts move a goal
+     */
+    public GoalTrackingTransactionRepository(TransactionRepository<T> delegate, SavingsGoalDAO goals,
+                                             SavingsGoalDAO.Contribution source) {
+        super(delegate);
+        this.goals = goals;
+        this.source = source;
+    }
+
+    @Override
+    public T add(T transaction) throws SQLException {
+        return goals.inTransaction(() -> {
+            T added = delegate.add(transaction);
+            goals.record(source, added.getUserId(), added.getEpochDay(), added.getAmountCents());
+            return added;
+        });
+    }
+
+    @Override
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        return goals.inTransaction(() -> {
+            List<Integer> ids = delegate.addAll(transactions);
+            goals.recordAll(source, transactions);
+            return ids;
+        });
+    }
+
+    @Override
+    public boolean update(T transaction) throws SQLException {
+        List<Integer> ids = List.of(transaction.getId());
+        return goals.inTransaction(() -> {
+            // Out with the old amount and date, in with the new
+            goals.adjustByIds(source, -1, ids);
+            boolean updated = delegate.update(transaction);
+            goals.adjustByIds(source, 1, ids);
+            return updated;
+        });
+    }
+
+    @Override
+    public boolean deleteById(int id) throws SQLException {
+        return goals.inTransaction(() -> {
+            goals.adjustByIds(source, -1, List.of(id));
+            return delegate.deleteById(id);
+        });
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        return goals.inTransaction(() -> {
+            goals.adjustAll(source, -1);
+            return delegate.deleteAll();
+        });
+    }
+
+    @Override
+    public int deleteByUserId(int userId) throws SQLException {
+        return goals.inTransaction(() -> {
+            goals.adjustByUser(source, -1, userId);
+            return delegate.deleteByUserId(userId);
+        });
+    }
+
+    @Override
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        return goals.inTransaction(() -> {
+            goals.adjustByDateRange(source, -1, userId, fromDate, toDate);
+            return delegate.deleteByDateRange(userId, fromDate, toDate);
+        });
+    }
+
+    @Override
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        return goals.inTransaction(() -> {
+            goals.adjustByIds(source, -1, ids);
+            return delegate.deleteByIds(ids);
+        });
+    }
+}
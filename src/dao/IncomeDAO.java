@@ -6,7 +6,10 @@ package dao; // package declaration
 
 import java.sql.*;
 import models.Income;
+import models.Money;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
 
 /**
@@ -14,31 +17,70 @@ import java.util.ArrayList;
  * This class connects to MySQL and manages income data
  */
 public class IncomeDAO extends TransactionDAO<Income> {
-    public IncomeDAO(Connection conn) {
-        super(conn, "income");
+    private static final String INSERT_SQL =
+        "INSERT INTO income (user_id, amount, source, date) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_SQL =
+        "UPDATE income SET amount = ?, source = ?, date = ? WHERE id = ?";
+    private static final String SELECT_BY_USER_SQL = "SELECT * FROM income WHERE user_id = ?";
+    private static final String SELECT_ALL_SQL = "SELECT * FROM income";
+
+    public IncomeDAO(ConnectionPool pool) {
+        super(pool, "income", "source");
+    }
+
+    @Override
+    protected String getInsertSql() {
+        return INSERT_SQL;
+    }
+
+    @Override
+    public Map<String, Object[]> getQueryPlanSamples() {
+        Map<String, Object[]> samples = super.getQueryPlanSamples();
+        samples.put(SELECT_BY_USER_SQL, new Object[] { 1 });
+        samples.put(UPDATE_SQL, new Object[] { new BigDecimal("1.00"), "Sample", "2024-01-01", 1 });
+        return samples;
+    }
+
+    @Override
+    protected Income mapRow(ResultSet rs) throws SQLException {
+        return new Income(
+            rs.getInt("id"),
+            rs.getInt("user_id"),
+            Money.ofCents(centsOf(rs, "amount")),
+            rs.getString("source"),
+            rs.getString("date")
+        );
+    }
+
+    @Override
+    protected void bindInsert(PreparedStatement stmt, int offset, Income income) throws SQLException {
+        stmt.setInt(offset + 1, income.getUserId());
+        setCents(stmt, offset + 2, income.getAmountCents());
+        stmt.setString(offset + 3, income.getSource());
+        stmt.setString(offset + 4, income.getDate());
     }
 
     @Override
     public Income add(Income income) throws SQLException {
-        String sql = "INSERT INTO income (user_id, amount, source, date) VALUES (?, ?, ?, ?)";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, income.getUserId());
-            stmt.setDouble(2, income.getAmount());
-            stmt.setString(3, income.getSource());
-            stmt.setString(4, income.getDate());
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, INSERT_SQL, true);
+            bindInsert(stmt, 0, income);
             
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Creating income failed, no rows affected.");
-            }
+            try (QueryTrace trace = trace("add", INSERT_SQL, income.getUserId(), income.getAmount(), income.getSource(), income.getDate())) {
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows == 0) {
+                    throw new SQLException("Creating income failed, no rows affected.");
+                }
+                trace.executed();
 
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    income.setId(generatedKeys.getInt(1));
-                } else {
-                    throw new SQLException("Creating income failed, no ID obtained.");
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        income.setId(generatedKeys.getInt(1));
+                    } else {
+                        throw new SQLException("Creating income failed, no ID obtained.");
+                    }
                 }
+                trace.completed(affectedRows);
             }
         }
         return income;
@@ -47,22 +89,18 @@ public class IncomeDAO extends TransactionDAO<Income> {
     @Override
     public List<Income> getByUserId(int userId) throws SQLException {
         List<Income> incomes = new ArrayList<>();
-        String sql = "SELECT * FROM income WHERE user_id = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, SELECT_BY_USER_SQL);
             stmt.setInt(1, userId);
             
-            try (ResultSet rs = stmt.executeQuery()) {
+            try (QueryTrace trace = trace("getByUserId", SELECT_BY_USER_SQL, userId);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
                 while (rs.next()) {
-                    Income income = new Income(
-                        rs.getInt("id"),
-                        rs.getInt("user_id"),
-                        rs.getDouble("amount"),
-                        rs.getString("source"),
-                        rs.getString("date")
-                    );
-                    incomes.add(income);
+                    incomes.add(mapRow(rs));
                 }
+                trace.completed(incomes.size());
             }
         }
         return incomes;
@@ -70,32 +108,32 @@ public class IncomeDAO extends TransactionDAO<Income> {
 
     @Override
     public boolean update(Income income) throws SQLException {
-        String sql = "UPDATE income SET amount = ?, source = ?, date = ? WHERE id = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setDouble(1, income.getAmount());
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, UPDATE_SQL);
+            setCents(stmt, 1, income.getAmountCents());
             stmt.setString(2, income.getSource());
             stmt.setString(3, income.getDate());
             stmt.setInt(4, income.getId());
             
-            return stmt.executeUpdate() > 0;
+            try (QueryTrace trace = trace("update", UPDATE_SQL, income.getAmount(), income.getSource(), income.getDate(), income.getId())) {
+                int updated = stmt.executeUpdate();
+                trace.completed(updated);
+                return updated > 0;
+            }
         }
     }
 
     public List<Income> getAllIncomes() throws SQLException {
         List<Income> incomes = new ArrayList<>();
-        String sql = "SELECT * FROM income";
-        try (Statement stmt = conn.createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, SELECT_ALL_SQL);
+            try (QueryTrace trace = trace("getAllIncomes", SELECT_ALL_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
                 while (rs.next()) {
-                    incomes.add(new Income(
-                        rs.getInt("id"),
-                        rs.getInt("user_id"),
-                        rs.getDouble("amount"),
-                        rs.getString("source"),
-                        rs.getString("date")
-                    ));
+                    incomes.add(mapRow(rs));
                 }
+                trace.completed(incomes.size());
             }
         }
         return incomes;
@@ -0,0 +1,490 @@
+// Journal.java
+// Copyright 2024 maximusf
+
+// Append-only record file on a memory-mapped buffer, used by JournalStorageEngine
+
+package dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * One journal-NNNNNN.wal file per generation in a directory
+ *
+ * File layout: a 64 byte header (magic, version, generation, next ID per table), then records:
+ *   int crc | byte type | byte table | short 0 | int payload length | payload
+ * The CRC32C covers everything after the crc field. PUT payloads are fixed size
+ * (id, userId, cents, epochDay, labelId), so a record can be read in place by its offset.
+ * Labels are stored once as LABEL records and referenced by number.
+ *
+ * Records take effect at the next COMMIT record. On open, a torn or uncommitted tail
+ * (a crash mid-write) is zeroed and later appends overwrite it.
+ *
+ * Compaction writes the live records to the next generation through a temp file, renames
+ * it into place and maps it; older generations are deleted, or at the next open if the
+ * platform still holds them mapped.
+ *
+ * Not thread-safe: JournalStorageEngine serializes writes and allows concurrent reads.
+ */
+final class Journal implements AutoCloseable {
+    // Implemented by the engine to rebuild its indexes while the file is read
+    interface Replay {
+        void put(int table, int offset);
+
+        void delete(int table, int id);
+    }
+
+    // End position and label count to return to when a transaction rolls back
+    static final class Mark {
+        private final int end;
+        private final int labelCount;
+
+        private Mark(int end, int labelCount) {
+            this.end = end;
+            this.labelCount = labelCount;
+        }
+    }
+
+    static final int MAX_TABLES = 8;
+    static final int RECORD_HEADER_SIZE = 12;
+    static final int PUT_PAYLOAD_SIZE = 24;
+    static final int PUT_RECORD_SIZE = RECORD_HEADER_SIZE + PUT_PAYLOAD_SIZE;
+
+    private static final int MAGIC = 0x57574A31;   // "WWJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int NEXT_IDS_OFFSET = 16;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte COMMIT = 3;
+    private static final byte LABEL = 4;
+
+    // Offsets inside a PUT payload
+    private static final int ID = 0;
+    private static final int USER_ID = 4;
+    private static final int CENTS = 8;
+    private static final int EPOCH_DAY = 16;
+    private static final int LABEL_ID = 20;
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final boolean sync;
+    private final CRC32C crc = new CRC32C();
+
+    private long generation;
+    private Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    // Position of the last COMMIT, so a commit only forces what it wrote
+    private int committedEnd;
+
+    private final List<String> labels = new ArrayList<>();
+    private final Map<String, Integer> labelIds = new HashMap<>();
+
+    /**
+     * Opens the newest generation in the directory, creating the directory and a first file if needed
+     * Call load() before reading
+     * @param directory Folder holding the journal files
+     * @param sync Whether commits force their records to disk before returning
+     */
+    Journal(Path directory, boolean sync) throws IOException {
+        this.directory = directory;
+        this.sync = sync;
+        Files.createDirectories(directory);
+
+        long newest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path candidate : files) {
+                long candidateGeneration = generationOf(candidate);
+                if (candidateGeneration > newest) {
+                    newest = candidateGeneration;
+                }
+            }
+        }
+        // Leftovers of a compaction that finished (older generations) or crashed (temp files)
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path candidate : files) {
+                if (generationOf(candidate) != newest) {
+                    Files.deleteIfExists(candidate);
+                }
+            }
+        }
+
+        if (newest == 0) {
+            Path first = pathOf(1);
+            Path temp = directory.resolve(first.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+                writeFully(out, header(1, new int[MAX_TABLES]));
+                out.force(true);
+            }
+            Files.move(temp, first, StandardCopyOption.ATOMIC_MOVE);
+            newest = 1;
+        }
+        map(newest);
+    }
+
+    /**
+     * Reads every committed record from the start of the file, rebuilding the label table
+     * and reporting puts and deletes; a torn or uncommitted tail is zeroed
+     */
+    void load(Replay replay) {
+        labels.clear();
+        labelIds.clear();
+        List<int[]> pending = new ArrayList<>();   // {type, table, offset} until the next COMMIT
+        int position = HEADER_SIZE;
+        int committed = HEADER_SIZE;
+
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            byte type = buffer.get(position + 4);
+            int length = buffer.getInt(position + 8);
+            if (type == 0 || length < 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE
+                    || buffer.getInt(position) != checksum(position, length)) {
+                break;
+            }
+
+            if (type == COMMIT) {
+                for (int[] record : pending) {
+                    apply(replay, record[0], record[1], record[2]);
+                }
+                pending.clear();
+                committed = position + RECORD_HEADER_SIZE + length;
+            } else {
+                pending.add(new int[] { type, buffer.get(position + 5), position });
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        end = committed;
+        committedEnd = committed;
+        // Anything after the last commit was cut short by a crash; clear it so it can't be misread later
+        zero(committed, position);
+        zeroTornRecord(position);
+    }
+
+    private void apply(Replay replay, int type, int table, int offset) {
+        int payload = offset + RECORD_HEADER_SIZE;
+        switch (type) {
+            case PUT -> replay.put(table, offset);
+            case DELETE -> replay.delete(table, buffer.getInt(payload));
+            case LABEL -> {
+                byte[] text = new byte[buffer.getShort(payload + 4)];
+                buffer.get(payload + 6, text);
+                String label = new String(text, StandardCharsets.UTF_8);
+                labelIds.put(label, labels.size());
+                labels.add(label);
+            }
+            default -> { }
+        }
+    }
+
+    /**
+     * Appends a new version of a record, adding its label to the file first if it is new
+     * @return Offset of the record, valid until the next compaction
+     */
+    int appendPut(int table, int id, int userId, long cents, int epochDay, String label) throws IOException {
+        int labelId = labelIdOf(label);
+        int offset = begin(PUT, table, PUT_PAYLOAD_SIZE);
+        int payload = offset + RECORD_HEADER_SIZE;
+        buffer.putInt(payload + ID, id);
+        buffer.putInt(payload + USER_ID, userId);
+        buffer.putLong(payload + CENTS, cents);
+        buffer.putInt(payload + EPOCH_DAY, epochDay);
+        buffer.putInt(payload + LABEL_ID, labelId);
+        finish(offset, PUT_PAYLOAD_SIZE);
+        return offset;
+    }
+
+    void appendDelete(int table, int id) throws IOException {
+        int offset = begin(DELETE, table, 4);
+        buffer.putInt(offset + RECORD_HEADER_SIZE, id);
+        finish(offset, 4);
+    }
+
+    /**
+     * Makes everything appended since the last commit take effect, forcing it to disk if sync is on
+     */
+    void commit() throws IOException {
+        int offset = begin(COMMIT, 0, 0);
+        finish(offset, 0);
+        if (sync) {
+            buffer.force(committedEnd, end - committedEnd);
+        }
+        committedEnd = end;
+    }
+
+    Mark mark() {
+        return new Mark(end, labels.size());
+    }
+
+    // Drops everything appended after the mark; only the uncommitted tail can be dropped
+    void rewind(Mark mark) {
+        zero(mark.end, end);
+        end = mark.end;
+        while (labels.size() > mark.labelCount) {
+            labelIds.remove(labels.remove(labels.size() - 1));
+        }
+    }
+
+    // Fields of the PUT record at an offset, read in place
+    int getId(int offset) { return buffer.getInt(offset + RECORD_HEADER_SIZE + ID); }
+
+    int getUserId(int offset) { return buffer.getInt(offset + RECORD_HEADER_SIZE + USER_ID); }
+
+    long getCents(int offset) { return buffer.getLong(offset + RECORD_HEADER_SIZE + CENTS); }
+
+    int getEpochDay(int offset) { return buffer.getInt(offset + RECORD_HEADER_SIZE + EPOCH_DAY); }
+
+    int getLabelId(int offset) { return buffer.getInt(offset + RECORD_HEADER_SIZE + LABEL_ID); }
+
+    String getLabel(int offset) { return labels.get(getLabelId(offset)); }
+
+    String labelOf(int labelId) { return labels.get(labelId); }
+
+    int getLabelCount() { return labels.size(); }
+
+    // Next ID a table should hand out, as saved by the last compaction
+    int getNextId(int table) { return buffer.getInt(NEXT_IDS_OFFSET + table * 4); }
+
+    // Bytes in use, including records that compaction would drop
+    int getSize() { return end; }
+
+    /**
+     * Size of the file compaction would write for this many live records
+     */
+    long getCompactedSize(long liveRecords) {
+        long labelBytes = 0;
+        for (String label : labels) {
+            labelBytes += RECORD_HEADER_SIZE + 6 + label.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return HEADER_SIZE + labelBytes + liveRecords * PUT_RECORD_SIZE + RECORD_HEADER_SIZE;
+    }
+
+    long getGeneration() { return generation; }
+
+    Path getFile() { return file; }
+
+    /**
+     * Rewrites only the live records into the next generation and switches to it
+     * Call load() afterwards, since record offsets change
+     * @param liveOffsets Offsets of the current version of every record, per table
+     * @param nextIds Next ID per table, kept so deleted IDs are not handed out again
+     */
+    void compact(List<? extends Collection<Integer>> liveOffsets, int[] nextIds) throws IOException {
+        long next = generation + 1;
+        Path target = pathOf(next);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.WRITE)) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024);
+            chunk.put(header(next, nextIds));
+            for (int labelId = 0; labelId < labels.size(); labelId++) {
+                byte[] text = labels.get(labelId).getBytes(StandardCharsets.UTF_8);
+                room(out, chunk, RECORD_HEADER_SIZE + 6 + text.length);
+                int offset = chunk.position();
+                chunk.put(new byte[RECORD_HEADER_SIZE]).putInt(labelId).putShort((short) text.length).put(text);
+                seal(chunk, offset, LABEL, 0, 6 + text.length);
+            }
+            for (int table = 0; table < liveOffsets.size(); table++) {
+                for (int source : liveOffsets.get(table)) {
+                    room(out, chunk, PUT_RECORD_SIZE);
+                    int offset = chunk.position();
+                    chunk.put(new byte[RECORD_HEADER_SIZE])
+                        .putInt(getId(source)).putInt(getUserId(source)).putLong(getCents(source))
+                        .putInt(getEpochDay(source)).putInt(getLabelId(source));
+                    seal(chunk, offset, PUT, table, PUT_PAYLOAD_SIZE);
+                }
+            }
+            room(out, chunk, RECORD_HEADER_SIZE);
+            int offset = chunk.position();
+            chunk.put(new byte[RECORD_HEADER_SIZE]);
+            seal(chunk, offset, COMMIT, 0, 0);
+            writeFully(out, chunk.flip());
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        Path previous = file;
+        channel.close();
+        buffer = null;
+        map(next);
+        try {
+            Files.deleteIfExists(previous);
+        } catch (IOException e) {
+            // Still mapped on some platforms until collected; removed at the next open
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    // Reserves space for a record and writes its type, table and length; the payload follows
+    private int begin(byte type, int table, int payloadLength) throws IOException {
+        ensureCapacity(RECORD_HEADER_SIZE + payloadLength);
+        int offset = end;
+        buffer.put(offset + 4, type);
+        buffer.put(offset + 5, (byte) table);
+        buffer.putShort(offset + 6, (short) 0);
+        buffer.putInt(offset + 8, payloadLength);
+        return offset;
+    }
+
+    private void finish(int offset, int payloadLength) {
+        buffer.putInt(offset, checksum(offset, payloadLength));
+        end = offset + RECORD_HEADER_SIZE + payloadLength;
+    }
+
+    private int labelIdOf(String label) throws IOException {
+        Integer known = labelIds.get(label);
+        if (known != null) {
+            return known;
+        }
+        byte[] text = label.getBytes(StandardCharsets.UTF_8);
+        if (text.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Label is too long");
+        }
+        int labelId = labels.size();
+        int offset = begin(LABEL, 0, 6 + text.length);
+        int payload = offset + RECORD_HEADER_SIZE;
+        buffer.putInt(payload, labelId);
+        buffer.putShort(payload + 4, (short) text.length);
+        buffer.put(payload + 6, text);
+        finish(offset, 6 + text.length);
+        labels.add(label);
+        labelIds.put(label, labelId);
+        return labelId;
+    }
+
+    // CRC32C of a record from its type byte to the end of its payload
+    private int checksum(int offset, int payloadLength) {
+        crc.reset();
+        crc.update(buffer.slice(offset + 4, RECORD_HEADER_SIZE - 4 + payloadLength));
+        return (int) crc.getValue();
+    }
+
+    // Grows the mapping by doubling; the file is extended by the new mapping
+    private void ensureCapacity(int bytes) throws IOException {
+        if (end + bytes <= buffer.capacity()) {
+            return;
+        }
+        long capacity = buffer.capacity();
+        while (capacity < (long) end + bytes) {
+            capacity *= 2;
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IOException("Journal " + file + " is full (" + MAX_CAPACITY + " bytes)");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void map(long newGeneration) throws IOException {
+        generation = newGeneration;
+        file = pathOf(newGeneration);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long capacity = Math.max(INITIAL_CAPACITY, Long.highestOneBit(Math.max(1, channel.size() - 1)) << 1);
+        if (capacity > MAX_CAPACITY) {
+            channel.close();
+            throw new IOException("Journal " + file + " is larger than " + MAX_CAPACITY + " bytes");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a Wallet-Watch journal (version " + VERSION + ")");
+        }
+        end = HEADER_SIZE;
+        committedEnd = HEADER_SIZE;
+    }
+
+    private void zero(int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    // The length of a torn record can't be trusted, so its bytes are cleared up to the first
+    // run of zeros long enough to be unused space
+    private void zeroTornRecord(int from) {
+        int zeros = 0;
+        for (int i = from; i < buffer.capacity() && zeros < RECORD_HEADER_SIZE; i++) {
+            if (buffer.get(i) == 0) {
+                zeros++;
+            } else {
+                buffer.put(i, (byte) 0);
+                zeros = 0;
+            }
+        }
+    }
+
+    private static ByteBuffer header(long generation, int[] nextIds) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation);
+        for (int table = 0; table < MAX_TABLES; table++) {
+            header.putInt(table < nextIds.length ? nextIds[table] : 0);
+        }
+        return header.position(HEADER_SIZE).flip();
+    }
+
+    // Writes the chunk out when the next record would not fit; records are at most 32 KB
+    private static void room(FileChannel out, ByteBuffer chunk, int bytes) throws IOException {
+        if (chunk.remaining() < bytes) {
+            writeFully(out, chunk.flip());
+            chunk.clear();
+        }
+    }
+
+    private static void seal(ByteBuffer chunk, int offset, byte type, int table, int payloadLength) {
+        chunk.put(offset + 4, type).put(offset + 5, (byte) table).putInt(offset + 8, payloadLength);
+        CRC32C checksum = new CRC32C();
+        checksum.update(chunk.slice(offset + 4, RECORD_HEADER_SIZE - 4 + payloadLength));
+        chunk.putInt(offset, (int) checksum.getValue());
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            out.write(data);
+        }
+    }
+
+    private Path pathOf(long fileGeneration) {
+        return directory.resolve(String.format("%s%06d%s", PREFIX, fileGeneration, SUFFIX));
+    }
+
+    // Generation number of a journal file name, 0 for temp files and anything else
+    private static long generationOf(Path candidate) {
+        String name = candidate.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
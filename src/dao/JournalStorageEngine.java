@@ -0,0 +1,256 @@
+// JournalStorageEngine.java
+// Copyright 2024 maximusf
+
+// The local backend: income and expenses in a memory-mapped, append-only journal
+
+package dao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import models.Balance;
+import models.Expense;
+import models.Income;
+import util.Environment;
+
+/**
+ * Stores both tables in one Journal file, for single-user installs and tests without MySQL
+ *
+ * Reads share a read lock and never touch the disk; writes take the write lock, append to
+ * the mapped file and commit. A transaction that fails is rolled back by undoing its index
+ * changes and cutting its records off the end of the journal.
+ *
+ * Updates and deletes leave old records behind, so a background thread compacts the journal
+ * every JOURNAL_COMPACT_SECONDS once at least half of a file over 1 MB is dead records.
+ *
+ * Example usage:
+ * try (JournalStorageEngine storage = new JournalStorageEngine(Paths.get("data"), false, 60)) {
+ *     storage.getExpenseRepository().add(new Expense(0, 1, 12.50, "Food", "2024-11-02"));
+ * }
+ */
+public final class JournalStorageEngine implements StorageEngine {
+    public static final String NAME = "journal";
+
+    // Journals smaller than this are never compacted
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+
+    private static final int INCOME = 0;
+    private static final int EXPENSES = 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Journal journal;
+    private final JournalTransactionRepository<Income> incomeRepository;
+    private final JournalTransactionRepository<Expense> expenseRepository;
+    private final ScheduledExecutorService compactor;
+
+    // Guarded by the write lock: nesting depth of inTransaction and the undo steps of the open transaction
+    private int transactionDepth = 0;
+    private final List<Runnable> undo = new ArrayList<>();
+
+    /**
+     * Opens or creates the journal in a directory and loads its indexes
+     * @param directory Folder for the journal files
+     * @param sync Whether each commit is forced to disk; without it a commit survives a crash
+     *             of the process but may be lost if the operating system crashes
+     * @param compactSeconds How often to check whether compaction is worthwhile, 0 to never compact
+     */
+    public JournalStorageEngine(Path directory, boolean sync, long compactSeconds) throws IOException {
+        this.journal = new Journal(directory, sync);
+        this.incomeRepository = new JournalTransactionRepository<>(this, journal, INCOME, "income", Income::new);
+        this.expenseRepository = new JournalTransactionRepository<>(this, journal, EXPENSES, "expenses", Expense::new);
+        load();
+
+        if (compactSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactIfWasteful, compactSeconds, compactSeconds, TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Opens the journal configured by JOURNAL_DIR, JOURNAL_SYNC and JOURNAL_COMPACT_SECONDS
+     */
+    public static JournalStorageEngine fromEnvironment() throws IOException {
+        return new JournalStorageEngine(
+            Paths.get(Environment.get("JOURNAL_DIR", "data")),
+            Boolean.parseBoolean(Environment.get("JOURNAL_SYNC", "false")),
+            Environment.getInt("JOURNAL_COMPACT_SECONDS", 60));
+    }
+
+    @Override
+    public String getName() { return NAME; }
+
+    @Override
+    public JournalTransactionRepository<Income> getIncomeRepository() { return incomeRepository; }
+
+    @Override
+    public JournalTransactionRepository<Expense> getExpenseRepository() { return expenseRepository; }
+
+    // Both totals are read under one lock, so a concurrent write can't land between them
+    @Override
+    public BalanceRepository getBalanceRepository() {
+        return userId -> read(() -> new Balance(incomeRepository.getTotal(userId), expenseRepository.getTotal(userId)));
+    }
+
+    @Override
+    public <R> R inTransaction(SqlCall<R> work) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (transactionDepth > 0) {
+                transactionDepth++;
+                try {
+                    return work.call();
+                } finally {
+                    transactionDepth--;
+                }
+            }
+
+            Journal.Mark mark = journal.mark();
+            transactionDepth = 1;
+            try {
+                R result = work.call();
+                journal.commit();
+                return result;
+            } catch (IOException e) {
+                rollback(mark);
+                throw new SQLException("Could not commit to the journal: " + e.getMessage(), e);
+            } catch (SQLException | RuntimeException | Error e) {
+                rollback(mark);
+                throw e;
+            } finally {
+                transactionDepth = 0;
+                undo.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Nothing to migrate: the journal format is versioned in its header
+    @Override
+    public int migrate() {
+        return 0;
+    }
+
+    /**
+     * Rewrites the journal with only live records, whatever its size
+     */
+    public void compact() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            List<List<Integer>> live = List.of(
+                new ArrayList<>(incomeRepository.liveOffsets()), new ArrayList<>(expenseRepository.liveOffsets()));
+            journal.compact(live, new int[] { incomeRepository.getNextId(), expenseRepository.getNextId() });
+            load();
+        } catch (IOException e) {
+            throw new SQLException("Could not compact the journal: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Bytes the journal file uses, including dead records
+    public long getSize() {
+        lock.readLock().lock();
+        try {
+            return journal.getSize();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Bytes a compaction would leave
+    public long getLiveSize() {
+        lock.readLock().lock();
+        try {
+            return journal.getCompactedSize((long) incomeRepository.size() + expenseRepository.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Path getFile() {
+        return journal.getFile();
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the journal: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Runs a read under the shared lock
+    <R> R read(SqlCall<R> call) throws SQLException {
+        lock.readLock().lock();
+        try {
+            return call.call();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Registers how to undo an index change made by the current transaction
+    void onRollback(Runnable step) {
+        undo.add(step);
+    }
+
+    private void rollback(Journal.Mark mark) {
+        // Undo steps read the records being undone, so they run before the records are cut off
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            undo.get(i).run();
+        }
+        journal.rewind(mark);
+    }
+
+    // Rebuilds both repositories' indexes from the journal
+    private void load() {
+        incomeRepository.clear(journal.getNextId(INCOME));
+        expenseRepository.clear(journal.getNextId(EXPENSES));
+        journal.load(new Journal.Replay() {
+            @Override
+            public void put(int table, int offset) {
+                repositoryOf(table).replayPut(offset);
+            }
+
+            @Override
+            public void delete(int table, int id) {
+                repositoryOf(table).replayDelete(id);
+            }
+        });
+    }
+
+    private JournalTransactionRepository<?> repositoryOf(int table) {
+        return table == INCOME ? incomeRepository : expenseRepository;
+    }
+
+    private void compactIfWasteful() {
+        try {
+            if (getSize() >= COMPACT_MIN_BYTES && getLiveSize() * 2 <= getSize()) {
+                compact();
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
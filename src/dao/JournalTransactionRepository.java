@@ -0,0 +1,463 @@
+// JournalTransactionRepository.java
+// Copyright 2024 maximusf
+
+// One table of income or expenses kept in the journal of a JournalStorageEngine
+
+package dao;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionFactory;
+import models.TransactionSummary;
+import util.DateCodec;
+import util.LabelDictionary;
+
+/**
+ * TransactionRepository over the journal, with the same results as the MySQL DAOs
+ *
+ * Records stay in the memory-mapped file; the heap only holds indexes of record offsets,
+ * all IDs in order plus a per-user map with a running total. Reads look records up by
+ * offset instead of running a query, so a user's total or a page of records costs
+ * a map lookup rather than a network round trip.
+ *
+ * Every write is a journal transaction: it joins one started with
+ * JournalStorageEngine.inTransaction, or commits on its own.
+ *
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public class JournalTransactionRepository<T extends Transaction> implements TransactionRepository<T> {
+    // Rows forEachRawRow copies per read lock
+    private static final int RAW_ROW_CHUNK = 1024;
+
+    // Offsets of one user's records by ID, and their total
+    private static final class UserRecords {
+        private final TreeMap<Integer, Integer> offsets = new TreeMap<>();
+        private long totalCents;
+    }
+
+    private final JournalStorageEngine engine;
+    private final Journal journal;
+    private final int table;
+    private final String name;
+    private final TransactionFactory<T> factory;
+
+    // Record offset by ID across all users, in ID order
+    private final TreeMap<Integer, Integer> offsets = new TreeMap<>();
+    private final Map<Integer, UserRecords> users = new HashMap<>();
+    private long totalCents;
+    private int nextId = 1;
+
+    JournalTransactionRepository(JournalStorageEngine engine, Journal journal, int table, String name, TransactionFactory<T> factory) {
+        this.engine = engine;
+        this.journal = journal;
+        this.table = table;
+        this.name = name;
+        this.factory = factory;
+    }
+
+    public String getName() { return name; }
+
+    @Override
+    public List<T> getByUserId(int userId) throws SQLException {
+        return engine.read(() -> {
+            UserRecords user = users.get(userId);
+            return user == null ? new ArrayList<>() : materialize(user.offsets.values(), user.offsets.size());
+        });
+    }
+
+    @Override
+    public T add(T transaction) throws SQLException {
+        return engine.inTransaction(() -> {
+            int id = nextId++;
+            putRecord(id, transaction.getUserId(), transaction);
+            transaction.setId(id);
+            return transaction;
+        });
+    }
+
+    // All records are appended and committed together, so a failure adds none of them
+    @Override
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        List<Integer> ids = new ArrayList<>(transactions.size());
+        if (transactions.isEmpty()) {
+            return ids;
+        }
+        try {
+            return engine.inTransaction(() -> {
+                for (T transaction : transactions) {
+                    int id = nextId++;
+                    putRecord(id, transaction.getUserId(), transaction);
+                    transaction.setId(id);
+                    ids.add(id);
+                }
+                return ids;
+            });
+        } catch (SQLException | RuntimeException e) {
+            for (T transaction : transactions) {
+                transaction.setId(0);
+            }
+            throw e;
+        }
+    }
+
+    // Like the MySQL UPDATE, the owner of a record never changes
+    @Override
+    public boolean update(T transaction) throws SQLException {
+        return engine.inTransaction(() -> {
+            Integer offset = offsets.get(transaction.getId());
+            if (offset == null) {
+                return false;
+            }
+            putRecord(transaction.getId(), journal.getUserId(offset), transaction);
+            return true;
+        });
+    }
+
+    @Override
+    public boolean deleteById(int id) throws SQLException {
+        return engine.inTransaction(() -> deleteRecord(id));
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        return engine.inTransaction(() -> deleteRecords(new ArrayList<>(offsets.keySet())));
+    }
+
+    @Override
+    public int deleteByUserId(int userId) throws SQLException {
+        return engine.inTransaction(() -> {
+            UserRecords user = users.get(userId);
+            return user == null ? 0 : deleteRecords(new ArrayList<>(user.offsets.keySet()));
+        });
+    }
+
+    @Override
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        int fromDay = epochDayOf(fromDate);
+        int toDay = epochDayOf(toDate);
+        return engine.inTransaction(() -> {
+            List<Integer> ids = new ArrayList<>();
+            for (int offset : offsetsOf(userId).values()) {
+                int day = journal.getEpochDay(offset);
+                if (day >= fromDay && day <= toDay) {
+                    ids.add(journal.getId(offset));
+                }
+            }
+            return deleteRecords(ids);
+        });
+    }
+
+    @Override
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return engine.inTransaction(() -> deleteRecords(ids));
+    }
+
+    @Override
+    public TransactionSummary getSummary(int userId) throws SQLException {
+        return engine.read(() -> {
+            Collection<Integer> records = offsetsOf(userId).values();
+            long min = 0;
+            long max = 0;
+            boolean first = true;
+            for (int offset : records) {
+                long cents = journal.getCents(offset);
+                if (first || cents < min) {
+                    min = cents;
+                }
+                if (first || cents > max) {
+                    max = cents;
+                }
+                first = false;
+            }
+            return new TransactionSummary(records.size(), totalOf(userId), min, max);
+        });
+    }
+
+    // Kept as a running total, so no records are read
+    @Override
+    public Money getTotal(int userId) throws SQLException {
+        return engine.read(() -> Money.ofCents(totalOf(userId)));
+    }
+
+    @Override
+    public int getCount(int userId) throws SQLException {
+        return engine.read(() -> offsetsOf(userId).size());
+    }
+
+    @Override
+    public Page<T> getPageAfter(int userId, int afterId, int pageSize) throws SQLException {
+        checkPageSize(pageSize);
+        return engine.read(() -> {
+            // One record more than the page shows whether another page follows
+            List<T> rows = materialize(offsetsOf(userId).tailMap(afterId, false).values(), pageSize + 1);
+            boolean hasNext = rows.size() > pageSize;
+            if (hasNext) {
+                rows.remove(pageSize);
+            }
+            return new Page<>(rows, afterId > 0, hasNext);
+        });
+    }
+
+    @Override
+    public Page<T> getPageBefore(int userId, int beforeId, int pageSize) throws SQLException {
+        checkPageSize(pageSize);
+        return engine.read(() -> {
+            List<T> rows = materialize(offsetsOf(userId).headMap(beforeId, false).descendingMap().values(), pageSize + 1);
+            boolean hasPrevious = rows.size() > pageSize;
+            if (hasPrevious) {
+                rows.remove(pageSize);
+            }
+            Collections.reverse(rows);
+            return new Page<>(rows, hasPrevious, true);
+        });
+    }
+
+    // The handler runs while the journal is locked for reading, so it must not write to it
+    @Override
+    public int forEachRow(int userId, Consumer<T> handler) throws SQLException {
+        return engine.read(() -> {
+            Collection<Integer> records = offsetsOf(userId).values();
+            for (int offset : records) {
+                handler.accept(materialize(offset));
+            }
+            return records.size();
+        });
+    }
+
+    // Rows are copied out RAW_ROW_CHUNK at a time under the read lock and handed over after it is
+    // released, so a slow handler (such as an export writing a file) doesn't hold up writers
+    @Override
+    public int forEachRawRow(int userId, RowHandler handler) throws SQLException {
+        int[] ids = new int[RAW_ROW_CHUNK];
+        int[] userIds = new int[RAW_ROW_CHUNK];
+        long[] cents = new long[RAW_ROW_CHUNK];
+        int[] epochDays = new int[RAW_ROW_CHUNK];
+        String[] labels = new String[RAW_ROW_CHUNK];
+        int count = 0;
+        int afterId = 0;
+        while (true) {
+            int from = afterId;
+            int copied = engine.read(() -> {
+                int rows = 0;
+                for (int offset : offsetsOf(userId).tailMap(from, false).values()) {
+                    if (rows == RAW_ROW_CHUNK) {
+                        break;
+                    }
+                    ids[rows] = journal.getId(offset);
+                    userIds[rows] = journal.getUserId(offset);
+                    cents[rows] = journal.getCents(offset);
+                    epochDays[rows] = journal.getEpochDay(offset);
+                    labels[rows] = journal.labelOf(journal.getLabelId(offset));
+                    rows++;
+                }
+                return rows;
+            });
+            for (int i = 0; i < copied; i++) {
+                handler.row(ids[i], userIds[i], cents[i], epochDays[i], labels[i]);
+            }
+            count += copied;
+            if (copied < RAW_ROW_CHUNK) {
+                return count;
+            }
+            afterId = ids[copied - 1];
+        }
+    }
+
+    // Columns are filled straight from the mapped file; labels are translated once per distinct label
+    @Override
+    public ColumnarTransactions loadColumnar(int userId) throws SQLException {
+        return engine.read(() -> {
+            Collection<Integer> records = offsetsOf(userId).values();
+            ColumnarTransactions columns = new ColumnarTransactions(records.size());
+            int[] dictionaryIds = new int[journal.getLabelCount()];
+            Arrays.fill(dictionaryIds, -1);
+            LabelDictionary labels = LabelDictionary.shared();
+            for (int offset : records) {
+                int labelId = journal.getLabelId(offset);
+                if (dictionaryIds[labelId] < 0) {
+                    dictionaryIds[labelId] = labels.idOf(journal.labelOf(labelId));
+                }
+                columns.append(journal.getId(offset), journal.getUserId(offset), journal.getCents(offset),
+                    journal.getEpochDay(offset), dictionaryIds[labelId]);
+            }
+            return columns;
+        });
+    }
+
+    // Number of live records, for compaction
+    int size() {
+        return offsets.size();
+    }
+
+    // Offsets of the live records in ID order, for compaction
+    Collection<Integer> liveOffsets() {
+        return offsets.values();
+    }
+
+    int getNextId() {
+        return nextId;
+    }
+
+    // Forgets every record before the journal is read again
+    void clear(int savedNextId) {
+        offsets.clear();
+        users.clear();
+        totalCents = 0;
+        nextId = Math.max(1, savedNextId);
+    }
+
+    // Called while the journal is read: a committed PUT
+    void replayPut(int offset) {
+        index(offset);
+        nextId = Math.max(nextId, journal.getId(offset) + 1);
+    }
+
+    // Called while the journal is read: a committed DELETE
+    void replayDelete(int id) {
+        unindex(id);
+    }
+
+    // Appends a new version of a record and points the indexes at it
+    private void putRecord(int id, int userId, T transaction) throws SQLException {
+        int offset;
+        try {
+            offset = journal.appendPut(table, id, userId, transaction.getAmountCents(), transaction.getEpochDay(),
+                transaction.getLabel());
+        } catch (IOException e) {
+            throw new SQLException("Could not write to the journal: " + e.getMessage(), e);
+        }
+        int previous = index(offset);
+        engine.onRollback(() -> {
+            unindex(id);
+            if (previous >= 0) {
+                index(previous);
+            }
+        });
+    }
+
+    private boolean deleteRecord(int id) throws SQLException {
+        if (!offsets.containsKey(id)) {
+            return false;
+        }
+        try {
+            journal.appendDelete(table, id);
+        } catch (IOException e) {
+            throw new SQLException("Could not write to the journal: " + e.getMessage(), e);
+        }
+        int previous = unindex(id);
+        engine.onRollback(() -> index(previous));
+        return true;
+    }
+
+    private int deleteRecords(List<Integer> ids) throws SQLException {
+        int deleted = 0;
+        for (int id : ids) {
+            if (deleteRecord(id)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    // Points the indexes at a record, returning the offset of the version it replaces or -1
+    private int index(int offset) {
+        int id = journal.getId(offset);
+        int previous = unindex(id);
+        int userId = journal.getUserId(offset);
+        long cents = journal.getCents(offset);
+
+        offsets.put(id, offset);
+        UserRecords user = users.computeIfAbsent(userId, key -> new UserRecords());
+        user.offsets.put(id, offset);
+        user.totalCents += cents;
+        totalCents += cents;
+        return previous;
+    }
+
+    // Removes an ID from the indexes, returning the offset it pointed at or -1
+    private int unindex(int id) {
+        Integer offset = offsets.remove(id);
+        if (offset == null) {
+            return -1;
+        }
+        int userId = journal.getUserId(offset);
+        long cents = journal.getCents(offset);
+
+        UserRecords user = users.get(userId);
+        user.offsets.remove(id);
+        user.totalCents -= cents;
+        totalCents -= cents;
+        if (user.offsets.isEmpty()) {
+            users.remove(userId);
+        }
+        return offset;
+    }
+
+    private NavigableMap<Integer, Integer> offsetsOf(int userId) {
+        if (userId == TransactionDAO.ALL_USERS) {
+            return offsets;
+        }
+        UserRecords user = users.get(userId);
+        return user == null ? Collections.emptyNavigableMap() : user.offsets;
+    }
+
+    private long totalOf(int userId) {
+        if (userId == TransactionDAO.ALL_USERS) {
+            return totalCents;
+        }
+        UserRecords user = users.get(userId);
+        return user == null ? 0 : user.totalCents;
+    }
+
+    // Builds up to limit records in the order given
+    private List<T> materialize(Collection<Integer> records, int limit) {
+        List<T> rows = new ArrayList<>(Math.min(limit, 64));
+        Iterator<Integer> iterator = records.iterator();
+        while (rows.size() < limit && iterator.hasNext()) {
+            rows.add(materialize(iterator.next()));
+        }
+        return rows;
+    }
+
+    private T materialize(int offset) {
+        return factory.create(journal.getId(offset), journal.getUserId(offset), Money.ofCents(journal.getCents(offset)),
+            journal.getLabel(offset), DateCodec.format(DateCodec.fromEpochDay(journal.getEpochDay(offset))));
+    }
+
+    private static int epochDayOf(String date) {
+        int parsed = DateCodec.parseIso(date);
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Date must be a valid date in YYYY-MM-DD format");
+        }
+        return DateCodec.toEpochDay(parsed);
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JournalTransactionRepository{table=" + name + ", records=" + offsets.size() + ", users=" + users.size() + "}";
+    }
+}
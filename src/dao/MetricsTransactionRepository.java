@@ -0,0 +1,200 @@
+// MetricsTransactionRepository.java
+// Copyright 2024 maximusf
+
+// Measures every repository call: count, errors, rows and a latency histogram per operation
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
+import util.Jmx;
+
+/**
+ * Records how each operation of the wrapped repository performs
+ *
+ * Wrap the DAO directly so the numbers are database round trips, not cache hits.
+ * The cost per call is two System.nanoTime() reads, a few LongAdder updates and one
+ * atomic bucket increment (see LatencyHistogram), with no locks and no allocation
+ * beyond the call itself.
+ *
+ * Example usage:
+ * MetricsTransactionRepository<Expense> measured = new MetricsTransactionRepository<>(new ExpenseDAO(pool), "expenses");
+ * measured.registerMBeans();  // walletwatch:type=Repository,table=expenses,operation=...
+ * TransactionRepository<Expense> expenses = new CachingTransactionRepository<>(measured, Expense::new);
+ *
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public class MetricsTransactionRepository<T extends Transaction> extends ForwardingTransactionRepository<T> {
+    /**
+     * Measured operations, one per repository method
+     */
+    public enum Operation {
+        GET_BY_USER_ID("getByUserId"),
+        ADD("add"),
+        ADD_ALL("addAll"),
+        UPDATE("update"),
+        DELETE_BY_ID("deleteById"),
+        DELETE_ALL("deleteAll"),
+        DELETE_BY_USER_ID("deleteByUserId"),
+        DELETE_BY_DATE_RANGE("deleteByDateRange"),
+        DELETE_BY_IDS("deleteByIds"),
+        GET_SUMMARY("getSummary"),
+        GET_TOTAL("getTotal"),
+        GET_COUNT("getCount"),
+        GET_PAGE_AFTER("getPageAfter"),
+        GET_PAGE_BEFORE("getPageBefore"),
+        FOR_EACH_ROW("forEachRow"),
+        FOR_EACH_RAW_ROW("forEachRawRow"),
+        LOAD_COLUMNAR("loadColumnar");
+
+        private final String methodName;
+
+        Operation(String methodName) {
+            this.methodName = methodName;
+        }
+
+        public String getMethodName() { return methodName; }
+    }
+
+    private final String table;
+    private final OperationMetrics[] metrics = new OperationMetrics[Operation.values().length];
+
+    /**
+     * @param delegate Repository to measure, normally a TransactionDAO
+     * @param table Name shown in reports and MBean names, e.g. "income"
+     */
+    public MetricsTransactionRepository(TransactionRepository<T> delegate, String table) {
+        super(delegate);
+        this.table = table;
+        for (Operation operation : Operation.values()) {
+            metrics[operation.ordinal()] = new OperationMetrics(operation.getMethodName());
+        }
+    }
+
+    public String getTable() { return table; }
+
+    public OperationMetrics getMetrics(Operation operation) {
+        return metrics[operation.ordinal()];
+    }
+
+    // Every operation's metrics in declaration order
+    public List<OperationMetrics> getAllMetrics() {
+        return List.of(metrics);
+    }
+
+    /**
+     * Publishes each operation as walletwatch:type=Repository,table=<table>,operation=<method>
+     */
+    public void registerMBeans() {
+        for (Operation operation : Operation.values()) {
+            Jmx.register("type=Repository,table=" + table + ",operation=" + operation.getMethodName(), getMetrics(operation));
+        }
+    }
+
+    @Override
+    public List<T> getByUserId(int userId) throws SQLException {
+        return measure(Operation.GET_BY_USER_ID, () -> delegate.getByUserId(userId), List::size);
+    }
+
+    @Override
+    public T add(T transaction) throws SQLException {
+        return measure(Operation.ADD, () -> delegate.add(transaction), added -> 1);
+    }
+
+    @Override
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        return measure(Operation.ADD_ALL, () -> delegate.addAll(transactions), List::size);
+    }
+
+    @Override
+    public boolean update(T transaction) throws SQLException {
+        return measure(Operation.UPDATE, () -> delegate.update(transaction), updated -> updated ? 1 : 0);
+    }
+
+    @Override
+    public boolean deleteById(int id) throws SQLException {
+        return measure(Operation.DELETE_BY_ID, () -> delegate.deleteById(id), deleted -> deleted ? 1 : 0);
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        return measure(Operation.DELETE_ALL, delegate::deleteAll, Integer::longValue);
+    }
+
+    @Override
+    public int deleteByUserId(int userId) throws SQLException {
+        return measure(Operation.DELETE_BY_USER_ID, () -> delegate.deleteByUserId(userId), Integer::longValue);
+    }
+
+    @Override
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        return measure(Operation.DELETE_BY_DATE_RANGE, () -> delegate.deleteByDateRange(userId, fromDate, toDate), Integer::longValue);
+    }
+
+    @Override
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        return measure(Operation.DELETE_BY_IDS, () -> delegate.deleteByIds(ids), Integer::longValue);
+    }
+
+    // Aggregates come back as one row
+    @Override
+    public TransactionSummary getSummary(int userId) throws SQLException {
+        return measure(Operation.GET_SUMMARY, () -> delegate.getSummary(userId), summary -> 1);
+    }
+
+    @Override
+    public Money getTotal(int userId) throws SQLException {
+        return measure(Operation.GET_TOTAL, () -> delegate.getTotal(userId), total -> 1);
+    }
+
+    @Override
+    public int getCount(int userId) throws SQLException {
+        return measure(Operation.GET_COUNT, () -> delegate.getCount(userId), count -> 1);
+    }
+
+    @Override
+    public Page<T> getPageAfter(int userId, int afterId, int pageSize) throws SQLException {
+        return measure(Operation.GET_PAGE_AFTER, () -> delegate.getPageAfter(userId, afterId, pageSize), page -> page.getItems().size());
+    }
+
+    @Override
+    public Page<T> getPageBefore(int userId, int beforeId, int pageSize) throws SQLException {
+        return measure(Operation.GET_PAGE_BEFORE, () -> delegate.getPageBefore(userId, beforeId, pageSize), page -> page.getItems().size());
+    }
+
+    // Includes the time the handler spends on each row, since rows are streamed through it
+    @Override
+    public int forEachRow(int userId, Consumer<T> handler) throws SQLException {
+        return measure(Operation.FOR_EACH_ROW, () -> delegate.forEachRow(userId, handler), Integer::longValue);
+    }
+
+    @Override
+    public int forEachRawRow(int userId, RowHandler handler) throws SQLException {
+        return measure(Operation.FOR_EACH_RAW_ROW, () -> delegate.forEachRawRow(userId, handler), Integer::longValue);
+    }
+
+    @Override
+    public ColumnarTransactions loadColumnar(int userId) throws SQLException {
+        return measure(Operation.LOAD_COLUMNAR, () -> delegate.loadColumnar(userId), ColumnarTransactions::size);
+    }
+
+    private <R> R measure(Operation operation, SqlCall<R> call, ToLongFunction<R> rows) throws SQLException {
+        long start = System.nanoTime();
+        R result;
+        try {
+            result = call.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics[operation.ordinal()].record(System.nanoTime() - start, 0, true);
+            throw e;
+        }
+        metrics[operation.ordinal()].record(System.nanoTime() - start, rows.applyAsLong(result), false);
+        return result;
+    }
+}
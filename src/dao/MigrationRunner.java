@@ -0,0 +1,187 @@
+// MigrationRunner.java
+// Copyright 2024 maximusf
+
+// Applies versioned SQL migrations from db/migrations at startup
+
+package dao;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Applies schema migrations named V<version>__<description>.sql in version order
+ *
+ * - Applied versions are recorded in the schema_migrations table, so each runs once
+ * - Statements that fail only because their object already exists (duplicate index,
+ *   column or table) are skipped, so a migration that was interrupted can be re-run
+ * - A named MySQL lock stops two instances from migrating at the same time
+ */
+public class MigrationRunner {
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "wallet_watch_migrations";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    // MySQL errors meaning the migration statement already took effect
+    private static final int ER_TABLE_EXISTS = 1050;
+    private static final int ER_DUP_FIELDNAME = 1060;
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    private static final String CREATE_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS schema_migrations (" +
+        "version INT PRIMARY KEY, " +
+        "description VARCHAR(255) NOT NULL, " +
+        "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)";
+
+    private final ConnectionPool pool;
+    private final Path directory;
+
+    /**
+     * @param pool Connection pool for the target database
+     * @param directory Folder containing the migration files
+     */
+    public MigrationRunner(ConnectionPool pool, Path directory) {
+        this.pool = pool;
+        this.directory = directory;
+    }
+
+    /**
+     * Applies every migration that has not been applied yet
+     * @return Number of migrations applied
+     */
+    public int migrate() throws SQLException, IOException {
+        TreeMap<Integer, Path> migrations = findMigrations();
+
+        try (Connection conn = pool.borrow()) {
+            acquireLock(conn);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(CREATE_TABLE_SQL);
+                }
+                Set<Integer> applied = getAppliedVersions(conn);
+
+                int count = 0;
+                for (Map.Entry<Integer, Path> migration : migrations.entrySet()) {
+                    if (!applied.contains(migration.getKey())) {
+                        apply(conn, migration.getKey(), migration.getValue());
+                        count++;
+                    }
+                }
+                return count;
+            } finally {
+                releaseLock(conn);
+            }
+        }
+    }
+
+    // Lists migration files by version, rejecting two files with the same version
+    private TreeMap<Integer, Path> findMigrations() throws IOException {
+        TreeMap<Integer, Path> migrations = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return migrations;
+        }
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+        for (Path file : files) {
+            Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+                Path previous = migrations.put(Integer.parseInt(matcher.group(1)), file);
+                if (previous != null) {
+                    throw new IOException("Duplicate migration version: " + previous + " and " + file);
+                }
+            }
+        }
+        return migrations;
+    }
+
+    private Set<Integer> getAppliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM schema_migrations")) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    // Runs each statement of a migration file, then records the version
+    private void apply(Connection conn, int version, Path file) throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : splitStatements(Files.readString(file, StandardCharsets.UTF_8))) {
+                try {
+                    stmt.execute(sql);
+                } catch (SQLException e) {
+                    if (!alreadyApplied(e)) {
+                        throw new SQLException("Migration " + file.getFileName() + " failed: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        String description = matcher.matches() ? matcher.group(2).replace('_', ' ') : file.getFileName().toString();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO schema_migrations (version, description) VALUES (?, ?)")) {
+            stmt.setInt(1, version);
+            stmt.setString(2, description);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static boolean alreadyApplied(SQLException e) {
+        int code = e.getErrorCode();
+        return code == ER_TABLE_EXISTS || code == ER_DUP_FIELDNAME || code == ER_DUP_KEYNAME;
+    }
+
+    // Splits a script on semicolons after removing "--" comment lines
+    static List<String> splitStatements(String script) {
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\\R")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+
+        List<String> statements = new ArrayList<>();
+        for (String statement : withoutComments.toString().split(";")) {
+            if (!statement.isBlank()) {
+                statements.add(statement.trim());
+            }
+        }
+        return statements;
+    }
+
+    private void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another instance to finish migrating");
+                }
+            }
+        }
+    }
+
+    private void releaseLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// MySqlStorageEngine.java
+// Copyright 2024 maximusf
+
+// The MySQL backend: the DAOs over one connection pool
+
+package dao;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import models.Expense;
+import models.Income;
+
+/**
+ * Stores income and expenses in MySQL through IncomeDAO, ExpenseDAO and BalanceDAO
+ * Transactions run on one pooled connection (see ConnectionPool.inTransaction)
+ * Every income and expense write also moves the owner's savings goals (see GoalTrackingTransactionRepository)
+ * Closing the engine closes the pool
+ */
+public class MySqlStorageEngine implements StorageEngine {
+    public static final String NAME = "mysql";
+
+    private final ConnectionPool pool;
+    private final SavingsGoalDAO savingsGoalDao;
+    private final TransactionRepository<Income> incomeRepository;
+    private final TransactionRepository<Expense> expenseRepository;
+    private final BalanceDAO balanceDao;
+
+    public MySqlStorageEngine(ConnectionPool pool) {
+        this.pool = pool;
+        this.savingsGoalDao = new SavingsGoalDAO(pool);
+        this.incomeRepository = new GoalTrackingTransactionRepository<>(new IncomeDAO(pool), savingsGoalDao,
+            SavingsGoalDAO.Contribution.INCOME);
+        this.expenseRepository = new GoalTrackingTransactionRepository<>(new ExpenseDAO(pool), savingsGoalDao,
+            SavingsGoalDAO.Contribution.EXPENSES);
+        this.balanceDao = new BalanceDAO(pool);
+    }
+
+    @Override
+    public String getName() { return NAME; }
+
+    public ConnectionPool getPool() { return pool; }
+
+    public SavingsGoalDAO getSavingsGoalDAO() { return savingsGoalDao; }
+
+    @Override
+    public TransactionRepository<Income> getIncomeRepository() { return incomeRepository; }
+
+    @Override
+    public TransactionRepository<Expense> getExpenseRepository() { return expenseRepository; }
+
+    @Override
+    public BalanceDAO getBalanceRepository() { return balanceDao; }
+
+    @Override
+    public <R> R inTransaction(SqlCall<R> work) throws SQLException {
+        return pool.inTransaction(conn -> work.call());
+    }
+
+    // Applies pending schema migrations from db/migrations
+    @Override
+    public int migrate() throws SQLException, IOException {
+        return new MigrationRunner(pool, Paths.get("db", "migrations")).migrate();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,69 @@
+// OperationMetrics.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.util.concurrent.atomic.LongAdder;
+import util.LatencyHistogram;
+
+/**
+ * Calls, errors, rows and latency of one repository operation
+ * Updated by every calling thread without locks; read at any time from the menu or JMX
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one finished call
+     * @param nanos How long the call took
+     * @param rowCount Rows it returned or changed
+     * @param failed Whether it threw
+     */
+    public void record(long nanos, long rowCount, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        } else {
+            rows.add(rowCount);
+        }
+    }
+
+    public String getName() { return name; }
+
+    @Override
+    public long getCalls() { return latency.getCount(); }
+
+    @Override
+    public long getErrors() { return errors.sum(); }
+
+    @Override
+    public long getRows() { return rows.sum(); }
+
+    @Override
+    public double getMeanMillis() { return latency.getMeanNanos() / 1_000_000.0; }
+
+    @Override
+    public double getP50Millis() { return latency.percentile(50) / 1_000_000.0; }
+
+    @Override
+    public double getP95Millis() { return latency.percentile(95) / 1_000_000.0; }
+
+    @Override
+    public double getP99Millis() { return latency.percentile(99) / 1_000_000.0; }
+
+    @Override
+    public double getMaxMillis() { return latency.getMaxNanos() / 1_000_000.0; }
+
+    @Override
+    public String toString() {
+        return String.format("%s{calls=%d, errors=%d, rows=%d, meanMs=%.3f, p50Ms=%.3f, p95Ms=%.3f, p99Ms=%.3f, maxMs=%.3f}",
+            name, getCalls(), getErrors(), getRows(), getMeanMillis(), getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,25 @@
+// OperationMetricsMBean.java
+// Copyright 2024 maximusf
+
+package dao;
+
+/**
+ * JMX view of one repository operation, e.g. walletwatch:type=Repository,table=expenses,operation=getByUserId
+ */
+public interface OperationMetricsMBean {
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,55 @@
+// QueryEvent.java
+// Copyright 2024 maximusf
+
+// JDK Flight Recorder event emitted for every statement a DAO runs
+
+package dao;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One DAO statement, from the first bind to the last row read
+ * The event duration is the whole call; executeTime and materializeTime split it into the
+ * database round trip and the time spent turning rows into objects
+ *
+ * Recorded whenever Flight Recorder is running, e.g.
+ * java -XX:StartFlightRecording:filename=walletwatch.jfr -cp "bin;lib/*" Main
+ * jfr print --events walletwatch.Query walletwatch.jfr
+ */
+@Name("walletwatch.Query")
+@Label("Database Query")
+@Category({ "WalletWatch", "Database" })
+@Description("A statement run by a DAO, with its execute and materialize times")
+class QueryEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    @Description("Table and DAO method, e.g. expenses.getByUserId")
+    String operation;
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Parameters")
+    @Description("Bound values, or ? for each one while QUERY_LOG_PARAMS is off")
+    String parameters;
+
+    @Label("Rows")
+    @Description("Rows read, inserted, updated or deleted")
+    long rows;
+
+    @Label("Execute Time")
+    @Description("Until executeQuery, executeUpdate or executeBatch returned")
+    @Timespan(Timespan.NANOSECONDS)
+    long executeTime;
+
+    @Label("Materialize Time")
+    @Description("Reading the ResultSet and building records after the statement returned")
+    @Timespan(Timespan.NANOSECONDS)
+    long materializeTime;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
@@ -0,0 +1,112 @@
+// QueryTrace.java
+// Copyright 2024 maximusf
+
+// Times one DAO statement for Flight Recorder and the slow-query log
+
+package dao;
+
+import util.Environment;
+import util.SlowQueryLog;
+
+/**
+ * Splits a DAO statement into execute time (until the driver returns) and materialize time
+ * (reading rows into records), then emits a QueryEvent and, past SLOW_QUERY_MS, a slow-query line
+ *
+ * When Flight Recorder is off and the statement is fast, the cost is two System.nanoTime()
+ * reads and the trace itself; parameters are only formatted for statements that get reported.
+ *
+ * Example usage:
+ * try (QueryTrace trace = QueryTrace.start("expenses.getByUserId", SELECT_BY_USER_SQL, userId)) {
+ *     ResultSet rs = stmt.executeQuery();
+ *     trace.executed();
+ *     while (rs.next()) { ... }
+ *     trace.completed(rows);
+ * }
+ */
+public final class QueryTrace implements AutoCloseable {
+    // Statements taking at least this long go to the slow-query log; negative disables it
+    public static final long SLOW_QUERY_MS = Environment.getInt("SLOW_QUERY_MS", 500);
+
+    // Bound values are written as ? unless this is true, so logs don't hold amounts or labels
+    public static final boolean LOG_PARAMETERS = Boolean.parseBoolean(Environment.get("QUERY_LOG_PARAMS", "false"));
+
+    private static final long SLOW_QUERY_NANOS = SLOW_QUERY_MS < 0 ? Long.MAX_VALUE : SLOW_QUERY_MS * 1_000_000;
+
+    private final QueryEvent event = new QueryEvent();
+    private final String operation;
+    private final String sql;
+    private final Object[] parameters;
+    private final long start;
+    private long executedAt;
+    private long rows;
+    private boolean succeeded;
+
+    private QueryTrace(String operation, String sql, Object[] parameters) {
+        this.operation = operation;
+        this.sql = sql;
+        this.parameters = parameters;
+        event.begin();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Starts timing a statement
+     * @param operation Table and method, e.g. "income.add"
+     * @param sql Statement text
+     * @param parameters Values bound to the placeholders, in order
+     */
+    public static QueryTrace start(String operation, String sql, Object... parameters) {
+        return new QueryTrace(operation, sql, parameters);
+    }
+
+    /**
+     * Marks the point where the driver returned; the rest of the call counts as materializing
+     */
+    public void executed() {
+        executedAt = System.nanoTime();
+    }
+
+    /**
+     * Marks the statement as successful
+     * @param rowCount Rows read or changed
+     */
+    public void completed(long rowCount) {
+        rows = rowCount;
+        succeeded = true;
+    }
+
+    // Reports the statement; a trace closed without completed() counts as failed
+    @Override
+    public void close() {
+        long end = System.nanoTime();
+        long executed = executedAt == 0 ? end : executedAt;
+        long executeNanos = executed - start;
+        long materializeNanos = end - executed;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.sql = sql;
+            event.parameters = formatParameters();
+            event.rows = rows;
+            event.executeTime = executeNanos;
+            event.materializeTime = materializeNanos;
+            event.succeeded = succeeded;
+            event.commit();
+        }
+        if (end - start >= SLOW_QUERY_NANOS) {
+            SlowQueryLog.shared().record(operation, sql, formatParameters(), rows, executeNanos, materializeNanos, succeeded);
+        }
+    }
+
+    private String formatParameters() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(LOG_PARAMETERS ? String.valueOf(parameters[i]) : "?");
+        }
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,334 @@
+// SavingsGoalDAO.java
+// Copyright 2024 maximusf
+
+// Handles database operations for savings goals and keeps their progress up to date
+
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import models.Money;
+import models.SavingsGoal;
+import models.Transaction;
+import util.DateCodec;
+
+/**
+ * Handles all database operations for savings_goals
+ *
+ * A goal's current_amount is its initial amount plus the user's income minus expenses dated between
+ * its start and end dates. It is computed once when the goal is added, and from then on adjusted by
+ * each income and expense write (see GoalTrackingTransactionRepository): an add moves it by the
+ * record's amount, a delete or update first takes back what the old rows contributed. Reading goals
+ * is a plain indexed SELECT however long the history is.
+ *
+ * Example usage:
+ * SavingsGoalDAO goals = new SavingsGoalDAO(pool);
+ * goals.add(new SavingsGoal(0, userId, Money.parse("5000"), Money.ZERO, "2024-11-01", "2025-06-30"));
+ * goals.record(SavingsGoalDAO.Contribution.EXPENSES, userId, expense.getEpochDay(), expense.getAmountCents());
+ */
+public class SavingsGoalDAO {
+    /**
+     * A transaction table and which way its amounts move a goal
+     */
+    public enum Contribution {
+        INCOME("income", 1),
+        EXPENSES("expenses", -1);
+
+        private final String tableName;
+        private final int sign;
+
+        Contribution(String tableName, int sign) {
+            this.tableName = tableName;
+            this.sign = sign;
+        }
+
+        public String getTableName() { return tableName; }
+    }
+
+    private static final String COLUMNS =
+        "SELECT id, user_id, goal_amount, current_amount, initial_amount, start_date, end_date FROM savings_goals";
+    private static final String SELECT_BY_ID_SQL = COLUMNS + " WHERE id = ?";
+    private static final String SELECT_BY_USER_SQL = COLUMNS + " WHERE user_id = ? ORDER BY id";
+    private static final String SELECT_ALL_SQL = COLUMNS + " ORDER BY id";
+    private static final String INSERT_SQL =
+        "INSERT INTO savings_goals (user_id, goal_amount, current_amount, initial_amount, start_date, end_date) "
+        + "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_BY_ID_SQL = "DELETE FROM savings_goals WHERE id = ?";
+    // Income minus expenses of a user between two dates, for a new goal's starting progress
+    private static final String NET_SQL =
+        "SELECT (SELECT COALESCE(SUM(amount), 0) FROM income WHERE user_id = ? AND date BETWEEN ? AND ?) "
+        + "- (SELECT COALESCE(SUM(amount), 0) FROM expenses WHERE user_id = ? AND date BETWEEN ? AND ?)";
+    // Moves every goal of a user that covers a date, served by idx_savings_goals_user_dates
+    private static final String RECORD_SQL =
+        "UPDATE savings_goals SET current_amount = current_amount + ? "
+        + "WHERE user_id = ? AND start_date <= ? AND end_date >= ?";
+
+    private final ConnectionPool pool;
+
+    public SavingsGoalDAO(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a goal, counting the income and expenses already recorded between its dates
+     * @return The goal with its generated ID and current amount
+     */
+    public SavingsGoal add(SavingsGoal goal) throws SQLException {
+        return inTransaction(() -> {
+            long netCents;
+            try (Connection conn = pool.borrow();
+                 PreparedStatement stmt = conn.prepareStatement(NET_SQL)) {
+                for (int table = 0; table < 2; table++) {
+                    stmt.setInt(table * 3 + 1, goal.getUserId());
+                    stmt.setString(table * 3 + 2, goal.getStartDate());
+                    stmt.setString(table * 3 + 3, goal.getEndDate());
+                }
+                try (QueryTrace trace = QueryTrace.start("savings_goals.add", NET_SQL,
+                         goal.getUserId(), goal.getStartDate(), goal.getEndDate());
+                     ResultSet rs = stmt.executeQuery()) {
+                    trace.executed();
+                    rs.next();
+                    netCents = TransactionDAO.centsOf(rs, 1);
+                    trace.completed(1);
+                }
+            }
+
+            long currentCents = goal.getInitialCents() + netCents;
+            try (Connection conn = pool.borrow();
+                 PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setInt(1, goal.getUserId());
+                TransactionDAO.setCents(stmt, 2, goal.getGoalCents());
+                TransactionDAO.setCents(stmt, 3, currentCents);
+                TransactionDAO.setCents(stmt, 4, goal.getInitialCents());
+                stmt.setString(5, goal.getStartDate());
+                stmt.setString(6, goal.getEndDate());
+                try (QueryTrace trace = QueryTrace.start("savings_goals.add", INSERT_SQL, goal.getUserId(),
+                         Money.format(goal.getGoalCents()), Money.format(currentCents), Money.format(goal.getInitialCents()),
+                         goal.getStartDate(), goal.getEndDate())) {
+                    stmt.executeUpdate();
+                    trace.executed();
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Creating savings goal failed, no ID obtained.");
+                        }
+                        trace.completed(1);
+                        return new SavingsGoal(generatedKeys.getInt(1), goal.getUserId(), goal.getGoal(),
+                            Money.ofCents(currentCents), goal.getInitial(), goal.getStartDate(), goal.getEndDate());
+                    }
+                }
+            }
+        });
+    }
+
+    // Gets a goal by ID, or null if there is none
+    public SavingsGoal getById(int id) throws SQLException {
+        List<SavingsGoal> goals = query("getById", SELECT_BY_ID_SQL, id);
+        return goals.isEmpty() ? null : goals.get(0);
+    }
+
+    // Gets a user's goals, or every goal for TransactionDAO.ALL_USERS, in ID order
+    public List<SavingsGoal> getByUserId(int userId) throws SQLException {
+        return userId == TransactionDAO.ALL_USERS
+            ? query("getByUserId", SELECT_ALL_SQL)
+            : query("getByUserId", SELECT_BY_USER_SQL, userId);
+    }
+
+    // Delete goal by ID
+    public boolean deleteById(int id) throws SQLException {
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(DELETE_BY_ID_SQL);
+             QueryTrace trace = QueryTrace.start("savings_goals.deleteById", DELETE_BY_ID_SQL, id)) {
+            stmt.setInt(1, id);
+            int deleted = stmt.executeUpdate();
+            trace.completed(deleted);
+            return deleted > 0;
+        }
+    }
+
+    /**
+     * Moves the goals covering one new record
+     * @param source Table the record was added to
+     * @param userId Owner of the record
+     * @param epochDay Date of the record
+     * @param amountCents Amount of the record
+     */
+    public void record(Contribution source, int userId, int epochDay, long amountCents) throws SQLException {
+        String date = DateCodec.format(DateCodec.fromEpochDay(epochDay));
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(RECORD_SQL)) {
+            bindRecord(stmt, userId, date, source.sign * amountCents);
+            try (QueryTrace trace = QueryTrace.start("savings_goals.record", RECORD_SQL,
+                     Money.format(source.sign * amountCents), userId, date, date)) {
+                trace.completed(stmt.executeUpdate());
+            }
+        }
+    }
+
+    /**
+     * Moves the goals covering a batch of new records, one JDBC batch with one update per user and date
+     * @param source Table the records were added to
+     */
+    public void recordAll(Contribution source, List<? extends Transaction> transactions) throws SQLException {
+        // Amounts summed per user and date, in first-seen order
+        Map<Long, Long> totals = new LinkedHashMap<>();
+        for (Transaction transaction : transactions) {
+            long key = (long) transaction.getUserId() << 32 | (transaction.getEpochDay() & 0xFFFFFFFFL);
+            totals.merge(key, transaction.getAmountCents(), Long::sum);
+        }
+        if (totals.isEmpty()) {
+            return;
+        }
+
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(RECORD_SQL)) {
+            for (Map.Entry<Long, Long> total : totals.entrySet()) {
+                int userId = (int) (total.getKey() >> 32);
+                String date = DateCodec.format(DateCodec.fromEpochDay((int) (long) total.getKey()));
+                bindRecord(stmt, userId, date, source.sign * total.getValue());
+                stmt.addBatch();
+            }
+            // Traced per executeBatch, without parameters, like TransactionDAO.addAll's statements
+            try (QueryTrace trace = QueryTrace.start("savings_goals.recordAll", RECORD_SQL)) {
+                long updated = 0;
+                for (int count : stmt.executeBatch()) {
+                    updated += Math.max(count, 0);
+                }
+                trace.completed(updated);
+            }
+        }
+    }
+
+    /**
+     * Adds (direction 1) or takes back (direction -1) what the listed records contribute to goals
+     * Called with -1 before the records are deleted or updated, and with 1 after an update
+     * @return Number of goals changed
+     */
+    public int adjustByIds(Contribution source, int direction, List<Integer> ids) throws SQLException {
+        int changed = 0;
+        for (int start = 0; start < ids.size(); start += TransactionDAO.DELETE_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + TransactionDAO.DELETE_CHUNK_SIZE, ids.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            List<Object> parameters = new ArrayList<>(chunk);
+            parameters.addAll(chunk);
+            changed += adjust("adjustByIds", source, direction, " AND t.id IN (" + placeholders + ")",
+                " WHERE g.user_id IN (SELECT s.user_id FROM " + source.tableName + " s WHERE s.id IN (" + placeholders + "))",
+                parameters.toArray());
+        }
+        return changed;
+    }
+
+    /**
+     * Adds or takes back what all of a user's records contribute to goals
+     * @return Number of goals changed
+     */
+    public int adjustByUser(Contribution source, int direction, int userId) throws SQLException {
+        return adjust("adjustByUser", source, direction, "", " WHERE g.user_id = ?", userId);
+    }
+
+    /**
+     * Adds or takes back what every record of the source table contributes to goals
+     * @return Number of goals changed
+     */
+    public int adjustAll(Contribution source, int direction) throws SQLException {
+        return adjust("adjustAll", source, direction, "", "");
+    }
+
+    /**
+     * Adds or takes back what a user's records (or everyone's) dated between two YYYY-MM-DD dates contribute
+     * @return Number of goals changed
+     */
+    public int adjustByDateRange(Contribution source, int direction, int userId, String fromDate, String toDate)
+            throws SQLException {
+        String condition = " AND t.date BETWEEN ? AND ?";
+        return userId == TransactionDAO.ALL_USERS
+            ? adjust("adjustByDateRange", source, direction, condition, "", fromDate, toDate)
+            : adjust("adjustByDateRange", source, direction, condition, " WHERE g.user_id = ?", fromDate, toDate, userId);
+    }
+
+    /**
+     * Runs goal and transaction writes as one transaction (see ConnectionPool.inTransaction)
+     */
+    public <R> R inTransaction(SqlCall<R> work) throws SQLException {
+        return pool.inTransaction(conn -> work.call());
+    }
+
+    /**
+     * Representative parameters for each query, used by test.QueryPlanCheck to EXPLAIN them
+     */
+    public Map<String, Object[]> getQueryPlanSamples() {
+        Map<String, Object[]> samples = new LinkedHashMap<>();
+        samples.put(SELECT_BY_ID_SQL, new Object[] { 1 });
+        samples.put(SELECT_BY_USER_SQL, new Object[] { 1 });
+        samples.put(NET_SQL, new Object[] { 1, "2024-01-01", "2024-12-31", 1, "2024-01-01", "2024-12-31" });
+        samples.put(RECORD_SQL, new Object[] { new BigDecimal("1.00"), 1, "2024-06-01", "2024-06-01" });
+        samples.put(adjustSql(Contribution.EXPENSES, " AND t.id IN (?)",
+                " WHERE g.user_id IN (SELECT s.user_id FROM expenses s WHERE s.id IN (?))"),
+            new Object[] { -1, 1, 1 });
+        return samples;
+    }
+
+    // Moves goals by direction times the amounts of the source rows in their date range that match condition
+    private int adjust(String method, Contribution source, int direction, String condition, String where,
+                       Object... parameters) throws SQLException {
+        String sql = adjustSql(source, condition, where);
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, direction * source.sign);
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setObject(i + 2, parameters[i]);
+            }
+            Object[] traced = new Object[parameters.length + 1];
+            traced[0] = direction * source.sign;
+            System.arraycopy(parameters, 0, traced, 1, parameters.length);
+            try (QueryTrace trace = QueryTrace.start("savings_goals." + method, sql, traced)) {
+                int changed = stmt.executeUpdate();
+                trace.completed(changed);
+                return changed;
+            }
+        }
+    }
+
+    private static String adjustSql(Contribution source, String condition, String where) {
+        return "UPDATE savings_goals g SET g.current_amount = g.current_amount + ? * "
+            + "(SELECT COALESCE(SUM(t.amount), 0) FROM " + source.tableName + " t "
+            + "WHERE t.user_id = g.user_id AND t.date BETWEEN g.start_date AND g.end_date" + condition + ")" + where;
+    }
+
+    private static void bindRecord(PreparedStatement stmt, int userId, String date, long cents) throws SQLException {
+        TransactionDAO.setCents(stmt, 1, cents);
+        stmt.setInt(2, userId);
+        stmt.setString(3, date);
+        stmt.setString(4, date);
+    }
+
+    private List<SavingsGoal> query(String method, String sql, Object... parameters) throws SQLException {
+        List<SavingsGoal> goals = new ArrayList<>();
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setObject(i + 1, parameters[i]);
+            }
+            try (QueryTrace trace = QueryTrace.start("savings_goals." + method, sql, parameters);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    goals.add(new SavingsGoal(
+                        rs.getInt("id"),
+                        rs.getInt("user_id"),
+                        Money.ofCents(TransactionDAO.centsOf(rs, "goal_amount")),
+                        Money.ofCents(TransactionDAO.centsOf(rs, "current_amount")),
+                        Money.ofCents(TransactionDAO.centsOf(rs, "initial_amount")),
+                        rs.getString("start_date"),
+                        rs.getString("end_date")));
+                }
+                trace.completed(goals.size());
+            }
+        }
+        return goals;
+    }
+}
@@ -0,0 +1,142 @@
+// Snapshot.java
+// Copyright 2024 maximusf
+
+// Binary snapshot format shared by SnapshotWriter, SnapshotReader and SnapshotDAO
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * A snapshot is a whole-database backup: users, income, expenses and savings_goals in one file
+ *
+ * File layout: a 16 byte header (int magic "WWSN", short version, short 0, long creation time in millis),
+ * then blocks of at most about 64 KB:
+ *   int payload length | int crc32c | int table | int rows | payload
+ * The CRC32C covers the table, row count and payload. A block of table END closes the file; its
+ * payload holds the row count of every table, so a truncated copy is caught as well as a corrupt one.
+ *
+ * A payload is a sequence of records, each a varint length followed by its fields, so a reader can
+ * skip fields added by a later version. Numbers are zigzag varints; ids and dates are stored as the
+ * difference from the previous row, which is 1-2 bytes for rows read in id order. Text is a varint
+ * of (UTF-8 length + 1), 0 meaning NULL.
+ *
+ *   users:         id delta, name, email, password
+ *   income:        id delta, user_id, cents, epoch day delta, label
+ *   expenses:      same as income
+ *   savings_goals: id delta, user_id, goal cents, current cents + 1 (0 = NULL), start day, end - start days,
+ *                  initial cents (added after the first snapshots, so a record may end before it)
+ *
+ * Labels are dictionary coded: 0 is NULL, 1..n refers to the nth label already seen in the block,
+ * and n + 1 introduces a new label whose text follows. Every block starts with an empty dictionary
+ * and zero deltas, so blocks decode on their own.
+ *
+ * Example usage:
+ * SnapshotDAO snapshots = new SnapshotDAO(pool);
+ * Snapshot.Counts written = snapshots.backup(Paths.get("backup.wws"));
+ * Snapshot.Counts restored = snapshots.restore(Paths.get("backup.wws"));
+ */
+public final class Snapshot {
+    public static final int MAGIC = 0x5757534E;   // "WWSN"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int BLOCK_HEADER_SIZE = 16;
+    // A block is closed once its payload passes this size
+    public static final int BLOCK_BYTES = 1 << 16;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Tables in the order they are written and restored; users come first for the foreign keys
+     */
+    public enum Table {
+        USERS(1, "users"),
+        INCOME(2, "income"),
+        EXPENSES(3, "expenses"),
+        SAVINGS_GOALS(4, "savings_goals");
+
+        // Table number of the closing block
+        public static final int END = 0;
+
+        private final int code;
+        private final String tableName;
+
+        Table(int code, String tableName) {
+            this.code = code;
+            this.tableName = tableName;
+        }
+
+        public int getCode() { return code; }
+
+        public String getTableName() { return tableName; }
+
+        static Table of(int code) {
+            for (Table table : values()) {
+                if (table.code == code) {
+                    return table;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Receives the rows of a snapshot as SnapshotReader decodes them
+     * Amounts are cents and dates are days since 1970-01-01, as in TransactionRepository.RowHandler
+     */
+    public interface Handler {
+        void user(int id, String name, String email, String password) throws SQLException;
+
+        // An income or expense row
+        void transaction(Table table, int id, int userId, long amountCents, int epochDay, String label) throws SQLException;
+
+        // currentCents is null when current_amount is NULL; initialCents is null in snapshots taken before
+        // savings_goals had initial_amount
+        void savingsGoal(int id, int userId, long goalCents, Long currentCents, Long initialCents,
+                         int startEpochDay, int endEpochDay) throws SQLException;
+
+        // Called after the last row of each table, including empty ones
+        void endTable(Table table, long rows) throws SQLException;
+    }
+
+    /**
+     * Rows per table in a snapshot
+     */
+    public static final class Counts {
+        private final long[] rows = new long[Table.values().length];
+
+        void add(Table table, long count) {
+            rows[table.ordinal()] += count;
+        }
+
+        public long get(Table table) {
+            return rows[table.ordinal()];
+        }
+
+        public long total() {
+            long total = 0;
+            for (long count : rows) {
+                total += count;
+            }
+            return total;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Counts counts && Arrays.equals(rows, counts.rows);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(rows);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d users, %d income, %d expenses, %d savings goals",
+                get(Table.USERS), get(Table.INCOME), get(Table.EXPENSES), get(Table.SAVINGS_GOALS));
+        }
+    }
+}
@@ -0,0 +1,325 @@
+// SnapshotDAO.java
+// Copyright 2024 maximusf
+
+// Backs up the whole database to a binary snapshot and restores it
+
+package dao;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+/**
+ * Writes users, income, expenses and savings_goals to a snapshot file (see Snapshot for the format)
+ * and loads one back, replacing what the tables hold
+ *
+ * Backup streams each table in id order through a forward-only ResultSet into a SnapshotWriter,
+ * all inside one transaction so the tables are read at the same point in time. Amounts and dates
+ * are read as cents and day numbers, as in TransactionDAO.forEachRawRow.
+ *
+ * Restore deletes every row and inserts the snapshot in one transaction, DB_BATCH_SIZE rows per
+ * multi-row INSERT, so a failure part way (a damaged block, a lost connection) leaves the old data.
+ * Ids are kept, so references between the tables still hold.
+ *
+ * Example usage:
+ * SnapshotDAO snapshots = new SnapshotDAO(pool);
+ * Snapshot.Counts written = snapshots.backup(Paths.get("backup.wws"));
+ */
+public class SnapshotDAO {
+    // MySQL allows at most 65,535 placeholders per statement
+    private static final int MAX_PARAMETERS = 65535;
+    // TO_DAYS('1970-01-01'), see TransactionDAO
+    private static final String EPOCH_DAYS = "719528";
+
+    private final ConnectionPool pool;
+
+    public SnapshotDAO(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Writes every table to a snapshot file
+     * Rows go to <file>.tmp, which replaces the file once complete and synced, so a failed backup
+     * leaves any earlier snapshot untouched
+     * @param file Snapshot file to write
+     * @return Rows written per table
+     */
+    public Snapshot.Counts backup(Path file) throws SQLException, IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean completed = false;
+        try {
+            Snapshot.Counts counts;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                SnapshotWriter writer = new SnapshotWriter(channel);
+                try {
+                    pool.inTransaction(conn -> {
+                        for (Snapshot.Table table : Snapshot.Table.values()) {
+                            dump(conn, table, writer);
+                        }
+                        return null;
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                counts = writer.finish();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            completed = true;
+            return counts;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of every table with a snapshot
+     * @param file Snapshot file written by backup
+     * @return Rows restored per table
+     * @throws IOException If the file can't be read or is damaged; nothing is changed
+     */
+    public Snapshot.Counts restore(Path file) throws SQLException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotReader reader = new SnapshotReader(channel);
+            return pool.inTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    // The snapshot came from tables that satisfied their foreign keys, and users load
+                    // first anyway; skipping the per-row lookups speeds up the load (as mysqldump does)
+                    stmt.execute("SET foreign_key_checks = 0");
+                    try {
+                        // Children first, for the foreign keys
+                        for (int i = Snapshot.Table.values().length - 1; i >= 0; i--) {
+                            deleteAll(stmt, Snapshot.Table.values()[i]);
+                        }
+                        Loader loader = new Loader(conn);
+                        try {
+                            return reader.read(loader);
+                        } finally {
+                            loader.close();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        stmt.execute("SET foreign_key_checks = 1");
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Streams one table into the writer
+    private static void dump(Connection conn, Snapshot.Table table, SnapshotWriter writer) throws SQLException {
+        String sql = selectSql(table);
+        long rows = 0;
+        writer.beginTable(table);
+        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(TransactionDAO.STREAM_FETCH_SIZE);
+            try (QueryTrace trace = QueryTrace.start(table.getTableName() + ".backup", sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    switch (table) {
+                        case USERS:
+                            writer.user(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4));
+                            break;
+                        case INCOME:
+                        case EXPENSES:
+                            writer.transaction(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getInt(4), rs.getString(5));
+                            break;
+                        case SAVINGS_GOALS: {
+                            long current = rs.getLong(4);
+                            Long currentCents = rs.wasNull() ? null : current;
+                            writer.savingsGoal(rs.getInt(1), rs.getInt(2), rs.getLong(3), currentCents,
+                                rs.getLong(7), rs.getInt(5), rs.getInt(6));
+                            break;
+                        }
+                    }
+                    rows++;
+                }
+                trace.completed(rows);
+            }
+        }
+        writer.endTable();
+    }
+
+    private static void deleteAll(Statement stmt, Snapshot.Table table) throws SQLException {
+        String sql = "DELETE FROM " + table.getTableName();
+        try (QueryTrace trace = QueryTrace.start(table.getTableName() + ".restore", sql)) {
+            trace.completed(stmt.executeUpdate(sql));
+        }
+    }
+
+    // Amounts as integer cents and dates as days since 1970-01-01, like TransactionDAO's columnar reads
+    private static String selectSql(Snapshot.Table table) {
+        switch (table) {
+            case USERS:
+                return "SELECT id, name, email, password FROM users ORDER BY id";
+            case INCOME:
+                return "SELECT id, user_id, CAST(amount * 100 AS SIGNED), TO_DAYS(date) - " + EPOCH_DAYS
+                    + ", source FROM income ORDER BY id";
+            case EXPENSES:
+                return "SELECT id, user_id, CAST(amount * 100 AS SIGNED), TO_DAYS(date) - " + EPOCH_DAYS
+                    + ", category FROM expenses ORDER BY id";
+            default:
+                return "SELECT id, user_id, CAST(goal_amount * 100 AS SIGNED), CAST(current_amount * 100 AS SIGNED), "
+                    + "TO_DAYS(start_date) - " + EPOCH_DAYS + ", TO_DAYS(end_date) - " + EPOCH_DAYS
+                    + ", CAST(initial_amount * 100 AS SIGNED) FROM savings_goals ORDER BY id";
+        }
+    }
+
+    // The reverse of selectSql: cents and day numbers are turned back into DECIMAL and DATE by MySQL
+    private static String insertSql(Snapshot.Table table, int rows) {
+        String columns;
+        String values;
+        switch (table) {
+            case USERS:
+                columns = "id, name, email, password";
+                values = "(?, ?, ?, ?)";
+                break;
+            case INCOME:
+            case EXPENSES:
+                columns = "id, user_id, amount, " + (table == Snapshot.Table.INCOME ? "source" : "category") + ", date";
+                values = "(?, ?, ? / 100, ?, FROM_DAYS(? + " + EPOCH_DAYS + "))";
+                break;
+            default:
+                columns = "id, user_id, goal_amount, current_amount, initial_amount, start_date, end_date";
+                values = "(?, ?, ? / 100, ? / 100, ? / 100, FROM_DAYS(? + " + EPOCH_DAYS + "), FROM_DAYS(? + " + EPOCH_DAYS + "))";
+                break;
+        }
+        return "INSERT INTO " + table.getTableName() + " (" + columns + ") VALUES "
+            + String.join(", ", Collections.nCopies(rows, values));
+    }
+
+    private static int columnCount(Snapshot.Table table) {
+        switch (table) {
+            case USERS: return 4;
+            case INCOME:
+            case EXPENSES: return 5;
+            default: return 7;
+        }
+    }
+
+    /**
+     * Buffers one statement's worth of rows and inserts them with a single multi-row INSERT
+     * The full-size statement is prepared once per table; only a table's last, shorter group
+     * needs a statement of its own
+     */
+    private static final class Loader implements Snapshot.Handler {
+        private final Connection conn;
+        private Snapshot.Table table;
+        private int columns;
+        private int rowsPerStatement;
+        private Object[] values;
+        private int rows;
+        private PreparedStatement full;
+        private String fullSql;
+
+        Loader(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void user(int id, String name, String email, String password) throws SQLException {
+            row(Snapshot.Table.USERS, id, name, email, password);
+        }
+
+        @Override
+        public void transaction(Snapshot.Table table, int id, int userId, long amountCents, int epochDay, String label)
+                throws SQLException {
+            row(table, id, userId, amountCents, label, epochDay);
+        }
+
+        @Override
+        public void savingsGoal(int id, int userId, long goalCents, Long currentCents, Long initialCents,
+                                int startEpochDay, int endEpochDay) throws SQLException {
+            // Older snapshots may hold a NULL current amount and no initial amount; both columns are now
+            // NOT NULL, and counting what was saved as the starting amount keeps the goal's progress
+            long current = currentCents == null ? 0 : currentCents;
+            row(Snapshot.Table.SAVINGS_GOALS, id, userId, goalCents, current, initialCents == null ? current : initialCents,
+                startEpochDay, endEpochDay);
+        }
+
+        @Override
+        public void endTable(Snapshot.Table table, long count) throws SQLException {
+            if (this.table == table) {
+                if (rows > 0) {
+                    execute(rows);
+                }
+                close();
+                this.table = null;
+            }
+        }
+
+        // Closes the full-size statement, also when the restore stops part way
+        void close() throws SQLException {
+            if (full != null) {
+                full.close();
+                full = null;
+            }
+        }
+
+        // Values in the order of the table's INSERT columns
+        private void row(Snapshot.Table table, Object... fields) throws SQLException {
+            if (this.table != table) {
+                start(table);
+            }
+            System.arraycopy(fields, 0, values, rows * columns, columns);
+            if (++rows == rowsPerStatement) {
+                execute(rows);
+            }
+        }
+
+        private void start(Snapshot.Table table) {
+            this.table = table;
+            columns = columnCount(table);
+            rowsPerStatement = Math.max(1, Math.min(TransactionDAO.DEFAULT_BATCH_SIZE, MAX_PARAMETERS / columns));
+            values = new Object[rowsPerStatement * columns];
+            rows = 0;
+        }
+
+        private void execute(int count) throws SQLException {
+            String sql;
+            PreparedStatement stmt;
+            if (count == rowsPerStatement) {
+                if (full == null) {
+                    fullSql = insertSql(table, count);
+                    full = conn.prepareStatement(fullSql);
+                }
+                sql = fullSql;
+                stmt = full;
+            } else {
+                sql = insertSql(table, count);
+                stmt = conn.prepareStatement(sql);
+            }
+            try {
+                for (int i = 0; i < count * columns; i++) {
+                    stmt.setObject(i + 1, values[i]);
+                }
+                // Traced without parameters: a statement binds every column of every row
+                try (QueryTrace trace = QueryTrace.start(table.getTableName() + ".restore", sql)) {
+                    trace.completed(stmt.executeUpdate());
+                }
+            } finally {
+                if (stmt != full) {
+                    stmt.close();
+                }
+            }
+            rows = 0;
+        }
+    }
+}
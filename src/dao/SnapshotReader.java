@@ -0,0 +1,268 @@
+// SnapshotReader.java
+// Copyright 2024 maximusf
+
+// Decodes the binary snapshot format described in Snapshot
+
+package dao;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads a snapshot block by block, checking each block's CRC32C before any of its rows reach the handler
+ * A corrupt, truncated or out-of-order file fails with an IOException; rows handed over before that
+ * point came from blocks that checked out, so a caller restoring inside a transaction just rolls back.
+ *
+ * Example usage:
+ * try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+ *     SnapshotReader reader = new SnapshotReader(file);
+ *     Snapshot.Counts counts = reader.read(handler);
+ * }
+ */
+public final class SnapshotReader {
+    // Blocks are about 64 KB; anything far larger is a damaged length field
+    private static final int MAX_BLOCK_BYTES = 64 << 20;
+
+    private final ReadableByteChannel in;
+    private final long createdMillis;
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer header = ByteBuffer.allocate(Snapshot.BLOCK_HEADER_SIZE);
+    private ByteBuffer payload = ByteBuffer.allocate(Snapshot.BLOCK_BYTES * 2);
+    private final List<String> labels = new ArrayList<>();
+    private long block;
+
+    /**
+     * Reads and checks the file header
+     * @param in Channel positioned at the start of the snapshot
+     * @throws IOException If the file is not a snapshot or was written by a newer version
+     */
+    public SnapshotReader(ReadableByteChannel in) throws IOException {
+        this.in = in;
+        ByteBuffer fileHeader = ByteBuffer.allocate(Snapshot.HEADER_SIZE);
+        if (!readFully(fileHeader)) {
+            throw new IOException("Not a Wallet-Watch snapshot: file is too short");
+        }
+        fileHeader.flip();
+        if (fileHeader.getInt() != Snapshot.MAGIC) {
+            throw new IOException("Not a Wallet-Watch snapshot");
+        }
+        int version = fileHeader.getShort();
+        if (version < 1 || version > Snapshot.VERSION) {
+            throw new IOException("Snapshot version " + version + " is not supported (expected "
+                + Snapshot.VERSION + " or older)");
+        }
+        fileHeader.getShort();
+        this.createdMillis = fileHeader.getLong();
+    }
+
+    // When the snapshot was written, in milliseconds since 1970-01-01 UTC
+    public long getCreatedMillis() { return createdMillis; }
+
+    /**
+     * Decodes every row into the handler, table by table in Snapshot.Table order
+     * @return Rows read per table, which match the counts recorded in the closing block
+     * @throws IOException If the file is damaged or ends early
+     * @throws SQLException If the handler fails
+     */
+    public Snapshot.Counts read(Snapshot.Handler handler) throws IOException, SQLException {
+        Snapshot.Table[] tables = Snapshot.Table.values();
+        Snapshot.Counts counts = new Snapshot.Counts();
+        int current = 0;
+        while (true) {
+            int tableCode = readBlock();
+            if (tableCode == Snapshot.Table.END) {
+                for (; current < tables.length; current++) {
+                    handler.endTable(tables[current], counts.get(tables[current]));
+                }
+                checkCounts(counts);
+                return counts;
+            }
+
+            Snapshot.Table table = Snapshot.Table.of(tableCode);
+            if (table == null) {
+                throw malformed("has unknown table number " + tableCode);
+            }
+            if (table.ordinal() < current) {
+                throw malformed("is out of order: " + table.getTableName() + " after " + tables[current].getTableName());
+            }
+            for (; current < table.ordinal(); current++) {
+                handler.endTable(tables[current], counts.get(tables[current]));
+            }
+            counts.add(table, decodeBlock(table, handler));
+        }
+    }
+
+    // Reads the next block into payload, checks it and returns its table number
+    private int readBlock() throws IOException {
+        block++;
+        header.clear();
+        if (!readFully(header)) {
+            throw new IOException("Snapshot is truncated: it ends before its closing block");
+        }
+        int length = header.getInt(0);
+        if (length < 0 || length > MAX_BLOCK_BYTES) {
+            throw malformed("has an invalid length " + length);
+        }
+        if (payload.capacity() < length) {
+            payload = ByteBuffer.allocate(length);
+        }
+        payload.clear().limit(length);
+        if (!readFully(payload)) {
+            throw new IOException("Snapshot is truncated in block " + block);
+        }
+        crc.reset();
+        crc.update(header.array(), 8, Snapshot.BLOCK_HEADER_SIZE - 8);
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != header.getInt(4)) {
+            throw malformed("failed its checksum");
+        }
+        payload.flip();
+        return header.getInt(8);
+    }
+
+    private int decodeBlock(Snapshot.Table table, Snapshot.Handler handler) throws IOException, SQLException {
+        int rows = header.getInt(12);
+        labels.clear();
+        long previousId = 0;
+        long previousEpochDay = 0;
+        try {
+            for (int row = 0; row < rows; row++) {
+                int length = checkedInt(getVarint());
+                int end = payload.position() + length;
+                if (length > payload.remaining()) {
+                    throw malformed("has a record longer than the block");
+                }
+                int id = checkedInt(previousId + getSigned());
+                previousId = id;
+                switch (table) {
+                    case USERS:
+                        handler.user(id, getText(), getText(), getText());
+                        break;
+                    case INCOME:
+                    case EXPENSES: {
+                        int userId = checkedInt(getSigned());
+                        long cents = getSigned();
+                        int epochDay = checkedInt(previousEpochDay + getSigned());
+                        previousEpochDay = epochDay;
+                        handler.transaction(table, id, userId, cents, epochDay, getLabel());
+                        break;
+                    }
+                    case SAVINGS_GOALS: {
+                        int userId = checkedInt(getSigned());
+                        long goalCents = getSigned();
+                        long current = getVarint();
+                        Long currentCents = current == 0 ? null : unzigzag(current - 1);
+                        int startEpochDay = checkedInt(getSigned());
+                        int endEpochDay = checkedInt(startEpochDay + getSigned());
+                        Long initialCents = payload.position() < end ? getSigned() : null;
+                        handler.savingsGoal(id, userId, goalCents, currentCents, initialCents, startEpochDay, endEpochDay);
+                        break;
+                    }
+                }
+                // Fields after the ones known here were added by a later version
+                if (payload.position() > end) {
+                    throw malformed("has a record longer than its length");
+                }
+                payload.position(end);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw malformed("could not be decoded");
+        }
+        if (payload.hasRemaining()) {
+            throw malformed("has data after its last row");
+        }
+        return rows;
+    }
+
+    // Compares the rows read with the counts in the closing block
+    private void checkCounts(Snapshot.Counts counts) throws IOException {
+        try {
+            for (Snapshot.Table table : Snapshot.Table.values()) {
+                long expected = getVarint();
+                if (expected != counts.get(table)) {
+                    throw new IOException("Snapshot is incomplete: " + table.getTableName() + " has "
+                        + counts.get(table) + " rows but " + expected + " were written");
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw malformed("could not be decoded");
+        }
+    }
+
+    private String getLabel() throws IOException {
+        int number = checkedInt(getVarint());
+        if (number == 0) {
+            return null;
+        }
+        if (number <= labels.size()) {
+            return labels.get(number - 1);
+        }
+        if (number != labels.size() + 1) {
+            throw malformed("refers to an unknown label");
+        }
+        String label = getText();
+        labels.add(label);
+        return label;
+    }
+
+    private String getText() {
+        int length = checkedInt(getVarint()) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > payload.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String text = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return text;
+    }
+
+    private long getSigned() {
+        return unzigzag(getVarint());
+    }
+
+    private long getVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = payload.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int checkedInt(long value) {
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    private IOException malformed(String problem) {
+        return new IOException("Snapshot block " + block + " " + problem);
+    }
+
+    // Fills the buffer from the channel, false if the channel ends first
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
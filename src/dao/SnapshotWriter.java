@@ -0,0 +1,304 @@
+// SnapshotWriter.java
+// Copyright 2024 maximusf
+
+// Encodes table rows into the binary snapshot format described in Snapshot
+
+package dao;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes a snapshot block by block: rows are encoded into one reusable payload buffer, and each
+ * full block goes to the channel as a header and payload, so the channel sees large sequential writes
+ * and memory stays at about one block however many rows there are
+ *
+ * Tables must be written in Snapshot.Table order, each between beginTable and endTable;
+ * tables that are skipped count as empty.
+ *
+ * Example usage:
+ * try (FileChannel file = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING)) {
+ *     SnapshotWriter writer = new SnapshotWriter(file);
+ *     writer.beginTable(Snapshot.Table.INCOME);
+ *     incomeDao.forEachRawRow(TransactionDAO.ALL_USERS, writer::transaction);
+ *     writer.endTable();
+ *     writer.finish();
+ * }
+ */
+public final class SnapshotWriter {
+    // Longest zigzag varint of a long
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final WritableByteChannel out;
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer header = ByteBuffer.allocate(Snapshot.BLOCK_HEADER_SIZE);
+    private ByteBuffer payload = ByteBuffer.allocate(Snapshot.BLOCK_BYTES * 2);
+    // One record's fields, copied to the payload behind its length
+    private ByteBuffer record = ByteBuffer.allocate(1024);
+    private final Snapshot.Counts counts = new Snapshot.Counts();
+
+    // Per block: labels already written, numbered from 1, and the previous row for the deltas
+    private final Map<String, Integer> labels = new HashMap<>();
+    private long previousId;
+    private long previousEpochDay;
+
+    private Snapshot.Table table;
+    private int lastTableOrdinal = -1;
+    private int blockRows;
+    private long bytes;
+    private boolean finished;
+
+    /**
+     * Starts a snapshot by writing its file header
+     * @param out Channel the blocks are written to, e.g. a FileChannel
+     */
+    public SnapshotWriter(WritableByteChannel out) throws IOException {
+        this.out = out;
+        ByteBuffer fileHeader = ByteBuffer.allocate(Snapshot.HEADER_SIZE);
+        fileHeader.putInt(Snapshot.MAGIC).putShort((short) Snapshot.VERSION).putShort((short) 0)
+            .putLong(System.currentTimeMillis()).flip();
+        write(fileHeader);
+    }
+
+    /**
+     * Starts the rows of a table
+     * @throws IllegalStateException If another table is open or the table comes out of order
+     */
+    public void beginTable(Snapshot.Table table) {
+        if (finished) {
+            throw new IllegalStateException("The snapshot is already finished");
+        }
+        if (this.table != null) {
+            throw new IllegalStateException("Finish " + this.table.getTableName() + " before starting " + table.getTableName());
+        }
+        if (table.ordinal() <= lastTableOrdinal) {
+            throw new IllegalStateException("Table " + table.getTableName() + " is out of order or written twice");
+        }
+        this.table = table;
+        lastTableOrdinal = table.ordinal();
+        startBlock();
+    }
+
+    /**
+     * Appends a users row
+     * @throws UncheckedIOException If the channel fails while a full block is written
+     */
+    public void user(int id, String name, String email, String password) {
+        beginRecord(Snapshot.Table.USERS);
+        putId(id);
+        putText(name);
+        putText(email);
+        putText(password);
+        endRecord();
+    }
+
+    /**
+     * Appends an income or expense row; the arguments match TransactionRepository.RowHandler
+     * @throws UncheckedIOException If the channel fails while a full block is written
+     */
+    public void transaction(int id, int userId, long amountCents, int epochDay, String label) {
+        if (table != Snapshot.Table.INCOME && table != Snapshot.Table.EXPENSES) {
+            throw new IllegalStateException("Transaction rows belong to income or expenses, not " + tableName());
+        }
+        beginRecord(table);
+        putId(id);
+        putSigned(userId);
+        putSigned(amountCents);
+        putSigned(epochDay - previousEpochDay);
+        previousEpochDay = epochDay;
+        putLabel(label);
+        endRecord();
+    }
+
+    /**
+     * Appends a savings_goals row
+     * @param currentCents Current amount, or null when the column is NULL
+     * @throws UncheckedIOException If the channel fails while a full block is written
+     */
+    public void savingsGoal(int id, int userId, long goalCents, Long currentCents, long initialCents,
+                            int startEpochDay, int endEpochDay) {
+        beginRecord(Snapshot.Table.SAVINGS_GOALS);
+        putId(id);
+        putSigned(userId);
+        putSigned(goalCents);
+        putUnsigned(currentCents == null ? 0 : zigzag(currentCents) + 1);
+        putSigned(startEpochDay);
+        putSigned((long) endEpochDay - startEpochDay);
+        putSigned(initialCents);
+        endRecord();
+    }
+
+    /**
+     * Ends the open table, writing its last block
+     */
+    public void endTable() {
+        if (table == null) {
+            throw new IllegalStateException("No table is open");
+        }
+        if (blockRows > 0) {
+            writeBlock(table.getCode());
+        }
+        table = null;
+    }
+
+    /**
+     * Writes the closing block with every table's row count; call once after the last table
+     * @return Rows written per table
+     */
+    public Snapshot.Counts finish() throws IOException {
+        if (table != null) {
+            throw new IllegalStateException("Table " + table.getTableName() + " is still open");
+        }
+        if (!finished) {
+            payload.clear();
+            for (Snapshot.Table each : Snapshot.Table.values()) {
+                putVarint(payload, counts.get(each));
+            }
+            blockRows = 0;
+            try {
+                writeBlock(Snapshot.Table.END);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            finished = true;
+        }
+        return counts;
+    }
+
+    // Bytes handed to the channel so far
+    public long getBytes() { return bytes; }
+
+    // Rows written so far per table
+    public Snapshot.Counts getCounts() { return counts; }
+
+    private String tableName() {
+        return table == null ? "no table" : table.getTableName();
+    }
+
+    private void beginRecord(Snapshot.Table expected) {
+        if (table != expected) {
+            throw new IllegalStateException("Expected a " + tableName() + " row, not " + expected.getTableName());
+        }
+        // Full blocks are closed before a row is encoded, since the row's deltas and labels depend on its block
+        if (payload.position() >= Snapshot.BLOCK_BYTES) {
+            writeBlock(table.getCode());
+            startBlock();
+        }
+        record.clear();
+    }
+
+    private void endRecord() {
+        record.flip();
+        int needed = MAX_VARINT_BYTES + record.remaining();
+        if (payload.remaining() < needed) {
+            payload = grow(payload, needed);
+        }
+        putVarint(payload, record.remaining());
+        payload.put(record);
+        blockRows++;
+        counts.add(table, 1);
+    }
+
+    private void startBlock() {
+        payload.clear();
+        labels.clear();
+        previousId = 0;
+        previousEpochDay = 0;
+        blockRows = 0;
+    }
+
+    private void writeBlock(int tableCode) {
+        payload.flip();
+        header.clear();
+        header.putInt(payload.remaining()).putInt(0).putInt(tableCode).putInt(blockRows);
+        crc.reset();
+        crc.update(header.array(), 8, Snapshot.BLOCK_HEADER_SIZE - 8);
+        crc.update(payload.array(), 0, payload.limit());
+        header.putInt(4, (int) crc.getValue()).flip();
+        try {
+            write(header);
+            write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        payload.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        bytes += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private void putId(int id) {
+        putSigned(id - previousId);
+        previousId = id;
+    }
+
+    private void putSigned(long value) {
+        putUnsigned(zigzag(value));
+    }
+
+    private void putUnsigned(long value) {
+        if (record.remaining() < MAX_VARINT_BYTES) {
+            record = grow(record, MAX_VARINT_BYTES);
+        }
+        putVarint(record, value);
+    }
+
+    // A known label as its number, or the next number followed by its text
+    private void putLabel(String label) {
+        if (label == null) {
+            putUnsigned(0);
+            return;
+        }
+        Integer number = labels.get(label);
+        if (number != null) {
+            putUnsigned(number);
+            return;
+        }
+        number = labels.size() + 1;
+        labels.put(label, number);
+        putUnsigned(number);
+        putText(label);
+    }
+
+    private void putText(String text) {
+        if (text == null) {
+            putUnsigned(0);
+            return;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        putUnsigned(utf8.length + 1L);
+        if (record.remaining() < utf8.length) {
+            record = grow(record, utf8.length);
+        }
+        record.put(utf8);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // A copy of the buffer's contents with room for at least needed more bytes
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+}
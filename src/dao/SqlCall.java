@@ -0,0 +1,16 @@
+// SqlCall.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * A database call that borrows its own connection, such as a DAO read method
+ * Used to run independent queries at the same time through AsyncQueries
+ * @param <R> The type of result produced by the call
+ */
+@FunctionalInterface
+public interface SqlCall<R> {
+    R call() throws SQLException;
+}
@@ -0,0 +1,17 @@
+// SqlWork.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of database work that runs on a single connection
+ * Used to group several statements into one transaction
+ * @param <R> The type of result produced by the work
+ */
+@FunctionalInterface
+public interface SqlWork<R> {
+    R execute(Connection conn) throws SQLException;
+}
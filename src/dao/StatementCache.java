@@ -0,0 +1,72 @@
+// StatementCache.java
+// Copyright 2024 maximusf
+
+// StatementCache keeps prepared statements open so they can be reused
+
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of prepared statements for one connection, keyed by SQL text
+ * The least recently used statement is closed when the cache grows past its capacity
+ * Not thread-safe: a pooled connection is only used by one thread at a time
+ */
+public class StatementCache {
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param capacity Maximum number of open statements kept for the connection
+     */
+    public StatementCache(int capacity) {
+        // accessOrder = true makes iteration order least-recently-used first
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param key SQL text (plus any statement options) of the statement
+     * @return The cached open statement, or null if there is none
+     */
+    public PreparedStatement get(String key) throws SQLException {
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && stmt.isClosed()) {
+            statements.remove(key);
+            return null;
+        }
+        return stmt;
+    }
+
+    /**
+     * Caches a statement, evicting the least recently used one if the cache is full
+     */
+    public void put(String key, PreparedStatement stmt) {
+        PreparedStatement previous = statements.put(key, stmt);
+        if (previous != null && previous != stmt) {
+            closeQuietly(previous);
+        }
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // Statement is being discarded anyway
+        }
+    }
+}
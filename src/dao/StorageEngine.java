@@ -0,0 +1,71 @@
+// StorageEngine.java
+// Copyright 2024 maximusf
+
+// Chooses where income and expenses are stored
+
+package dao;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import models.Expense;
+import models.Income;
+import util.Environment;
+
+/**
+ * A storage backend: the repositories for each table, balances and transactions across them
+ *
+ * STORAGE_ENGINE in .env picks the backend:
+ * - mysql (default): IncomeDAO and ExpenseDAO over a ConnectionPool, see MySqlStorageEngine
+ * - journal: a local memory-mapped journal in JOURNAL_DIR, no database needed, see JournalStorageEngine
+ *
+ * Example usage:
+ * try (StorageEngine storage = StorageEngine.fromEnvironment()) {
+ *     storage.migrate();
+ *     storage.inTransaction(() -> storage.getExpenseRepository().add(expense));
+ * }
+ */
+public interface StorageEngine extends AutoCloseable {
+    // Name shown to users, e.g. "mysql" or "journal"
+    String getName();
+
+    TransactionRepository<Income> getIncomeRepository();
+
+    TransactionRepository<Expense> getExpenseRepository();
+
+    BalanceRepository getBalanceRepository();
+
+    /**
+     * Runs repository calls as one transaction: every write inside commits, or none does
+     * Nested calls join the outer transaction
+     */
+    <R> R inTransaction(SqlCall<R> work) throws SQLException;
+
+    /**
+     * Brings the storage up to date before first use
+     * @return Number of changes applied, e.g. schema migrations
+     */
+    int migrate() throws SQLException, IOException;
+
+    @Override
+    void close();
+
+    /**
+     * Opens the backend named by STORAGE_ENGINE
+     * @throws IllegalStateException if the name is unknown or the journal can't be opened
+     */
+    static StorageEngine fromEnvironment() {
+        String name = Environment.get("STORAGE_ENGINE", MySqlStorageEngine.NAME).trim().toLowerCase();
+        switch (name) {
+            case MySqlStorageEngine.NAME:
+                return new MySqlStorageEngine(ConnectionPool.fromEnvironment());
+            case JournalStorageEngine.NAME:
+                try {
+                    return JournalStorageEngine.fromEnvironment();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not open the journal: " + e.getMessage(), e);
+                }
+            default:
+                throw new IllegalStateException("Unknown STORAGE_ENGINE: " + name + " (use mysql or journal)");
+        }
+    }
+}
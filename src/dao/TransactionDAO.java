@@ -5,58 +5,589 @@
 
 package dao;
 
+import java.math.BigDecimal;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
 import util.Environment;
+import util.LabelDictionary;
 
 /**
  * Base class for database operations on transactions
  * @param <T> The type of transaction (Income or Expense)
  */
-public abstract class TransactionDAO<T> {
-    // Database connection settings from .env file
-    protected static final String URL = Environment.get("DB_URL");
-    protected static final String USER = Environment.get("DB_USER");
-    protected static final String PASS = Environment.get("DB_PASS");
+public abstract class TransactionDAO<T extends Transaction> implements TransactionRepository<T> {
+    // User ID that stands for "all users" in admin queries
+    public static final int ALL_USERS = 0;
 
-    protected Connection conn;
+    // Maximum number of IDs bound into a single DELETE ... IN (...) statement
+    protected static final int DELETE_CHUNK_SIZE = 1000;
+
+    // Number of rows sent per multi-row INSERT by addAll, configurable with DB_BATCH_SIZE
+    public static final int DEFAULT_BATCH_SIZE = Environment.getInt("DB_BATCH_SIZE", 500);
+
+    // Placeholders per row of getInsertSql(): user_id, amount, label and date
+    protected static final int INSERT_COLUMNS = 4;
+    // MySQL allows at most 65,535 placeholders per statement
+    private static final int MAX_INSERT_ROWS = 65535 / INSERT_COLUMNS;
+
+    // Rows fetched per round trip by forEachRow; Integer.MIN_VALUE makes Connector/J stream row by row
+    // A positive DB_FETCH_SIZE needs DB_USE_CURSOR_FETCH=true to fetch batches through a server-side cursor
+    protected static final int STREAM_FETCH_SIZE = Environment.getInt("DB_FETCH_SIZE", Integer.MIN_VALUE);
+
+    // Prepared statements kept open per connection, configurable with DB_STMT_CACHE_SIZE
+    protected static final int STATEMENT_CACHE_SIZE = Environment.getInt("DB_STMT_CACHE_SIZE", 32);
+
+    // Connections are borrowed from the pool for each operation and returned when it finishes
+    protected final ConnectionPool pool;
     protected final String tableName;
 
-    public TransactionDAO(Connection conn, String tableName) {
-        this.conn = conn;
+    // Statement caches keyed by pooled connection; entries disappear when the pool discards a connection
+    private final Map<Connection, StatementCache> statementCaches = Collections.synchronizedMap(new WeakHashMap<>());
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    // SQL built once from the table name so hot paths reuse the same cached statement text
+    private final String deleteByIdSql;
+    private final String deleteAllSql;
+    private final String deleteByUserSql;
+    private final String deleteByDateRangeSql;
+    private final String deleteByDateRangeAllSql;
+    private final String summarySql;
+    private final String summaryAllSql;
+    private final String totalSql;
+    private final String totalAllSql;
+    private final String countSql;
+    private final String countAllSql;
+    private final String pageAfterSql;
+    private final String pageAfterAllSql;
+    private final String pageBeforeSql;
+    private final String pageBeforeAllSql;
+    private final String streamSql;
+    private final String streamAllSql;
+    private final String columnarSql;
+    private final String rawRowAllSql;
+    private final String rawRowSql;
+    private final String columnarAllSql;
+
+    /**
+     * @param pool Pool to borrow connections from
+     * @param tableName Table holding the records
+     * @param labelColumn Text column read as the label (source or category)
+     */
+    public TransactionDAO(ConnectionPool pool, String tableName, String labelColumn) {
+        this.pool = pool;
         this.tableName = tableName;
+
+        String summaryColumns = "SELECT COUNT(*), COALESCE(SUM(amount), 0), COALESCE(MIN(amount), 0), COALESCE(MAX(amount), 0) FROM ";
+        this.deleteByIdSql = "DELETE FROM " + tableName + " WHERE id = ?";
+        this.deleteAllSql = "DELETE FROM " + tableName;
+        this.deleteByUserSql = "DELETE FROM " + tableName + " WHERE user_id = ?";
+        this.deleteByDateRangeAllSql = "DELETE FROM " + tableName + " WHERE date BETWEEN ? AND ?";
+        this.deleteByDateRangeSql = deleteByDateRangeAllSql + " AND user_id = ?";
+        this.summaryAllSql = summaryColumns + tableName;
+        this.summarySql = summaryAllSql + " WHERE user_id = ?";
+        this.totalAllSql = "SELECT COALESCE(SUM(amount), 0) FROM " + tableName;
+        this.totalSql = totalAllSql + " WHERE user_id = ?";
+        this.countAllSql = "SELECT COUNT(*) FROM " + tableName;
+        this.countSql = countAllSql + " WHERE user_id = ?";
+        this.pageAfterAllSql = "SELECT * FROM " + tableName + " WHERE id > ? ORDER BY id LIMIT ?";
+        this.pageAfterSql = "SELECT * FROM " + tableName + " WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?";
+        this.pageBeforeAllSql = "SELECT * FROM " + tableName + " WHERE id < ? ORDER BY id DESC LIMIT ?";
+        this.pageBeforeSql = "SELECT * FROM " + tableName + " WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT ?";
+        this.streamAllSql = "SELECT * FROM " + tableName + " ORDER BY id";
+        this.streamSql = "SELECT * FROM " + tableName + " WHERE user_id = ? ORDER BY id";
+        // Amounts as integer cents and dates as days since 1970-01-01 (TO_DAYS('1970-01-01') = 719528),
+        // so rows are read with getLong/getInt instead of BigDecimal and String
+        this.columnarAllSql = "SELECT id, user_id, CAST(amount * 100 AS SIGNED), TO_DAYS(date) - 719528, "
+            + labelColumn + " FROM " + tableName;
+        this.columnarSql = columnarAllSql + " WHERE user_id = ?";
+        this.rawRowAllSql = columnarAllSql + " ORDER BY id";
+        this.rawRowSql = columnarSql + " ORDER BY id";
     }
 
-    // Connect to database if needed
-    public void connect() throws SQLException {
-        if (conn == null || conn.isClosed()) {
-            conn = DriverManager.getConnection(URL, USER, PASS);
+    // Delete record by ID
+    public boolean deleteById(int id) throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, deleteByIdSql);
+            stmt.setInt(1, id);
+            try (QueryTrace trace = trace("deleteById", deleteByIdSql, id)) {
+                int deleted = stmt.executeUpdate();
+                trace.completed(deleted);
+                return deleted > 0;
+            }
         }
     }
 
-    // Close database connection
-    public void close() throws SQLException {
-        if (conn != null && !conn.isClosed()) {
-            conn.close();
+    // Insert many records in one transaction using multi-row INSERTs of DEFAULT_BATCH_SIZE rows
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        return addAll(transactions, DEFAULT_BATCH_SIZE);
+    }
+
+    // Insert many records in one transaction, sending batchSize rows per INSERT ... VALUES (...), (...)
+    // One statement is one round trip whatever the driver settings: a JDBC batch is only rewritten into
+    // multi-row INSERTs with rewriteBatchedStatements and client-side prepared statements, and otherwise
+    // executes row by row. Generated IDs are set on each record and returned in insertion order
+    public List<Integer> addAll(List<T> transactions, int batchSize) throws SQLException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
         }
+        List<Integer> ids = new ArrayList<>(transactions.size());
+        if (transactions.isEmpty()) {
+            return ids;
+        }
+        int rowsPerStatement = Math.min(batchSize, MAX_INSERT_ROWS);
+
+        return inTransaction(connection -> {
+            for (int start = 0; start < transactions.size(); start += rowsPerStatement) {
+                List<T> chunk = transactions.subList(start, Math.min(start + rowsPerStatement, transactions.size()));
+                // Full-size chunks share one cached statement; only the last, shorter chunk prepares its own
+                String sql = multiRowInsertSql(chunk.size());
+                PreparedStatement stmt = prepare(connection, sql, true);
+                // Traced per statement, without parameters: a statement binds four values per row
+                try (QueryTrace trace = trace("addAll", sql)) {
+                    for (int row = 0; row < chunk.size(); row++) {
+                        bindInsert(stmt, row * INSERT_COLUMNS, chunk.get(row));
+                    }
+                    stmt.executeUpdate();
+                    trace.executed();
+
+                    // MySQL numbers the rows of one INSERT consecutively; the driver returns every key
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        for (T transaction : chunk) {
+                            if (!generatedKeys.next()) {
+                                throw new SQLException("Batch insert into " + tableName + " failed, no ID obtained.");
+                            }
+                            transaction.setId(generatedKeys.getInt(1));
+                            ids.add(transaction.getId());
+                        }
+                    }
+                    trace.completed(chunk.size());
+                }
+            }
+            return ids;
+        });
     }
 
-    // Delete record by ID
-    public boolean deleteById(int id) throws SQLException {
-        String sql = String.format("DELETE FROM %s WHERE id = ?", tableName);
-        
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
+    // getInsertSql() with its VALUES group repeated once per row
+    private String multiRowInsertSql(int rows) {
+        String insertSql = getInsertSql();
+        String values = insertSql.substring(insertSql.lastIndexOf('('));
+        return insertSql + String.join("", Collections.nCopies(rows - 1, ", " + values));
+    }
+
+    // Delete every record in the table, returns the number of rows removed
+    public int deleteAll() throws SQLException {
+        try (Connection conn = pool.borrow();
+             QueryTrace trace = trace("deleteAll", deleteAllSql)) {
+            int deleted = prepare(conn, deleteAllSql).executeUpdate();
+            trace.completed(deleted);
+            return deleted;
+        }
+    }
+
+    // Delete every record belonging to a user, returns the number of rows removed
+    public int deleteByUserId(int userId) throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, deleteByUserSql);
+            stmt.setInt(1, userId);
+            try (QueryTrace trace = trace("deleteByUserId", deleteByUserSql, userId)) {
+                int deleted = stmt.executeUpdate();
+                trace.completed(deleted);
+                return deleted;
+            }
+        }
+    }
+
+    // Delete records dated between two YYYY-MM-DD dates (inclusive) for a user, or all users
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        String sql = userId == ALL_USERS ? deleteByDateRangeAllSql : deleteByDateRangeSql;
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, sql);
+            stmt.setString(1, fromDate);
+            stmt.setString(2, toDate);
+            if (userId != ALL_USERS) {
+                stmt.setInt(3, userId);
+            }
+            Object[] parameters = userId == ALL_USERS
+                ? new Object[] { fromDate, toDate }
+                : new Object[] { fromDate, toDate, userId };
+            try (QueryTrace trace = trace("deleteByDateRange", sql, parameters)) {
+                int deleted = stmt.executeUpdate();
+                trace.completed(deleted);
+                return deleted;
+            }
         }
     }
 
+    // Delete a list of records by ID in chunks inside one transaction, returns the number of rows removed
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        return inTransaction(connection -> {
+            int deleted = 0;
+            for (int start = 0; start < ids.size(); start += DELETE_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(start, Math.min(start + DELETE_CHUNK_SIZE, ids.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                String sql = "DELETE FROM " + tableName + " WHERE id IN (" + placeholders + ")";
+
+                // Not cached: the placeholder count changes with the chunk size
+                try (PreparedStatement stmt = connection.prepareStatement(sql);
+                     QueryTrace trace = trace("deleteByIds", sql, chunk.toArray())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    int chunkDeleted = stmt.executeUpdate();
+                    trace.completed(chunkDeleted);
+                    deleted += chunkDeleted;
+                }
+            }
+            return deleted;
+        });
+    }
+
+    // Runs the work as one transaction on a single pooled connection, rolling back if any statement fails
+    protected <R> R inTransaction(SqlWork<R> work) throws SQLException {
+        return pool.inTransaction(work);
+    }
+
+    // Count, total, min and max for a user (or all users), computed by MySQL in one query
+    public TransactionSummary getSummary(int userId) throws SQLException {
+        String sql = userId == ALL_USERS ? summaryAllSql : summarySql;
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, sql);
+            bindUserFilter(stmt, userId, 1);
+            try (QueryTrace trace = trace("getSummary", sql, userParameters(userId));
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                rs.next();
+                TransactionSummary summary = new TransactionSummary(rs.getInt(1), centsOf(rs, 2), centsOf(rs, 3), centsOf(rs, 4));
+                trace.completed(1);
+                return summary;
+            }
+        }
+    }
+
+    // Sum of amounts for a user (or all users)
+    public Money getTotal(int userId) throws SQLException {
+        String sql = userId == ALL_USERS ? totalAllSql : totalSql;
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, sql);
+            bindUserFilter(stmt, userId, 1);
+            try (QueryTrace trace = trace("getTotal", sql, userParameters(userId));
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                rs.next();
+                Money total = Money.ofCents(centsOf(rs, 1));
+                trace.completed(1);
+                return total;
+            }
+        }
+    }
+
+    // Number of records for a user (or all users)
+    public int getCount(int userId) throws SQLException {
+        String sql = userId == ALL_USERS ? countAllSql : countSql;
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, sql);
+            bindUserFilter(stmt, userId, 1);
+            try (QueryTrace trace = trace("getCount", sql, userParameters(userId));
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                rs.next();
+                int count = rs.getInt(1);
+                trace.completed(1);
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Gets the page of records that follows an ID (keyset pagination)
+     * Cost stays the same on every page because the query seeks on the primary key instead of using OFFSET
+     * Example: getPageAfter(1, 0, 20) is the first page, getPageAfter(1, lastIdOnPage, 20) the next
+     * @param userId ID of the user, or ALL_USERS
+     * @param afterId Only records with a larger ID are returned (0 for the first page)
+     * @param pageSize Maximum number of records on the page
+     */
+    public Page<T> getPageAfter(int userId, int afterId, int pageSize) throws SQLException {
+        List<T> rows = readPage("getPageAfter", userId == ALL_USERS ? pageAfterAllSql : pageAfterSql, userId, afterId, pageSize);
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows.remove(pageSize);
+        }
+        return new Page<>(rows, afterId > 0, hasNext);
+    }
+
+    /**
+     * Gets the page of records that precedes an ID, still in ascending ID order
+     * Example: getPageBefore(1, firstIdOnPage, 20) is the previous page
+     * @param userId ID of the user, or ALL_USERS
+     * @param beforeId Only records with a smaller ID are returned
+     * @param pageSize Maximum number of records on the page
+     */
+    public Page<T> getPageBefore(int userId, int beforeId, int pageSize) throws SQLException {
+        List<T> rows = readPage("getPageBefore", userId == ALL_USERS ? pageBeforeAllSql : pageBeforeSql, userId, beforeId, pageSize);
+        boolean hasPrevious = rows.size() > pageSize;
+        if (hasPrevious) {
+            rows.remove(pageSize);
+        }
+        Collections.reverse(rows);
+        return new Page<>(rows, hasPrevious, true);
+    }
+
+    // Runs a page query, reading one row more than the page size to learn whether another page exists
+    private List<T> readPage(String method, String sql, int userId, int keyId, int pageSize) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        List<T> rows = new ArrayList<>(pageSize + 1);
+
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement stmt = prepare(conn, sql);
+            int index = 1;
+            if (userId != ALL_USERS) {
+                stmt.setInt(index++, userId);
+            }
+            stmt.setInt(index++, keyId);
+            stmt.setInt(index, pageSize + 1);
+
+            Object[] parameters = userId == ALL_USERS
+                ? new Object[] { keyId, pageSize + 1 }
+                : new Object[] { userId, keyId, pageSize + 1 };
+            try (QueryTrace trace = trace(method, sql, parameters);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    rows.add(mapRow(rs));
+                }
+                trace.completed(rows.size());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Streams every record of a user (or all users) in ID order without building a list
+     * Uses a forward-only, read-only ResultSet with STREAM_FETCH_SIZE so memory stays flat
+     * The connection is held until the last row is handled, so keep the handler quick
+     * @param userId ID of the user, or ALL_USERS
+     * @param handler Called once per record
+     * @return Number of records streamed
+     */
+    public int forEachRow(int userId, Consumer<T> handler) throws SQLException {
+        int count = 0;
+
+        String sql = userId == ALL_USERS ? streamAllSql : streamSql;
+        // Not cached: a streaming ResultSet ties up its statement until fully read
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            bindUserFilter(stmt, userId, 1);
+
+            // While streaming, materialize time includes fetching later rows and the handler's work
+            try (QueryTrace trace = trace("forEachRow", sql, userParameters(userId));
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    handler.accept(mapRow(rs));
+                    count++;
+                }
+                trace.completed(count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Streams the fields of every record of a user (or all users) in ID order, without building records
+     * Same forward-only STREAM_FETCH_SIZE ResultSet as forEachRow, reading the columns loadColumnar reads
+     * @param userId ID of the user, or ALL_USERS
+     * @param handler Called once per record, while the connection is held
+     * @return Number of records streamed
+     */
+    public int forEachRawRow(int userId, RowHandler handler) throws SQLException {
+        int count = 0;
+
+        String sql = userId == ALL_USERS ? rawRowAllSql : rawRowSql;
+        // Not cached, for the same reason as forEachRow
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            bindUserFilter(stmt, userId, 1);
+
+            try (QueryTrace trace = trace("forEachRawRow", sql, userParameters(userId));
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    handler.row(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getInt(4), rs.getString(5));
+                    count++;
+                }
+                trace.completed(count);
+            }
+        }
+        return count;
+    }
+
+    // Streams a user's records (or all records) straight into primitive columns, without building objects
+    public ColumnarTransactions loadColumnar(int userId) throws SQLException {
+        ColumnarTransactions columns = new ColumnarTransactions();
+        LabelDictionary labels = LabelDictionary.shared();
+
+        String sql = userId == ALL_USERS ? columnarAllSql : columnarSql;
+        // Not cached, for the same reason as forEachRow
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            bindUserFilter(stmt, userId, 1);
+
+            try (QueryTrace trace = trace("loadColumnar", sql, userParameters(userId));
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    columns.append(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getInt(4), labels.idOf(rs.getString(5)));
+                }
+                trace.completed(columns.size());
+            }
+        }
+        return columns;
+    }
+
+    // Reads a DECIMAL amount column as cents; SQL NULL (e.g. SUM of no rows) reads as 0
+    protected static long centsOf(ResultSet rs, int column) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        return value == null ? 0 : Money.toCents(value);
+    }
+
+    protected static long centsOf(ResultSet rs, String column) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        return value == null ? 0 : Money.toCents(value);
+    }
+
+    // Binds cents to a DECIMAL(10,2) placeholder exactly
+    protected static void setCents(PreparedStatement stmt, int index, long cents) throws SQLException {
+        stmt.setBigDecimal(index, BigDecimal.valueOf(cents, 2));
+    }
+
+    /**
+     * Starts timing a statement for Flight Recorder and the slow-query log
+     * @param method DAO method name, reported as table.method
+     * @param sql Statement text
+     * @param parameters Values bound to the placeholders, in order
+     */
+    protected QueryTrace trace(String method, String sql, Object... parameters) {
+        return QueryTrace.start(tableName + "." + method, sql, parameters);
+    }
+
+    // Parameters of a per-user query for tracing, none for ALL_USERS
+    protected static Object[] userParameters(int userId) {
+        return userId == ALL_USERS ? new Object[0] : new Object[] { userId };
+    }
+
+    // Binds the user ID placeholder of a per-user query, nothing for ALL_USERS
+    protected static void bindUserFilter(PreparedStatement stmt, int userId, int index) throws SQLException {
+        if (userId != ALL_USERS) {
+            stmt.setInt(index, userId);
+        }
+    }
+
+    /**
+     * Gets an open prepared statement for the SQL from the connection's cache, preparing it on a miss
+     * The statement belongs to the cache: callers must not close it, only its ResultSets
+     * @param conn Borrowed connection the statement runs on
+     * @param sql Constant SQL text
+     * @return A statement with its parameters cleared
+     */
+    protected PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return prepare(conn, sql, false);
+    }
+
+    /**
+     * Same as prepare(conn, sql) but can request generated keys for INSERT statements
+     */
+    protected PreparedStatement prepare(Connection conn, String sql, boolean returnGeneratedKeys) throws SQLException {
+        StatementCache cache = statementCaches.computeIfAbsent(conn, c -> new StatementCache(STATEMENT_CACHE_SIZE));
+        String key = returnGeneratedKeys ? sql + "\u0000keys" : sql;
+
+        PreparedStatement stmt = cache.get(key);
+        if (stmt != null) {
+            statementCacheHits.increment();
+            stmt.clearParameters();
+            return stmt;
+        }
+
+        statementCacheMisses.increment();
+        stmt = returnGeneratedKeys
+            ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+            : conn.prepareStatement(sql);
+        cache.put(key, stmt);
+        return stmt;
+    }
+
+    /**
+     * The per-user and per-ID queries this DAO runs, each with sample parameters
+     * Used by test.QueryPlanCheck to EXPLAIN every hot query and catch full table scans
+     * All-users totals and deletes are left out because they read the whole table by design
+     * @return SQL text mapped to the parameters to bind
+     */
+    public Map<String, Object[]> getQueryPlanSamples() {
+        Map<String, Object[]> samples = new LinkedHashMap<>();
+        samples.put(deleteByIdSql, new Object[] { 1 });
+        samples.put(deleteByUserSql, new Object[] { 1 });
+        samples.put(deleteByDateRangeSql, new Object[] { "2024-01-01", "2024-12-31", 1 });
+        samples.put("DELETE FROM " + tableName + " WHERE id IN (?, ?, ?)", new Object[] { 1, 2, 3 });
+        samples.put(summarySql, new Object[] { 1 });
+        samples.put(totalSql, new Object[] { 1 });
+        samples.put(countSql, new Object[] { 1 });
+        samples.put(pageAfterSql, new Object[] { 1, 0, 21 });
+        samples.put(pageAfterAllSql, new Object[] { 0, 21 });
+        samples.put(pageBeforeSql, new Object[] { 1, 100, 21 });
+        samples.put(pageBeforeAllSql, new Object[] { 100, 21 });
+        samples.put(streamSql, new Object[] { 1 });
+        samples.put(columnarSql, new Object[] { 1 });
+        samples.put(rawRowSql, new Object[] { 1 });
+        return samples;
+    }
+
+    // Statement cache statistics
+    public long getStatementCacheHits() { return statementCacheHits.sum(); }
+
+    public long getStatementCacheMisses() { return statementCacheMisses.sum(); }
+
+    public double getStatementCacheHitRate() {
+        long hits = getStatementCacheHits();
+        long total = hits + getStatementCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
     // Get records by user ID
     public abstract List<T> getByUserId(int userId) throws SQLException;
 
     // Add new record
     public abstract T add(T transaction) throws SQLException;
 
+    // INSERT statement with placeholders for user_id, amount, label and date
+    protected abstract String getInsertSql();
+
+    // Binds a record's values to the INSERT_COLUMNS placeholders after offset (0 for getInsertSql() itself)
+    protected abstract void bindInsert(PreparedStatement stmt, int offset, T transaction) throws SQLException;
+
     // Update existing record
     public abstract boolean update(T transaction) throws SQLException;
+
+    // Builds a record from the current row of a SELECT * result
+    protected abstract T mapRow(ResultSet rs) throws SQLException;
 }
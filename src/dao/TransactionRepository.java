@@ -0,0 +1,81 @@
+// TransactionRepository.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
+
+/**
+ * Operations the services need on a table of transactions
+ * Implemented by TransactionDAO (MySQL) and by decorators such as CachingTransactionRepository
+ * A userId of TransactionDAO.ALL_USERS means every user where noted
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public interface TransactionRepository<T extends Transaction> {
+    /**
+     * Receives one record's stored fields from forEachRawRow, without a record being built
+     * Amounts are in cents and dates in days since 1970-01-01 (see DateCodec)
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void row(int id, int userId, long amountCents, int epochDay, String label);
+    }
+
+    // Get records by user ID
+    List<T> getByUserId(int userId) throws SQLException;
+
+    // Add new record, setting its generated ID
+    T add(T transaction) throws SQLException;
+
+    // Add many records in one transaction, returning their generated IDs in order
+    List<Integer> addAll(List<T> transactions) throws SQLException;
+
+    // Update existing record
+    boolean update(T transaction) throws SQLException;
+
+    // Delete record by ID
+    boolean deleteById(int id) throws SQLException;
+
+    // Delete every record, returns the number of rows removed
+    int deleteAll() throws SQLException;
+
+    // Delete every record of a user, returns the number of rows removed
+    int deleteByUserId(int userId) throws SQLException;
+
+    // Delete records dated between two YYYY-MM-DD dates (inclusive) for a user or ALL_USERS
+    int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException;
+
+    // Delete records by ID, returns the number of rows removed
+    int deleteByIds(List<Integer> ids) throws SQLException;
+
+    // Count, total, min and max for a user or ALL_USERS
+    TransactionSummary getSummary(int userId) throws SQLException;
+
+    // Sum of amounts for a user or ALL_USERS
+    Money getTotal(int userId) throws SQLException;
+
+    // Number of records for a user or ALL_USERS
+    int getCount(int userId) throws SQLException;
+
+    // Page of records after an ID, for a user or ALL_USERS
+    Page<T> getPageAfter(int userId, int afterId, int pageSize) throws SQLException;
+
+    // Page of records before an ID, for a user or ALL_USERS
+    Page<T> getPageBefore(int userId, int beforeId, int pageSize) throws SQLException;
+
+    // Stream every record of a user or ALL_USERS in ID order, returns the number of records
+    int forEachRow(int userId, Consumer<T> handler) throws SQLException;
+
+    // Stream the fields of every record of a user or ALL_USERS in ID order, returns the number of records
+    int forEachRawRow(int userId, RowHandler handler) throws SQLException;
+
+    // Load the records of a user or ALL_USERS into primitive columns for reports
+    ColumnarTransactions loadColumnar(int userId) throws SQLException;
+}
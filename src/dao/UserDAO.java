@@ -0,0 +1,130 @@
+// UserDAO.java
+// Copyright 2024 maximusf
+
+// Reads users and per-user totals for the admin user directory
+
+package dao;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import models.Page;
+import models.User;
+import models.UserSummary;
+
+/**
+ * Handles database reads of the users table
+ *
+ * A page of the directory is one query: the page of users is picked by seeking on the primary key
+ * (keyset pagination, as in TransactionDAO.getPageAfter), then each user is joined to the COUNT and
+ * SUM of their income and expenses. The totals are lateral derived tables, so each one is an index
+ * lookup on idx_income_user_date / idx_expenses_user_date for the users on the page only, instead
+ * of one query per user or a grouping of both tables in full.
+ *
+ * Example usage:
+ * UserDAO users = new UserDAO(pool);
+ * Page<UserSummary> first = users.getSummaryPageAfter(0, 20);
+ */
+public class UserDAO implements UserRepository {
+    private static final String SELECT_BY_ID_SQL = "SELECT id, name, email FROM users WHERE id = ?";
+    // Totals for the users picked by the derived table u; aggregates without GROUP BY always give one row
+    private static final String SUMMARY_SQL =
+        "SELECT u.id, u.name, u.email, i.total, e.total, i.count + e.count FROM (%s) u "
+        + "JOIN LATERAL (SELECT COALESCE(SUM(amount), 0) AS total, COUNT(*) AS count FROM income WHERE user_id = u.id) i "
+        + "JOIN LATERAL (SELECT COALESCE(SUM(amount), 0) AS total, COUNT(*) AS count FROM expenses WHERE user_id = u.id) e "
+        + "ORDER BY u.id";
+    private static final String PAGE_AFTER_SQL =
+        String.format(SUMMARY_SQL, "SELECT id, name, email FROM users WHERE id > ? ORDER BY id LIMIT ?");
+    private static final String PAGE_BEFORE_SQL =
+        String.format(SUMMARY_SQL, "SELECT id, name, email FROM users WHERE id < ? ORDER BY id DESC LIMIT ?");
+
+    private final ConnectionPool pool;
+
+    public UserDAO(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public User getById(int id) throws SQLException {
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ID_SQL)) {
+            stmt.setInt(1, id);
+            try (QueryTrace trace = QueryTrace.start("users.getById", SELECT_BY_ID_SQL, id);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                User user = rs.next() ? new User(rs.getInt(1), rs.getString(2), rs.getString(3)) : null;
+                trace.completed(user == null ? 0 : 1);
+                return user;
+            }
+        }
+    }
+
+    /**
+     * Gets the page of users that follows an ID, with their totals
+     * Example: getSummaryPageAfter(0, 20) is the first page, getSummaryPageAfter(lastIdOnPage, 20) the next
+     * @param afterId Only users with a larger ID are returned (0 for the first page)
+     * @param pageSize Maximum number of users on the page
+     */
+    @Override
+    public Page<UserSummary> getSummaryPageAfter(int afterId, int pageSize) throws SQLException {
+        List<UserSummary> rows = readPage("getSummaryPageAfter", PAGE_AFTER_SQL, afterId, pageSize);
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows.remove(pageSize);
+        }
+        return new Page<>(rows, afterId > 0, hasNext);
+    }
+
+    /**
+     * Gets the page of users that precedes an ID, still in ascending ID order
+     * @param beforeId Only users with a smaller ID are returned
+     * @param pageSize Maximum number of users on the page
+     */
+    @Override
+    public Page<UserSummary> getSummaryPageBefore(int beforeId, int pageSize) throws SQLException {
+        List<UserSummary> rows = readPage("getSummaryPageBefore", PAGE_BEFORE_SQL, beforeId, pageSize);
+        // Rows come back in ascending order, so the extra row is the first
+        boolean hasPrevious = rows.size() > pageSize;
+        if (hasPrevious) {
+            rows.remove(0);
+        }
+        return new Page<>(rows, hasPrevious, true);
+    }
+
+    /**
+     * Representative parameters for each query, used by test.QueryPlanCheck to EXPLAIN them
+     */
+    public Map<String, Object[]> getQueryPlanSamples() {
+        Map<String, Object[]> samples = new LinkedHashMap<>();
+        samples.put(SELECT_BY_ID_SQL, new Object[] { 1 });
+        samples.put(PAGE_AFTER_SQL, new Object[] { 0, 21 });
+        samples.put(PAGE_BEFORE_SQL, new Object[] { 100, 21 });
+        return samples;
+    }
+
+    // Runs a page query, reading one user more than the page size to learn whether another page exists
+    private List<UserSummary> readPage(String method, String sql, int keyId, int pageSize) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        List<UserSummary> rows = new ArrayList<>(pageSize + 1);
+
+        try (Connection conn = pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, keyId);
+            stmt.setInt(2, pageSize + 1);
+            try (QueryTrace trace = QueryTrace.start("users." + method, sql, keyId, pageSize + 1);
+                 ResultSet rs = stmt.executeQuery()) {
+                trace.executed();
+                while (rs.next()) {
+                    rows.add(new UserSummary(new User(rs.getInt(1), rs.getString(2), rs.getString(3)),
+                        TransactionDAO.centsOf(rs, 4), TransactionDAO.centsOf(rs, 5), rs.getInt(6)));
+                }
+                trace.completed(rows.size());
+            }
+        }
+        return rows;
+    }
+}
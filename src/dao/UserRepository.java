@@ -0,0 +1,24 @@
+// UserRepository.java
+// Copyright 2024 maximusf
+
+package dao;
+
+import java.sql.SQLException;
+import models.Page;
+import models.User;
+import models.UserSummary;
+
+/**
+ * Reads the users table: single users for login checks and pages of users with their totals
+ * Implemented by UserDAO and cached by CachingUserRepository
+ */
+public interface UserRepository {
+    // The user with an ID, or null if there is none
+    User getById(int id) throws SQLException;
+
+    // Users with a larger ID than afterId (0 for the first page) and their totals, in ID order
+    Page<UserSummary> getSummaryPageAfter(int afterId, int pageSize) throws SQLException;
+
+    // Users with a smaller ID than beforeId and their totals, still in ascending ID order
+    Page<UserSummary> getSummaryPageBefore(int beforeId, int pageSize) throws SQLException;
+}
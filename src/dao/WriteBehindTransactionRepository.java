@@ -0,0 +1,704 @@
+// WriteBehindTransactionRepository.java
+// Copyright 2024 maximusf
+
+// Acknowledges adds once they are spooled to a local file and inserts them in batches in the background
+
+package dao;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.BatchUpdateException;
+import java.sql.DataTruncation;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import models.ColumnarTransactions;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionFactory;
+import models.TransactionSummary;
+import util.DateCodec;
+import util.Environment;
+
+/**
+ * Makes add() return once the record is queued and appended to a spool file, instead of after
+ * an INSERT round trip. A background thread inserts queued records with one addAll as soon as
+ * batchSize are waiting or the oldest has waited flushMillis.
+ *
+ * - The queue holds at most capacity records; add() waits for room while it is full
+ * - Every other call first waits for the queue to drain, so reads always see earlier adds
+ * - The spool is replayed when the repository is opened, so a crash never loses an acknowledged
+ *   add; a crash between a batch committing and the spool recording it inserts that batch again
+ * - Records the database refuses (bad data, unknown user) are written to <spool>.rejected
+ *   instead of holding up the queue; other errors are retried with backoff
+ * - An added record keeps ID 0 until its batch is inserted
+ *
+ * Example usage:
+ * try (WriteBehindTransactionRepository<Expense> expenses =
+ *          new WriteBehindTransactionRepository<>(expenseDao, "expenses", Expense::new)) {
+ *     expenses.add(new Expense(0, userId, Money.parse("12.50"), "Food", "2024-11-02"));
+ * } // close() inserts whatever is still queued
+ *
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public final class WriteBehindTransactionRepository<T extends Transaction> extends ForwardingTransactionRepository<T>
+        implements AutoCloseable {
+    // Spool record: int crc32c | byte type | byte 0 | short label bytes | long seq | int userId | long cents | int epochDay | label
+    // The CRC covers everything after itself; FLUSHED records mark every add up to seq as inserted
+    private static final int HEADER_BYTES = 8;
+    private static final int FIELD_BYTES = 24;
+    private static final byte ADD = 1;
+    private static final byte FLUSHED = 2;
+    private static final int MAX_LABEL_BYTES = 0xFFFF;
+
+    // Once the spool is this large and at least half of it is inserted records, it is rewritten
+    // with only the records still queued
+    private static final long COMPACT_BYTES = 1 << 20;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    // A queued add, its sequence number and its size in the spool
+    private static final class Pending<T> {
+        private final long seq;
+        private final T transaction;
+        private final int bytes;
+        private final long queuedAtNanos;
+
+        private Pending(long seq, T transaction, int bytes) {
+            this.seq = seq;
+            this.transaction = transaction;
+            this.bytes = bytes;
+            this.queuedAtNanos = System.nanoTime();
+        }
+    }
+
+    private final String name;
+    private final TransactionFactory<T> factory;
+    private final Path spool;
+    private final Path rejectedFile;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushNanos;
+    private final boolean sync;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signals the flusher: records arrived, a flush was requested, or the repository is closing
+    private final Condition work = lock.newCondition();
+    // Signals waiting callers: a batch was inserted or failed
+    private final Condition progress = lock.newCondition();
+    // Oldest first; records stay here until their batch is inserted
+    private final ArrayDeque<Pending<T>> pending = new ArrayDeque<>();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private FileChannel channel;
+    private long spoolBytes;
+    // Spool bytes of the records still queued
+    private long pendingBytes;
+    private long lastSeq;
+    private long failures;
+    private SQLException lastFailure;
+    private boolean flushRequested;
+    private boolean closing;
+    private boolean stopped;
+    private final Thread flusher;
+
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Opens a buffer configured from .env: WRITE_BEHIND_DIR (default spool), WRITE_BEHIND_QUEUE
+     * (default 1000), WRITE_BEHIND_BATCH (default DB_BATCH_SIZE), WRITE_BEHIND_FLUSH_MS (default 200)
+     * and WRITE_BEHIND_SYNC (default false)
+     * @param delegate Repository the records are inserted into
+     * @param name Table name, used for the spool file <dir>/<name>.spool
+     * @param factory Rebuilds spooled records, e.g. Expense::new
+     */
+    public WriteBehindTransactionRepository(TransactionRepository<T> delegate, String name,
+                                            TransactionFactory<T> factory) throws IOException {
+        this(delegate, name, factory, Paths.get(Environment.get("WRITE_BEHIND_DIR", "spool"), name + ".spool"),
+            Environment.getInt("WRITE_BEHIND_QUEUE", 1000),
+            Environment.getInt("WRITE_BEHIND_BATCH", TransactionDAO.DEFAULT_BATCH_SIZE),
+            Environment.getInt("WRITE_BEHIND_FLUSH_MS", 200),
+            Boolean.parseBoolean(Environment.get("WRITE_BEHIND_SYNC", "false")));
+    }
+
+    /**
+     * Opens the spool, queues any adds a previous run left in it and starts the flusher
+     * @param delegate Repository the records are inserted into
+     * @param name Table name, used in messages and the flusher's thread name
+     * @param factory Rebuilds spooled records, e.g. Expense::new
+     * @param spool Spool file, created if missing
+     * @param capacity Most records queued at once
+     * @param batchSize Records that trigger a flush, and the most inserted per addAll
+     * @param flushMillis Longest a record waits before its batch is inserted
+     * @param sync Whether each add is forced to disk; without it an add survives a crash of the
+     *             application but not of the operating system
+     */
+    public WriteBehindTransactionRepository(TransactionRepository<T> delegate, String name,
+                                            TransactionFactory<T> factory, Path spool,
+                                            int capacity, int batchSize, long flushMillis, boolean sync) throws IOException {
+        super(delegate);
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Write-behind queue and batch size must be at least 1");
+        }
+        this.name = name;
+        this.factory = factory;
+        this.spool = spool.toAbsolutePath();
+        this.rejectedFile = this.spool.resolveSibling(this.spool.getFileName() + ".rejected");
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.sync = sync;
+
+        Files.createDirectories(this.spool.getParent());
+        pending.addAll(readSpool());
+        rewriteSpool(pending);
+
+        flusher = new Thread(this::flushLoop, "write-behind-" + name);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues a record and appends it to the spool; it is inserted in the background
+     * Waits while the queue is full
+     * @throws SQLException If the spool can't be written, or the database fails while waiting for room
+     */
+    @Override
+    public T add(T transaction) throws SQLException {
+        lock.lock();
+        try {
+            checkOpen();
+            long failuresBefore = failures;
+            while (pending.size() >= capacity) {
+                if (failures != failuresBefore) {
+                    throw new SQLException("Write-behind queue for " + name + " is full and inserts are failing: "
+                        + lastFailure.getMessage(), lastFailure);
+                }
+                await(progress);
+                checkOpen();
+            }
+
+            long seq = lastSeq + 1;
+            int bytes;
+            try {
+                bytes = append(channel, ADD, seq, transaction);
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // Drop a partly written record so later ones stay readable
+                try {
+                    channel.truncate(spoolBytes);
+                } catch (IOException ignored) {
+                    // The torn record is skipped on replay instead
+                }
+                throw new SQLException("Could not spool " + name + " record: " + e.getMessage(), e);
+            }
+            spoolBytes += bytes;
+            pendingBytes += bytes;
+            lastSeq = seq;
+            pending.addLast(new Pending<>(seq, transaction, bytes));
+            // The flusher only needs waking to start the timer or when a batch is full
+            if (pending.size() == 1 || pending.size() == batchSize) {
+                work.signal();
+            }
+            return transaction;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the records synchronously, after everything already queued
+     */
+    @Override
+    public List<Integer> addAll(List<T> transactions) throws SQLException {
+        flush();
+        return delegate.addAll(transactions);
+    }
+
+    /**
+     * Waits until every record queued before this call is inserted or rejected
+     * @throws SQLException The error that made an insert fail meanwhile; the records stay queued
+     */
+    public void flush() throws SQLException {
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (stopped) {
+                throw new SQLException(pending.size() + " queued " + name + " records were not written; they stay in "
+                    + spool + " for the next start");
+            }
+            long target = lastSeq;
+            long failuresBefore = failures;
+            flushRequested = true;
+            work.signal();
+            while (!pending.isEmpty() && pending.peekFirst().seq <= target) {
+                if (failures != failuresBefore) {
+                    throw new SQLException("Could not insert queued " + name + " records: " + lastFailure.getMessage(),
+                        lastFailure);
+                }
+                await(progress);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<T> getByUserId(int userId) throws SQLException {
+        flush();
+        return delegate.getByUserId(userId);
+    }
+
+    @Override
+    public boolean update(T transaction) throws SQLException {
+        flush();
+        return delegate.update(transaction);
+    }
+
+    @Override
+    public boolean deleteById(int id) throws SQLException {
+        flush();
+        return delegate.deleteById(id);
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        flush();
+        return delegate.deleteAll();
+    }
+
+    @Override
+    public int deleteByUserId(int userId) throws SQLException {
+        flush();
+        return delegate.deleteByUserId(userId);
+    }
+
+    @Override
+    public int deleteByDateRange(int userId, String fromDate, String toDate) throws SQLException {
+        flush();
+        return delegate.deleteByDateRange(userId, fromDate, toDate);
+    }
+
+    @Override
+    public int deleteByIds(List<Integer> ids) throws SQLException {
+        flush();
+        return delegate.deleteByIds(ids);
+    }
+
+    @Override
+    public TransactionSummary getSummary(int userId) throws SQLException {
+        flush();
+        return delegate.getSummary(userId);
+    }
+
+    @Override
+    public Money getTotal(int userId) throws SQLException {
+        flush();
+        return delegate.getTotal(userId);
+    }
+
+    @Override
+    public int getCount(int userId) throws SQLException {
+        flush();
+        return delegate.getCount(userId);
+    }
+
+    @Override
+    public Page<T> getPageAfter(int userId, int afterId, int pageSize) throws SQLException {
+        flush();
+        return delegate.getPageAfter(userId, afterId, pageSize);
+    }
+
+    @Override
+    public Page<T> getPageBefore(int userId, int beforeId, int pageSize) throws SQLException {
+        flush();
+        return delegate.getPageBefore(userId, beforeId, pageSize);
+    }
+
+    @Override
+    public int forEachRow(int userId, Consumer<T> handler) throws SQLException {
+        flush();
+        return delegate.forEachRow(userId, handler);
+    }
+
+    @Override
+    public int forEachRawRow(int userId, RowHandler handler) throws SQLException {
+        flush();
+        return delegate.forEachRawRow(userId, handler);
+    }
+
+    @Override
+    public ColumnarTransactions loadColumnar(int userId) throws SQLException {
+        flush();
+        return delegate.loadColumnar(userId);
+    }
+
+    /**
+     * Inserts what is still queued and stops the flusher
+     * If the database keeps failing, the remaining records stay in the spool for the next start
+     */
+    @Override
+    public void close() {
+        int left;
+        lock.lock();
+        try {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            flushRequested = true;
+            work.signal();
+            long failuresBefore = failures;
+            while (!pending.isEmpty() && failures == failuresBefore) {
+                progress.awaitUninterruptibly();
+            }
+            left = pending.size();
+            stopped = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join(MAX_RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close write-behind spool " + spool + ": " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        if (left > 0) {
+            System.err.println(left + " queued " + name + " records could not be inserted; they stay in "
+                + spool + " for the next start");
+        }
+    }
+
+    public Path getSpool() { return spool; }
+
+    public Path getRejectedFile() { return rejectedFile; }
+
+    // Records queued and not yet inserted
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Records inserted by the flusher
+    public long getInserted() { return inserted.sum(); }
+
+    // addAll calls made by the flusher
+    public long getBatches() { return batches.sum(); }
+
+    // Records the database refused, written to the rejected file
+    public long getRejected() { return rejected.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehind[%s: %d pending, %d inserted in %d batches, %d rejected]",
+            name, getPending(), getInserted(), getBatches(), getRejected());
+    }
+
+    // Takes batches off the front of the queue until the repository is closed
+    private void flushLoop() {
+        long retryMillis = 0;
+        while (true) {
+            List<Pending<T>> batch = new ArrayList<>();
+            lock.lock();
+            try {
+                while (!stopped && !readyToFlush()) {
+                    if (pending.isEmpty()) {
+                        work.await();
+                    } else {
+                        work.awaitNanos(flushNanos - (System.nanoTime() - pending.peekFirst().queuedAtNanos));
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+                for (Pending<T> next : pending) {
+                    if (batch.size() == batchSize) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                insert(batch);
+                retryMillis = 0;
+            } catch (SQLException | RuntimeException e) {
+                // The batch stays queued and spooled until an insert succeeds or refuses it
+                retryMillis = Math.min(Math.max(100, retryMillis * 2), MAX_RETRY_MILLIS);
+                lock.lock();
+                try {
+                    failures++;
+                    lastFailure = e instanceof SQLException sql ? sql : new SQLException(e.toString(), e);
+                    progress.signalAll();
+                    // Back off, unless close() gives up first
+                    if (!stopped) {
+                        work.awaitNanos(TimeUnit.MILLISECONDS.toNanos(retryMillis));
+                    }
+                } catch (InterruptedException interrupted) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private boolean readyToFlush() {
+        return !pending.isEmpty() && (flushRequested || closing || pending.size() >= batchSize
+            || System.nanoTime() - pending.peekFirst().queuedAtNanos >= flushNanos);
+    }
+
+    // Inserts a batch with one addAll; if the database refuses it, retries record by record
+    // so one bad record is rejected without holding up the rest
+    private void insert(List<Pending<T>> batch) throws SQLException {
+        List<T> records = new ArrayList<>(batch.size());
+        for (Pending<T> next : batch) {
+            records.add(next.transaction);
+        }
+        try {
+            delegate.addAll(records);
+            batches.increment();
+            inserted.add(batch.size());
+            completed(batch);
+            return;
+        } catch (SQLException | RuntimeException e) {
+            if (!isRefused(e)) {
+                throw e;
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                delegate.addAll(List.of(batch.get(i).transaction));
+                batches.increment();
+                inserted.increment();
+            } catch (SQLException | RuntimeException e) {
+                if (!isRefused(e)) {
+                    completed(batch.subList(0, i));
+                    throw e;
+                }
+                reject(batch.get(i).transaction, e);
+            }
+        }
+        completed(batch);
+    }
+
+    // Removes inserted or rejected records from the queue and records that in the spool
+    private void completed(List<Pending<T>> done) {
+        if (done.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < done.size(); i++) {
+                pendingBytes -= pending.removeFirst().bytes;
+            }
+            if (pending.isEmpty()) {
+                flushRequested = false;
+                channel.truncate(0);
+                spoolBytes = 0;
+            } else if (spoolBytes >= COMPACT_BYTES && pendingBytes * 2 <= spoolBytes) {
+                rewriteSpool(pending);
+            } else {
+                spoolBytes += append(channel, FLUSHED, done.get(done.size() - 1).seq, null);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            // The records are in the database; if the spool can't say so they are inserted again on the next start
+            System.err.println("Could not update write-behind spool " + spool + ": " + e.getMessage());
+        } finally {
+            progress.signalAll();
+            lock.unlock();
+        }
+    }
+
+    // Bad values (SQLSTATE class 22) and constraint violations (class 23) fail the same way on every retry.
+    // Everything else, including lost connections (08) and rejected logins (28), is an outage to wait out.
+    private static boolean isRefused(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLDataException || cause instanceof SQLIntegrityConstraintViolationException
+                || cause instanceof DataTruncation) {
+                return true;
+            }
+            if (cause instanceof SQLException sql) {
+                String state = sql.getSQLState();
+                if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                    return true;
+                }
+                if (sql instanceof BatchUpdateException && sql.getNextException() != null && sql.getNextException() != sql) {
+                    return isRefused(sql.getNextException());
+                }
+            }
+        }
+        return false;
+    }
+
+    // Appends a refused record to the rejected file so it can be fixed and entered again
+    private void reject(T transaction, Exception e) {
+        rejected.increment();
+        String line = String.format("%s user %d %s %s %s %s: %s", LocalDateTime.now().format(TIMESTAMP),
+            transaction.getUserId(), transaction.getTransactionType(), transaction.getMoney(),
+            transaction.getDate(), transaction.getLabel(), e.getMessage());
+        try (BufferedWriter out = Files.newBufferedWriter(rejectedFile, StandardCharsets.UTF_8,
+                 StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line);
+            out.newLine();
+        } catch (IOException io) {
+            System.err.println("Could not write rejected " + name + " record (" + line + "): " + io.getMessage());
+        }
+    }
+
+    // Adds left in the spool by an earlier run that were never marked as inserted
+    // Reading stops at the first torn or corrupt record, which a crash mid-append leaves at the end
+    private List<Pending<T>> readSpool() throws IOException {
+        List<Pending<T>> adds = new ArrayList<>();
+        if (!Files.exists(spool)) {
+            return adds;
+        }
+        byte[] bytes = Files.readAllBytes(spool);
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        long flushedSeq = 0;
+        while (data.remaining() >= HEADER_BYTES + FIELD_BYTES) {
+            int start = data.position();
+            int checksum = data.getInt();
+            byte type = data.get();
+            data.get();
+            int labelBytes = Short.toUnsignedInt(data.getShort());
+            if (data.remaining() < FIELD_BYTES + labelBytes) {
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, start + 4, HEADER_BYTES - 4 + FIELD_BYTES + labelBytes);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            long seq = data.getLong();
+            int userId = data.getInt();
+            long cents = data.getLong();
+            int epochDay = data.getInt();
+            String label = new String(bytes, data.position(), labelBytes, StandardCharsets.UTF_8);
+            data.position(data.position() + labelBytes);
+
+            lastSeq = Math.max(lastSeq, seq);
+            if (type == FLUSHED) {
+                flushedSeq = Math.max(flushedSeq, seq);
+            } else if (type == ADD) {
+                adds.add(new Pending<>(seq, factory.create(0, userId, Money.ofCents(cents), label,
+                    DateCodec.format(DateCodec.fromEpochDay(epochDay))), data.position() - start));
+            }
+        }
+        long insertedUpTo = flushedSeq;
+        adds.removeIf(add -> add.seq <= insertedUpTo);
+        return adds;
+    }
+
+    // Replaces the spool with just the given records and reopens it for appending
+    private void rewriteSpool(Collection<Pending<T>> records) throws IOException {
+        Path temp = spool.resolveSibling(spool.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long bytes = 0;
+            for (Pending<T> next : records) {
+                bytes += append(out, ADD, next.seq, next.transaction);
+            }
+            out.force(true);
+            spoolBytes = bytes;
+            pendingBytes = bytes;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(temp, spool, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(spool, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Writes one spool record and returns its size; a null transaction writes a FLUSHED marker
+    private int append(FileChannel out, byte type, long seq, T transaction) throws IOException {
+        byte[] label = transaction == null ? new byte[0] : transaction.getLabel().getBytes(StandardCharsets.UTF_8);
+        if (label.length > MAX_LABEL_BYTES) {
+            throw new IllegalArgumentException("Label is too long");
+        }
+        int length = HEADER_BYTES + FIELD_BYTES + label.length;
+        if (record.capacity() < length) {
+            record = ByteBuffer.allocate(length);
+        }
+        record.clear();
+        record.putInt(0).put(type).put((byte) 0).putShort((short) label.length).putLong(seq);
+        if (transaction == null) {
+            record.putInt(0).putLong(0).putInt(0);
+        } else {
+            record.putInt(transaction.getUserId()).putLong(transaction.getAmountCents()).putInt(transaction.getEpochDay());
+        }
+        record.put(label);
+        crc.reset();
+        crc.update(record.array(), 4, length - 4);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+        return length;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closing) {
+            throw new SQLException("Write-behind buffer for " + name + " is closed");
+        }
+    }
+
+    private static void await(Condition condition) throws SQLException {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for queued inserts", e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+// Balance.java
+// Copyright 2024 maximusf
+
+package models;
+
+/**
+ * Income, expense and net totals for a user (or all users)
+ */
+public class Balance {
+    private final Money totalIncome;
+    private final Money totalExpenses;
+
+    public Balance(Money totalIncome, Money totalExpenses) {
+        this.totalIncome = totalIncome;
+        this.totalExpenses = totalExpenses;
+    }
+
+    public Money getTotalIncome() { return totalIncome; }
+
+    public Money getTotalExpenses() { return totalExpenses; }
+
+    // Net balance is income minus expenses, negative when spending exceeds income
+    public Money getNet() { return totalIncome.minus(totalExpenses); }
+
+    @Override
+    public String toString() {
+        return String.format("Balance{income=%s, expenses=%s, net=%s}",
+            totalIncome, totalExpenses, getNet());
+    }
+}
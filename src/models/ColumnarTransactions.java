@@ -0,0 +1,360 @@
+// ColumnarTransactions.java
+// Copyright 2024 maximusf
+
+package models;
+
+import java.util.Arrays;
+import java.util.List;
+import util.DateCodec;
+import util.LabelDictionary;
+
+/**
+ * Transactions stored column by column in primitive arrays, for reports over many rows
+ *
+ * Row i is ids[i], userIds[i], amountCents[i], epochDays[i] and labelIds[i], where the
+ * label ID comes from LabelDictionary.shared(). Scans walk the arrays in order and
+ * allocate nothing per row, so millions of rows fit in about 24 bytes each and
+ * aggregate at memory speed.
+ *
+ * Example usage:
+ * ColumnarTransactions expenses = expenseDao.loadColumnar(TransactionDAO.ALL_USERS);
+ * long spent = expenses.sumCents(Filter.all().between(fromDay, toDay));
+ * long[] byCategory = expenses.sumByLabel(Filter.all());
+ * int[] biggest = expenses.topRows(Filter.forUser(7), 10);
+ */
+public class ColumnarTransactions {
+    private int size = 0;
+    private int[] ids;
+    private int[] userIds;
+    private long[] amountCents;
+    private int[] epochDays;
+    private int[] labelIds;
+
+    public ColumnarTransactions() {
+        this(1024);
+    }
+
+    public ColumnarTransactions(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        ids = new int[capacity];
+        userIds = new int[capacity];
+        amountCents = new long[capacity];
+        epochDays = new int[capacity];
+        labelIds = new int[capacity];
+    }
+
+    /**
+     * Copies already loaded Income or Expense objects into columns
+     */
+    public static ColumnarTransactions of(List<? extends Transaction> transactions) {
+        ColumnarTransactions columns = new ColumnarTransactions(transactions.size());
+        LabelDictionary labels = LabelDictionary.shared();
+        for (Transaction transaction : transactions) {
+            columns.append(transaction.getId(), transaction.getUserId(), transaction.getAmountCents(),
+                transaction.getEpochDay(), labels.idOf(transaction.getLabel()));
+        }
+        return columns;
+    }
+
+    /**
+     * Adds one row, growing the arrays by half when full
+     */
+    public void append(int id, int userId, long cents, int epochDay, int labelId) {
+        if (size == ids.length) {
+            int capacity = size + (size >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            amountCents = Arrays.copyOf(amountCents, capacity);
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            labelIds = Arrays.copyOf(labelIds, capacity);
+        }
+        ids[size] = id;
+        userIds[size] = userId;
+        amountCents[size] = cents;
+        epochDays[size] = epochDay;
+        labelIds[size] = labelId;
+        size++;
+    }
+
+    public int size() { return size; }
+
+    // Column values for row i
+    public int getId(int row) { return ids[row]; }
+
+    public int getUserId(int row) { return userIds[row]; }
+
+    public long getAmountCents(int row) { return amountCents[row]; }
+
+    public int getEpochDay(int row) { return epochDays[row]; }
+
+    public int getLabelId(int row) { return labelIds[row]; }
+
+    public String getLabel(int row) { return LabelDictionary.shared().labelOf(labelIds[row]); }
+
+    /**
+     * Number of rows matching the filter
+     */
+    public int count(Filter filter) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter.matches(this, i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sum of the matching amounts in cents
+     * @throws ArithmeticException If the sum overflows a long
+     */
+    public long sumCents(Filter filter) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter.matches(this, i)) {
+                total = Math.addExact(total, amountCents[i]);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Indexes of the matching rows, in storage order
+     */
+    public int[] scan(Filter filter) {
+        int[] rows = new int[count(filter)];
+        int next = 0;
+        for (int i = 0; i < size && next < rows.length; i++) {
+            if (filter.matches(this, i)) {
+                rows[next++] = i;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Sums matching amounts per label
+     * @return Cents indexed by label ID; labels without matches hold 0
+     */
+    public long[] sumByLabel(Filter filter) {
+        long[] sums = new long[LabelDictionary.shared().size()];
+        for (int i = 0; i < size; i++) {
+            if (filter.matches(this, i)) {
+                sums[labelIds[i]] = Math.addExact(sums[labelIds[i]], amountCents[i]);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Sums matching amounts per user
+     * @return Cents indexed by user ID, sized to the largest user ID present
+     */
+    public long[] sumByUser(Filter filter) {
+        int maxUserId = 0;
+        for (int i = 0; i < size; i++) {
+            maxUserId = Math.max(maxUserId, userIds[i]);
+        }
+        long[] sums = new long[maxUserId + 1];
+        for (int i = 0; i < size; i++) {
+            if (filter.matches(this, i)) {
+                sums[userIds[i]] = Math.addExact(sums[userIds[i]], amountCents[i]);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Sums matching amounts per calendar month
+     * @param firstMonth Month key (see monthKey) of index 0
+     * @param months Number of months in the result; rows outside the range are skipped
+     * @return Cents indexed by month key minus firstMonth
+     */
+    public long[] sumByMonth(Filter filter, int firstMonth, int months) {
+        long[] sums = new long[months];
+        for (int i = 0; i < size; i++) {
+            if (filter.matches(this, i)) {
+                int index = monthKey(epochDays[i]) - firstMonth;
+                if (index >= 0 && index < months) {
+                    sums[index] = Math.addExact(sums[index], amountCents[i]);
+                }
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Adds matching rows in [fromRow, toRow) to per-label and per-month sums in one pass
+     * Lets callers split the rows into ranges and aggregate them on separate threads
+     * @param labelSums Cents indexed by label ID, at least LabelDictionary.shared().size() long
+     * @param monthSums Cents indexed by month key minus firstMonth; rows outside it are skipped
+     * @param firstMonth Month key of monthSums[0]
+     */
+    public void accumulate(Filter filter, int fromRow, int toRow, long[] labelSums, long[] monthSums, int firstMonth) {
+        int end = Math.min(toRow, size);
+        for (int i = fromRow; i < end; i++) {
+            if (!filter.matches(this, i)) {
+                continue;
+            }
+            long cents = amountCents[i];
+            labelSums[labelIds[i]] = Math.addExact(labelSums[labelIds[i]], cents);
+            int month = monthKey(epochDays[i]) - firstMonth;
+            if (month >= 0 && month < monthSums.length) {
+                monthSums[month] = Math.addExact(monthSums[month], cents);
+            }
+        }
+    }
+
+    /**
+     * Earliest and latest epoch day among the matching rows
+     * @return { first, last }, or null when nothing matches
+     */
+    public int[] dayRange(Filter filter) {
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (filter.matches(this, i)) {
+                first = Math.min(first, epochDays[i]);
+                last = Math.max(last, epochDays[i]);
+            }
+        }
+        return first > last ? null : new int[] { first, last };
+    }
+
+    /**
+     * Month key of a day: year * 12 + (month - 1), so consecutive months differ by 1
+     */
+    public static int monthKey(int epochDay) {
+        int date = DateCodec.fromEpochDay(epochDay);
+        return DateCodec.year(date) * 12 + DateCodec.month(date) - 1;
+    }
+
+    /**
+     * The n matching rows with the largest amounts, largest first, found in one pass
+     * with a bounded heap instead of sorting every row
+     * @return Row indexes, at most n of them
+     */
+    public int[] topRows(Filter filter, int n) {
+        // Min-heap of row indexes ordered by amount; the root is the smallest kept row
+        int[] heap = new int[Math.max(0, n)];
+        int heapSize = 0;
+        for (int i = 0; i < size && n > 0; i++) {
+            if (!filter.matches(this, i)) {
+                continue;
+            }
+            if (heapSize < n) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, amountCents);
+            } else if (amountCents[i] > amountCents[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, heapSize, amountCents);
+            }
+        }
+        return drainDescending(heap, heapSize, amountCents);
+    }
+
+    /**
+     * The n groups with the largest sums, largest first, e.g. the top categories from sumByLabel
+     * @param sums Group sums indexed by group key
+     * @return Group keys (indexes into sums), at most n of them, skipping empty groups
+     */
+    public static int[] topGroups(long[] sums, int n) {
+        int[] heap = new int[Math.max(0, n)];
+        int heapSize = 0;
+        for (int key = 0; key < sums.length && n > 0; key++) {
+            if (sums[key] == 0) {
+                continue;
+            }
+            if (heapSize < n) {
+                heap[heapSize] = key;
+                siftUp(heap, heapSize++, sums);
+            } else if (sums[key] > sums[heap[0]]) {
+                heap[0] = key;
+                siftDown(heap, heapSize, sums);
+            }
+        }
+        return drainDescending(heap, heapSize, sums);
+    }
+
+    private static void siftUp(int[] heap, int index, long[] values) {
+        int item = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (values[heap[parent]] <= values[item]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = item;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, long[] values) {
+        int item = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && values[heap[child + 1]] < values[heap[child]]) {
+                child++;
+            }
+            if (values[item] <= values[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = item;
+    }
+
+    // Empties the min-heap from the back so the result runs largest to smallest
+    private static int[] drainDescending(int[] heap, int heapSize, long[] values) {
+        int[] result = new int[heapSize];
+        for (int last = heapSize - 1; last >= 0; last--) {
+            result[last] = heap[0];
+            heap[0] = heap[last];
+            siftDown(heap, last, values);
+        }
+        return result;
+    }
+
+    /**
+     * Row condition for scans; unset parts match everything
+     * Immutable, so one filter can be shared between threads and queries
+     */
+    public static final class Filter {
+        private static final Filter ALL = new Filter(0, Integer.MIN_VALUE, Integer.MAX_VALUE, -1);
+
+        private final int userId;    // 0 matches every user
+        private final int fromDay;   // Inclusive epoch day
+        private final int toDay;     // Inclusive epoch day
+        private final int labelId;   // -1 matches every label
+
+        private Filter(int userId, int fromDay, int toDay, int labelId) {
+            this.userId = userId;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.labelId = labelId;
+        }
+
+        public static Filter all() { return ALL; }
+
+        public static Filter forUser(int userId) { return ALL.user(userId); }
+
+        // 0 means all users, like TransactionDAO.ALL_USERS
+        public Filter user(int userId) { return new Filter(userId, fromDay, toDay, labelId); }
+
+        public Filter between(int fromEpochDay, int toEpochDay) { return new Filter(userId, fromEpochDay, toEpochDay, labelId); }
+
+        public Filter label(int labelId) { return new Filter(userId, fromDay, toDay, labelId); }
+
+        boolean matches(ColumnarTransactions columns, int row) {
+            int day = columns.epochDays[row];
+            return (userId == 0 || columns.userIds[row] == userId)
+                && day >= fromDay && day <= toDay
+                && (labelId < 0 || columns.labelIds[row] == labelId);
+        }
+    }
+}
@@ -5,25 +5,34 @@
 
 package models;
 
+import util.LabelDictionary;
+
 public class Expense extends Transaction {
-    private String category;  // Type of expense
+    private String category;  // Type of expense (shared copy, see LabelDictionary)
 
     public Expense(int id, int userId, double amount, String category, String date) {
+        this(id, userId, Money.of(amount), category, date);
+    }
+
+    public Expense(int id, int userId, Money amount, String category, String date) {
         super(id, userId, amount, date);  // Call parent constructor
         
         if (category == null || category.trim().isEmpty()) {
             throw new IllegalArgumentException("Category cannot be empty");
         }
-        this.category = category;
+        this.category = LabelDictionary.shared().intern(category);
     }
 
     public String getCategory() { return category; }
 
+    @Override
+    public String getLabel() { return category; }
+
     public void setCategory(String category) {
         if (category == null || category.trim().isEmpty()) {
             throw new IllegalArgumentException("Category cannot be empty");
         }
-        this.category = category;
+        this.category = LabelDictionary.shared().intern(category);
     }
 
     @Override
@@ -31,7 +40,7 @@ public class Expense extends Transaction {
 
     @Override
     public String toString() {
-        return String.format("Expense{id=%d, userId=%d, amount=%.2f, category='%s', date='%s'}",
-            id, userId, amount, category, date);
+        return String.format("Expense{id=%d, userId=%d, amount=%s, category='%s', date='%s'}",
+            id, userId, Money.format(amountCents), category, getDate());
     }
 }
@@ -3,32 +3,41 @@
 
 package models;
 
+import util.LabelDictionary;
+
 public class Income extends Transaction {
-    private String source;  // Where the income came from
+    private String source;  // Where the income came from (shared copy, see LabelDictionary)
 
     public Income(int id, int userId, double amount, String source, String date) {
+        this(id, userId, Money.of(amount), source, date);
+    }
+
+    public Income(int id, int userId, Money amount, String source, String date) {
         super(id, userId, amount, date);  // Call parent constructor
         
         if (source == null || source.trim().isEmpty()) {
             throw new IllegalArgumentException("Source cannot be empty");
         }
-        this.source = source;
+        this.source = LabelDictionary.shared().intern(source);
     }
 
     public String getTransactionType() { return "Income"; }
 
     public String getSource() { return source; }
 
+    @Override
+    public String getLabel() { return source; }
+
     public void setSource(String source) {
         if (source == null || source.trim().isEmpty()) {
             throw new IllegalArgumentException("Source cannot be empty");
         }
-        this.source = source;
+        this.source = LabelDictionary.shared().intern(source);
     }
 
     @Override
     public String toString() {
-        return String.format("Income{id=%d, userId=%d, amount=%.2f, source='%s', date='%s'}",
-            id, userId, amount, source, date);
+        return String.format("Income{id=%d, userId=%d, amount=%s, source='%s', date='%s'}",
+            id, userId, Money.format(amountCents), source, getDate());
     }
 }
\ No newline at end of file
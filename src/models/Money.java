@@ -0,0 +1,132 @@
+// Money.java
+// Copyright 2024 maximusf
+
+package models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An exact amount of money stored as a whole number of cents
+ * Matches the DECIMAL(10,2) columns, so amounts read from MySQL and summed
+ * never pick up the rounding drift of double arithmetic
+ *
+ * Sums use Math.addExact on the cent values and throw ArithmeticException on
+ * overflow instead of wrapping around.
+ *
+ * Example usage:
+ * Money price = Money.parse("12.50");
+ * price.getCents();                   // 1250
+ * price.plus(Money.ofCents(5));       // 12.55
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Converts a decimal amount, rounding half up to whole cents
+     * @param amount Amount in dollars, e.g. a DECIMAL column from getBigDecimal
+     */
+    public static Money of(BigDecimal amount) {
+        return ofCents(toCents(amount));
+    }
+
+    /**
+     * Cent value of a decimal amount, rounded half up, without creating a Money
+     * @throws ArithmeticException If the amount does not fit in a long
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts a double using its shortest decimal form (12.1 becomes exactly 12.10)
+     * @param amount Amount in dollars
+     */
+    public static Money of(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Amount must be a number");
+        }
+        return of(BigDecimal.valueOf(amount));
+    }
+
+    /**
+     * Parses text such as "12.50" or "-3"
+     * @throws IllegalArgumentException If the text is not a number
+     */
+    public static Money parse(String text) {
+        try {
+            return of(new BigDecimal(text.trim()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid amount: " + text);
+        }
+    }
+
+    public long getCents() { return cents; }
+
+    public boolean isNegative() { return cents < 0; }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    // For display and code that still works in dollars
+    public double toDouble() {
+        return cents / 100.0;
+    }
+
+    /**
+     * Formats a cent amount as dollars with two decimals, e.g. 1250 -> "12.50"
+     */
+    public static String format(long cents) {
+        StringBuilder text = new StringBuilder(24);
+        if (cents < 0) {
+            text.append('-');
+        }
+        // Divide before taking the sign off so Long.MIN_VALUE can't overflow
+        long whole = Math.abs(cents / 100);
+        long fraction = Math.abs(cents % 100);
+        text.append(whole).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+}
@@ -0,0 +1,30 @@
+// Page.java
+// Copyright 2024 maximusf
+
+package models;
+
+import java.util.List;
+
+/**
+ * One page of records from a keyset-paginated query, in ascending ID order
+ * @param <T> The type of record on the page
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final boolean hasPrevious;  // Whether records exist before the first item
+    private final boolean hasNext;      // Whether records exist after the last item
+
+    public Page(List<T> items, boolean hasPrevious, boolean hasNext) {
+        this.items = items;
+        this.hasPrevious = hasPrevious;
+        this.hasNext = hasNext;
+    }
+
+    public List<T> getItems() { return items; }
+
+    public boolean isEmpty() { return items.isEmpty(); }
+
+    public boolean hasPrevious() { return hasPrevious; }
+
+    public boolean hasNext() { return hasNext; }
+}
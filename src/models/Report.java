@@ -0,0 +1,99 @@
+// Report.java
+// Copyright 2024 maximusf
+
+package models;
+
+import java.util.List;
+
+/**
+ * Income and expense analysis for a user (or all users)
+ * - Breakdowns of income by source and expenses by category, largest first
+ * - Month-by-month income, expenses, net and running cash flow
+ * Amounts are in cents, like Transaction
+ */
+public class Report {
+    private final List<LabelTotal> incomeBySource;
+    private final List<LabelTotal> expensesByCategory;
+    private final List<MonthTotal> months;
+    private final long totalIncomeCents;
+    private final long totalExpenseCents;
+
+    public Report(List<LabelTotal> incomeBySource, List<LabelTotal> expensesByCategory, List<MonthTotal> months,
+                  long totalIncomeCents, long totalExpenseCents) {
+        this.incomeBySource = incomeBySource;
+        this.expensesByCategory = expensesByCategory;
+        this.months = months;
+        this.totalIncomeCents = totalIncomeCents;
+        this.totalExpenseCents = totalExpenseCents;
+    }
+
+    public List<LabelTotal> getIncomeBySource() { return incomeBySource; }
+
+    public List<LabelTotal> getExpensesByCategory() { return expensesByCategory; }
+
+    public List<MonthTotal> getMonths() { return months; }
+
+    public Money getTotalIncome() { return Money.ofCents(totalIncomeCents); }
+
+    public Money getTotalExpenses() { return Money.ofCents(totalExpenseCents); }
+
+    // Net cash flow over the whole period
+    public Money getNetCashFlow() { return Money.ofCents(Math.subtractExact(totalIncomeCents, totalExpenseCents)); }
+
+    public boolean isEmpty() { return months.isEmpty(); }
+
+    /**
+     * Total for one source or category
+     */
+    public static class LabelTotal {
+        private final String label;
+        private final long cents;
+        private final double share; // Fraction of the overall total, 0..1
+
+        public LabelTotal(String label, long cents, double share) {
+            this.label = label;
+            this.cents = cents;
+            this.share = share;
+        }
+
+        public String getLabel() { return label; }
+
+        public Money getAmount() { return Money.ofCents(cents); }
+
+        public double getShare() { return share; }
+    }
+
+    /**
+     * Totals for one calendar month
+     */
+    public static class MonthTotal {
+        private final int year;
+        private final int month;
+        private final long incomeCents;
+        private final long expenseCents;
+        private final long cumulativeCents; // Net of this and every earlier month in the report
+
+        public MonthTotal(int year, int month, long incomeCents, long expenseCents, long cumulativeCents) {
+            this.year = year;
+            this.month = month;
+            this.incomeCents = incomeCents;
+            this.expenseCents = expenseCents;
+            this.cumulativeCents = cumulativeCents;
+        }
+
+        public int getYear() { return year; }
+
+        public int getMonth() { return month; }
+
+        // Month as YYYY-MM
+        public String getLabel() { return String.format("%04d-%02d", year, month); }
+
+        public Money getIncome() { return Money.ofCents(incomeCents); }
+
+        public Money getExpenses() { return Money.ofCents(expenseCents); }
+
+        public Money getNet() { return Money.ofCents(Math.subtractExact(incomeCents, expenseCents)); }
+
+        public Money getCumulative() { return Money.ofCents(cumulativeCents); }
+    }
+}
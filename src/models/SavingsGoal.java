@@ -0,0 +1,126 @@
+// SavingsGoal.java
+// Copyright 2024 maximusf
+
+package models;
+
+import java.util.OptionalInt;
+import util.DateCodec;
+
+/**
+ * A target amount a user wants to have saved between two dates
+ *
+ * The current amount starts at the amount already saved (initial) and moves with every income
+ * (up) and expense (down) the user records between the start and end dates; SavingsGoalDAO keeps
+ * it up to date as those are written. The projected completion date follows from the rate saved
+ * so far, so showing a goal never needs the transaction history.
+ */
+public class SavingsGoal {
+    private int id;
+    private final int userId;
+    private final long goalCents;
+    private final long currentCents;
+    private final long initialCents;
+    private final int startEpochDay;  // Days since 1970-01-01 (see DateCodec)
+    private final int endEpochDay;
+
+    // A new goal: nothing saved beyond the initial amount yet
+    public SavingsGoal(int id, int userId, Money goal, Money initial, String startDate, String endDate) {
+        this(id, userId, goal, initial, initial, startDate, endDate);
+    }
+
+    public SavingsGoal(int id, int userId, Money goal, Money current, Money initial, String startDate, String endDate) {
+        if (goal.getCents() <= 0) {
+            throw new IllegalArgumentException("Goal amount must be positive");
+        }
+        if (initial.isNegative()) {
+            throw new IllegalArgumentException("Amount already saved cannot be negative");
+        }
+        this.id = id;
+        this.userId = userId;
+        this.goalCents = goal.getCents();
+        this.currentCents = current.getCents();
+        this.initialCents = initial.getCents();
+        this.startEpochDay = toEpochDay(startDate);
+        this.endEpochDay = toEpochDay(endDate);
+        if (endEpochDay < startEpochDay) {
+            throw new IllegalArgumentException("End date cannot be before the start date");
+        }
+    }
+
+    public int getId() { return id; }
+
+    public void setId(int id) { this.id = id; }
+
+    public int getUserId() { return userId; }
+
+    public Money getGoal() { return Money.ofCents(goalCents); }
+
+    public long getGoalCents() { return goalCents; }
+
+    // Initial amount plus income minus expenses recorded since the start date, up to the end date
+    public Money getCurrent() { return Money.ofCents(currentCents); }
+
+    public long getCurrentCents() { return currentCents; }
+
+    public Money getInitial() { return Money.ofCents(initialCents); }
+
+    public long getInitialCents() { return initialCents; }
+
+    public String getStartDate() { return DateCodec.format(DateCodec.fromEpochDay(startEpochDay)); }
+
+    public String getEndDate() { return DateCodec.format(DateCodec.fromEpochDay(endEpochDay)); }
+
+    public int getStartEpochDay() { return startEpochDay; }
+
+    public int getEndEpochDay() { return endEpochDay; }
+
+    public boolean isReached() {
+        return currentCents >= goalCents;
+    }
+
+    // Share of the goal saved so far, from 0 to 1
+    public double getProgress() {
+        return Math.max(0, Math.min(1, (double) currentCents / goalCents));
+    }
+
+    /**
+     * Projects when the goal will be reached if saving continues at the rate since the start date
+     * @param todayEpochDay Today as days since 1970-01-01
+     * @return The projected day, or empty if the goal is reached, hasn't started or nothing was saved yet
+     */
+    public OptionalInt getProjectedEpochDay(int todayEpochDay) {
+        long saved = currentCents - initialCents;
+        long elapsedDays = (long) Math.min(todayEpochDay, endEpochDay) - startEpochDay + 1;
+        if (isReached() || saved <= 0 || elapsedDays <= 0) {
+            return OptionalInt.empty();
+        }
+        // Whole days, rounded up: the goal isn't reached part way through a day
+        long remainingDays = ((goalCents - currentCents) * elapsedDays + saved - 1) / saved;
+        return OptionalInt.of((int) Math.min(Integer.MAX_VALUE, todayEpochDay + remainingDays));
+    }
+
+    // Whether the projected day falls on or before the end date
+    public boolean isOnTrack(int todayEpochDay) {
+        if (isReached()) {
+            return true;
+        }
+        OptionalInt projected = getProjectedEpochDay(todayEpochDay);
+        return projected.isPresent() && projected.getAsInt() <= endEpochDay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SavingsGoal{id=%d, userId=%d, goal=%s, current=%s, initial=%s, start='%s', end='%s'}",
+            id, userId, Money.format(goalCents), Money.format(currentCents), Money.format(initialCents),
+            getStartDate(), getEndDate());
+    }
+
+    // Validates a YYYY-MM-DD date and converts it to days since 1970-01-01
+    private static int toEpochDay(String date) {
+        int parsed = DateCodec.parseIso(date);
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Date must be a valid date in YYYY-MM-DD format");
+        }
+        return DateCodec.toEpochDay(parsed);
+    }
+}
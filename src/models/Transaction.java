@@ -3,6 +3,8 @@
 
 package models;
 
+import util.DateCodec;
+
 /**
  * Base class for financial transactions
  * Contains common properties shared by Income and Expense
@@ -14,23 +16,24 @@ package models;
 public abstract class Transaction {
     protected int id;         // Database ID (auto-generated)
     protected int userId;     // User this transaction belongs to
-    protected double amount;  // Transaction amount in dollars
-    protected String date;    // Date in YYYY-MM-DD format
+    protected long amountCents; // Transaction amount in whole cents (see Money)
+    protected int epochDay;   // Date as days since 1970-01-01 (see DateCodec)
 
-    // Constructor with common validation
+    // Constructor for amounts given in dollars, converted to exact cents
     public Transaction(int id, int userId, double amount, String date) {
+        this(id, userId, Money.of(amount), date);
+    }
+
+    // Constructor with common validation
+    public Transaction(int id, int userId, Money amount, String date) {
         // Validate input data
-        if (amount < 0) {
+        if (amount.isNegative()) {
             throw new IllegalArgumentException("Amount cannot be negative");
         }
-        if (!date.matches("\\d{4}-\\d{2}-\\d{2}")) {
-            throw new IllegalArgumentException("Date must be in YYYY-MM-DD format");
-        }
-
         this.id = id;
         this.userId = userId;
-        this.amount = amount;
-        this.date = date;
+        this.amountCents = amount.getCents();
+        this.epochDay = toEpochDay(date);
     }
 
     // Common getters and setters
@@ -50,28 +53,55 @@ public abstract class Transaction {
         this.userId = userId;
     }
 
+    // Amount in dollars, for display and callers that predate Money
     public double getAmount() {
-        return amount;
+        return amountCents / 100.0;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public Money getMoney() {
+        return Money.ofCents(amountCents);
     }
 
     public void setAmount(double amount) {
-        if (amount < 0) {
+        setAmount(Money.of(amount));
+    }
+
+    public void setAmount(Money amount) {
+        if (amount.isNegative()) {
             throw new IllegalArgumentException("Amount cannot be negative");
         }
-        this.amount = amount;
+        this.amountCents = amount.getCents();
     }
 
+    // Date in YYYY-MM-DD format, rebuilt from the stored day number
     public String getDate() {
-        return date;
+        return DateCodec.format(DateCodec.fromEpochDay(epochDay));
+    }
+
+    public int getEpochDay() {
+        return epochDay;
     }
 
     public void setDate(String date) {
-        if (!date.matches("\\d{4}-\\d{2}-\\d{2}")) {
-            throw new IllegalArgumentException("Date must be in YYYY-MM-DD format");
+        this.epochDay = toEpochDay(date);
+    }
+
+    // Validates a YYYY-MM-DD date and converts it to days since 1970-01-01
+    private static int toEpochDay(String date) {
+        int parsed = DateCodec.parseIso(date);
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Date must be a valid date in YYYY-MM-DD format");
         }
-        this.date = date;
+        return DateCodec.toEpochDay(parsed);
     }
 
     // Abstract method that child classes must implement
     public abstract String getTransactionType();
+
+    // Source for income, category for expenses
+    public abstract String getLabel();
 }
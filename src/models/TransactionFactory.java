@@ -0,0 +1,14 @@
+// TransactionFactory.java
+// Copyright 2024 maximusf
+
+package models;
+
+/**
+ * Builds a transaction from its fields, e.g. Income::new or Expense::new
+ * Used wherever records are rebuilt from stored or copied fields: services, storage engines and caches
+ * @param <T> The type of transaction built
+ */
+@FunctionalInterface
+public interface TransactionFactory<T extends Transaction> {
+    T create(int id, int userId, Money amount, String label, String date);
+}
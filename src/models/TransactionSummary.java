@@ -0,0 +1,39 @@
+// TransactionSummary.java
+// Copyright 2024 maximusf
+
+package models;
+
+/**
+ * Aggregate figures for a set of transactions
+ * Computed by the database (COUNT/SUM/MIN/MAX) instead of summing rows in Java
+ * Amounts are kept in cents, like Transaction
+ */
+public class TransactionSummary {
+    private final int count;        // Number of transactions
+    private final long totalCents;  // Sum of all amounts
+    private final long minCents;    // Smallest amount (0 when there are no rows)
+    private final long maxCents;    // Largest amount (0 when there are no rows)
+
+    public TransactionSummary(int count, long totalCents, long minCents, long maxCents) {
+        this.count = count;
+        this.totalCents = totalCents;
+        this.minCents = minCents;
+        this.maxCents = maxCents;
+    }
+
+    public int getCount() { return count; }
+
+    public long getTotalCents() { return totalCents; }
+
+    public Money getTotal() { return Money.ofCents(totalCents); }
+
+    public Money getMin() { return Money.ofCents(minCents); }
+
+    public Money getMax() { return Money.ofCents(maxCents); }
+
+    @Override
+    public String toString() {
+        return String.format("TransactionSummary{count=%d, total=%s, min=%s, max=%s}",
+            count, Money.format(totalCents), Money.format(minCents), Money.format(maxCents));
+    }
+}
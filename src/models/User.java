@@ -0,0 +1,30 @@
+// User.java
+// Copyright 2024 maximusf
+
+package models;
+
+/**
+ * A row of the users table, without the password
+ */
+public class User {
+    private final int id;
+    private final String name;
+    private final String email;
+
+    public User(int id, String name, String email) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+    }
+
+    public int getId() { return id; }
+
+    public String getName() { return name; }
+
+    public String getEmail() { return email; }
+
+    @Override
+    public String toString() {
+        return String.format("User{id=%d, name='%s', email='%s'}", id, name, email);
+    }
+}
@@ -0,0 +1,40 @@
+// UserSummary.java
+// Copyright 2024 maximusf
+
+package models;
+
+/**
+ * A user with their income total, expense total and number of transactions
+ * Summed by the database for a whole page of users at once (see UserDAO)
+ */
+public class UserSummary {
+    private final User user;
+    private final long incomeCents;
+    private final long expenseCents;
+    private final int transactionCount;  // Income and expense records together
+
+    public UserSummary(User user, long incomeCents, long expenseCents, int transactionCount) {
+        this.user = user;
+        this.incomeCents = incomeCents;
+        this.expenseCents = expenseCents;
+        this.transactionCount = transactionCount;
+    }
+
+    public User getUser() { return user; }
+
+    public Money getTotalIncome() { return Money.ofCents(incomeCents); }
+
+    public Money getTotalExpenses() { return Money.ofCents(expenseCents); }
+
+    // Income minus expenses, negative when spending exceeds income
+    public Money getNet() { return Money.ofCents(incomeCents - expenseCents); }
+
+    public int getTransactionCount() { return transactionCount; }
+
+    @Override
+    public String toString() {
+        return String.format("UserSummary{id=%d, name='%s', email='%s', income=%s, expenses=%s, transactions=%d}",
+            user.getId(), user.getName(), user.getEmail(), Money.format(incomeCents), Money.format(expenseCents),
+            transactionCount);
+    }
+}
@@ -0,0 +1,57 @@
+// BalanceService.java
+// Copyright 2024 maximusf
+
+// This file contains the BalanceService class, which shows income, expense and net totals.
+// The totals are summed by the storage (one MySQL query or the journal's running totals) instead of loading every record.
+
+package services;
+
+import dao.BalanceRepository;
+import models.Balance;
+import util.PrintBuilder;
+import java.sql.SQLException;
+import java.util.Scanner;
+
+/**
+ * Service class to handle balance reporting
+ */
+public class BalanceService {
+    private final BalanceRepository dao;
+    private final Scanner scanner;
+    private final int currentUserId;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new BalanceService
+     * @param dao Balance totals from the configured storage
+     * @param scanner Scanner for user input
+     * @param currentUserId ID of the current user
+     * @param isAdmin Whether the current user is an admin
+     */
+    public BalanceService(BalanceRepository dao, Scanner scanner, int currentUserId, boolean isAdmin) {
+        this.dao = dao;
+        this.scanner = scanner;
+        this.currentUserId = currentUserId;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Shows income, expenses and net balance for the current user or specified user if admin
+     */
+    public void showBalance() throws SQLException {
+        int targetUserId = currentUserId;
+        if (isAdmin) {
+            PrintBuilder.message("Enter User ID (or 0 for all users): ").asPrompt().print();
+            targetUserId = scanner.nextInt();
+            scanner.nextLine();
+        }
+
+        Balance balance = dao.getBalance(targetUserId);
+        String label = !isAdmin ? "Your " : "";
+        String forUser = isAdmin && targetUserId != 0 ? " for User " + targetUserId : "";
+
+        PrintBuilder.message(String.format("%sTotal Income%s: $%s", label, forUser, balance.getTotalIncome())).print();
+        PrintBuilder.message(String.format("%sTotal Expenses%s: $%s", label, forUser, balance.getTotalExpenses())).print();
+        PrintBuilder.message(String.format("%sNet Balance%s: $%s", label, forUser, balance.getNet())).print();
+    }
+}
@@ -0,0 +1,580 @@
+// BatchRunner.java
+// Copyright 2024 maximusf
+
+// Runs income and expense commands from a script or the command line, printing one JSON result per command
+
+package services;
+
+import dao.StorageEngine;
+import models.Expense;
+import models.Income;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionSummary;
+import util.Environment;
+import util.JsonWriter;
+import util.TransactionEncoder;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies scripted commands without any prompts, for automation and nightly jobs
+ *
+ * One command per line, options as --name value pairs; quote values with spaces,
+ * blank lines and lines starting with # are skipped:
+ *   add-income     --amount 2500 --source Salary --date 20241101 [--user 5]
+ *   add-expense    --amount 12.50 --category "Eating Out" --date 2024-11-02 [--user 5]
+ *   update-income  --id 7 --user 5 --amount 2600 --source Salary --date 20241101   (admin)
+ *   update-expense --id 9 --user 5 --amount 13 --category Food --date 20241102     (admin)
+ *   delete-income  --id 7                                                          (admin)
+ *   delete-expense --id 9                                                          (admin)
+ *   list-income    [--user 5] [--after 0] [--limit 20]
+ *   list-expenses  [--user 5] [--after 0] [--limit 20]
+ *   total-income   [--user 5]
+ *   total-expenses [--user 5]
+ *   export-income   --out income.csv [--format csv|ndjson] [--user 5]   (.gz compresses, --user 0 = all, admin)
+ *   export-expenses --out expenses.ndjson.gz --format ndjson [--user 5]
+ *
+ * Consecutive writes are applied in one storage transaction (at most DB_BATCH_SIZE
+ * commands each), and runs of adds to the same table go in one addAll (multi-row INSERTs on MySQL). If any write
+ * in a group fails, the whole group is rolled back and each of its commands reports the
+ * failure. Reads run between groups and see every earlier write.
+ *
+ * Each command prints one line of JSON, e.g.
+ *   {"line":1,"command":"add-expense","ok":true,"id":42}
+ *   {"line":2,"command":"delete-income","ok":false,"error":"Income not found."}
+ *
+ * Example usage:
+ * BatchRunner batch = new BatchRunner(storage, incomes, expenses, Caller.of(777), System.out);
+ * int failed = batch.run(Files.newBufferedReader(Paths.get("nightly.txt")));
+ */
+public class BatchRunner {
+    // Writes per database transaction, so one long script doesn't hold locks for its whole run
+    private static final int MAX_GROUP = Environment.getInt("DB_BATCH_SIZE", 500);
+    private static final int PAGE_SIZE = Environment.getInt("PAGE_SIZE", 20);
+
+    private final StorageEngine storage;
+    private final Resource<Income> incomes;
+    private final Resource<Expense> expenses;
+    private final Caller caller;
+    private final PrintStream out;
+    private final JsonWriter json = new JsonWriter();
+
+    // Writes waiting to be applied together
+    private final List<Step> pending = new ArrayList<>();
+    // Table whose adds are queued for one addAll
+    private Resource<?> adding = null;
+    private int failed = 0;
+
+    /**
+     * @param storage Storage whose transactions group the writes; the operations' repositories must belong to it
+     * @param incomes Operations for income commands
+     * @param expenses Operations for expense commands
+     * @param caller User the commands run as
+     * @param out Where the JSON results are printed
+     */
+    public BatchRunner(StorageEngine storage, TransactionOperations<Income> incomes, TransactionOperations<Expense> expenses,
+                       Caller caller, PrintStream out) {
+        this.storage = storage;
+        this.incomes = new Resource<>(incomes, "source");
+        this.expenses = new Resource<>(expenses, "category");
+        this.caller = caller;
+        this.out = out;
+    }
+
+    /**
+     * Runs every command in a script, one per line
+     * @return Number of commands that failed
+     */
+    public int run(BufferedReader script) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                submit(lineNumber, tokenize(trimmed));
+            } catch (IllegalArgumentException e) {
+                rejected(lineNumber, trimmed.split("\\s+", 2)[0], e.getMessage());
+            }
+        }
+        flush();
+        return failed;
+    }
+
+    /**
+     * Runs a single command given as separate words, e.g. from the program arguments
+     * @return Number of commands that failed (0 or 1)
+     */
+    public int run(List<String> command) {
+        try {
+            submit(1, command);
+        } catch (IllegalArgumentException e) {
+            rejected(1, command.isEmpty() ? "" : command.get(0), e.getMessage());
+        }
+        flush();
+        return failed;
+    }
+
+    // Queues a write, or applies the queued writes and then runs a read
+    private void submit(int line, List<String> words) {
+        Step step = parse(line, words);
+        if (step.isWrite()) {
+            enqueue(step);
+        } else {
+            flush();
+            try {
+                step.apply();
+                report(step);
+            } catch (SQLException | RuntimeException e) {
+                reportError(line, step.name, messageOf(e));
+            }
+        }
+    }
+
+    // A command that could not be parsed; it waits in the queue so results stay in script order
+    private void rejected(int line, String command, String message) {
+        if (pending.isEmpty()) {
+            reportError(line, command, message);
+        } else {
+            enqueue(new InvalidStep(line, command, message));
+        }
+    }
+
+    // Queues a write, applying the group once it reaches MAX_GROUP commands
+    private void enqueue(Step step) {
+        pending.add(step);
+        if (pending.size() >= MAX_GROUP) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies the queued writes in one transaction and prints their results
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // Lines of the commands being applied when a failure happens: one command, or a whole
+        // run of adds, since a multi-row insert doesn't say which of its rows the database refused
+        List<Integer> failedLines = new ArrayList<>();
+        try {
+            storage.inTransaction(() -> {
+                for (Step step : pending) {
+                    // Queued adds go in before any other write, keeping the script's order
+                    if (adding != null && !(step instanceof AddStep add && add.resource == adding)) {
+                        failedLines.clear();
+                        failedLines.addAll(adding.queuedLines);
+                        drainAdds();
+                    }
+                    failedLines.clear();
+                    failedLines.add(step.line);
+                    step.apply();
+                }
+                if (adding != null) {
+                    failedLines.clear();
+                    failedLines.addAll(adding.queuedLines);
+                    drainAdds();
+                }
+                return null;
+            });
+            for (Step step : pending) {
+                report(step);
+            }
+        } catch (SQLException | RuntimeException e) {
+            int firstFailed = failedLines.isEmpty() ? pending.get(0).line : failedLines.get(0);
+            for (Step step : pending) {
+                String message = step instanceof InvalidStep ? step.error
+                    : failedLines.contains(step.line) ? messageOf(e)
+                    : "Rolled back: command on line " + firstFailed + " failed";
+                reportError(step.line, step.name, message);
+            }
+        } finally {
+            pending.clear();
+            if (adding != null) {
+                adding.clearQueued();
+                adding = null;
+            }
+        }
+    }
+
+    // Inserts the queued adds with one addAll
+    private void drainAdds() throws SQLException {
+        Resource<?> resource = adding;
+        adding = null;
+        resource.addQueued();
+    }
+
+    private Step parse(int line, List<String> words) {
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException("Missing command");
+        }
+        String name = words.get(0);
+        Map<String, String> options = options(words);
+        return switch (name) {
+            case "add-income" -> incomes.add(line, name, options);
+            case "add-expense" -> expenses.add(line, name, options);
+            case "update-income" -> incomes.update(line, name, options);
+            case "update-expense" -> expenses.update(line, name, options);
+            case "delete-income" -> incomes.delete(line, name, options);
+            case "delete-expense" -> expenses.delete(line, name, options);
+            case "list-income" -> incomes.list(line, name, options);
+            case "list-expenses" -> expenses.list(line, name, options);
+            case "total-income" -> incomes.total(line, name, options);
+            case "total-expenses" -> expenses.total(line, name, options);
+            case "export-income" -> incomes.export(line, name, options);
+            case "export-expenses" -> expenses.export(line, name, options);
+            default -> throw new IllegalArgumentException("Unknown command: " + name);
+        };
+    }
+
+    // --name value pairs after the command word
+    private static Map<String, String> options(List<String> words) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < words.size(); i += 2) {
+            String option = words.get(i);
+            if (!option.startsWith("--") || i + 1 >= words.size()) {
+                throw new IllegalArgumentException("Expected --option value but found: " + option);
+            }
+            options.put(option.substring(2), words.get(i + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Splits a line into words on spaces; double quotes keep spaces, and \" or \\ inside them escape
+     */
+    static List<String> tokenize(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length() && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                    word.append(line.charAt(++i));
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote");
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private void report(Step step) {
+        json.reset().beginObject()
+            .name("line").value(step.line)
+            .name("command").value(step.name);
+        if (step.error != null) {
+            failed++;
+            json.name("ok").value(false).name("error").value(step.error);
+        } else {
+            json.name("ok").value(true);
+            step.writeResult(json);
+        }
+        out.println(json.endObject());
+    }
+
+    private void reportError(int line, String command, String message) {
+        failed++;
+        out.println(json.reset().beginObject()
+            .name("line").value(line)
+            .name("command").value(command)
+            .name("ok").value(false)
+            .name("error").value(message)
+            .endObject());
+    }
+
+    private static String messageOf(Exception e) {
+        return e instanceof SQLException ? "Database error: " + e.getMessage() : e.getMessage();
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : intOption(options, name, value);
+    }
+
+    private static int intOption(Map<String, String> options, String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid --" + name + ": " + value);
+        }
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+
+    private static void checkOptions(String command, Map<String, String> options, Set<String> allowed) {
+        for (String option : options.keySet()) {
+            if (!allowed.contains(option)) {
+                throw new IllegalArgumentException("Unknown option --" + option + " for " + command);
+            }
+        }
+    }
+
+    // One parsed command
+    private abstract static class Step {
+        final int line;
+        final String name;
+        String error; // Set when the command ran but found nothing to change
+
+        Step(int line, String name) {
+            this.line = line;
+            this.name = name;
+        }
+
+        abstract boolean isWrite();
+
+        abstract void apply() throws SQLException;
+
+        abstract void writeResult(JsonWriter json);
+    }
+
+    private abstract static class WriteStep extends Step {
+        WriteStep(int line, String name) {
+            super(line, name);
+        }
+
+        @Override
+        boolean isWrite() { return true; }
+    }
+
+    private abstract static class ReadStep extends Step {
+        ReadStep(int line, String name) {
+            super(line, name);
+        }
+
+        @Override
+        boolean isWrite() { return false; }
+    }
+
+    // A rejected command kept in order among the queued writes; it changes nothing
+    private static class InvalidStep extends WriteStep {
+        InvalidStep(int line, String name, String error) {
+            super(line, name);
+            this.error = error;
+        }
+
+        @Override
+        void apply() { }
+
+        @Override
+        void writeResult(JsonWriter json) { }
+    }
+
+    // Adds are queued on their table and inserted together by drainAdds
+    private abstract static class AddStep extends WriteStep {
+        final Resource<?> resource;
+
+        AddStep(int line, String name, Resource<?> resource) {
+            super(line, name);
+            this.resource = resource;
+        }
+    }
+
+    // Commands for one table
+    private class Resource<T extends Transaction> {
+        private final TransactionOperations<T> operations;
+        private final String labelName;
+        private final List<T> queued = new ArrayList<>();
+        // Script line of each queued record
+        private final List<Integer> queuedLines = new ArrayList<>();
+
+        Resource(TransactionOperations<T> operations, String labelName) {
+            this.operations = operations;
+            this.labelName = labelName;
+        }
+
+        void addQueued() throws SQLException {
+            try {
+                operations.addAll(caller, queued);
+            } finally {
+                clearQueued();
+            }
+        }
+
+        void clearQueued() {
+            queued.clear();
+            queuedLines.clear();
+        }
+
+        private T record(int id, Map<String, String> options, int userId) {
+            Money amount = Money.parse(required(options, "amount"));
+            return operations.create(id, userId, amount, required(options, labelName), required(options, "date"));
+        }
+
+        Step add(int line, String name, Map<String, String> options) {
+            checkOptions(name, options, Set.of("amount", labelName, "date", "user"));
+            T record = record(0, options, intOption(options, "user", caller.getUserId()));
+            return new AddStep(line, name, this) {
+                @Override
+                void apply() {
+                    // Checked here so a --user the caller may not write for fails on its own line
+                    TransactionOperations.checkOwner(caller, record.getUserId());
+                    if (adding == null) {
+                        adding = Resource.this;
+                    }
+                    queued.add(record);
+                    queuedLines.add(line);
+                }
+
+                @Override
+                void writeResult(JsonWriter json) {
+                    json.name("id").value(record.getId());
+                }
+            };
+        }
+
+        Step update(int line, String name, Map<String, String> options) {
+            checkOptions(name, options, Set.of("id", "user", "amount", labelName, "date"));
+            T record = record(intOption(options, "id", required(options, "id")), options, intOption(options, "user", required(options, "user")));
+            return new WriteStep(line, name) {
+                @Override
+                void apply() throws SQLException {
+                    if (!operations.update(caller, record)) {
+                        error = operations.getNoun() + " not found.";
+                    }
+                }
+
+                @Override
+                void writeResult(JsonWriter json) {
+                    json.name("id").value(record.getId());
+                }
+            };
+        }
+
+        Step delete(int line, String name, Map<String, String> options) {
+            checkOptions(name, options, Set.of("id"));
+            int id = intOption(options, "id", required(options, "id"));
+            return new WriteStep(line, name) {
+                @Override
+                void apply() throws SQLException {
+                    if (!operations.delete(caller, id)) {
+                        error = operations.getNoun() + " not found.";
+                    }
+                }
+
+                @Override
+                void writeResult(JsonWriter json) {
+                    json.name("id").value(id);
+                }
+            };
+        }
+
+        Step list(int line, String name, Map<String, String> options) {
+            checkOptions(name, options, Set.of("user", "after", "limit"));
+            int userId = intOption(options, "user", caller.getUserId());
+            int afterId = intOption(options, "after", 0);
+            int limit = intOption(options, "limit", PAGE_SIZE);
+            if (limit <= 0) {
+                throw new IllegalArgumentException("--limit must be positive");
+            }
+            return new ReadStep(line, name) {
+                private Page<T> page;
+
+                @Override
+                void apply() throws SQLException {
+                    page = operations.list(caller, userId, afterId, limit);
+                }
+
+                @Override
+                void writeResult(JsonWriter json) {
+                    json.name("items").beginArray();
+                    for (T transaction : page.getItems()) {
+                        json.transaction(transaction, labelName);
+                    }
+                    json.endArray().name("hasNext").value(page.hasNext());
+                }
+            };
+        }
+
+        Step total(int line, String name, Map<String, String> options) {
+            checkOptions(name, options, Set.of("user"));
+            int userId = intOption(options, "user", caller.getUserId());
+            return new ReadStep(line, name) {
+                private TransactionSummary summary;
+
+                @Override
+                void apply() throws SQLException {
+                    summary = operations.summary(caller, userId);
+                }
+
+                @Override
+                void writeResult(JsonWriter json) {
+                    json.name("userId").value(userId)
+                        .name("count").value(summary.getCount())
+                        .name("total").value(summary.getTotal())
+                        .name("min").value(summary.getMin())
+                        .name("max").value(summary.getMax());
+                }
+            };
+        }
+
+        Step export(int line, String name, Map<String, String> options) {
+            checkOptions(name, options, Set.of("out", "format", "user"));
+            String file = required(options, "out");
+            TransactionEncoder.Format format = TransactionEncoder.Format.parse(options.getOrDefault("format", "csv"));
+            int userId = intOption(options, "user", caller.getUserId());
+            return new ReadStep(line, name) {
+                private ExportService.Result result;
+
+                @Override
+                void apply() throws SQLException {
+                    try {
+                        result = ExportService.export(operations, caller, userId, labelName, Paths.get(file), format);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not write " + file + ": " + e.getMessage(), e);
+                    }
+                }
+
+                @Override
+                void writeResult(JsonWriter json) {
+                    json.name("file").value(result.getFile().toString())
+                        .name("rows").value(result.getRows())
+                        .name("bytes").value(result.getFileBytes());
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,43 @@
+// Caller.java
+// Copyright 2024 maximusf
+
+package services;
+
+/**
+ * The user an operation runs for, whether typed in at the console or sent with an API request
+ *
+ * Example usage:
+ * Caller caller = Caller.of(42);       // Regular user 42
+ * Caller admin = Caller.of(777);       // Administrator
+ */
+public final class Caller {
+    public static final int ADMIN_ID = 777;
+
+    private final int userId;
+    private final boolean isAdmin;
+
+    public Caller(int userId, boolean isAdmin) {
+        this.userId = userId;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Caller for a user ID, an admin when it is ADMIN_ID
+     * @throws IllegalArgumentException If the ID is not positive
+     */
+    public static Caller of(int userId) {
+        if (userId <= 0) {
+            throw new IllegalArgumentException("Invalid User ID. Please enter a positive number.");
+        }
+        return new Caller(userId, userId == ADMIN_ID);
+    }
+
+    public int getUserId() { return userId; }
+
+    public boolean isAdmin() { return isAdmin; }
+
+    @Override
+    public String toString() {
+        return (isAdmin ? "Admin " : "User ") + userId;
+    }
+}
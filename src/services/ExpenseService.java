@@ -1,7 +1,10 @@
 package services;
 
-import dao.ExpenseDAO;
+import dao.TransactionRepository;
 import models.Expense;
+import models.Money;
+import models.Page;
+import util.Environment;
 import util.PrintBuilder;
 import java.sql.SQLException;
 import java.util.List;
@@ -9,12 +12,18 @@ import java.util.Scanner;
 
 /**
  * Service class to handle all Expense-related operations
+ * Prompts for input and delegates to TransactionOperations, which the HTTP API shares
  */
 public class ExpenseService {
-    private final ExpenseDAO dao;
+    // Records shown per page when viewing, configurable with PAGE_SIZE in .env
+    private static final int PAGE_SIZE = Environment.getInt("PAGE_SIZE", 20);
+
+    private final TransactionRepository<Expense> dao;
     private final Scanner scanner;
     private final int currentUserId;
     private final boolean isAdmin;
+    private final Caller caller;
+    private final TransactionOperations<Expense> operations;
 
     /**
      * Constructs a new ExpenseService
@@ -23,11 +32,13 @@ public class ExpenseService {
      * @param currentUserId ID of the current user
      * @param isAdmin Whether the current user is an admin
      */
-    public ExpenseService(ExpenseDAO dao, Scanner scanner, int currentUserId, boolean isAdmin) {
+    public ExpenseService(TransactionRepository<Expense> dao, Scanner scanner, int currentUserId, boolean isAdmin) {
         this.dao = dao;
         this.scanner = scanner;
         this.currentUserId = currentUserId;
         this.isAdmin = isAdmin;
+        this.caller = new Caller(currentUserId, isAdmin);
+        this.operations = new TransactionOperations<>(dao, "Expense", Expense::new);
     }
 
     /**
@@ -37,7 +48,7 @@ public class ExpenseService {
         while (true) {
             try {
                 PrintBuilder.message("Enter Amount: ").asPrompt().print();
-                double amount = scanner.nextDouble();
+                Money amount = Money.of(scanner.nextBigDecimal());
                 scanner.nextLine(); // Consume newline
                 
                 PrintBuilder.message("Enter Category: ").asPrompt().print();
@@ -46,7 +57,7 @@ public class ExpenseService {
                 String date = getValidDate();
 
                 Expense expense = new Expense(0, currentUserId, amount, category, date);
-                dao.add(expense);
+                operations.add(caller, expense);
                 PrintBuilder.message("Expense added successfully!").asSuccess().print();
                 break;
             } catch (Exception e) {
@@ -64,11 +75,9 @@ public class ExpenseService {
             PrintBuilder.message("Enter User ID to view (or 0 for all users): ").asPrompt().print();
             int targetUserId = scanner.nextInt();
             scanner.nextLine();
-            List<Expense> expenses = targetUserId == 0 ? dao.getAllExpenses() : dao.getByUserId(targetUserId);
-            displayExpenses(expenses, targetUserId);
+            displayExpenses(targetUserId);
         } else {
-            List<Expense> expenses = dao.getByUserId(currentUserId);
-            displayExpenses(expenses, currentUserId);
+            displayExpenses(currentUserId);
         }
     }
 
@@ -92,7 +101,7 @@ public class ExpenseService {
                 scanner.nextLine();
                 
                 PrintBuilder.message("Enter new Amount: ").asPrompt().print();
-                double newAmount = scanner.nextDouble();
+                Money newAmount = Money.of(scanner.nextBigDecimal());
                 scanner.nextLine();
                 
                 PrintBuilder.message("Enter new Category: ").asPrompt().print();
@@ -101,7 +110,7 @@ public class ExpenseService {
                 String newDate = getValidDate();
 
                 Expense updatedExpense = new Expense(updateId, targetUserId, newAmount, newCategory, newDate);
-                dao.update(updatedExpense);
+                operations.update(caller, updatedExpense);
                 PrintBuilder.message("Expense updated successfully!").asSuccess().print();
                 break;
             } catch (Exception e) {
@@ -136,7 +145,7 @@ public class ExpenseService {
                 int deleteId = scanner.nextInt();
                 scanner.nextLine();
                 
-                if (dao.deleteById(deleteId)) {
+                if (operations.delete(caller, deleteId)) {
                     PrintBuilder.message("Expense deleted successfully!").asSuccess().print();
                 } else {
                     PrintBuilder.message("Expense not found.").asError().print();
@@ -150,32 +159,60 @@ public class ExpenseService {
     }
 
     /**
-     * Deletes all expense records (admin only)
+     * Deletes all expense records (admin only) with a single statement
+     * @return Number of records deleted
      */
-    public void deleteAllExpenses() throws SQLException {
+    public int deleteAllExpenses() throws SQLException {
         if (!isAdmin) {
             PrintBuilder.message("Admin access required").asError().print();
-            return;
-        }
-        List<Expense> expenses = dao.getAllExpenses();
-        for (Expense expense : expenses) {
-            dao.deleteById(expense.getId());
+            return 0;
         }
+        return operations.deleteAll(caller);
     }
 
     /**
-     * Displays a list of expenses
+     * Displays expense records one page at a time with next/prev navigation
+     * Only one page is held in memory, so "all users" listings start printing immediately
      */
-    private void displayExpenses(List<Expense> expenses, int userId) {
-        if (expenses.isEmpty()) {
+    private void displayExpenses(int userId) throws SQLException {
+        Page<Expense> page = operations.list(caller, userId, 0, PAGE_SIZE);
+        if (page.isEmpty()) {
             PrintBuilder.message("No expense records found" + 
                 (userId != 0 ? " for User ID: " + userId : "")).print();
-        } else {
-            PrintBuilder.message("\nExpense Records" + 
-                (userId != 0 ? " for User ID: " + userId : "")).print();
-            for (Expense expense : expenses) {
+            return;
+        }
+
+        PrintBuilder.message("\nExpense Records" + 
+            (userId != 0 ? " for User ID: " + userId : "")).print();
+        while (true) {
+            for (Expense expense : page.getItems()) {
                 PrintBuilder.message(expense.toString()).print();
             }
+            if (!page.hasNext() && !page.hasPrevious()) {
+                return;
+            }
+
+            PrintBuilder.message("[n]ext, [p]rev, [q]uit: ").asPrompt().print();
+            String command = scanner.nextLine().trim().toLowerCase();
+            List<Expense> items = page.getItems();
+            Page<Expense> nextPage;
+            if (command.equals("q")) {
+                return;
+            } else if (command.equals("n") && page.hasNext()) {
+                nextPage = operations.list(caller, userId, items.get(items.size() - 1).getId(), PAGE_SIZE);
+            } else if (command.equals("p") && page.hasPrevious()) {
+                nextPage = operations.listBefore(caller, userId, items.get(0).getId(), PAGE_SIZE);
+            } else {
+                PrintBuilder.message("No such page. Enter n, p or q.").asError().print();
+                continue;
+            }
+
+            // A page can come back empty if records were deleted since the last one was shown
+            if (nextPage.isEmpty()) {
+                PrintBuilder.message("No such page.").asError().print();
+            } else {
+                page = nextPage;
+            }
         }
     }
 
@@ -186,42 +223,13 @@ public class ExpenseService {
         while (true) {
             try {
                 PrintBuilder.message("Enter Date (YYYYMMDD): ").asPrompt().print();
-                return formatDate(scanner.nextLine());
+                return TransactionOperations.formatDate(scanner.nextLine());
             } catch (IllegalArgumentException e) {
                 PrintBuilder.message(e.getMessage()).asError().print();
             }
         }
     }
 
-    /**
-     * Formats and validates a date string
-     */
-    private String formatDate(String input) {
-        // Remove any existing dashes
-        String cleaned = input.replaceAll("-", "");
-        if (!cleaned.matches("\\d{8}")) {
-            throw new IllegalArgumentException("Date must be in YYYYMMDD format");
-        }
-
-        // Extract parts
-        // cleaned = "20240102"
-        // after substring = "2024"
-        // after substring = "01"
-        // after substring = "02"
-        int year = Integer.parseInt(cleaned.substring(0, 4));
-        int month = Integer.parseInt(cleaned.substring(4, 6));
-        int day = Integer.parseInt(cleaned.substring(6, 8));
-
-        // Validate date parts
-        if (year < 1900 || year > 2100 ||
-            month < 1 || month > 12 ||
-            day < 1 || day > 31) {
-            throw new IllegalArgumentException("Invalid date. Please use a valid date in YYYYMMDD format");
-        }
-
-        return String.format("%d-%02d-%02d", year, month, day);
-    }
-
     /**
      * Gets total expenses for a user or all users if admin
      */
@@ -231,26 +239,17 @@ public class ExpenseService {
             int targetUserId = scanner.nextInt();
             scanner.nextLine();
             
-            List<Expense> expenses = targetUserId == 0 ? 
-                dao.getAllExpenses() : 
-                dao.getByUserId(targetUserId);
-            
-            double total = expenses.stream()
-                .mapToDouble(Expense::getAmount)
-                .sum();
+            Money total = operations.total(caller, targetUserId);
             
             PrintBuilder.message(String.format(
-                "Total Expenses%s: $%.2f", 
+                "Total Expenses%s: $%s", 
                 targetUserId == 0 ? "" : " for User " + targetUserId,
                 total
             )).print();
         } else {
-            List<Expense> expenses = dao.getByUserId(currentUserId);
-            double total = expenses.stream()
-                .mapToDouble(Expense::getAmount)
-                .sum();
+            Money total = operations.total(caller, currentUserId);
             PrintBuilder.message(String.format(
-                "Your Total Expenses: $%.2f", 
+                "Your Total Expenses: $%s", 
                 total
             )).print();
         }
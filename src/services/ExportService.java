@@ -0,0 +1,193 @@
+// ExportService.java
+// Copyright 2024 maximusf
+
+// This file contains the ExportService class, which writes income and expense records to CSV or
+// newline-delimited JSON files. Rows stream from the repository into a TransactionEncoder and on to
+// the file (gzip-compressed when the name ends in .gz), so memory stays flat however many rows there are.
+
+package services;
+
+import dao.TransactionRepository;
+import models.Expense;
+import models.Income;
+import util.PrintBuilder;
+import util.TransactionEncoder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.InputMismatchException;
+import java.util.Scanner;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service class to export transactions to files
+ *
+ * CSV columns: id,user_id,amount,source|category,date
+ * NDJSON: one {"id","userId","amount","source"|"category","date"} object per line, as in the HTTP API
+ * Regular users export their own records; admins may export any user, or every user with 0.
+ */
+public class ExportService {
+    private static final int GZIP_BUFFER_BYTES = 1 << 16;
+
+    private final TransactionOperations<Income> incomes;
+    private final TransactionOperations<Expense> expenses;
+    private final Scanner scanner;
+    private final Caller caller;
+
+    /**
+     * Constructs a new ExportService
+     * @param incomeDao Data access object for incomes
+     * @param expenseDao Data access object for expenses
+     * @param scanner Scanner for user input
+     * @param currentUserId ID of the current user
+     * @param isAdmin Whether the current user is an admin
+     */
+    public ExportService(TransactionRepository<Income> incomeDao, TransactionRepository<Expense> expenseDao, Scanner scanner, int currentUserId, boolean isAdmin) {
+        this.incomes = new TransactionOperations<>(incomeDao, "Income", Income::new);
+        this.expenses = new TransactionOperations<>(expenseDao, "Expense", Expense::new);
+        this.scanner = scanner;
+        this.caller = new Caller(currentUserId, isAdmin);
+    }
+
+    /**
+     * Prompts for a table, format and file and exports the current user's records, or a specified user's if admin
+     */
+    public void exportTransactions() {
+        try {
+            PrintBuilder.message("Export (1) Income or (2) Expenses: ").asPrompt().print();
+            int table = scanner.nextInt();
+            scanner.nextLine();
+            if (table != 1 && table != 2) {
+                PrintBuilder.message("Please choose 1 or 2").asError().print();
+                return;
+            }
+
+            int targetUserId = caller.getUserId();
+            if (caller.isAdmin()) {
+                PrintBuilder.message("Enter User ID to export (or 0 for all users): ").asPrompt().print();
+                targetUserId = scanner.nextInt();
+                scanner.nextLine();
+            }
+
+            PrintBuilder.message("Format (csv or ndjson): ").asPrompt().print();
+            TransactionEncoder.Format format = TransactionEncoder.Format.parse(scanner.nextLine());
+
+            PrintBuilder.message("Enter output file path (end with .gz to compress): ").asPrompt().print();
+            Path file = Paths.get(scanner.nextLine().trim());
+
+            Result result = table == 1
+                ? export(incomes, caller, targetUserId, "source", file, format)
+                : export(expenses, caller, targetUserId, "category", file, format);
+            PrintBuilder.message(result.toString()).asSuccess().print();
+        } catch (InputMismatchException e) {
+            PrintBuilder.message("Invalid input: Please enter a number").asError().print();
+            scanner.nextLine();
+        } catch (IllegalArgumentException | SecurityException e) {
+            PrintBuilder.message(e.getMessage()).asError().print();
+        } catch (IOException e) {
+            PrintBuilder.message("Could not write file: " + e.getMessage()).asError().print();
+        } catch (SQLException e) {
+            PrintBuilder.message("Export failed: " + e.getMessage()).asError().print();
+        }
+    }
+
+    /**
+     * Streams a user's records (or every record for ALL_USERS) into a file
+     * Rows go to <file>.tmp, which replaces the file once complete, so a failed export leaves
+     * any earlier file untouched
+     * @param operations Income or expense operations, which check the caller's access
+     * @param caller Who is exporting
+     * @param userId ID of the user whose records are exported, or ALL_USERS
+     * @param labelName Label column name, "source" or "category"
+     * @param file Output file; a name ending in .gz is gzip-compressed
+     * @param format CSV or NDJSON
+     * @return Rows, sizes and time of the export
+     */
+    public static Result export(TransactionOperations<?> operations, Caller caller, int userId, String labelName,
+                                Path file, TransactionEncoder.Format format) throws IOException, SQLException {
+        long startNanos = System.nanoTime();
+        boolean gzip = file.getFileName().toString().endsWith(".gz");
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean completed = false;
+        try {
+            TransactionEncoder encoder;
+            long fileBytes;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                GZIPOutputStream compressed = gzip
+                    ? new GZIPOutputStream(Channels.newOutputStream(channel), GZIP_BUFFER_BYTES)
+                    : null;
+                WritableByteChannel out = gzip ? Channels.newChannel(compressed) : channel;
+
+                encoder = new TransactionEncoder(out, format, labelName);
+                try {
+                    operations.forEachRawRow(caller, userId, encoder::row);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                encoder.finish();
+                if (compressed != null) {
+                    compressed.finish();
+                }
+                fileBytes = channel.size();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            completed = true;
+            return new Result(file, encoder.getRows(), encoder.getBytes(), fileBytes, System.nanoTime() - startNanos);
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Outcome of an export
+     */
+    public static class Result {
+        private final Path file;
+        private final long rows;
+        private final long bytes;
+        private final long fileBytes;
+        private final long elapsedNanos;
+
+        public Result(Path file, long rows, long bytes, long fileBytes, long elapsedNanos) {
+            this.file = file;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.fileBytes = fileBytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Path getFile() { return file; }
+
+        public long getRows() { return rows; }
+
+        // Size of the encoded text, before compression
+        public long getBytes() { return bytes; }
+
+        // Size of the file written
+        public long getFileBytes() { return fileBytes; }
+
+        public double getSeconds() { return elapsedNanos / 1_000_000_000.0; }
+
+        // Rows written per second of wall-clock time
+        public double getRowsPerSecond() {
+            return getSeconds() > 0 ? rows / getSeconds() : rows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Exported %d rows to %s (%d bytes) in %.2fs, %.0f rows/sec",
+                rows, file, fileBytes, getSeconds(), getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+// ImportService.java
+// Copyright 2024 maximusf
+
+// This file contains the ImportService class, which bulk-loads income and expense records from CSV files.
+// Rows are parsed one at a time, validated through the Income/Expense constructors,
+// and inserted with multi-row INSERTs so large bank exports load in seconds instead of minutes.
+
+package services;
+
+import dao.TransactionDAO;
+import dao.TransactionRepository;
+import models.Expense;
+import models.Income;
+import models.Money;
+import models.Transaction;
+import util.CsvReader;
+import util.PrintBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Service class to import transactions from CSV files
+ *
+ * Expected columns: type,amount,label,date
+ * - type: "income" or "expense"
+ * - label: income source or expense category
+ * - date: YYYY-MM-DD
+ * A header row starting with "type" is skipped.
+ */
+public class ImportService {
+    // Rows buffered per insert transaction, keeps memory flat for very large files
+    private static final int IMPORT_CHUNK_SIZE = TransactionDAO.DEFAULT_BATCH_SIZE * 10;
+    // Only the first few bad rows are printed, the rest are just counted
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final TransactionRepository<Income> incomeDao;
+    private final TransactionRepository<Expense> expenseDao;
+    private final Scanner scanner;
+    private final int currentUserId;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new ImportService
+     * @param incomeDao Data access object for incomes
+     * @param expenseDao Data access object for expenses
+     * @param scanner Scanner for user input
+     * @param currentUserId ID of the current user
+     * @param isAdmin Whether the current user is an admin
+     */
+    public ImportService(TransactionRepository<Income> incomeDao, TransactionRepository<Expense> expenseDao, Scanner scanner, int currentUserId, boolean isAdmin) {
+        this.incomeDao = incomeDao;
+        this.expenseDao = expenseDao;
+        this.scanner = scanner;
+        this.currentUserId = currentUserId;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Prompts for a CSV file and imports it for the current user, or a specified user if admin
+     */
+    public void importCsv() {
+        PrintBuilder.message("Enter CSV file path: ").asPrompt().print();
+        String path = scanner.nextLine().trim();
+
+        int targetUserId = currentUserId;
+        if (isAdmin) {
+            PrintBuilder.message("Enter User ID to import for: ").asPrompt().print();
+            targetUserId = scanner.nextInt();
+            scanner.nextLine();
+        }
+
+        try {
+            Result result = importCsv(Paths.get(path), targetUserId);
+            PrintBuilder.message(result.toString()).asSuccess().print();
+        } catch (IOException e) {
+            PrintBuilder.message("Could not read file: " + e.getMessage()).asError().print();
+        } catch (SQLException e) {
+            PrintBuilder.message("Import failed: " + e.getMessage()).asError().print();
+        }
+    }
+
+    /**
+     * Imports every valid row of a CSV file for a user
+     * Invalid rows are skipped and reported, valid rows are inserted in batches
+     * @param path Path of the CSV file
+     * @param userId ID of the user the records belong to
+     * @return Counts and throughput of the import
+     */
+    public Result importCsv(Path path, int userId) throws IOException, SQLException {
+        long startNanos = System.nanoTime();
+        List<Income> incomes = new ArrayList<>();
+        List<Expense> expenses = new ArrayList<>();
+        int imported = 0;
+        int rejected = 0;
+
+        try (CsvReader csv = new CsvReader(path)) {
+            String[] fields;
+            while ((fields = csv.next()) != null) {
+                if (csv.getLineNumber() == 1 && fields[0].equalsIgnoreCase("type")) {
+                    continue; // Header row
+                }
+                try {
+                    parseRow(fields, userId, incomes, expenses);
+                } catch (IllegalArgumentException e) {
+                    if (++rejected <= MAX_REPORTED_ERRORS) {
+                        PrintBuilder.message("Line " + csv.getLineNumber() + " skipped: " + e.getMessage()).asError().print();
+                    }
+                }
+
+                if (incomes.size() >= IMPORT_CHUNK_SIZE) {
+                    imported += flush(incomeDao, incomes);
+                }
+                if (expenses.size() >= IMPORT_CHUNK_SIZE) {
+                    imported += flush(expenseDao, expenses);
+                }
+            }
+        }
+        imported += flush(incomeDao, incomes);
+        imported += flush(expenseDao, expenses);
+
+        return new Result(imported, rejected, System.nanoTime() - startNanos);
+    }
+
+    // Validates one row through the model constructors and queues it for insertion
+    private void parseRow(String[] fields, int userId, List<Income> incomes, List<Expense> expenses) {
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Expected 4 columns (type,amount,label,date) but found " + fields.length);
+        }
+        Money amount = Money.parse(fields[1]);
+
+        switch (fields[0].toLowerCase()) {
+            case "income": incomes.add(new Income(0, userId, amount, fields[2], fields[3])); break;
+            case "expense": expenses.add(new Expense(0, userId, amount, fields[2], fields[3])); break;
+            default: throw new IllegalArgumentException("Unknown type '" + fields[0] + "', expected income or expense");
+        }
+    }
+
+    // Inserts the buffered records as one batch transaction and clears the buffer
+    private <T extends Transaction> int flush(TransactionRepository<T> dao, List<T> buffer) throws SQLException {
+        int count = dao.addAll(buffer).size();
+        buffer.clear();
+        return count;
+    }
+
+    /**
+     * Outcome of a CSV import
+     */
+    public static class Result {
+        private final int imported;
+        private final int rejected;
+        private final long elapsedNanos;
+
+        public Result(int imported, int rejected, long elapsedNanos) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getImported() { return imported; }
+
+        public int getRejected() { return rejected; }
+
+        public double getSeconds() { return elapsedNanos / 1_000_000_000.0; }
+
+        // Rows inserted per second of wall-clock time
+        public double getRowsPerSecond() {
+            return getSeconds() > 0 ? imported / getSeconds() : imported;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d rows (%d skipped) in %.2fs, %.0f rows/sec",
+                imported, rejected, getSeconds(), getRowsPerSecond());
+        }
+    }
+}
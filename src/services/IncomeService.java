@@ -3,12 +3,15 @@
 
 // This file contains the IncomeService class, which handles all income-related operations.
 // It includes methods for adding, viewing, updating, and deleting income records, as well as calculating total income.
-// It also includes methods for validating and formatting dates.
+// Input is read from the console; the records themselves are handled by TransactionOperations.
 
 package services;
 
-import dao.IncomeDAO;
+import dao.TransactionRepository;
 import models.Income;
+import models.Money;
+import models.Page;
+import util.Environment;
 import util.PrintBuilder;
 import java.sql.SQLException;
 import java.util.List;
@@ -16,12 +19,18 @@ import java.util.Scanner;
 
 /**
  * Service class to handle all Income-related operations
+ * Prompts for input and delegates to TransactionOperations, which the HTTP API shares
  */
 public class IncomeService {
-    private final IncomeDAO dao;
+    // Records shown per page when viewing, configurable with PAGE_SIZE in .env
+    private static final int PAGE_SIZE = Environment.getInt("PAGE_SIZE", 20);
+
+    private final TransactionRepository<Income> dao;
     private final Scanner scanner;
     private final int currentUserId;
     private final boolean isAdmin;
+    private final Caller caller;
+    private final TransactionOperations<Income> operations;
 
     /**
      * Constructs a new IncomeService
@@ -30,11 +39,13 @@ public class IncomeService {
      * @param currentUserId ID of the current user
      * @param isAdmin Whether the current user is an admin
      */
-    public IncomeService(IncomeDAO dao, Scanner scanner, int currentUserId, boolean isAdmin) {
+    public IncomeService(TransactionRepository<Income> dao, Scanner scanner, int currentUserId, boolean isAdmin) {
         this.dao = dao;
         this.scanner = scanner;
         this.currentUserId = currentUserId;
         this.isAdmin = isAdmin;
+        this.caller = new Caller(currentUserId, isAdmin);
+        this.operations = new TransactionOperations<>(dao, "Income", Income::new);
     }
 
     /**
@@ -44,7 +55,7 @@ public class IncomeService {
         while (true) {
             try {
                 PrintBuilder.message("Enter Amount: ").asPrompt().print();
-                double amount = scanner.nextDouble();
+                Money amount = Money.of(scanner.nextBigDecimal());
                 scanner.nextLine(); // Consume newline
                 
                 PrintBuilder.message("Enter Source: ").asPrompt().print();
@@ -53,7 +64,7 @@ public class IncomeService {
                 String date = getValidDate();
 
                 Income income = new Income(0, currentUserId, amount, source, date);
-                dao.add(income);
+                operations.add(caller, income);
                 PrintBuilder.message("Income added successfully!").asSuccess().print();
                 break;
             } catch (Exception e) {
@@ -71,11 +82,9 @@ public class IncomeService {
             PrintBuilder.message("Enter User ID to view (or 0 for all users): ").asPrompt().print();
             int targetUserId = scanner.nextInt();
             scanner.nextLine();
-            List<Income> incomes = targetUserId == 0 ? dao.getAllIncomes() : dao.getByUserId(targetUserId);
-            displayIncomes(incomes, targetUserId);
+            displayIncomes(targetUserId);
         } else {
-            List<Income> incomes = dao.getByUserId(currentUserId);
-            displayIncomes(incomes, currentUserId);
+            displayIncomes(currentUserId);
         }
     }
 
@@ -99,7 +108,7 @@ public class IncomeService {
                 scanner.nextLine();
                 
                 PrintBuilder.message("Enter new Amount: ").asPrompt().print();
-                double newAmount = scanner.nextDouble();
+                Money newAmount = Money.of(scanner.nextBigDecimal());
                 scanner.nextLine();
                 
                 PrintBuilder.message("Enter new Source: ").asPrompt().print();
@@ -108,7 +117,7 @@ public class IncomeService {
                 String newDate = getValidDate();
 
                 Income updatedIncome = new Income(updateId, targetUserId, newAmount, newSource, newDate);
-                dao.update(updatedIncome);
+                operations.update(caller, updatedIncome);
                 PrintBuilder.message("Income updated successfully!").asSuccess().print();
                 break;
             } catch (Exception e) {
@@ -143,7 +152,7 @@ public class IncomeService {
                 int deleteId = scanner.nextInt();
                 scanner.nextLine();
                 
-                if (dao.deleteById(deleteId)) {
+                if (operations.delete(caller, deleteId)) {
                     PrintBuilder.message("Income deleted successfully!").asSuccess().print();
                 } else {
                     PrintBuilder.message("Income not found.").asError().print();
@@ -165,44 +174,65 @@ public class IncomeService {
             int targetUserId = scanner.nextInt();
             scanner.nextLine();
             
-            List<Income> incomes = targetUserId == 0 ? 
-                dao.getAllIncomes() : 
-                dao.getByUserId(targetUserId);
-            
-            double total = incomes.stream()
-                .mapToDouble(Income::getAmount)
-                .sum();
+            Money total = operations.total(caller, targetUserId);
             
             PrintBuilder.message(String.format(
-                "Total Income%s: $%.2f", 
+                "Total Income%s: $%s", 
                 targetUserId == 0 ? "" : " for User " + targetUserId,
                 total
             )).print();
         } else {
-            List<Income> incomes = dao.getByUserId(currentUserId);
-            double total = incomes.stream()
-                .mapToDouble(Income::getAmount)
-                .sum();
+            Money total = operations.total(caller, currentUserId);
             PrintBuilder.message(String.format(
-                "Your Total Income: $%.2f", 
+                "Your Total Income: $%s", 
                 total
             )).print();
         }
     }
 
     /**
-     * Displays a list of incomes
+     * Displays income records one page at a time with next/prev navigation
+     * Only one page is held in memory, so "all users" listings start printing immediately
      */
-    private void displayIncomes(List<Income> incomes, int userId) {
-        if (incomes.isEmpty()) {
+    private void displayIncomes(int userId) throws SQLException {
+        Page<Income> page = operations.list(caller, userId, 0, PAGE_SIZE);
+        if (page.isEmpty()) {
             PrintBuilder.message("No income records found" + 
                 (userId != 0 ? " for User ID: " + userId : "")).print();
-        } else {
-            PrintBuilder.message("\nIncome Records" + 
-                (userId != 0 ? " for User ID: " + userId : "")).print();
-            for (Income income : incomes) {
+            return;
+        }
+
+        PrintBuilder.message("\nIncome Records" + 
+            (userId != 0 ? " for User ID: " + userId : "")).print();
+        while (true) {
+            for (Income income : page.getItems()) {
                 PrintBuilder.message(income.toString()).print();
             }
+            if (!page.hasNext() && !page.hasPrevious()) {
+                return;
+            }
+
+            PrintBuilder.message("[n]ext, [p]rev, [q]uit: ").asPrompt().print();
+            String command = scanner.nextLine().trim().toLowerCase();
+            List<Income> items = page.getItems();
+            Page<Income> nextPage;
+            if (command.equals("q")) {
+                return;
+            } else if (command.equals("n") && page.hasNext()) {
+                nextPage = operations.list(caller, userId, items.get(items.size() - 1).getId(), PAGE_SIZE);
+            } else if (command.equals("p") && page.hasPrevious()) {
+                nextPage = operations.listBefore(caller, userId, items.get(0).getId(), PAGE_SIZE);
+            } else {
+                PrintBuilder.message("No such page. Enter n, p or q.").asError().print();
+                continue;
+            }
+
+            // A page can come back empty if records were deleted since the last one was shown
+            if (nextPage.isEmpty()) {
+                PrintBuilder.message("No such page.").asError().print();
+            } else {
+                page = nextPage;
+            }
         }
     }
 
@@ -213,7 +243,7 @@ public class IncomeService {
         while (true) {
             try {
                 PrintBuilder.message("Enter Date (YYYYMMDD): ").asPrompt().print();
-                return formatDate(scanner.nextLine());
+                return TransactionOperations.formatDate(scanner.nextLine());
             } catch (IllegalArgumentException e) {
                 PrintBuilder.message(e.getMessage()).asError().print();
             }
@@ -221,41 +251,14 @@ public class IncomeService {
     }
 
     /**
-     * Formats and validates a date string
-     */
-    private String formatDate(String input) {
-        // Remove any existing dashes
-        String cleaned = input.replaceAll("-", "");
-        if (!cleaned.matches("\\d{8}")) {
-            throw new IllegalArgumentException("Date must be in YYYYMMDD format");
-        }
-
-        // Extract parts
-        int year = Integer.parseInt(cleaned.substring(0, 4));
-        int month = Integer.parseInt(cleaned.substring(4, 6));
-        int day = Integer.parseInt(cleaned.substring(6, 8));
-
-        // Validate date parts
-        if (year < 1900 || year > 2100 ||
-            month < 1 || month > 12 ||
-            day < 1 || day > 31) {
-            throw new IllegalArgumentException("Invalid date. Please use a valid date in YYYYMMDD format");
-        }
-
-        return String.format("%d-%02d-%02d", year, month, day);
-    }
-
-    /**
-     * Deletes all income records (admin only)
+     * Deletes all income records (admin only) with a single statement
+     * @return Number of records deleted
      */
-    public void deleteAllIncomes() throws SQLException {
+    public int deleteAllIncomes() throws SQLException {
         if (!isAdmin) {
             PrintBuilder.message("Admin access required").asError().print();
-            return;
-        }
-        List<Income> incomes = dao.getAllIncomes();
-        for (Income income : incomes) {
-            dao.deleteById(income.getId());
+            return 0;
         }
+        return operations.deleteAll(caller);
     }
 }
@@ -0,0 +1,84 @@
+// MetricsService.java
+// Copyright 2024 maximusf
+
+// This file contains the MetricsService class, which prints repository latency, pool and cache statistics.
+// The same numbers are published over JMX for jconsole or VisualVM.
+
+package services;
+
+import dao.CachingTransactionRepository;
+import dao.ConnectionPool;
+import dao.MetricsTransactionRepository;
+import dao.OperationMetrics;
+import util.PrintBuilder;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service class to show runtime metrics (admin only)
+ */
+public class MetricsService {
+    private final List<MetricsTransactionRepository<?>> repositories;
+    private final Map<String, CachingTransactionRepository<?>> caches;
+    private final ConnectionPool pool;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new MetricsService
+     * @param repositories Measured repositories, one per table
+     * @param caches Transaction caches by table name
+     * @param pool Connection pool the repositories use, or null when the storage has none
+     * @param isAdmin Whether the current user is an admin
+     */
+    public MetricsService(List<MetricsTransactionRepository<?>> repositories, Map<String, CachingTransactionRepository<?>> caches,
+                          ConnectionPool pool, boolean isAdmin) {
+        this.repositories = repositories;
+        this.caches = caches;
+        this.pool = pool;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Shows per-operation calls, errors, rows and latency percentiles, then pool and cache statistics
+     * Operations that have not been called yet are left out
+     */
+    public void showMetrics() {
+        if (!isAdmin) {
+            PrintBuilder.message("Admin access required").asError().print();
+            return;
+        }
+
+        PrintBuilder.message(String.format("\n%-9s %-18s %7s %6s %8s %9s %9s %9s %9s %9s",
+            "Table", "Operation", "Calls", "Errors", "Rows", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms")).print();
+        boolean any = false;
+        for (MetricsTransactionRepository<?> repository : repositories) {
+            for (OperationMetrics metrics : repository.getAllMetrics()) {
+                if (metrics.getCalls() == 0) {
+                    continue;
+                }
+                any = true;
+                PrintBuilder.message(String.format("%-9s %-18s %7d %6d %8d %9.3f %9.3f %9.3f %9.3f %9.3f",
+                    repository.getTable(), metrics.getName(), metrics.getCalls(), metrics.getErrors(), metrics.getRows(),
+                    metrics.getMeanMillis(), metrics.getP50Millis(), metrics.getP95Millis(), metrics.getP99Millis(),
+                    metrics.getMaxMillis())).print();
+            }
+        }
+        if (!any) {
+            PrintBuilder.message("  (no database calls yet)").print();
+        }
+
+        if (pool != null) {
+            PrintBuilder.message(String.format("\nConnection pool: %d active, %d idle, %d max; %d borrows, %d timeouts, "
+                    + "avg wait %.3f ms, max wait %.3f ms",
+                pool.getActiveCount(), pool.getIdleCount(), pool.getMaxSize(), pool.getBorrowCount(), pool.getTimeoutCount(),
+                pool.getAverageWaitMillis(), pool.getMaxWaitMillis())).print();
+        }
+        for (Map.Entry<String, CachingTransactionRepository<?>> cache : caches.entrySet()) {
+            CachingTransactionRepository<?> stats = cache.getValue();
+            PrintBuilder.message(String.format("Cache %-9s %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations",
+                cache.getKey() + ":", stats.getHits(), stats.getMisses(), stats.getHitRate() * 100,
+                stats.getEvictions(), stats.getInvalidations())).print();
+        }
+        PrintBuilder.message("(Also available over JMX under the walletwatch domain)").print();
+    }
+}
@@ -0,0 +1,143 @@
+// ReportService.java
+// Copyright 2024 maximusf
+
+// This file contains the ReportService class, which prints category breakdowns,
+// monthly trends and cash flow built by ReportEngine.
+
+package services;
+
+import dao.AsyncQueries;
+import dao.AsyncTransactionRepository;
+import models.ColumnarTransactions;
+import models.ColumnarTransactions.Filter;
+import models.Expense;
+import models.Income;
+import models.Report;
+import models.Report.LabelTotal;
+import models.Report.MonthTotal;
+import util.PrintBuilder;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service class to handle reports
+ */
+public class ReportService {
+    private final AsyncTransactionRepository<Income> incomeDao;
+    private final AsyncTransactionRepository<Expense> expenseDao;
+    private final ReportEngine engine;
+    private final Scanner scanner;
+    private final int currentUserId;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new ReportService
+     * @param incomeDao Repository for income records, queried in the background
+     * @param expenseDao Repository for expense records, queried in the background
+     * @param engine Engine that computes the reports
+     * @param scanner Scanner for user input
+     * @param currentUserId ID of the current user
+     * @param isAdmin Whether the current user is an admin
+     */
+    public ReportService(AsyncTransactionRepository<Income> incomeDao, AsyncTransactionRepository<Expense> expenseDao,
+                         ReportEngine engine, Scanner scanner, int currentUserId, boolean isAdmin) {
+        this.incomeDao = incomeDao;
+        this.expenseDao = expenseDao;
+        this.engine = engine;
+        this.scanner = scanner;
+        this.currentUserId = currentUserId;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Shows expenses by category and income by source, largest first
+     */
+    public void showBreakdown() throws SQLException {
+        Report report = loadReport();
+        if (report == null) {
+            return;
+        }
+
+        PrintBuilder.message("\nExpenses by Category (total $" + report.getTotalExpenses() + ")").print();
+        printBreakdown(report.getExpensesByCategory());
+        PrintBuilder.message("\nIncome by Source (total $" + report.getTotalIncome() + ")").print();
+        printBreakdown(report.getIncomeBySource());
+    }
+
+    /**
+     * Shows income, expenses and net for every month, oldest first
+     */
+    public void showMonthlyTrend() throws SQLException {
+        Report report = loadReport();
+        if (report == null) {
+            return;
+        }
+
+        PrintBuilder.message(String.format("\n%-8s %14s %14s %14s", "Month", "Income", "Expenses", "Net")).print();
+        for (MonthTotal month : report.getMonths()) {
+            PrintBuilder.message(String.format("%-8s %14s %14s %14s",
+                month.getLabel(), month.getIncome(), month.getExpenses(), month.getNet())).print();
+        }
+    }
+
+    /**
+     * Shows net cash flow for the whole period and the running balance month by month
+     */
+    public void showCashFlow() throws SQLException {
+        Report report = loadReport();
+        if (report == null) {
+            return;
+        }
+
+        PrintBuilder.message(String.format("\nNet Cash Flow: $%s (income $%s, expenses $%s)",
+            report.getNetCashFlow(), report.getTotalIncome(), report.getTotalExpenses())).print();
+        PrintBuilder.message(String.format("%-8s %14s %16s", "Month", "Net", "Running Total")).print();
+        for (MonthTotal month : report.getMonths()) {
+            PrintBuilder.message(String.format("%-8s %14s %16s",
+                month.getLabel(), month.getNet(), month.getCumulative())).print();
+        }
+    }
+
+    /**
+     * Builds the report for the current user, or a chosen user (0 for all) if admin
+     * @return The report, or null when there is nothing to show
+     */
+    private Report loadReport() throws SQLException {
+        int targetUserId = currentUserId;
+        if (isAdmin) {
+            PrintBuilder.message("Enter User ID (or 0 for all users): ").asPrompt().print();
+            targetUserId = scanner.nextInt();
+            scanner.nextLine();
+        }
+
+        Report report = buildReport(targetUserId);
+        if (report.isEmpty()) {
+            PrintBuilder.message("No records found").print();
+            return null;
+        }
+        return report;
+    }
+
+    /**
+     * Loads a user's records (or all records for user 0) and builds the report
+     * Income and expenses are loaded at the same time on separate connections
+     * @param userId ID of the user, or 0 for all users
+     */
+    public Report buildReport(int userId) throws SQLException {
+        CompletableFuture<ColumnarTransactions> incomes = incomeDao.loadColumnar(userId);
+        CompletableFuture<ColumnarTransactions> expenses = expenseDao.loadColumnar(userId);
+        return engine.build(AsyncQueries.join(incomes), AsyncQueries.join(expenses), Filter.all());
+    }
+
+    private static void printBreakdown(List<LabelTotal> lines) {
+        if (lines.isEmpty()) {
+            PrintBuilder.message("  (none)").print();
+        }
+        for (LabelTotal line : lines) {
+            PrintBuilder.message(String.format("  %-24s %14s %6.1f%%",
+                line.getLabel(), line.getAmount(), line.getShare() * 100)).print();
+        }
+    }
+}
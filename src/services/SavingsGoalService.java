@@ -0,0 +1,194 @@
+// SavingsGoalService.java
+// Copyright 2024 maximusf
+
+// This file contains the SavingsGoalService class, which lets users set savings goals and follow their progress.
+// Progress is kept up to date as income and expenses are recorded, so viewing goals reads only the goals table.
+
+package services;
+
+import dao.SavingsGoalDAO;
+import dao.TransactionDAO;
+import dao.WriteBehindTransactionRepository;
+import models.Money;
+import models.SavingsGoal;
+import util.DateCodec;
+import util.PrintBuilder;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Scanner;
+
+/**
+ * Service class to add, view and delete savings goals
+ * Users manage their own goals; admins can view and delete everyone's.
+ * Only the MySQL storage engine has the savings_goals table; with the journal engine the options explain that.
+ */
+public class SavingsGoalService {
+    private final SavingsGoalDAO goals;
+    private final List<WriteBehindTransactionRepository<?>> writeBehind;
+    private final Scanner scanner;
+    private final int currentUserId;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new SavingsGoalService
+     * @param goals Savings goal access object, or null when the storage is not MySQL
+     * @param writeBehind Buffers whose queued adds are inserted before goals are shown, so they count
+     * @param scanner Scanner for user input
+     * @param currentUserId ID of the current user
+     * @param isAdmin Whether the current user is an admin
+     */
+    public SavingsGoalService(SavingsGoalDAO goals, List<WriteBehindTransactionRepository<?>> writeBehind,
+                              Scanner scanner, int currentUserId, boolean isAdmin) {
+        this.goals = goals;
+        this.writeBehind = writeBehind;
+        this.scanner = scanner;
+        this.currentUserId = currentUserId;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Shows each goal with its progress and projected completion date
+     */
+    public void viewGoals() {
+        if (!available()) {
+            return;
+        }
+        try {
+            for (WriteBehindTransactionRepository<?> buffer : writeBehind) {
+                buffer.flush();
+            }
+            List<SavingsGoal> found = goals.getByUserId(isAdmin ? TransactionDAO.ALL_USERS : currentUserId);
+            if (found.isEmpty()) {
+                PrintBuilder.message("No savings goals found").print();
+                return;
+            }
+            int today = (int) LocalDate.now().toEpochDay();
+            PrintBuilder.message("\nSavings Goals").print();
+            for (SavingsGoal goal : found) {
+                PrintBuilder.message(new Progress(goal, today).toString()).print();
+            }
+        } catch (SQLException e) {
+            PrintBuilder.message("Error loading savings goals: " + e.getMessage()).asError().print();
+        }
+    }
+
+    /**
+     * Adds a goal for the current user; income and expenses already recorded in its dates count towards it
+     */
+    public void addGoal() {
+        if (!available()) {
+            return;
+        }
+        while (true) {
+            try {
+                PrintBuilder.message("Enter Goal Amount: ").asPrompt().print();
+                Money goalAmount = Money.of(scanner.nextBigDecimal());
+                scanner.nextLine(); // Consume newline
+
+                PrintBuilder.message("Enter Amount Already Saved: ").asPrompt().print();
+                Money initial = Money.of(scanner.nextBigDecimal());
+                scanner.nextLine();
+
+                String startDate = getValidDate("Start Date");
+                String endDate = getValidDate("End Date");
+
+                SavingsGoal added = goals.add(new SavingsGoal(0, currentUserId, goalAmount, initial, startDate, endDate));
+                PrintBuilder.message("Savings goal added successfully! "
+                    + new Progress(added, (int) LocalDate.now().toEpochDay())).asSuccess().print();
+                break;
+            } catch (SQLException e) {
+                PrintBuilder.message("Error adding savings goal: " + e.getMessage()).asError().print();
+                break;
+            } catch (Exception e) {
+                PrintBuilder.message(e.getMessage() + "\nPlease try again.").asError().print();
+                scanner.nextLine(); // Clear any bad input
+            }
+        }
+    }
+
+    /**
+     * Deletes one of the current user's goals, or any goal for an admin
+     */
+    public void deleteGoal() {
+        if (!available()) {
+            return;
+        }
+        try {
+            PrintBuilder.message("Enter Savings Goal ID to delete: ").asPrompt().print();
+            int goalId = Integer.parseInt(scanner.nextLine().trim());
+            SavingsGoal goal = goals.getById(goalId);
+            if (goal == null || (!isAdmin && goal.getUserId() != currentUserId)) {
+                PrintBuilder.message("Savings goal not found.").asError().print();
+                return;
+            }
+            goals.deleteById(goalId);
+            PrintBuilder.message("Savings goal deleted successfully!").asSuccess().print();
+        } catch (NumberFormatException e) {
+            PrintBuilder.message("Savings goal ID must be a number").asError().print();
+        } catch (SQLException e) {
+            PrintBuilder.message("Error deleting savings goal: " + e.getMessage()).asError().print();
+        }
+    }
+
+    private boolean available() {
+        if (goals == null) {
+            PrintBuilder.message("Savings goals need the MySQL storage engine (STORAGE_ENGINE=mysql)").asError().print();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets a valid date from user input
+     */
+    private String getValidDate(String label) {
+        while (true) {
+            try {
+                PrintBuilder.message("Enter " + label + " (YYYYMMDD): ").asPrompt().print();
+                return TransactionOperations.formatDate(scanner.nextLine());
+            } catch (IllegalArgumentException e) {
+                PrintBuilder.message(e.getMessage()).asError().print();
+            }
+        }
+    }
+
+    /**
+     * A goal as shown to the user: amounts, percentage saved and when it should be reached
+     */
+    public static class Progress {
+        private final SavingsGoal goal;
+        private final int todayEpochDay;
+
+        public Progress(SavingsGoal goal, int todayEpochDay) {
+            this.goal = goal;
+            this.todayEpochDay = todayEpochDay;
+        }
+
+        public SavingsGoal getGoal() { return goal; }
+
+        // Projection and status for the goal as of today
+        public String getOutlook() {
+            if (goal.isReached()) {
+                return "reached";
+            }
+            if (todayEpochDay < goal.getStartEpochDay()) {
+                return "starts " + goal.getStartDate();
+            }
+            OptionalInt projected = goal.getProjectedEpochDay(todayEpochDay);
+            if (projected.isEmpty()) {
+                return "nothing saved yet";
+            }
+            String date = DateCodec.format(DateCodec.fromEpochDay(projected.getAsInt()));
+            return "projected " + date + (goal.isOnTrack(todayEpochDay) ? ", on track" : ", behind");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Goal %d (User %d): $%s of $%s (%.0f%%), %s to %s, %s",
+                goal.getId(), goal.getUserId(), goal.getCurrent(), goal.getGoal(), goal.getProgress() * 100,
+                goal.getStartDate(), goal.getEndDate(), getOutlook());
+        }
+    }
+}
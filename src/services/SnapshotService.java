@@ -0,0 +1,174 @@
+// SnapshotService.java
+// Copyright 2024 maximusf
+
+// This file contains the SnapshotService class, which backs up the whole database to a binary snapshot file
+// and restores it. Snapshots are much smaller than a SQL dump and load back with multi-row inserts
+// instead of one statement per row.
+
+package services;
+
+import dao.CachingTransactionRepository;
+import dao.CachingUserRepository;
+import dao.Snapshot;
+import dao.SnapshotDAO;
+import dao.WriteBehindTransactionRepository;
+import util.PrintBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Service class to back up and restore users, income, expenses and savings goals (admin only)
+ * Only the MySQL storage engine has these tables; with the journal engine the options explain that.
+ */
+public class SnapshotService {
+    private final SnapshotDAO snapshots;
+    private final List<WriteBehindTransactionRepository<?>> writeBehind;
+    private final List<CachingTransactionRepository<?>> caches;
+    private final CachingUserRepository users;
+    private final Scanner scanner;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new SnapshotService
+     * @param snapshots Snapshot access object, or null when the storage is not MySQL
+     * @param writeBehind Buffers whose queued adds are inserted before a backup or restore
+     * @param caches Transaction caches, emptied after a restore
+     * @param users User cache, emptied after a restore, or null
+     * @param scanner Scanner for user input
+     * @param isAdmin Whether the current user is an admin
+     */
+    public SnapshotService(SnapshotDAO snapshots, List<WriteBehindTransactionRepository<?>> writeBehind,
+                           List<CachingTransactionRepository<?>> caches, CachingUserRepository users,
+                           Scanner scanner, boolean isAdmin) {
+        this.snapshots = snapshots;
+        this.writeBehind = writeBehind;
+        this.caches = caches;
+        this.users = users;
+        this.scanner = scanner;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Prompts for a file and writes a snapshot of every table to it
+     */
+    public void backupDatabase() {
+        if (!available()) {
+            return;
+        }
+        PrintBuilder.message("Enter snapshot file path: ").asPrompt().print();
+        Path file = Paths.get(scanner.nextLine().trim());
+        try {
+            flushWriteBehind();
+            long startNanos = System.nanoTime();
+            Snapshot.Counts counts = snapshots.backup(file);
+            PrintBuilder.message(new Result(false, file, counts, Files.size(file), System.nanoTime() - startNanos).toString())
+                .asSuccess().print();
+        } catch (IOException e) {
+            PrintBuilder.message("Could not write snapshot: " + e.getMessage()).asError().print();
+        } catch (SQLException e) {
+            PrintBuilder.message("Backup failed: " + e.getMessage()).asError().print();
+        }
+    }
+
+    /**
+     * Prompts for a snapshot file and, after confirmation, replaces every table with its contents
+     */
+    public void restoreDatabase() {
+        if (!available()) {
+            return;
+        }
+        PrintBuilder.message("Enter snapshot file path: ").asPrompt().print();
+        Path file = Paths.get(scanner.nextLine().trim());
+        PrintBuilder.message("This replaces ALL users, income, expenses and savings goals. Continue? (y/n): ")
+            .asPrompt().print();
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            PrintBuilder.message("Operation cancelled.").print();
+            return;
+        }
+        try {
+            flushWriteBehind();
+            long startNanos = System.nanoTime();
+            Snapshot.Counts counts;
+            try {
+                counts = snapshots.restore(file);
+            } finally {
+                // Even a failed restore may have run statements before rolling back
+                for (CachingTransactionRepository<?> cache : caches) {
+                    cache.invalidateAll();
+                }
+                if (users != null) {
+                    users.invalidateAll();
+                }
+            }
+            PrintBuilder.message(new Result(true, file, counts, Files.size(file), System.nanoTime() - startNanos).toString())
+                .asSuccess().print();
+        } catch (IOException e) {
+            PrintBuilder.message("Could not read snapshot, nothing was changed: " + e.getMessage()).asError().print();
+        } catch (SQLException e) {
+            PrintBuilder.message("Restore failed, nothing was changed: " + e.getMessage()).asError().print();
+        }
+    }
+
+    private boolean available() {
+        if (!isAdmin) {
+            PrintBuilder.message("Admin access required").asError().print();
+            return false;
+        }
+        if (snapshots == null) {
+            PrintBuilder.message("Snapshots need the MySQL storage engine (STORAGE_ENGINE=mysql)").asError().print();
+            return false;
+        }
+        return true;
+    }
+
+    // Queued menu adds go into the database first, so a backup includes them and a restore replaces them
+    private void flushWriteBehind() throws SQLException {
+        for (WriteBehindTransactionRepository<?> buffer : writeBehind) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * Outcome of a backup or restore
+     */
+    public static class Result {
+        private final boolean restore;
+        private final Path file;
+        private final Snapshot.Counts counts;
+        private final long fileBytes;
+        private final long elapsedNanos;
+
+        public Result(boolean restore, Path file, Snapshot.Counts counts, long fileBytes, long elapsedNanos) {
+            this.restore = restore;
+            this.file = file;
+            this.counts = counts;
+            this.fileBytes = fileBytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Path getFile() { return file; }
+
+        public Snapshot.Counts getCounts() { return counts; }
+
+        public long getFileBytes() { return fileBytes; }
+
+        public double getSeconds() { return elapsedNanos / 1_000_000_000.0; }
+
+        // Rows written or restored per second of wall-clock time
+        public double getRowsPerSecond() {
+            return getSeconds() > 0 ? counts.total() / getSeconds() : counts.total();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s %s (%d bytes) in %.2fs, %.0f rows/sec",
+                restore ? "Restored" : "Backed up", counts, restore ? "from" : "to", file, fileBytes,
+                getSeconds(), getRowsPerSecond());
+        }
+    }
+}
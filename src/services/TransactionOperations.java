@@ -0,0 +1,186 @@
+// TransactionOperations.java
+// Copyright 2024 maximusf
+
+// Income and expense operations without any console input, shared by the menu services and the HTTP API
+
+package services;
+
+import dao.TransactionDAO;
+import dao.TransactionRepository;
+import java.sql.SQLException;
+import java.util.List;
+import models.Money;
+import models.Page;
+import models.Transaction;
+import models.TransactionFactory;
+import models.TransactionSummary;
+import util.DateCodec;
+
+/**
+ * Add, list, update, delete and totals for one kind of transaction, with the access rules
+ * the console menus enforce:
+ * - Regular users read and add their own records only
+ * - Updates and deletes are admin only
+ * - Admins may read any user, or every user with TransactionDAO.ALL_USERS
+ *
+ * Rule violations throw SecurityException; bad input throws IllegalArgumentException.
+ * Holds no per-user state, so one instance serves every caller and thread.
+ *
+ * Example usage:
+ * TransactionOperations<Expense> expenses = new TransactionOperations<>(expenseDao, "Expense", Expense::new);
+ * Expense lunch = expenses.add(caller, expenses.create(caller.getUserId(), Money.parse("12.50"), "Food", "20241102"));
+ * Page<Expense> page = expenses.list(caller, caller.getUserId(), 0, 20);
+ *
+ * @param <T> The type of transaction (Income or Expense)
+ */
+public class TransactionOperations<T extends Transaction> {
+    private final TransactionRepository<T> dao;
+    private final String noun;
+    private final TransactionFactory<T> factory;
+
+    /**
+     * @param dao Repository the operations run against
+     * @param noun Name used in messages, e.g. "Income"
+     * @param factory Constructor for new records
+     */
+    public TransactionOperations(TransactionRepository<T> dao, String noun, TransactionFactory<T> factory) {
+        this.dao = dao;
+        this.noun = noun;
+        this.factory = factory;
+    }
+
+    public String getNoun() { return noun; }
+
+    /**
+     * Builds a record from user input, validating the amount, label and date
+     * @param date YYYYMMDD or YYYY-MM-DD
+     */
+    public T create(int userId, Money amount, String label, String date) {
+        return create(0, userId, amount, label, date);
+    }
+
+    public T create(int id, int userId, Money amount, String label, String date) {
+        return factory.create(id, userId, amount, label, formatDate(date));
+    }
+
+    /**
+     * Adds a record, setting its generated ID
+     * @throws SecurityException If a regular user adds a record for someone else
+     */
+    public T add(Caller caller, T transaction) throws SQLException {
+        checkOwner(caller, transaction.getUserId());
+        return dao.add(transaction);
+    }
+
+    /**
+     * Adds many records in one transaction with multi-row INSERTs on MySQL, setting their generated IDs
+     * @throws SecurityException If a regular user adds a record for someone else
+     */
+    public List<Integer> addAll(Caller caller, List<T> transactions) throws SQLException {
+        for (T transaction : transactions) {
+            checkOwner(caller, transaction.getUserId());
+        }
+        return dao.addAll(transactions);
+    }
+
+    /**
+     * Page of a user's records (or every record for ALL_USERS) after an ID
+     * @throws SecurityException If a regular user asks for someone else's records
+     */
+    public Page<T> list(Caller caller, int userId, int afterId, int pageSize) throws SQLException {
+        checkOwner(caller, userId);
+        return dao.getPageAfter(userId, afterId, pageSize);
+    }
+
+    /**
+     * Page of a user's records (or every record for ALL_USERS) before an ID
+     */
+    public Page<T> listBefore(Caller caller, int userId, int beforeId, int pageSize) throws SQLException {
+        checkOwner(caller, userId);
+        return dao.getPageBefore(userId, beforeId, pageSize);
+    }
+
+    /**
+     * Replaces an existing record (admin only)
+     * @return false if no record has the transaction's ID
+     */
+    public boolean update(Caller caller, T transaction) throws SQLException {
+        checkAdmin(caller);
+        return dao.update(transaction);
+    }
+
+    /**
+     * Deletes a record by ID (admin only)
+     * @return false if no record has the ID
+     */
+    public boolean delete(Caller caller, int id) throws SQLException {
+        checkAdmin(caller);
+        return dao.deleteById(id);
+    }
+
+    /**
+     * Deletes every record (admin only) with a single statement
+     * @return Number of records deleted
+     */
+    public int deleteAll(Caller caller) throws SQLException {
+        checkAdmin(caller);
+        return dao.deleteAll();
+    }
+
+    /**
+     * Count, total, min and max for a user or ALL_USERS
+     */
+    public TransactionSummary summary(Caller caller, int userId) throws SQLException {
+        checkOwner(caller, userId);
+        return dao.getSummary(userId);
+    }
+
+    /**
+     * Sum of amounts for a user or ALL_USERS
+     */
+    public Money total(Caller caller, int userId) throws SQLException {
+        checkOwner(caller, userId);
+        return dao.getTotal(userId);
+    }
+
+    /**
+     * Streams the fields of a user's records (or every record for ALL_USERS) in ID order, e.g. for an export
+     * @return Number of records streamed
+     */
+    public int forEachRawRow(Caller caller, int userId, TransactionRepository.RowHandler handler) throws SQLException {
+        checkOwner(caller, userId);
+        return dao.forEachRawRow(userId, handler);
+    }
+
+    /**
+     * Validates a date typed as YYYYMMDD or YYYY-MM-DD and returns it as YYYY-MM-DD
+     * @throws IllegalArgumentException If the date is malformed, impossible or outside 1900-2100
+     */
+    public static String formatDate(String input) {
+        int date = DateCodec.parse(input == null ? "" : input);
+        if (date == DateCodec.MALFORMED) {
+            throw new IllegalArgumentException("Date must be in YYYYMMDD format");
+        }
+
+        // Rejects impossible days such as Feb 31 as well as out-of-range years
+        if (date == DateCodec.INVALID || DateCodec.year(date) < 1900 || DateCodec.year(date) > 2100) {
+            throw new IllegalArgumentException("Invalid date. Please use a valid date in YYYYMMDD format");
+        }
+
+        return DateCodec.format(date);
+    }
+
+    private static void checkAdmin(Caller caller) {
+        if (!caller.isAdmin()) {
+            throw new SecurityException("Admin access required");
+        }
+    }
+
+    // Regular users may only touch their own records; ALL_USERS is admin only too
+    // Package-private so BatchRunner can check each queued add on its own line
+    static void checkOwner(Caller caller, int userId) {
+        if (!caller.isAdmin() && (userId != caller.getUserId() || userId == TransactionDAO.ALL_USERS)) {
+            throw new SecurityException("Access denied to records of User ID: " + userId);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+// UserService.java
+// Copyright 2024 maximusf
+
+// This file contains the UserService class, which lists users for admins.
+// Each page of the listing shows every user's income total, expense total and transaction count,
+// read with one query per page rather than one per user.
+
+package services;
+
+import dao.UserRepository;
+import dao.WriteBehindTransactionRepository;
+import models.Page;
+import models.UserSummary;
+import util.Environment;
+import util.PrintBuilder;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Service class for the user directory (admin only)
+ * Only the MySQL storage engine has a users table; with the journal engine the option explains that.
+ */
+public class UserService {
+    // Users shown per page, configurable with PAGE_SIZE in .env
+    private static final int PAGE_SIZE = Environment.getInt("PAGE_SIZE", 20);
+
+    private final UserRepository users;
+    private final List<WriteBehindTransactionRepository<?>> writeBehind;
+    private final Scanner scanner;
+    private final boolean isAdmin;
+
+    /**
+     * Constructs a new UserService
+     * @param users User access object, or null when the storage is not MySQL
+     * @param writeBehind Buffers whose queued adds are inserted before totals are read
+     * @param scanner Scanner for user input
+     * @param isAdmin Whether the current user is an admin
+     */
+    public UserService(UserRepository users, List<WriteBehindTransactionRepository<?>> writeBehind,
+                       Scanner scanner, boolean isAdmin) {
+        this.users = users;
+        this.writeBehind = writeBehind;
+        this.scanner = scanner;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Displays users with their totals one page at a time with next/prev navigation
+     */
+    public void viewAllUsers() throws SQLException {
+        if (!isAdmin) {
+            PrintBuilder.message("Admin access required").asError().print();
+            return;
+        }
+        if (users == null) {
+            PrintBuilder.message("The user directory needs the MySQL storage engine (STORAGE_ENGINE=mysql)")
+                .asError().print();
+            return;
+        }
+        for (WriteBehindTransactionRepository<?> buffer : writeBehind) {
+            buffer.flush();
+        }
+
+        Page<UserSummary> page = users.getSummaryPageAfter(0, PAGE_SIZE);
+        if (page.isEmpty()) {
+            PrintBuilder.message("No users found").print();
+            return;
+        }
+
+        PrintBuilder.message("\nUsers").print();
+        while (true) {
+            for (UserSummary summary : page.getItems()) {
+                PrintBuilder.message(format(summary)).print();
+            }
+            if (!page.hasNext() && !page.hasPrevious()) {
+                return;
+            }
+
+            PrintBuilder.message("[n]ext, [p]rev, [q]uit: ").asPrompt().print();
+            String command = scanner.nextLine().trim().toLowerCase();
+            List<UserSummary> items = page.getItems();
+            Page<UserSummary> nextPage;
+            if (command.equals("q")) {
+                return;
+            } else if (command.equals("n") && page.hasNext()) {
+                nextPage = users.getSummaryPageAfter(items.get(items.size() - 1).getUser().getId(), PAGE_SIZE);
+            } else if (command.equals("p") && page.hasPrevious()) {
+                nextPage = users.getSummaryPageBefore(items.get(0).getUser().getId(), PAGE_SIZE);
+            } else {
+                PrintBuilder.message("No such page. Enter n, p or q.").asError().print();
+                continue;
+            }
+
+            // A page can come back empty if users were deleted since the last one was shown
+            if (nextPage.isEmpty()) {
+                PrintBuilder.message("No such page.").asError().print();
+            } else {
+                page = nextPage;
+            }
+        }
+    }
+
+    // One line per user: who they are, then their totals
+    private static String format(UserSummary summary) {
+        return String.format("User %d: %s <%s> | Income: $%s | Expenses: $%s | Net: $%s | Transactions: %d",
+            summary.getUser().getId(), summary.getUser().getName(), summary.getUser().getEmail(),
+            summary.getTotalIncome(), summary.getTotalExpenses(), summary.getNet(), summary.getTransactionCount());
+    }
+}
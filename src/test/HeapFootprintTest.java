@@ -0,0 +1,119 @@
+package test;
+
+import models.Expense;
+import models.Money;
+import util.PrintBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Measures how much heap an admin "all users" listing retains per row
+ *
+ * Rows are built the way the DAOs hydrate them: every label and date arrives as a
+ * fresh String, as rs.getString returns it. The current Expense (epoch-day date,
+ * label from LabelDictionary) is compared with the previous layout, which kept
+ * both strings on every row. Needs no database.
+ */
+public class HeapFootprintTest {
+    private static final int ROWS = 200_000;
+    private static final String[] CATEGORIES = {
+        "Rent", "Groceries", "Utilities", "Transport", "Dining", "Insurance",
+        "Health", "Entertainment", "Clothing", "Education", "Travel", "Gifts"
+    };
+
+    public static void main(String[] args) {
+        PrintBuilder.message("\nMeasuring listing heap footprint (" + ROWS + " rows)...").print();
+
+        Measurement legacy = measure(i -> new LegacyExpense(i, 1 + i % 500, 1000 + i % 9000,
+            fresh(CATEGORIES[i % CATEGORIES.length]), fresh(dateFor(i))), row -> row.category);
+        Measurement compact = measure(i -> new Expense(i, 1 + i % 500, Money.ofCents(1000 + i % 9000),
+            fresh(CATEGORIES[i % CATEGORIES.length]), fresh(dateFor(i))), Expense::getCategory);
+
+        PrintBuilder.message(String.format("Previous layout: %6.1f bytes/row, %d distinct label strings",
+            legacy.bytesPerRow, legacy.labelInstances)).print();
+        PrintBuilder.message(String.format("Compact layout:  %6.1f bytes/row, %d distinct label strings",
+            compact.bytesPerRow, compact.labelInstances)).print();
+
+        if (compact.labelInstances > CATEGORIES.length) {
+            PrintBuilder.message("Labels are not shared: " + compact.labelInstances + " copies").asError().print();
+            System.exit(1);
+        }
+        if (compact.bytesPerRow > legacy.bytesPerRow / 2) {
+            PrintBuilder.message("Compact rows should take less than half the heap of the previous layout").asError().print();
+            System.exit(1);
+        }
+        PrintBuilder.message(String.format("Heap footprint test passed (%.0f%% smaller)",
+            100 * (1 - compact.bytesPerRow / legacy.bytesPerRow))).asSuccess().print();
+    }
+
+    // Builds ROWS rows and reports the heap they keep alive once garbage is collected
+    private static <T> Measurement measure(IntFunction<T> hydrate, Function<T, String> label) {
+        long before = usedHeapAfterGc();
+        List<T> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(hydrate.apply(i));
+        }
+        long after = usedHeapAfterGc();
+
+        IdentityHashMap<String, Boolean> labels = new IdentityHashMap<>();
+        for (T row : rows) {
+            labels.put(label.apply(row), Boolean.TRUE);
+        }
+        Reference.reachabilityFence(rows);
+        return new Measurement((double) (after - before) / ROWS, labels.size());
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // A few rounds so finalization and reference processing settle
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    // A new String with the same text, as a JDBC driver returns for each row
+    private static String fresh(String text) {
+        return new String(text.toCharArray());
+    }
+
+    private static String dateFor(int row) {
+        return String.format("2024-%02d-%02d", 1 + row % 12, 1 + row % 28);
+    }
+
+    private static class Measurement {
+        private final double bytesPerRow;
+        private final int labelInstances;
+
+        Measurement(double bytesPerRow, int labelInstances) {
+            this.bytesPerRow = bytesPerRow;
+            this.labelInstances = labelInstances;
+        }
+    }
+
+    // Field layout of Expense before dates and labels were compacted
+    private static class LegacyExpense {
+        private final int id;
+        private final int userId;
+        private final double amount;
+        private final String category;
+        private final String date;
+
+        LegacyExpense(int id, int userId, long amountCents, String category, String date) {
+            this.id = id;
+            this.userId = userId;
+            this.amount = amountCents / 100.0;
+            this.category = category;
+            this.date = date;
+        }
+    }
+}
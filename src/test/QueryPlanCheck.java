@@ -0,0 +1,90 @@
+package test;
+
+import dao.BalanceDAO;
+import dao.ConnectionPool;
+import dao.ExpenseDAO;
+import dao.IncomeDAO;
+import dao.MigrationRunner;
+import dao.SavingsGoalDAO;
+import dao.UserDAO;
+import util.PrintBuilder;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Runs EXPLAIN on every DAO query and fails if one has to scan a whole table
+ *
+ * A scan (type ALL or index) fails the check when no index could serve the query.
+ * When an index exists but the optimizer still prefers a scan (common on tiny test
+ * tables) it is reported as a warning instead.
+ */
+public class QueryPlanCheck {
+    private static int failures = 0;
+    private static int warnings = 0;
+
+    public static void main(String[] args) {
+        try (ConnectionPool pool = ConnectionPool.fromEnvironment()) {
+            // Make sure the indexes from db/migrations exist before checking plans
+            new MigrationRunner(pool, Paths.get("db", "migrations")).migrate();
+
+            try (Connection conn = pool.borrow()) {
+                checkAll(conn, "IncomeDAO", new IncomeDAO(pool).getQueryPlanSamples());
+                checkAll(conn, "ExpenseDAO", new ExpenseDAO(pool).getQueryPlanSamples());
+                checkAll(conn, "BalanceDAO", new BalanceDAO(pool).getQueryPlanSamples());
+                checkAll(conn, "SavingsGoalDAO", new SavingsGoalDAO(pool).getQueryPlanSamples());
+                checkAll(conn, "UserDAO", new UserDAO(pool).getQueryPlanSamples());
+            }
+        } catch (SQLException | IOException e) {
+            PrintBuilder.message("Query plan check error: " + e.getMessage()).asError().print();
+            System.exit(1);
+        }
+
+        if (failures > 0) {
+            PrintBuilder.message(failures + " queries scan a whole table").asError().print();
+            System.exit(1);
+        }
+        PrintBuilder.message("All query plans use indexes (" + warnings + " warnings)").asSuccess().print();
+    }
+
+    private static void checkAll(Connection conn, String daoName, Map<String, Object[]> samples) throws SQLException {
+        PrintBuilder.message("\nChecking " + daoName + " query plans...").print();
+        for (Map.Entry<String, Object[]> sample : samples.entrySet()) {
+            check(conn, sample.getKey(), sample.getValue());
+        }
+    }
+
+    private static void check(Connection conn, String sql, Object[] params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String table = rs.getString("table");
+                    String type = rs.getString("type");
+                    String possibleKeys = rs.getString("possible_keys");
+                    // <derivedN> rows read a page already cut down by an inner, indexed query
+                    if (table == null || table.startsWith("<derived") || !("ALL".equals(type) || "index".equals(type))) {
+                        continue;
+                    }
+
+                    if (possibleKeys == null) {
+                        failures++;
+                        PrintBuilder.message("Full scan of " + table + ": " + sql).asError().print();
+                    } else {
+                        warnings++;
+                        PrintBuilder.message("Optimizer chose a scan of " + table + " despite indexes "
+                            + possibleKeys + ": " + sql).withPrefix("Warning: ").print();
+                    }
+                }
+            }
+        }
+    }
+}
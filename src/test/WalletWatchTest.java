@@ -1,40 +1,128 @@
 package test;
 
+import api.ApiServer;
 import models.Income;
 import models.Expense;
 import dao.IncomeDAO;
 import dao.ExpenseDAO;
-import util.Environment;
+import dao.AsyncQueries;
+import dao.AsyncTransactionRepository;
+import dao.BalanceDAO;
+import dao.CachingTransactionRepository;
+import dao.ConnectionPool;
+import dao.JournalStorageEngine;
+import dao.JournalTransactionRepository;
+import dao.MetricsTransactionRepository;
+import dao.MetricsTransactionRepository.Operation;
+import dao.MySqlStorageEngine;
+import dao.OperationMetrics;
+import dao.Snapshot;
+import dao.SnapshotReader;
+import dao.SnapshotWriter;
+import dao.CachingUserRepository;
+import dao.ForwardingTransactionRepository;
+import dao.GoalTrackingTransactionRepository;
+import dao.SavingsGoalDAO;
+import dao.TransactionDAO;
+import dao.TransactionRepository;
+import dao.UserDAO;
+import dao.UserRepository;
+import dao.WriteBehindTransactionRepository;
+import models.Balance;
+import models.ColumnarTransactions;
+import models.ColumnarTransactions.Filter;
+import models.Money;
+import models.Page;
+import models.Report;
+import models.SavingsGoal;
+import models.TransactionSummary;
+import models.User;
+import models.UserSummary;
+import services.BatchRunner;
+import services.Caller;
+import services.ExportService;
+import services.ReportEngine;
+import services.TransactionOperations;
+import util.JsonReader;
+import util.JsonWriter;
+import util.LabelDictionary;
+import util.LatencyHistogram;
 import util.PrintBuilder;
+import util.SlowQueryLog;
+import util.TransactionEncoder;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 /**
  * Tests all database operations for both Income and Expense
  */
 public class WalletWatchTest {
-    private static final String URL = Environment.get("DB_URL");
-    private static final String USER = Environment.get("DB_USER");
-    private static final String PASS = Environment.get("DB_PASS");
-
     public static void main(String[] args) {
-        try {
-            Connection conn = DriverManager.getConnection(URL, USER, PASS);
-            IncomeDAO incomeDao = new IncomeDAO(conn);
-            ExpenseDAO expenseDao = new ExpenseDAO(conn);
+        try (ConnectionPool pool = ConnectionPool.fromEnvironment()) {
+            IncomeDAO incomeDao = new IncomeDAO(pool);
+            ExpenseDAO expenseDao = new ExpenseDAO(pool);
             
             cleanup(incomeDao, expenseDao);
             testIncomeOperations(incomeDao);
             testExpenseOperations(expenseDao);
+            testAggregates(incomeDao, expenseDao, new BalanceDAO(pool));
             testEdgeCases(incomeDao, expenseDao);
+            testBulkDeletes(incomeDao);
+            testBatchInsert(pool, expenseDao);
+            testPagination(expenseDao);
+            testTransactionCache(expenseDao);
+            testRepositoryMetrics(expenseDao);
+            testQueryTracing(expenseDao);
+            testColumnarStore(expenseDao);
+            testReportEngine();
+            testAsyncQueries(incomeDao, expenseDao);
+            testApiServer(incomeDao, expenseDao);
+            testBatchMode(pool, incomeDao, expenseDao);
+            testJournalStorage();
+            testWriteBehind();
+            testExport();
+            testSnapshot();
+            testSavingsGoals(pool, incomeDao, expenseDao);
+            testUserDirectory(pool, incomeDao, expenseDao);
+            testUserCache();
             cleanup(incomeDao, expenseDao);
             
+            testConnectionPool(pool);
+            
             PrintBuilder.message("All tests passed!").asSuccess().print();
-            conn.close();
         } catch (SQLException e) {
             PrintBuilder.message("Database error: " + e.getMessage()).asError().print();
         }
@@ -42,15 +130,8 @@ public class WalletWatchTest {
 
     private static void cleanup(IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
         // Clean up expenses first due to foreign key constraints
-        List<Expense> expenses = expenseDao.getByUserId(1);
-        for (Expense expense : expenses) {
-            expenseDao.deleteById(expense.getId());
-        }
-        
-        List<Income> incomes = incomeDao.getByUserId(1);
-        for (Income income : incomes) {
-            incomeDao.deleteById(income.getId());
-        }
+        expenseDao.deleteByUserId(1);
+        incomeDao.deleteByUserId(1);
     }
 
     private static void testIncomeOperations(IncomeDAO dao) throws SQLException {
@@ -70,7 +151,7 @@ public class WalletWatchTest {
         }
 
         Income added = foundIncome.get();
-        if (added.getAmount() != 999.99) {
+        if (added.getAmountCents() != 99999) {
             throw new SQLException("Income amount doesn't match");
         }
         if (!added.getSource().equals("Test Income")) {
@@ -97,7 +178,7 @@ public class WalletWatchTest {
         }
 
         Expense added = foundExpense.get();
-        if (added.getAmount() != 50.99) {
+        if (added.getAmountCents() != 5099) {
             throw new SQLException("Expense amount doesn't match");
         }
         if (!added.getCategory().equals("Test Expense")) {
@@ -107,6 +188,36 @@ public class WalletWatchTest {
         PrintBuilder.message("Expense operations passed!").asSuccess().print();
     }
 
+    private static void testAggregates(IncomeDAO incomeDao, ExpenseDAO expenseDao, BalanceDAO balanceDao) throws SQLException {
+        PrintBuilder.message("\nTesting aggregate queries...").print();
+
+        // User 1 holds exactly the records added by the income and expense tests
+        TransactionSummary incomeSummary = incomeDao.getSummary(1);
+        if (incomeSummary.getCount() != 1 || !incomeSummary.getMax().equals(Money.parse("999.99"))) {
+            throw new SQLException("Income summary doesn't match: " + incomeSummary);
+        }
+        if (expenseDao.getCount(1) != 1 || !expenseDao.getTotal(1).equals(Money.parse("50.99"))) {
+            throw new SQLException("Expense count or total doesn't match");
+        }
+
+        Balance balance = balanceDao.getBalance(1);
+        if (!balance.getNet().equals(Money.parse("949.00"))) {
+            throw new SQLException("Balance doesn't match: " + balance);
+        }
+        if (incomeDao.getCount(0) < incomeSummary.getCount()) {
+            throw new SQLException("All-users count smaller than single user count");
+        }
+
+        // Repeating a query reuses the cached prepared statement
+        long hits = expenseDao.getStatementCacheHits();
+        expenseDao.getCount(1);
+        if (expenseDao.getStatementCacheHits() != hits + 1) {
+            throw new SQLException("Repeated query missed the statement cache");
+        }
+
+        PrintBuilder.message("Aggregate queries passed!").asSuccess().print();
+    }
+
     private static void testEdgeCases(IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
         PrintBuilder.message("\nTesting edge cases...").print();
 
@@ -130,9 +241,982 @@ public class WalletWatchTest {
         expenseDao.deleteById(specialExpense.getId());
         PrintBuilder.message("Special characters test passed").asSuccess().print();
 
+        // Test calendar-invalid dates are rejected and leap days accepted
+        for (String badDate : new String[] { "2024-02-30", "2023-02-29", "2024-04-31", "2024-13-01", "2024-1-05" }) {
+            try {
+                new Expense(0, 1, 1.00, "Bad Date", badDate);
+                throw new SQLException("Invalid date accepted: " + badDate);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as intended
+            }
+        }
+        new Expense(0, 1, 1.00, "Leap Day", "2024-02-29");
+        // Typed dates are YYYYMMDD or YYYY-MM-DD, with no dashes elsewhere
+        for (String badInput : new String[] { "20-24-1102", "2024-1102", "202411-02", "2024/11/02", "2024-11-0-2" }) {
+            try {
+                TransactionOperations.formatDate(badInput);
+                throw new SQLException("Malformed date accepted: " + badInput);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as intended
+            }
+        }
+        if (!TransactionOperations.formatDate("20241102").equals("2024-11-02")
+            || !TransactionOperations.formatDate("2024-11-02").equals("2024-11-02")) {
+            throw new SQLException("Well-formed dates rejected");
+        }
+        PrintBuilder.message("Date validation test passed").asSuccess().print();
+
         PrintBuilder.message("Edge cases passed!").asSuccess().print();
     }
 
+    private static void testBulkDeletes(IncomeDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting bulk deletes...").print();
+
+        Income march = dao.add(new Income(0, 1, 10.00, "Bulk Test", "2024-03-01"));
+        Income april = dao.add(new Income(0, 1, 20.00, "Bulk Test", "2024-04-01"));
+        Income may = dao.add(new Income(0, 1, 30.00, "Bulk Test", "2024-05-01"));
+
+        if (dao.deleteByDateRange(1, "2024-04-01", "2024-04-30") != 1) {
+            throw new SQLException("Date range delete should remove exactly one record");
+        }
+        if (dao.deleteByIds(List.of(march.getId(), april.getId(), may.getId())) != 2) {
+            throw new SQLException("Delete by IDs should skip the already deleted record");
+        }
+        if (dao.deleteByIds(List.of()) != 0) {
+            throw new SQLException("Delete by empty ID list should remove nothing");
+        }
+
+        PrintBuilder.message("Bulk deletes passed!").asSuccess().print();
+    }
+
+    private static void testBatchInsert(ConnectionPool pool, ExpenseDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting batch insert...").print();
+
+        List<Expense> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(new Expense(0, 1, i + 0.50, "Batch Test", "2024-03-15"));
+        }
+        // A batch size smaller than the list sends three INSERTs (10 + 10 + 5 rows); the server's
+        // statement counters on the transaction's connection show the round trips actually made
+        long[] statements = new long[1];
+        List<Integer> ids = pool.inTransaction(conn -> {
+            long before = insertStatements(conn);
+            List<Integer> inserted = dao.addAll(batch, 10);
+            statements[0] = insertStatements(conn) - before;
+            return inserted;
+        });
+
+        if (ids.size() != batch.size() || ids.contains(0)) {
+            throw new SQLException("Batch insert did not return an ID for every record");
+        }
+        if (statements[0] != 3) {
+            throw new SQLException("Batch insert of 25 rows in tens took " + statements[0] + " statements, expected 3");
+        }
+        if (batch.get(24).getId() != ids.get(24)) {
+            throw new SQLException("Batch insert did not set IDs on the records");
+        }
+        // Each generated ID belongs to the row it was set on
+        for (Expense stored : dao.getByUserId(1)) {
+            int index = ids.indexOf(stored.getId());
+            if (index >= 0 && stored.getAmountCents() != batch.get(index).getAmountCents()) {
+                throw new SQLException("Batch insert IDs out of order: " + stored);
+            }
+        }
+        if (dao.deleteByIds(ids) != batch.size()) {
+            throw new SQLException("Batch inserted records not found");
+        }
+
+        PrintBuilder.message("Batch insert passed!").asSuccess().print();
+    }
+
+    // INSERT statements the server has run on this connection, as text or as prepared statement executions
+    private static long insertStatements(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SHOW SESSION STATUS WHERE Variable_name IN ('Com_insert', 'Com_stmt_execute')")) {
+            long total = 0;
+            while (rs.next()) {
+                total += rs.getLong(2);
+            }
+            return total;
+        }
+    }
+
+    private static void testConnectionPool(ConnectionPool pool) throws SQLException {
+        PrintBuilder.message("\nTesting connection pool...").print();
+
+        Connection first;
+        try (Connection conn = pool.borrow()) {
+            first = conn;
+        }
+        if (!first.isClosed()) {
+            throw new SQLException("Returned connection should report closed to its borrower");
+        }
+        // The connection just returned is reused instead of opening a new one
+        try (Connection conn = pool.borrow()) {
+            if (conn != first) {
+                throw new SQLException("Pool did not reuse the idle connection");
+            }
+        }
+        if (pool.getActiveCount() != 0) {
+            throw new SQLException("Pool still has active connections: " + pool);
+        }
+
+        // An Error thrown by the work rolls back too, instead of being committed when auto-commit is reset
+        try {
+            pool.inTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("INSERT INTO expenses (user_id, amount, category, date) "
+                        + "VALUES (1, 1.00, 'Pool Rolled Back', '2024-03-15')");
+                }
+                throw new AssertionError("Simulated failure");
+            });
+            throw new SQLException("Error from the work was not propagated");
+        } catch (AssertionError expected) {
+            // Checked below
+        }
+        try (Connection conn = pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM expenses WHERE category = 'Pool Rolled Back'")) {
+            if (!rs.next() || rs.getInt(1) != 0) {
+                throw new SQLException("Transaction was committed after an Error");
+            }
+        }
+
+        PrintBuilder.message("Connection pool passed! " + pool).asSuccess().print();
+    }
+
+    private static void testPagination(ExpenseDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting pagination...").print();
+
+        List<Expense> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(new Expense(0, 1, 10.00 + i, "Page Test", "2024-03-15"));
+        }
+        dao.addAll(batch);
+        int total = dao.getCount(1);
+
+        Page<Expense> first = dao.getPageAfter(1, 0, 2);
+        if (first.getItems().size() != 2 || !first.hasNext() || first.hasPrevious()) {
+            throw new SQLException("First page is wrong");
+        }
+        int lastId = first.getItems().get(1).getId();
+        Page<Expense> second = dao.getPageAfter(1, lastId, 2);
+        if (second.getItems().get(0).getId() <= lastId) {
+            throw new SQLException("Next page does not continue after the previous page");
+        }
+        Page<Expense> back = dao.getPageBefore(1, second.getItems().get(0).getId(), 2);
+        if (back.getItems().get(0).getId() != first.getItems().get(0).getId() || back.hasPrevious()) {
+            throw new SQLException("Previous page does not match the first page");
+        }
+
+        int[] streamed = {0};
+        if (dao.forEachRow(1, expense -> streamed[0]++) != total || streamed[0] != total) {
+            throw new SQLException("Streaming did not visit every record");
+        }
+
+        dao.deleteByIds(List.of(batch.get(0).getId(), batch.get(1).getId(), batch.get(2).getId(),
+            batch.get(3).getId(), batch.get(4).getId()));
+        PrintBuilder.message("Pagination passed!").asSuccess().print();
+    }
+
+    private static void testColumnarStore(ExpenseDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting columnar store...").print();
+
+        List<Integer> ids = dao.addAll(List.of(
+            new Expense(0, 1, 10.25, "Columnar Rent", "2024-05-01"),
+            new Expense(0, 1, 4.50, "Columnar Food", "2024-05-15"),
+            new Expense(0, 1, 6.00, "Columnar Food", "2024-06-02")));
+
+        ColumnarTransactions columns = dao.loadColumnar(1);
+        if (columns.size() != dao.getCount(1) || columns.sumCents(Filter.all()) != dao.getTotal(1).getCents()) {
+            throw new SQLException("Columnar load doesn't match the table: " + columns.size() + " rows");
+        }
+
+        int food = LabelDictionary.shared().idOf("Columnar Food");
+        if (columns.sumByLabel(Filter.all())[food] != 1050) {
+            throw new SQLException("Group-by label sum is wrong");
+        }
+        // May and June 2024
+        long[] months = columns.sumByMonth(Filter.all().label(food), 2024 * 12 + 4, 2);
+        if (months[0] != 450 || months[1] != 600) {
+            throw new SQLException("Group-by month sum is wrong");
+        }
+        int[] top = columns.topRows(Filter.forUser(1), 1);
+        if (top.length != 1 || columns.getAmountCents(top[0]) < 1025) {
+            throw new SQLException("Top row should be the largest expense");
+        }
+
+        dao.deleteByIds(ids);
+        PrintBuilder.message("Columnar store passed!").asSuccess().print();
+    }
+
+    private static void testReportEngine() throws SQLException {
+        PrintBuilder.message("\nTesting report engine...").print();
+        LabelDictionary labels = LabelDictionary.shared();
+        int salary = labels.idOf("Report Salary");
+        int rent = labels.idOf("Report Rent");
+        int food = labels.idOf("Report Food");
+        int newYearsEve = (int) LocalDate.of(2023, 12, 31).toEpochDay();
+
+        // Months are bucketed by calendar month across the year boundary
+        ColumnarTransactions incomes = new ColumnarTransactions();
+        incomes.append(1, 1, 300000, newYearsEve, salary);
+        incomes.append(2, 1, 310000, newYearsEve + 1, salary);
+        ColumnarTransactions expenses = new ColumnarTransactions();
+        expenses.append(1, 1, 120000, newYearsEve, rent);
+        expenses.append(2, 1, 30000, newYearsEve, food);
+        expenses.append(3, 1, 120000, newYearsEve + 1, rent);
+        Report report = new ReportEngine().build(incomes, expenses, Filter.forUser(1));
+        List<Report.MonthTotal> months = report.getMonths();
+        if (months.size() != 2 || !months.get(0).getLabel().equals("2023-12") || !months.get(1).getLabel().equals("2024-01")
+            || months.get(0).getNet().getCents() != 150000 || months.get(1).getCumulative().getCents() != 340000
+            || report.getNetCashFlow().getCents() != 340000) {
+            throw new SQLException("Monthly trend across the year boundary is wrong: " + describe(report));
+        }
+        List<Report.LabelTotal> categories = report.getExpensesByCategory();
+        if (categories.size() != 2 || !categories.get(0).getLabel().equals("Report Rent")
+            || categories.get(0).getAmount().getCents() != 240000) {
+            throw new SQLException("Category breakdown is wrong: " + describe(report));
+        }
+
+        // Enough rows for the parallel engine to split into several leaves
+        ColumnarTransactions manyIncomes = new ColumnarTransactions();
+        ColumnarTransactions manyExpenses = new ColumnarTransactions();
+        int[] categoryIds = { rent, food, labels.idOf("Report Travel") };
+        for (int i = 0; i < 100_000; i++) {
+            int day = newYearsEve - 400 + i % 800;
+            manyIncomes.append(i, 1 + i % 3, 1000 + i % 977, day, salary);
+            manyExpenses.append(i, 1 + i % 3, 100 + i % 331, day, categoryIds[i % categoryIds.length]);
+        }
+        ReportEngine sequential = new ReportEngine(ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+        ReportEngine parallel = new ReportEngine(ForkJoinPool.commonPool(), 1);
+        for (Filter filter : List.of(Filter.all(), Filter.forUser(2), Filter.all().between(newYearsEve - 30, newYearsEve + 30))) {
+            Report expected = sequential.build(manyIncomes, manyExpenses, filter);
+            Report actual = parallel.build(manyIncomes, manyExpenses, filter);
+            if (!describe(actual).equals(describe(expected))) {
+                throw new SQLException("Parallel report differs from sequential one");
+            }
+
+            // Shares of each breakdown add up to 100%
+            for (List<Report.LabelTotal> breakdown : List.of(actual.getIncomeBySource(), actual.getExpensesByCategory())) {
+                double shares = 0;
+                for (Report.LabelTotal line : breakdown) {
+                    shares += line.getShare();
+                }
+                if (Math.abs(shares - 1) > 1e-9) {
+                    throw new SQLException("Shares add up to " + shares * 100 + "%");
+                }
+            }
+        }
+
+        // No rows, or no matching rows, give an empty report
+        Report empty = new ReportEngine().build(new ColumnarTransactions(), new ColumnarTransactions(), Filter.all());
+        Report noMatch = parallel.build(manyIncomes, manyExpenses, Filter.forUser(99));
+        for (Report none : List.of(empty, noMatch)) {
+            if (!none.isEmpty() || !none.getIncomeBySource().isEmpty() || !none.getExpensesByCategory().isEmpty()
+                || !none.getNetCashFlow().equals(Money.ZERO)) {
+                throw new SQLException("Report without rows should be empty: " + describe(none));
+            }
+        }
+        PrintBuilder.message("Report engine passed!").asSuccess().print();
+    }
+
+    // Every figure in a report, for comparing two of them
+    private static String describe(Report report) {
+        StringBuilder text = new StringBuilder();
+        for (List<Report.LabelTotal> breakdown : List.of(report.getIncomeBySource(), report.getExpensesByCategory())) {
+            for (Report.LabelTotal line : breakdown) {
+                text.append(line.getLabel()).append('=').append(line.getAmount()).append('/').append(line.getShare()).append(' ');
+            }
+            text.append("| ");
+        }
+        for (Report.MonthTotal month : report.getMonths()) {
+            text.append(month.getLabel()).append(':').append(month.getIncome()).append(',').append(month.getExpenses())
+                .append(',').append(month.getCumulative()).append(' ');
+        }
+        return text.append("| ").append(report.getTotalIncome()).append(',').append(report.getTotalExpenses()).toString();
+    }
+
+    private static void testAsyncQueries(IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
+        PrintBuilder.message("\nTesting concurrent queries...").print();
+
+        try (AsyncQueries async = new AsyncQueries()) {
+            AsyncTransactionRepository<Income> asyncIncome = new AsyncTransactionRepository<>(incomeDao, async);
+            AsyncTransactionRepository<Expense> asyncExpenses = new AsyncTransactionRepository<>(expenseDao, async);
+
+            // Both queries are in flight before either is joined
+            CompletableFuture<Money> incomeTotal = asyncIncome.getTotal(1);
+            CompletableFuture<Integer> expenseCount = asyncExpenses.getCount(1);
+            if (!AsyncQueries.join(incomeTotal).equals(incomeDao.getTotal(1))
+                || AsyncQueries.join(expenseCount) != expenseDao.getCount(1)) {
+                throw new SQLException("Concurrent results don't match sequential ones");
+            }
+
+            // A failing query surfaces its SQLException from join
+            try {
+                AsyncQueries.join(async.supply(() -> { throw new SQLException("expected"); }));
+                throw new SQLException("Failure was not propagated");
+            } catch (SQLException e) {
+                if (!"expected".equals(e.getMessage())) {
+                    throw e;
+                }
+            }
+        }
+        PrintBuilder.message("Concurrent queries passed!").asSuccess().print();
+    }
+
+    private static void testApiServer(IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
+        PrintBuilder.message("\nTesting HTTP API...").print();
+
+        // Names with quotes and control characters survive a write and read back
+        String tricky = "Caf\u00e9 \"A\"\\B\n\u0001";
+        String encoded = new JsonWriter().beginObject().name("label").value(tricky).endObject().toString();
+        if (!tricky.equals(JsonReader.parseObject(encoded).get("label"))) {
+            throw new SQLException("JSON round trip changed the text: " + encoded);
+        }
+
+        try (ApiServer server = ApiServer.over(incomeDao, expenseDao)) {
+            server.start("127.0.0.1", 0);
+            String base = "http://127.0.0.1:" + server.getPort() + "/api/expenses";
+            HttpClient client = HttpClient.newHttpClient();
+
+            HttpResponse<String> added = send(client, HttpRequest.newBuilder(URI.create(base))
+                .header("X-User-Id", "1")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"amount\": 12.50, \"category\": \"Api Test\", \"date\": \"20240315\"}")));
+            Map<String, String> fields = JsonReader.parseObject(added.body());
+            if (added.statusCode() != 201 || !"12.50".equals(fields.get("amount")) || !"2024-03-15".equals(fields.get("date"))) {
+                throw new SQLException("Add through the API failed: " + added.body());
+            }
+            String id = fields.get("id");
+
+            HttpResponse<String> listed = send(client, HttpRequest.newBuilder(URI.create(base + "?limit=500")).header("X-User-Id", "1"));
+            if (listed.statusCode() != 200 || !listed.body().contains("\"id\":" + id + ",")) {
+                throw new SQLException("Added expense not listed: " + listed.body());
+            }
+
+            // Other users can't read user 1's records and only the admin may delete
+            if (send(client, HttpRequest.newBuilder(URI.create(base + "?userId=1")).header("X-User-Id", "2")).statusCode() != 403
+                || send(client, HttpRequest.newBuilder(URI.create(base + "/" + id)).header("X-User-Id", "1").DELETE()).statusCode() != 403
+                || send(client, HttpRequest.newBuilder(URI.create(base + "/totals"))).statusCode() != 401) {
+                throw new SQLException("API access rules not enforced");
+            }
+            if (send(client, HttpRequest.newBuilder(URI.create(base + "/" + id)).header("X-User-Id", "777").DELETE()).statusCode() != 204) {
+                throw new SQLException("Admin delete through the API failed");
+            }
+
+            // An oversized body is refused without reading it to the end
+            String oversized = "{\"category\": \"" + "x".repeat(1 << 20) + "\"}";
+            if (send(client, HttpRequest.newBuilder(URI.create(base)).header("X-User-Id", "1")
+                    .POST(HttpRequest.BodyPublishers.ofString(oversized))).statusCode() != 413) {
+                throw new SQLException("Oversized request body not refused");
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new SQLException("API request failed: " + e.getMessage(), e);
+        }
+        PrintBuilder.message("HTTP API passed!").asSuccess().print();
+    }
+
+    private static void testBatchMode(ConnectionPool pool, IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
+        PrintBuilder.message("\nTesting batch mode...").print();
+        int before = expenseDao.getCount(1);
+
+        // Lines 1-2 commit together before the read; line 5 fails so line 4 is rolled back with it
+        String script = String.join("\n",
+            "add-expense --amount 12.50 --category \"Batch Test\" --date 20240315",
+            "add-income --amount 100 --source \"Batch Test\" --date 2024-03-15",
+            "total-expenses",
+            "add-expense --amount 1 --category \"Batch Test\" --date 20240316",
+            "delete-income --id 1");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BatchRunner batch = new BatchRunner(new MySqlStorageEngine(pool),
+            new TransactionOperations<>(incomeDao, "Income", Income::new),
+            new TransactionOperations<>(expenseDao, "Expense", Expense::new),
+            Caller.of(1), new PrintStream(output, true));
+        int failed;
+        try {
+            failed = batch.run(new BufferedReader(new StringReader(script)));
+        } catch (IOException e) {
+            throw new SQLException("Could not read the script", e);
+        }
+
+        String[] results = output.toString().trim().split("\n");
+        if (failed != 2 || results.length != 5 || expenseDao.getCount(1) != before + 1) {
+            throw new SQLException("Batch results wrong (" + failed + " failed):\n" + output);
+        }
+        if (!"Admin access required".equals(JsonReader.parseObject(results[4]).get("error"))
+            || !JsonReader.parseObject(results[3]).get("error").startsWith("Rolled back")) {
+            throw new SQLException("Failed group not rolled back:\n" + output);
+        }
+
+        // A refused add later in a run of adds is reported on its own line, not the run's first
+        output.reset();
+        try {
+            failed = batch.run(new BufferedReader(new StringReader(String.join("\n",
+                "add-expense --amount 1 --category \"Batch Test\" --date 20240316",
+                "add-expense --amount 1 --category \"Batch Test\" --date 20240316 --user 2"))));
+        } catch (IOException e) {
+            throw new SQLException("Could not read the script", e);
+        }
+        results = output.toString().trim().split("\n");
+        if (failed != 4 || !JsonReader.parseObject(results[0]).get("error").equals("Rolled back: command on line 2 failed")
+            || !JsonReader.parseObject(results[1]).get("error").startsWith("Access denied")) {
+            throw new SQLException("Refused add reported on the wrong line:\n" + output);
+        }
+        PrintBuilder.message("Batch mode passed!").asSuccess().print();
+    }
+
+    private static void testJournalStorage() throws SQLException {
+        PrintBuilder.message("\nTesting journal storage...").print();
+        try {
+            Path directory = Files.createTempDirectory("walletwatch-journal");
+            int keptId;
+            try (JournalStorageEngine storage = new JournalStorageEngine(directory, false, 0)) {
+                JournalTransactionRepository<Expense> expenses = storage.getExpenseRepository();
+                for (int i = 1; i <= 30; i++) {
+                    expenses.add(new Expense(0, 1, i, i % 2 == 0 ? "Food" : "Rent", "2024-03-" + (10 + i % 10)));
+                }
+                expenses.add(new Expense(0, 2, 99.99, "Other User", "2024-03-15"));
+                keptId = expenses.add(new Expense(0, 1, 5.00, "Kept", "2024-04-01")).getId();
+
+                Page<Expense> second = expenses.getPageAfter(1, expenses.getPageAfter(1, 0, 20).getItems().get(19).getId(), 20);
+                if (second.getItems().size() != 11 || second.hasNext() || !expenses.getTotal(1).equals(Money.parse("470.00"))) {
+                    throw new SQLException("Unexpected journal reads: " + expenses);
+                }
+
+                // A failing transaction leaves neither its records nor its index changes behind
+                try {
+                    storage.inTransaction(() -> {
+                        expenses.deleteByUserId(1);
+                        expenses.add(new Expense(0, 1, 1.00, "Rolled Back", "2024-03-15"));
+                        throw new SQLException("Simulated failure");
+                    });
+                } catch (SQLException expected) {
+                    // Checked below
+                }
+                if (expenses.getCount(1) != 31 || expenses.getCount(TransactionDAO.ALL_USERS) != 32) {
+                    throw new SQLException("Journal transaction was not rolled back: " + expenses);
+                }
+
+                long before = storage.getSize();
+                expenses.deleteByDateRange(1, "2024-03-01", "2024-03-31");
+                storage.compact();
+                if (storage.getSize() >= before || expenses.getCount(1) != 1) {
+                    throw new SQLException("Compaction did not drop deleted records: " + before + " -> " + storage.getSize());
+                }
+            }
+
+            // Reopening replays the compacted journal, and new IDs continue after the old ones
+            try (JournalStorageEngine storage = new JournalStorageEngine(directory, false, 0)) {
+                JournalTransactionRepository<Expense> expenses = storage.getExpenseRepository();
+                List<Expense> kept = expenses.getByUserId(1);
+                if (kept.size() != 1 || kept.get(0).getId() != keptId || !kept.get(0).getCategory().equals("Kept")
+                    || expenses.add(new Expense(0, 1, 1.00, "New", "2024-04-02")).getId() <= keptId
+                    || storage.getBalanceRepository().getBalance(2).getTotalExpenses().getCents() != 9999) {
+                    throw new SQLException("Journal did not survive a reopen: " + kept);
+                }
+            }
+
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            throw new SQLException("Journal I/O failed: " + e.getMessage(), e);
+        }
+        PrintBuilder.message("Journal storage passed!").asSuccess().print();
+    }
+
+    private static void testWriteBehind() throws SQLException {
+        PrintBuilder.message("\nTesting write-behind inserts...").print();
+        try {
+            Path directory = Files.createTempDirectory("walletwatch-spool");
+            Path spool = directory.resolve("expenses.spool");
+            try (JournalStorageEngine storage = new JournalStorageEngine(directory.resolve("journal"), false, 0)) {
+                JournalTransactionRepository<Expense> expenses = storage.getExpenseRepository();
+
+                // Reads wait for queued adds, which arrive in batches with their IDs set
+                Expense last;
+                try (WriteBehindTransactionRepository<Expense> buffer =
+                         new WriteBehindTransactionRepository<>(expenses, "expenses", Expense::new, spool, 100, 10, 60_000, false)) {
+                    for (int i = 0; i < 24; i++) {
+                        buffer.add(new Expense(0, 1, 1.00, "Queued", "2024-05-01"));
+                    }
+                    last = buffer.add(new Expense(0, 1, 1.00, "Queued", "2024-05-02"));
+                    if (buffer.getCount(1) != 25 || last.getId() == 0 || buffer.getPending() != 0 || buffer.getBatches() < 3) {
+                        throw new SQLException("Queued adds were not flushed before a read: " + buffer);
+                    }
+                }
+
+                // While inserts fail, adds are still acknowledged from the spool until the queue is full;
+                // a non-transient connection error is an outage too, so nothing is rejected
+                TransactionRepository<Expense> down = new ForwardingTransactionRepository<>(expenses) {
+                    @Override
+                    public List<Integer> addAll(List<Expense> transactions) throws SQLException {
+                        throw new SQLNonTransientConnectionException("Too many connections", "08004");
+                    }
+                };
+                try (WriteBehindTransactionRepository<Expense> buffer =
+                         new WriteBehindTransactionRepository<>(down, "expenses", Expense::new, spool, 3, 10, 0, false)) {
+                    for (int i = 0; i < 3; i++) {
+                        buffer.add(new Expense(0, 2, 2.00, "Spooled", "2024-05-03"));
+                    }
+                    try {
+                        buffer.add(new Expense(0, 2, 2.00, "Spooled", "2024-05-03"));
+                        throw new SQLException("A full queue should push back while inserts fail");
+                    } catch (SQLException expected) {
+                        if (!expected.getMessage().contains("full")) {
+                            throw expected;
+                        }
+                    }
+                    if (buffer.getRejected() != 0) {
+                        throw new SQLException("Records were rejected during an outage: " + buffer);
+                    }
+                }
+
+                // The next start inserts what the spool kept, and refused records don't block the rest
+                TransactionRepository<Expense> picky = new ForwardingTransactionRepository<>(expenses) {
+                    @Override
+                    public List<Integer> addAll(List<Expense> transactions) throws SQLException {
+                        for (Expense expense : transactions) {
+                            if (expense.getUserId() == 999) {
+                                throw new SQLIntegrityConstraintViolationException("Unknown user", "23000");
+                            }
+                        }
+                        return delegate.addAll(transactions);
+                    }
+                };
+                try (WriteBehindTransactionRepository<Expense> buffer =
+                         new WriteBehindTransactionRepository<>(picky, "expenses", Expense::new, spool, 100, 10, 60_000, false)) {
+                    if (buffer.getPending() != 3) {
+                        throw new SQLException("Spooled adds were not replayed: " + buffer);
+                    }
+                    buffer.add(new Expense(0, 999, 3.00, "Refused", "2024-05-04"));
+                    buffer.add(new Expense(0, 2, 3.00, "After Refused", "2024-05-04"));
+                    if (buffer.getCount(2) != 4 || buffer.getRejected() != 1
+                        || !Files.readString(buffer.getRejectedFile()).contains("Refused")) {
+                        throw new SQLException("Spooled or refused adds were not handled: " + buffer);
+                    }
+                }
+                if (Files.size(spool) != 0 || expenses.getCount(TransactionDAO.ALL_USERS) != 29) {
+                    throw new SQLException("Spool was not emptied after its records were inserted");
+                }
+            }
+            deleteTree(directory);
+        } catch (IOException e) {
+            throw new SQLException("Write-behind I/O failed: " + e.getMessage(), e);
+        }
+        PrintBuilder.message("Write-behind inserts passed!").asSuccess().print();
+    }
+
+    private static void testExport() throws SQLException {
+        PrintBuilder.message("\nTesting streaming export...").print();
+        try {
+            Path directory = Files.createTempDirectory("walletwatch-export");
+            try (JournalStorageEngine storage = new JournalStorageEngine(directory.resolve("journal"), false, 0)) {
+                JournalTransactionRepository<Expense> expenses = storage.getExpenseRepository();
+                // More rows than the journal copies per lock, with labels that need quoting and escaping
+                for (int i = 0; i < 1500; i++) {
+                    expenses.add(new Expense(0, 1, 1.05, "Food", "2024-06-01"));
+                }
+                expenses.add(new Expense(0, 1, 1234.5, "Eating \"Out\", Café", "2024-06-02"));
+                expenses.add(new Expense(0, 2, 7.00, "Other User", "2024-06-03"));
+                TransactionOperations<Expense> operations = new TransactionOperations<>(expenses, "Expense", Expense::new);
+
+                Path csv = directory.resolve("expenses.csv");
+                ExportService.Result result = ExportService.export(operations, Caller.of(1), 1, "category", csv,
+                    TransactionEncoder.Format.CSV);
+                List<String> lines = Files.readAllLines(csv);
+                if (result.getRows() != 1501 || lines.size() != 1502 || !lines.get(0).equals("id,user_id,amount,category,date")
+                    || !lines.get(1).endsWith(",1,1.05,Food,2024-06-01")
+                    || !lines.get(1501).endsWith(",1,1234.50,\"Eating \"\"Out\"\", Café\",2024-06-02")) {
+                    throw new SQLException("Unexpected CSV export: " + result + " " + lines.get(1501));
+                }
+
+                Path ndjson = directory.resolve("all.ndjson.gz");
+                result = ExportService.export(operations, Caller.of(Caller.ADMIN_ID), TransactionDAO.ALL_USERS, "category",
+                    ndjson, TransactionEncoder.Format.NDJSON);
+                List<String> objects;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                         new GZIPInputStream(Files.newInputStream(ndjson)), StandardCharsets.UTF_8))) {
+                    objects = reader.lines().toList();
+                }
+                Map<String, String> last = JsonReader.parseObject(objects.get(objects.size() - 1));
+                Map<String, String> quoted = JsonReader.parseObject(objects.get(1500));
+                if (objects.size() != 1502 || result.getFileBytes() >= result.getBytes()
+                    || !last.get("userId").equals("2") || !last.get("amount").equals("7.00")
+                    || !quoted.get("category").equals("Eating \"Out\", Café") || !quoted.get("date").equals("2024-06-02")) {
+                    throw new SQLException("Unexpected NDJSON export: " + result + " " + objects.get(1500));
+                }
+
+                // A refused export leaves an earlier file alone
+                try {
+                    ExportService.export(operations, Caller.of(1), 2, "category", csv, TransactionEncoder.Format.CSV);
+                    throw new SQLException("A user exported someone else's records");
+                } catch (SecurityException expected) {
+                    if (Files.readAllLines(csv).size() != 1502) {
+                        throw new SQLException("Refused export changed the earlier file");
+                    }
+                }
+            }
+            deleteTree(directory);
+        } catch (IOException e) {
+            throw new SQLException("Export I/O failed: " + e.getMessage(), e);
+        }
+        PrintBuilder.message("Streaming export passed!").asSuccess().print();
+    }
+
+    private static void testSnapshot() throws SQLException {
+        PrintBuilder.message("\nTesting binary snapshots...").print();
+        try {
+            Path directory = Files.createTempDirectory("walletwatch-snapshot");
+            Path file = directory.resolve("backup.wws");
+            String[] categories = { "Food", "Rent", "Café", "Transport" };
+            int expenseRows = 30_000;
+            long writtenCents = 0;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                SnapshotWriter writer = new SnapshotWriter(channel);
+                writer.beginTable(Snapshot.Table.USERS);
+                writer.user(1, "John Doe", "john@example.com", "password123");
+                writer.user(7, "Zoë", "zoe@example.com", "secret");
+                writer.endTable();
+                // No income rows: the table is still restored (emptied)
+                writer.beginTable(Snapshot.Table.EXPENSES);
+                for (int i = 0; i < expenseRows; i++) {
+                    long cents = i % 5 == 0 ? -(i * 7L) : i * 13L;
+                    writtenCents += cents;
+                    writer.transaction(i + 1, 1 + i % 7 / 6 * 6, cents, 19_800 + i / 100, i == 5 ? null : categories[i % 4]);
+                }
+                writer.endTable();
+                writer.beginTable(Snapshot.Table.SAVINGS_GOALS);
+                writer.savingsGoal(3, 1, 500_000, 100_000L, 25_000, 20_028, 20_089);
+                writer.savingsGoal(4, 7, 1_000, null, 0, 20_100, 20_100);
+                writer.endTable();
+                Snapshot.Counts counts = writer.finish();
+                // Sequential ids and dates and known labels take a byte each, so rows average under 10 bytes
+                if (counts.get(Snapshot.Table.EXPENSES) != expenseRows || counts.total() != expenseRows + 4
+                    || writer.getBytes() > expenseRows * 10L) {
+                    throw new SQLException("Unexpected snapshot size: " + counts + ", " + writer.getBytes() + " bytes");
+                }
+            }
+
+            List<String> seen = new ArrayList<>();
+            long[] readCents = new long[1];
+            Snapshot.Handler handler = new Snapshot.Handler() {
+                @Override
+                public void user(int id, String name, String email, String password) {
+                    seen.add(id + ":" + name + ":" + email + ":" + password);
+                }
+
+                @Override
+                public void transaction(Snapshot.Table table, int id, int userId, long amountCents, int epochDay, String label) {
+                    readCents[0] += amountCents;
+                    if (id == 6 || id == expenseRows) {
+                        seen.add(table.getTableName() + ":" + id + ":" + userId + ":" + epochDay + ":" + label);
+                    }
+                }
+
+                @Override
+                public void savingsGoal(int id, int userId, long goalCents, Long currentCents, Long initialCents,
+                                        int startEpochDay, int endEpochDay) {
+                    seen.add("goal:" + id + ":" + userId + ":" + goalCents + ":" + currentCents + ":" + initialCents + ":"
+                        + startEpochDay + ":" + endEpochDay);
+                }
+
+                @Override
+                public void endTable(Snapshot.Table table, long rows) {
+                    seen.add("end:" + table.getTableName() + ":" + rows);
+                }
+            };
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                new SnapshotReader(channel).read(handler);
+            }
+            List<String> expected = List.of("1:John Doe:john@example.com:password123", "7:Zoë:zoe@example.com:secret",
+                "end:users:2", "end:income:0", "expenses:6:1:19800:null", "expenses:30000:1:20099:Transport",
+                "end:expenses:30000", "goal:3:1:500000:100000:25000:20028:20089", "goal:4:7:1000:null:0:20100:20100",
+                "end:savings_goals:2");
+            if (!seen.equals(expected) || readCents[0] != writtenCents) {
+                throw new SQLException("Unexpected snapshot contents: " + seen);
+            }
+
+            // A flipped byte fails its block's checksum, a cut-off file is reported as truncated
+            long size = Files.size(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer one = ByteBuffer.allocate(1);
+                channel.read(one, size / 2);
+                one.put(0, (byte) (one.get(0) ^ 0x10)).rewind();
+                channel.write(one, size / 2);
+            }
+            expectSnapshotFailure(file, handler, "checksum");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(Snapshot.HEADER_SIZE + 100);
+            }
+            expectSnapshotFailure(file, handler, "truncated");
+            deleteTree(directory);
+        } catch (IOException e) {
+            throw new SQLException("Snapshot I/O failed: " + e.getMessage(), e);
+        }
+        PrintBuilder.message("Binary snapshots passed!").asSuccess().print();
+    }
+
+    private static void expectSnapshotFailure(Path file, Snapshot.Handler handler, String problem) throws SQLException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            new SnapshotReader(channel).read(handler);
+            throw new SQLException("A damaged snapshot was read without error");
+        } catch (IOException e) {
+            if (!e.getMessage().contains(problem)) {
+                throw new SQLException("Expected a " + problem + " error but got: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static HttpResponse<String> send(HttpClient client, HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void testSavingsGoals(ConnectionPool pool, IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
+        PrintBuilder.message("\nTesting savings goals...").print();
+        SavingsGoalDAO goals = new SavingsGoalDAO(pool);
+        TransactionRepository<Income> income =
+            new GoalTrackingTransactionRepository<>(incomeDao, goals, SavingsGoalDAO.Contribution.INCOME);
+        TransactionRepository<Expense> expenses =
+            new GoalTrackingTransactionRepository<>(expenseDao, goals, SavingsGoalDAO.Contribution.EXPENSES);
+
+        // Income recorded before the goal existed still counts, from the goal's start date
+        incomeDao.add(new Income(0, 1, 100.00, "Goal Test", "2023-01-10"));
+        SavingsGoal goal = goals.add(new SavingsGoal(0, 1, Money.of(1000.00), Money.of(50.00), "2023-01-01", "2023-01-31"));
+        expectGoal(goals, goal.getId(), 15000, "added");
+
+        Expense rent = expenses.add(new Expense(0, 1, 30.00, "Goal Test", "2023-01-15"));
+        expenses.add(new Expense(0, 1, 999.00, "Goal Test", "2023-02-15"));  // After the end date
+        expectGoal(goals, goal.getId(), 12000, "expense added");
+
+        income.addAll(List.of(new Income(0, 1, 10.00, "Goal Test", "2023-01-20"),
+            new Income(0, 1, 20.00, "Goal Test", "2023-01-20")));
+        expectGoal(goals, goal.getId(), 15000, "income batch added");
+
+        expenses.update(new Expense(rent.getId(), 1, 40.00, "Goal Test", "2023-01-15"));
+        expectGoal(goals, goal.getId(), 14000, "expense updated");
+        expenses.deleteById(rent.getId());
+        expectGoal(goals, goal.getId(), 18000, "expense deleted");
+        income.deleteByDateRange(1, "2023-01-20", "2023-01-20");
+        expectGoal(goals, goal.getId(), 15000, "income range deleted");
+        income.deleteByUserId(1);
+        expenses.deleteByUserId(1);
+        expectGoal(goals, goal.getId(), 5000, "all deleted");
+        if (!goals.deleteById(goal.getId()) || goals.getById(goal.getId()) != null) {
+            throw new SQLException("Savings goal not deleted");
+        }
+
+        // $300 saved over the first 30 days: the remaining $700 takes 70 more days at that rate
+        int start = (int) LocalDate.parse("2023-01-01").toEpochDay();
+        SavingsGoal projected = new SavingsGoal(1, 1, Money.of(1000.00), Money.of(300.00), Money.ZERO,
+            "2023-01-01", "2023-12-31");
+        if (projected.getProjectedEpochDay(start + 29).orElse(-1) != start + 99 || !projected.isOnTrack(start + 29)
+            || new SavingsGoal(1, 1, Money.of(1000.00), Money.ZERO, "2023-01-01", "2023-12-31")
+                .getProjectedEpochDay(start + 29).isPresent()) {
+            throw new SQLException("Savings goal projection wrong");
+        }
+        PrintBuilder.message("Savings goals passed!").asSuccess().print();
+    }
+
+    private static void expectGoal(SavingsGoalDAO goals, int id, long cents, String step) throws SQLException {
+        SavingsGoal goal = goals.getById(id);
+        if (goal == null || goal.getCurrentCents() != cents) {
+            throw new SQLException("Savings goal wrong after " + step + ": " + goal);
+        }
+    }
+
+    private static void testUserDirectory(ConnectionPool pool, IncomeDAO incomeDao, ExpenseDAO expenseDao) throws SQLException {
+        PrintBuilder.message("\nTesting user directory...").print();
+        UserDAO users = new UserDAO(pool);
+        User john = users.getById(1);
+        if (john == null || users.getById(Integer.MAX_VALUE) != null) {
+            throw new SQLException("User lookup wrong: " + john);
+        }
+
+        // User 1's totals come from the page query, and must match the per-table summaries
+        Page<UserSummary> first = users.getSummaryPageAfter(0, 1);
+        UserSummary summary = first.getItems().get(0);
+        TransactionSummary income = incomeDao.getSummary(1);
+        TransactionSummary expenses = expenseDao.getSummary(1);
+        if (first.getItems().size() != 1 || first.hasPrevious() || summary.getUser().getId() != 1
+            || !summary.getTotalIncome().equals(income.getTotal()) || !summary.getTotalExpenses().equals(expenses.getTotal())
+            || summary.getTransactionCount() != income.getCount() + expenses.getCount()) {
+            throw new SQLException("User summary wrong: " + summary);
+        }
+        if (first.hasNext()) {
+            UserSummary second = users.getSummaryPageAfter(1, 1).getItems().get(0);
+            Page<UserSummary> back = users.getSummaryPageBefore(second.getUser().getId(), 1);
+            if (back.getItems().get(0).getUser().getId() != 1 || back.hasPrevious()) {
+                throw new SQLException("Previous user page wrong");
+            }
+        }
+        PrintBuilder.message("User directory passed!").asSuccess().print();
+    }
+
+    private static void testUserCache() throws SQLException {
+        PrintBuilder.message("\nTesting user cache...").print();
+        int[] lookups = new int[1];
+        UserRepository counting = new UserRepository() {
+            @Override
+            public User getById(int id) {
+                lookups[0]++;
+                return id == 1 ? new User(1, "John Doe", "john@example.com") : null;
+            }
+
+            @Override
+            public Page<UserSummary> getSummaryPageAfter(int afterId, int pageSize) {
+                return new Page<>(List.of(new UserSummary(new User(2, "Zoë", "zoe@example.com"), 0, 0, 0)), false, false);
+            }
+
+            @Override
+            public Page<UserSummary> getSummaryPageBefore(int beforeId, int pageSize) {
+                return new Page<>(List.of(), false, true);
+            }
+        };
+        CachingUserRepository users = new CachingUserRepository(counting, 2, 300);
+
+        // Known users are looked up once; unknown IDs are asked every time so new users can log in
+        users.getById(1);
+        users.getById(1);
+        users.getById(9);
+        users.getById(9);
+        // Users on a directory page are cached too
+        users.getSummaryPageAfter(0, 20);
+        if (users.getById(2) == null || lookups[0] != 3 || users.getHits() != 2) {
+            throw new SQLException("User cache wrong: " + lookups[0] + " lookups, " + users.getHits() + " hits");
+        }
+        users.invalidateAll();
+        users.getById(1);
+        if (lookups[0] != 4) {
+            throw new SQLException("User cache not invalidated");
+        }
+        PrintBuilder.message("User cache passed!").asSuccess().print();
+    }
+
+    private static void testTransactionCache(ExpenseDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting transaction cache...").print();
+        CachingTransactionRepository<Expense> cache = new CachingTransactionRepository<>(dao, Expense::new, 2, 60);
+
+        int before = cache.getByUserId(1).size();
+        cache.getByUserId(1);
+        cache.getTotal(1); // Summed from the cached list
+        if (cache.getHits() != 2 || cache.getMisses() != 1) {
+            throw new SQLException("Repeated reads should hit the cache: " + cache);
+        }
+
+        Expense added = cache.add(new Expense(0, 1, 5.00, "Cache Test", "2024-03-15"));
+        if (cache.getByUserId(1).size() != before + 1) {
+            throw new SQLException("Add did not invalidate the cached list");
+        }
+        // Changing a returned record must not change the cached one
+        cache.getByUserId(1).get(before).setAmount(999.00);
+        Expense reread = cache.getByUserId(1).get(before);
+        if (reread.getAmountCents() != 500 || reread == cache.getByUserId(1).get(before)) {
+            throw new SQLException("Cache handed out its own records");
+        }
+        cache.deleteById(added.getId());
+        if (cache.getByUserId(1).size() != before) {
+            throw new SQLException("Delete did not invalidate the cached list");
+        }
+
+        PrintBuilder.message("Transaction cache passed! " + cache).asSuccess().print();
+    }
+
+    private static void testRepositoryMetrics(ExpenseDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting repository metrics...").print();
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        // Buckets are within an eighth of the value, and never report above the maximum
+        long p50 = histogram.percentile(50);
+        if (p50 < 500_000 || p50 > 500_000 * 9 / 8 || histogram.percentile(100) != 1_000_000) {
+            throw new SQLException("Unexpected percentiles: p50=" + p50 + ", p100=" + histogram.percentile(100));
+        }
+
+        MetricsTransactionRepository<Expense> measured = new MetricsTransactionRepository<>(dao, "expenses");
+        int rows = measured.getByUserId(1).size();
+        measured.getByUserId(1);
+        Expense added = measured.add(new Expense(0, 1, 5.00, "Metrics Test", "2024-03-15"));
+        measured.deleteById(added.getId());
+        try {
+            measured.getPageAfter(1, 0, 0);
+        } catch (IllegalArgumentException expected) {
+            // Counted as an error below
+        }
+
+        OperationMetrics reads = measured.getMetrics(Operation.GET_BY_USER_ID);
+        OperationMetrics adds = measured.getMetrics(Operation.ADD);
+        if (reads.getCalls() != 2 || reads.getRows() != 2L * rows || reads.getErrors() != 0) {
+            throw new SQLException("Unexpected read metrics: " + reads);
+        }
+        OperationMetrics pages = measured.getMetrics(Operation.GET_PAGE_AFTER);
+        if (adds.getCalls() != 1 || adds.getRows() != 1 || pages.getCalls() != 1 || pages.getErrors() != 1) {
+            throw new SQLException("Unexpected write or error metrics: " + adds + ", " + pages);
+        }
+        if (reads.getP50Millis() > reads.getP99Millis() || reads.getP99Millis() > reads.getMaxMillis()) {
+            throw new SQLException("Percentiles out of order: " + reads);
+        }
+
+        PrintBuilder.message("Repository metrics passed! " + reads).asSuccess().print();
+    }
+
+    private static void testQueryTracing(ExpenseDAO dao) throws SQLException {
+        PrintBuilder.message("\nTesting query tracing...").print();
+        try {
+            Path recordingFile = Files.createTempFile("walletwatch", ".jfr");
+            int rows;
+            try (Recording recording = new Recording()) {
+                recording.enable("walletwatch.Query");
+                recording.start();
+                rows = dao.getByUserId(1).size();
+                recording.stop();
+                recording.dump(recordingFile);
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+            Files.delete(recordingFile);
+            RecordedEvent read = events.stream()
+                .filter(event -> "expenses.getByUserId".equals(event.getString("operation")))
+                .findFirst()
+                .orElseThrow(() -> new SQLException("No walletwatch.Query event for getByUserId"));
+            if (read.getLong("rows") != rows || !read.getBoolean("succeeded") || !read.getString("sql").contains("user_id = ?")) {
+                throw new SQLException("Unexpected query event: " + read);
+            }
+
+            Path logFile = Files.createTempFile("slow-queries", ".log");
+            // close() writes out what is queued, so nothing needs to wait for the writer thread
+            SlowQueryLog log = new SlowQueryLog(logFile);
+            log.record("expenses.getByUserId", "SELECT * FROM expenses WHERE user_id = ?", "[?]", rows, 2_000_000, 500_000, true);
+            log.close();
+            log.record("expenses.getByUserId", "SELECT * FROM expenses WHERE user_id = ?", "[?]", rows, 2_000_000, 500_000, true);
+            if (log.getWritten() != 1 || log.getDropped() != 1) {
+                throw new SQLException("Slow-query log not drained on close: " + log.getWritten() + " written");
+            }
+            String logged = Files.readString(logFile);
+            Files.delete(logFile);
+            if (!logged.contains("2.500 ms (execute 2.000 ms, materialize 0.500 ms) " + rows + " rows ok expenses.getByUserId")) {
+                throw new SQLException("Unexpected slow-query log line: " + logged);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not read the recording: " + e.getMessage(), e);
+        }
+
+        PrintBuilder.message("Query tracing passed!").asSuccess().print();
+    }
+
     private static Optional<Income> findIncomeBySource(List<Income> incomes, String source) {
         for (Income income : incomes) {
             if (income.getSource().equals(source)) {
@@ -0,0 +1,105 @@
+// CsvReader.java
+// Copyright 2024 maximusf
+
+// Reads comma-separated files one record at a time
+
+package util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazily parses a CSV file, reading only one line into memory at a time
+ * Supports quoted fields containing commas and doubled quotes ("")
+ * Quoted fields may not span multiple lines
+ *
+ * Example usage:
+ * try (CsvReader csv = new CsvReader(Paths.get("bank.csv"))) {
+ *     String[] fields;
+ *     while ((fields = csv.next()) != null) { ... }
+ * }
+ */
+public class CsvReader implements Closeable {
+    private final BufferedReader reader;
+    private int lineNumber = 0;
+
+    /**
+     * Opens a CSV file for reading
+     * @param path Path of the CSV file
+     */
+    public CsvReader(Path path) throws IOException {
+        this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next non-blank record
+     * @return The fields of the record, or null at end of file
+     */
+    public String[] next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (!line.isBlank()) {
+                return parseLine(line);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Line number of the record last returned by next()
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Splits one CSV line into trimmed fields
+     * Example: parseLine("expense,12.50,\"Food, Drinks\",2024-11-02")
+     * Output: [expense, 12.50, Food, Drinks, 2024-11-02]
+     * @param line The line to split
+     * @return The fields of the line
+     */
+    public static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,171 @@
+// DateCodec.java
+// Copyright 2024 maximusf
+
+// Validates, parses and formats dates by scanning characters, without regex or substrings
+
+package util;
+
+/**
+ * Date handling shared by the models and services
+ *
+ * Dates are passed around as packed ints (yyyymmdd, e.g. 20241102) so parsing
+ * allocates nothing; only format() creates a String.
+ * Every parse also checks the calendar, so 2024-02-30 or 2023-02-29 are rejected.
+ *
+ * Example usage:
+ * int date = DateCodec.parse("20241102");     // 20241102
+ * DateCodec.format(date);                      // "2024-11-02"
+ * DateCodec.isIsoDate("2024-02-31");           // false
+ */
+public final class DateCodec {
+    // parse() result when the text is not 8 digits
+    public static final int MALFORMED = -1;
+    // parse() result when the digits don't name a real day
+    public static final int INVALID = -2;
+
+    private static final int[] DAYS_IN_MONTH = { 0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private DateCodec() {}
+
+    /**
+     * Checks for a real date in strict YYYY-MM-DD form (the format stored in the database)
+     * @param text Text to check, may be null
+     * @return True if the text is a valid date
+     */
+    public static boolean isIsoDate(CharSequence text) {
+        return parseIso(text) >= 0;
+    }
+
+    /**
+     * Parses strict YYYY-MM-DD text
+     * @param text Text to parse, may be null
+     * @return The date as yyyymmdd, or MALFORMED / INVALID
+     */
+    public static int parseIso(CharSequence text) {
+        if (text == null || text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return MALFORMED;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return MALFORMED;
+        }
+        return isValid(year, month, day) ? year * 10000 + month * 100 + day : INVALID;
+    }
+
+    /**
+     * Parses user input as YYYYMMDD or YYYY-MM-DD; dashes anywhere else (e.g. "20-24-1102") are malformed
+     * @param text Input to parse
+     * @return The date as yyyymmdd, or MALFORMED / INVALID
+     */
+    public static int parse(CharSequence text) {
+        int length = text.length();
+        boolean dashed = length == 10;
+        if (length != 8 && !dashed) {
+            return MALFORMED;
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (dashed && (i == 4 || i == 7)) {
+                if (c != '-') {
+                    return MALFORMED;
+                }
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return MALFORMED;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return isValid(year(value), month(value), day(value)) ? value : INVALID;
+    }
+
+    /**
+     * Formats a packed date as YYYY-MM-DD
+     * @param date Date as yyyymmdd
+     */
+    public static String format(int date) {
+        int year = year(date);
+        int month = month(date);
+        int day = day(date);
+        char[] chars = {
+            (char) ('0' + year / 1000), (char) ('0' + year / 100 % 10), (char) ('0' + year / 10 % 10), (char) ('0' + year % 10),
+            '-', (char) ('0' + month / 10), (char) ('0' + month % 10),
+            '-', (char) ('0' + day / 10), (char) ('0' + day % 10)
+        };
+        return new String(chars);
+    }
+
+    public static int year(int date) { return date / 10000; }
+
+    public static int month(int date) { return date / 100 % 100; }
+
+    public static int day(int date) { return date % 100; }
+
+    /**
+     * Checks that year, month and day name a real day in the proleptic Gregorian calendar
+     */
+    public static boolean isValid(int year, int month, int day) {
+        if (year < 1 || year > 9999 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        if (month == 2 && isLeapYear(year)) {
+            return day <= 29;
+        }
+        return day <= DAYS_IN_MONTH[month];
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Converts a packed date to days since 1970-01-01, the same count as LocalDate.toEpochDay
+     * @param date Date as yyyymmdd
+     */
+    public static int toEpochDay(int date) {
+        // Days-from-civil algorithm: treat March as the first month so the leap day comes last
+        int year = year(date);
+        int month = month(date);
+        int day = day(date);
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Converts days since 1970-01-01 back to a packed date
+     * @param epochDay Days since 1970-01-01
+     * @return Date as yyyymmdd
+     */
+    public static int fromEpochDay(int epochDay) {
+        int days = epochDay + 719468;
+        int era = (days >= 0 ? days : days - 146096) / 146097;
+        int dayOfEra = days - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth + (shiftedMonth < 10 ? 3 : -9);
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    // Reads the decimal digits in [start, end), or -1 if any character is not a digit
+    private static int digits(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -21,14 +21,15 @@ public class Environment {
     // Load variables when class is first used
     static {
         try {
-            System.out.println("Loading .env file...");
+            // Diagnostics go to stderr so batch mode's stdout stays machine-readable
+            System.err.println("Loading .env file...");
             Files.lines(Paths.get(".env")).forEach(line -> {
                 String[] parts = line.split("=", 2);
                 if (parts.length == 2) {
                     VARIABLES.put(parts[0], parts[1]);
                 }
             });
-            System.out.println("Environment variables loaded successfully");
+            System.err.println("Environment variables loaded successfully");
         } catch (IOException e) {
             System.err.println("Error loading .env file: " + e.getMessage());
         }
@@ -42,4 +43,33 @@ public class Environment {
     public static String get(String key) {
         return VARIABLES.get(key);
     }
+
+    /**
+     * Get value of environment variable with a fallback
+     * @param key Name of environment variable
+     * @param defaultValue Value to use when the variable is missing
+     * @return Value of environment variable, or defaultValue
+     */
+    public static String get(String key, String defaultValue) {
+        return VARIABLES.getOrDefault(key, defaultValue);
+    }
+
+    /**
+     * Get value of environment variable as an integer
+     * @param key Name of environment variable
+     * @param defaultValue Value to use when the variable is missing or not a number
+     * @return Value of environment variable, or defaultValue
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = VARIABLES.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+// Jmx.java
+// Copyright 2024 maximusf
+
+// Publishes metrics objects on the platform MBean server for jconsole, VisualVM or JMX exporters
+
+package util;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers standard MBeans (a class Foo implementing FooMBean) under the walletwatch domain
+ * A bean registered again under the same name replaces the earlier one, so a restarted
+ * component in the same JVM shows its own numbers
+ *
+ * Example usage:
+ * Jmx.register("type=ConnectionPool", pool);  // walletwatch:type=ConnectionPool
+ */
+public final class Jmx {
+    public static final String DOMAIN = "walletwatch";
+
+    private Jmx() {}
+
+    /**
+     * @param properties Key properties of the object name, e.g. "type=Cache,table=income"
+     * @param mbean Object implementing its MBean interface
+     * @return false if the bean could not be registered; metrics are never worth failing a caller for
+     */
+    public static boolean register(String properties, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            synchronized (Jmx.class) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(mbean, name);
+            }
+            return true;
+        } catch (JMException e) {
+            System.err.println("Could not register MBean " + properties + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+// JsonReader.java
+// Copyright 2024 maximusf
+
+// Parses the flat JSON objects the API accepts as request bodies
+
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses a single JSON object whose values are strings, numbers, booleans or null
+ * Numbers are kept as their original text so amounts can be read exactly with Money.parse
+ * Nested objects and arrays are rejected, since no request body needs them
+ *
+ * Example usage:
+ * Map<String, String> fields = JsonReader.parseObject("{\"amount\": 12.50, \"category\": \"Food\"}");
+ * Money amount = Money.parse(fields.get("amount"));
+ */
+public class JsonReader {
+    private final String text;
+    private int pos = 0;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return Member names mapped to their values as text (null for JSON null), in document order
+     * @throws IllegalArgumentException If the text is not a flat JSON object
+     */
+    public static Map<String, String> parseObject(String text) {
+        JsonReader reader = new JsonReader(text == null ? "" : text);
+        Map<String, String> fields = reader.object();
+        reader.skipWhitespace();
+        if (reader.pos != reader.text.length()) {
+            throw reader.error("Unexpected text after the object");
+        }
+        return fields;
+    }
+
+    private Map<String, String> object() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return fields;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            fields.put(name, value());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return fields;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private String value() {
+        char c = peek();
+        if (c == '"') {
+            return string();
+        }
+        if (c == '{' || c == '[') {
+            throw error("Nested values are not supported");
+        }
+        if (text.startsWith("null", pos)) {
+            pos += 4;
+            return null;
+        }
+        if (text.startsWith("true", pos)) {
+            pos += 4;
+            return "true";
+        }
+        if (text.startsWith("false", pos)) {
+            pos += 5;
+            return "false";
+        }
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Expected a value");
+        }
+        return text.substring(start, pos);
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escaped = next();
+            switch (escaped) {
+                case '"', '\\', '/' -> value.append(escaped);
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'u' -> {
+                    if (pos + 4 > text.length()) {
+                        throw error("Incomplete \\u escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid \\u escape");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("Invalid escape \\" + escaped);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= text.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        return text.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            pos--;
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid JSON at position " + pos + ": " + message);
+    }
+}
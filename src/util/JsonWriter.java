@@ -0,0 +1,178 @@
+// JsonWriter.java
+// Copyright 2024 maximusf
+
+// Writes JSON with explicit calls per field, without reflection
+
+package util;
+
+import java.nio.charset.StandardCharsets;
+import models.Money;
+import models.Transaction;
+
+/**
+ * Builds a JSON document into one reusable buffer
+ * Callers write each field themselves, so there is no reflection, no intermediate maps,
+ * and the output size is known before the response headers are sent
+ * Amounts are written as exact numbers with two decimals, e.g. 12.50
+ *
+ * Example usage:
+ * JsonWriter json = new JsonWriter();
+ * json.beginObject().name("id").value(7).name("amount").value(Money.parse("12.50")).endObject();
+ * byte[] body = json.toBytes();  // {"id":7,"amount":12.50}
+ */
+public class JsonWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder out;
+    // Whether the next value or name follows an earlier one at the same level
+    private boolean needsComma = false;
+
+    public JsonWriter() {
+        this(256);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        this.out = new StringBuilder(initialCapacity);
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        out.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        out.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        out.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        out.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes an object member name; the next call writes its value
+     */
+    public JsonWriter name(String name) {
+        separate();
+        string(name);
+        out.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            out.append("null");
+        } else {
+            string(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        out.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        out.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(Money value) {
+        separate();
+        out.append(value == null ? "null" : Money.format(value.getCents()));
+        needsComma = true;
+        return this;
+    }
+
+    // Writes cents as dollars without creating a Money
+    public JsonWriter centsValue(long cents) {
+        separate();
+        out.append(Money.format(cents));
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes an income or expense as {"id", "userId", "amount", labelName, "date"}
+     * @param labelName Member name for the label, e.g. "source" or "category"
+     */
+    public JsonWriter transaction(Transaction transaction, String labelName) {
+        return beginObject()
+            .name("id").value(transaction.getId())
+            .name("userId").value(transaction.getUserId())
+            .name("amount").centsValue(transaction.getAmountCents())
+            .name(labelName).value(transaction.getLabel())
+            .name("date").value(transaction.getDate())
+            .endObject();
+    }
+
+    /**
+     * Clears the buffer so the writer can build another document
+     */
+    public JsonWriter reset() {
+        out.setLength(0);
+        needsComma = false;
+        return this;
+    }
+
+    public byte[] toBytes() {
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void separate() {
+        if (needsComma) {
+            out.append(',');
+        }
+    }
+
+    // Quotes a string, escaping what JSON requires
+    private void string(String value) {
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            // Copy the plain run before the character in one call
+            out.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        out.append(value, start, value.length()).append('"');
+    }
+}
@@ -0,0 +1,93 @@
+// LabelDictionary.java
+// Copyright 2024 maximusf
+
+// Shared table of income sources and expense categories
+
+package util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one copy of each distinct label ("Rent", "Salary", ...) and gives it a small int ID
+ *
+ * Every row read from the database brings its own copy of the label text.
+ * Passing it through intern() swaps that copy for the shared one, so a listing of
+ * 100,000 expenses in 12 categories holds 12 label strings instead of 100,000.
+ * The IDs are dense (0, 1, 2, ...) so they can index arrays.
+ *
+ * Labels are never removed; the dictionary grows with the number of distinct labels,
+ * not with the number of rows.
+ *
+ * Example usage:
+ * String category = LabelDictionary.shared().intern(rs.getString("category"));
+ * int id = LabelDictionary.shared().idOf("Rent");
+ * LabelDictionary.shared().labelOf(id);   // "Rent"
+ */
+public final class LabelDictionary {
+    private static final LabelDictionary SHARED = new LabelDictionary();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] labels = new String[64];
+    private int size = 0; // Guarded by this
+
+    /**
+     * The dictionary used by the models
+     */
+    public static LabelDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets the ID of a label, assigning the next free ID the first time it is seen
+     * @param label Label text
+     */
+    public int idOf(String label) {
+        Integer id = ids.get(label);
+        return id != null ? id : add(label);
+    }
+
+    /**
+     * Gets the shared copy of a label
+     * @param label Label text, may be null
+     * @return An equal string that is the same instance for every caller, or null
+     */
+    public String intern(String label) {
+        if (label == null) {
+            return null;
+        }
+        return labels[idOf(label)];
+    }
+
+    /**
+     * Gets the label for an ID returned by idOf
+     * @throws IllegalArgumentException If no label has that ID
+     */
+    public String labelOf(int id) {
+        String[] current = labels;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IllegalArgumentException("Unknown label ID: " + id);
+        }
+        return current[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String label) {
+        Integer existing = ids.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = labels;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = label;
+        // Publish the array before the ID so readers that see the ID also see the label
+        labels = current;
+        ids.put(label, size);
+        return size++;
+    }
+}
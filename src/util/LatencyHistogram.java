@@ -0,0 +1,109 @@
+// LatencyHistogram.java
+// Copyright 2024 maximusf
+
+// Records durations into fixed log-scale buckets that many threads can update without locking
+
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with about 12.5% precision
+ *
+ * Each power of two is split into 8 linear sub-buckets, so 496 buckets cover every
+ * long value and a recorded value is off by at most an eighth of itself. Recording is
+ * one atomic increment on the value's bucket plus LongAdder updates, with no locks
+ * and no allocation; percentiles are read from a snapshot of the buckets.
+ *
+ * Example usage:
+ * LatencyHistogram latency = new LatencyHistogram();
+ * long start = System.nanoTime();
+ * ...
+ * latency.record(System.nanoTime() - start);
+ * long p99 = latency.percentile(99);
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one duration; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public long getTotalNanos() { return totalNanos.sum(); }
+
+    public long getMaxNanos() { return maxNanos.get(); }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) totalNanos.sum() / n;
+    }
+
+    /**
+     * Smallest recorded bucket bound that at least p percent of the values fall under
+     * @param p Percentile from 0 to 100, e.g. 99 for p99
+     * @return Upper bound of that bucket in nanoseconds (capped at the maximum), or 0 when empty
+     */
+    public long percentile(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    // Values below 8 get a bucket each; above that, the top 4 bits pick the bucket
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        // The top bucket ends at Long.MAX_VALUE, which the shift would overflow
+        if (shift == Long.SIZE - SUB_BUCKET_BITS - 2 && subBucket == 2L * SUB_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -3,6 +3,8 @@
 
 package util;
 
+import java.util.Map;
+
 /**
  * takes advantage of principle of SOLID
  * Single Responsibility: PrintBuilder is responsible for printing messages
@@ -63,6 +65,21 @@ public class PrintBuilder {
         }
     }
 
+    /**
+     * Static method to print menu whose options keep fixed numbers
+     * Example: PrintBuilder.menu(Map.of(1, "Add Income", 5, "Exit"));
+     * Output: === Wallet-Watch Menu ===
+     *         1. Add Income
+     *         5. Exit
+     * @param options Menu options keyed by the number the user types, in display order
+     */
+    public static void menu(Map<Integer, String> options) {
+        System.out.println("\n=== Wallet-Watch Menu ===");
+        for (Map.Entry<Integer, String> option : options.entrySet()) {
+            System.out.println(String.format("%d. %s", option.getKey(), option.getValue()));
+        }
+    }
+
     /**
      * Formats message as an error with "Error: " prefix
      * Example: PrintBuilder.message("Invalid input").asError().print();
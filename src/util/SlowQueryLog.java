@@ -0,0 +1,176 @@
+// SlowQueryLog.java
+// Copyright 2024 maximusf
+
+// Appends slow database statements to a log file from a background thread
+
+package util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes one line per slow statement to SLOW_QUERY_LOG (default slow-queries.log)
+ *
+ * The query thread only formats the line and offers it to a bounded queue; a daemon
+ * thread does the file I/O. When the queue is full the line is dropped and counted,
+ * so a slow disk never slows queries down further. close() writes out what is still queued,
+ * including the count of dropped lines, before the program exits.
+ *
+ * Example line:
+ * 2024-11-02T14:03:11.482 812.405 ms (execute 799.120 ms, materialize 13.285 ms) 4210 rows ok expenses.getByUserId: SELECT * FROM expenses WHERE user_id = ? [?]
+ */
+public final class SlowQueryLog implements AutoCloseable {
+    private static final int QUEUE_CAPACITY = 1024;
+    // How long close() waits for the writer to finish
+    private static final long CLOSE_WAIT_SECONDS = 5;
+    // Queued by close() after the last line; compared by identity, so no logged line can match it
+    private static final String STOP = new String("stop");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    private static volatile SlowQueryLog shared;
+
+    private final Path file;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    /**
+     * Starts a log writing to the given file
+     * @param file Log file, created if missing and appended to otherwise
+     */
+    public SlowQueryLog(Path file) {
+        this.file = file;
+        writer = new Thread(this::writeLoop, "slow-query-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The log the DAOs write to, started on the first slow statement
+     */
+    public static SlowQueryLog shared() {
+        SlowQueryLog log = shared;
+        if (log == null) {
+            synchronized (SlowQueryLog.class) {
+                log = shared;
+                if (log == null) {
+                    log = new SlowQueryLog(Paths.get(Environment.get("SLOW_QUERY_LOG", "slow-queries.log")));
+                    shared = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Closes the shared log if a slow statement ever started it, writing out what is queued
+     */
+    public static void closeShared() {
+        SlowQueryLog log = shared;
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Queues one statement for the log; after close the line is dropped
+     * @param operation Table and method, e.g. "income.add"
+     * @param sql Statement text
+     * @param parameters Formatted parameters
+     * @param rows Rows read or changed
+     * @param executeNanos Time until the driver returned
+     * @param materializeNanos Time spent reading rows afterwards
+     * @param succeeded Whether the statement completed
+     */
+    public void record(String operation, String sql, String parameters, long rows,
+                       long executeNanos, long materializeNanos, boolean succeeded) {
+        String line = String.format("%s %.3f ms (execute %.3f ms, materialize %.3f ms) %d rows %s %s: %s %s",
+            LocalDateTime.now().format(TIMESTAMP), (executeNanos + materializeNanos) / 1_000_000.0,
+            executeNanos / 1_000_000.0, materializeNanos / 1_000_000.0, rows, succeeded ? "ok" : "failed",
+            operation, sql, parameters);
+        if (closed || !queue.offer(line)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Writes every queued line and the dropped count to the file, then stops the writer thread
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            // The writer keeps draining, so room for the marker frees up unless the disk hangs
+            if (queue.offer(STOP, CLOSE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                writer.join(TimeUnit.SECONDS.toMillis(CLOSE_WAIT_SECONDS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getFile() { return file; }
+
+    // Lines appended to the file so far
+    public long getWritten() { return written.sum(); }
+
+    // Lines lost because the writer fell behind
+    public long getDropped() { return dropped.sum(); }
+
+    // Appends whatever is queued in one write and flush, then waits for more until close
+    private void writeLoop() {
+        List<String> lines = new ArrayList<>();
+        long droppedSoFar = 0;
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                lines.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(lines);
+            stopping = lines.removeIf(line -> line == STOP);
+            long droppedNow = dropped.sum();
+            if (droppedNow > droppedSoFar) {
+                lines.add(LocalDateTime.now().format(TIMESTAMP) + " " + (droppedNow - droppedSoFar)
+                    + " slow queries not logged, the log could not keep up");
+                droppedSoFar = droppedNow;
+            }
+            if (lines.isEmpty()) {
+                continue;
+            }
+
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : lines) {
+                    out.write(line);
+                    out.newLine();
+                }
+                written.add(lines.size());
+            } catch (IOException e) {
+                System.err.println("Could not write slow-query log " + file + ": " + e.getMessage());
+            }
+            lines.clear();
+        }
+    }
+}
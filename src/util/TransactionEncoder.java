@@ -0,0 +1,280 @@
+// TransactionEncoder.java
+// Copyright 2024 maximusf
+
+// Encodes transaction fields as CSV or newline-delimited JSON straight into a byte buffer
+
+package util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes one line per record into a single reusable ByteBuffer and hands full buffers to a channel,
+ * so an export of any size uses the same 64 KB and never builds Income/Expense objects
+ * Numbers and dates are written digit by digit from cents and day numbers; the label is the only
+ * String per row and is encoded to UTF-8 in place
+ *
+ * CSV:    id,user_id,amount,category,date
+ *         42,5,12.50,Eating Out,2024-11-02
+ * NDJSON: {"id":42,"userId":5,"amount":12.50,"category":"Eating Out","date":"2024-11-02"}
+ *
+ * Example usage:
+ * try (FileChannel file = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING)) {
+ *     TransactionEncoder encoder = new TransactionEncoder(file, TransactionEncoder.Format.CSV, "category");
+ *     expenseDao.forEachRawRow(userId, encoder::row);
+ *     encoder.finish();
+ * }
+ */
+public final class TransactionEncoder {
+    public enum Format {
+        CSV, NDJSON;
+
+        // "csv" or "ndjson" (or "json"), ignoring case
+        public static Format parse(String name) {
+            switch (name.trim().toLowerCase()) {
+                case "csv": return CSV;
+                case "ndjson":
+                case "json": return NDJSON;
+                default: throw new IllegalArgumentException("Unknown export format '" + name + "', expected csv or ndjson");
+            }
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    // Longest encoding of one label char: a JSON \\u00XX escape
+    private static final int MAX_CHAR_BYTES = 6;
+    // Room for every field of a row except the label
+    private static final int MAX_FIXED_BYTES = 128;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] JSON_ID = ascii("{\"id\":");
+    private static final byte[] JSON_USER_ID = ascii(",\"userId\":");
+    private static final byte[] JSON_AMOUNT = ascii(",\"amount\":");
+    private static final byte[] JSON_DATE = ascii("\",\"date\":\"");
+    private static final byte[] JSON_END = ascii("\"}\n");
+
+    private final WritableByteChannel out;
+    private final Format format;
+    // NDJSON: ,"category":"
+    private final byte[] jsonLabel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    // Digits of a number, filled from the right
+    private final byte[] digits = new byte[20];
+    // Rows tend to come in date runs, so the last date's text is kept
+    private final byte[] date = new byte[10];
+    private int dateEpochDay = Integer.MIN_VALUE;
+
+    private long rows;
+    private long bytes;
+
+    /**
+     * Starts an export; CSV writes its header row right away
+     * @param out Channel full buffers are written to, e.g. a FileChannel or a gzip stream's channel
+     * @param format CSV or NDJSON
+     * @param labelName Name of the label column, e.g. "source" or "category"
+     */
+    public TransactionEncoder(WritableByteChannel out, Format format, String labelName) {
+        this.out = out;
+        this.format = format;
+        this.jsonLabel = ascii(",\"" + labelName + "\":\"");
+        if (format == Format.CSV) {
+            label("id,user_id,amount," + labelName + ",date\n");
+        }
+    }
+
+    /**
+     * Appends one record; the arguments match TransactionRepository.RowHandler
+     * @throws UncheckedIOException If the channel fails while a full buffer is written
+     */
+    public void row(int id, int userId, long amountCents, int epochDay, String label) {
+        room(MAX_FIXED_BYTES);
+        if (format == Format.CSV) {
+            number(id);
+            buffer.put((byte) ',');
+            number(userId);
+            buffer.put((byte) ',');
+            cents(amountCents);
+            buffer.put((byte) ',');
+            csvLabel(label);
+            room(MAX_FIXED_BYTES);
+            buffer.put((byte) ',');
+            date(epochDay);
+            buffer.put((byte) '\n');
+        } else {
+            buffer.put(JSON_ID);
+            number(id);
+            buffer.put(JSON_USER_ID);
+            number(userId);
+            buffer.put(JSON_AMOUNT);
+            cents(amountCents);
+            buffer.put(jsonLabel);
+            jsonLabel(label);
+            room(MAX_FIXED_BYTES);
+            buffer.put(JSON_DATE);
+            date(epochDay);
+            buffer.put(JSON_END);
+        }
+        rows++;
+    }
+
+    /**
+     * Writes whatever is still buffered; call once after the last row
+     */
+    public void finish() throws IOException {
+        drain();
+    }
+
+    // Rows encoded so far
+    public long getRows() { return rows; }
+
+    // Bytes handed to the channel so far, before any compression
+    public long getBytes() { return bytes; }
+
+    private void number(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        // Digits are taken from the negative value so Long.MIN_VALUE can't overflow
+        long rest = value < 0 ? value : -value;
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        buffer.put(digits, start, digits.length - start);
+    }
+
+    // Cents as dollars with two decimals, the same text as Money.format
+    private void cents(long cents) {
+        if (cents < 0) {
+            buffer.put((byte) '-');
+        }
+        number(Math.abs(cents / 100));
+        long fraction = Math.abs(cents % 100);
+        buffer.put((byte) '.').put((byte) ('0' + fraction / 10)).put((byte) ('0' + fraction % 10));
+    }
+
+    // YYYY-MM-DD
+    private void date(int epochDay) {
+        if (epochDay != dateEpochDay) {
+            int packed = DateCodec.fromEpochDay(epochDay);
+            int year = DateCodec.year(packed);
+            int month = DateCodec.month(packed);
+            int day = DateCodec.day(packed);
+            date[0] = (byte) ('0' + year / 1000 % 10);
+            date[1] = (byte) ('0' + year / 100 % 10);
+            date[2] = (byte) ('0' + year / 10 % 10);
+            date[3] = (byte) ('0' + year % 10);
+            date[4] = '-';
+            date[5] = (byte) ('0' + month / 10);
+            date[6] = (byte) ('0' + month % 10);
+            date[7] = '-';
+            date[8] = (byte) ('0' + day / 10);
+            date[9] = (byte) ('0' + day % 10);
+            dateEpochDay = epochDay;
+        }
+        buffer.put(date);
+    }
+
+    // Quotes the label only when it holds a comma, quote or line break, doubling any quotes
+    private void csvLabel(String text) {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            label(text);
+            return;
+        }
+        buffer.put((byte) '"');
+        for (int i = 0; i < text.length(); i++) {
+            room(MAX_CHAR_BYTES);
+            char c = text.charAt(i);
+            if (c == '"') {
+                buffer.put((byte) '"').put((byte) '"');
+            } else {
+                i = utf8(text, i);
+            }
+        }
+        room(1);
+        buffer.put((byte) '"');
+    }
+
+    // The label as the body of a JSON string
+    private void jsonLabel(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            room(MAX_CHAR_BYTES);
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (c == '\n') {
+                buffer.put((byte) '\\').put((byte) 'n');
+            } else if (c == '\r') {
+                buffer.put((byte) '\\').put((byte) 'r');
+            } else if (c == '\t') {
+                buffer.put((byte) '\\').put((byte) 't');
+            } else if (c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                    .put(HEX[c >> 4]).put(HEX[c & 0xF]);
+            } else {
+                i = utf8(text, i);
+            }
+        }
+    }
+
+    private void label(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            room(MAX_CHAR_BYTES);
+            i = utf8(text, i);
+        }
+    }
+
+    // Writes the char at index as UTF-8 and returns the index of its last char (surrogate pairs take two)
+    private int utf8(String text, int index) {
+        char c = text.charAt(index);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < text.length()
+                   && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+        }
+        return index;
+    }
+
+    // Makes room for the next bytes, writing the buffer out when it is nearly full
+    private void room(int needed) {
+        if (buffer.remaining() < needed) {
+            try {
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        bytes += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}